@@ -28,15 +28,19 @@ import com.google.inject.name.Names;
 import com.google.inject.util.Types;
 import com.tle.core.plugins.PluginService;
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -55,6 +59,8 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @SuppressWarnings("nls")
 public class ScannerModule extends AbstractModule {
@@ -73,11 +79,23 @@ public class ScannerModule extends AbstractModule {
   private Map<Class<?>, Set<Class<?>>> interfaceMap = new HashMap<Class<?>, Set<Class<?>>>();
   private List<String> bindingClasses = new ArrayList<String>();
 
+  /**
+   * Class names of the bindings in a code library, written next to the classes by the build (see
+   * GuiceBindingIndex.scala). Libraries without one, and all libraries when running with
+   * -Dequella.devmode=true (where the classes may have been recompiled since), are scanned instead.
+   */
+  public static final String BINDING_INDEX = "META-INF/equella/guice-bindings.idx";
+
+  private static final boolean DEV_MODE = Boolean.getBoolean("equella.devmode");
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScannerModule.class);
+
   private static String fullName(Class<? extends Annotation> annot) {
     return 'L' + annot.getName().replace('.', '/') + ';';
   }
 
   public ScannerModule(
+      String pluginId,
       PluginService pluginService,
       ClassLoader classLoader,
       Iterable<URL> localClassPath,
@@ -86,14 +104,20 @@ public class ScannerModule extends AbstractModule {
     this.classLoader = classLoader;
     this.beanCheckers = beanCheckers;
 
+    long start = System.currentTimeMillis();
+    int indexed = 0;
+    int scanned = 0;
     try {
       for (URL url : localClassPath) {
-        if (url.getProtocol().equals("file")) {
+        if (!DEV_MODE && readIndex(url)) {
+          indexed++;
+        } else if (url.getProtocol().equals("file")) {
           File file = new File(url.toURI());
           visitFile(file);
-
+          scanned++;
         } else if (url.getProtocol().equals("jar")) {
           visitJar(url);
+          scanned++;
         }
       }
     } catch (IOException e) {
@@ -101,6 +125,43 @@ public class ScannerModule extends AbstractModule {
     } catch (URISyntaxException e) {
       throw new RuntimeException(e);
     }
+    LOGGER.info(
+        "Found "
+            + bindingClasses.size()
+            + " bindings for "
+            + pluginId
+            + " in "
+            + (System.currentTimeMillis() - start)
+            + "ms ("
+            + indexed
+            + " indexed, "
+            + scanned
+            + " scanned)");
+  }
+
+  private boolean readIndex(URL url) throws IOException {
+    String base = url.toExternalForm();
+    URL indexUrl = new URL(base.endsWith("/") ? base + BINDING_INDEX : base + '/' + BINDING_INDEX);
+    URLConnection connection = indexUrl.openConnection();
+    // Don't leave the plugin jar cached open by the JarURLConnection
+    connection.setUseCaches(false);
+    InputStream inp;
+    try {
+      inp = connection.getInputStream();
+    } catch (FileNotFoundException e) {
+      return false;
+    }
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(inp, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty()) {
+          bindingClasses.add(line);
+        }
+      }
+    }
+    return true;
   }
 
   private void visitJar(URL url) throws IOException, URISyntaxException {
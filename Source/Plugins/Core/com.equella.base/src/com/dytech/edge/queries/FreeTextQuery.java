@@ -48,6 +48,9 @@ public abstract class FreeTextQuery implements Serializable {
   public static final String FIELD_NAME_VECTORED_NOSTEM = "name_vectored_nostem";
   public static final String FIELD_NAME_AUTOCOMPLETE = "name_autocomplete";
   public static final String FIELD_ALL = "all";
+  /** Marks documents whose schema values are also indexed as doc values for facet counting. */
+  public static final String FIELD_FACET_DOCVALUES = "facet_docvalues";
+
   public static final String FIELD_COLLABORATOR = "collaborator";
   public static final String FIELD_PACKAGEFILE = "/item/itembody/packagefile";
   public static final String FIELD_CAL = "/item/copyright/uniqueid";
@@ -24,10 +24,13 @@ import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.Lob;
 import org.hibernate.annotations.AccessType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /** @author Nicholas Read */
 @Entity
 @AccessType("field")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "configurationProperty")
 public class ConfigurationProperty {
   @SuppressWarnings("nls")
   public static final String TABLE_NAME = "configuration_property";
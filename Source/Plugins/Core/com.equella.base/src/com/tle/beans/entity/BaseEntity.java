@@ -46,6 +46,8 @@ import javax.persistence.OneToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 import org.hibernate.annotations.AccessType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 import org.hibernate.annotations.Index;
@@ -56,6 +58,7 @@ import org.hibernate.annotations.Type;
 @AccessType("field")
 @Inheritance(strategy = InheritanceType.JOINED)
 @Table(uniqueConstraints = {@UniqueConstraint(columnNames = {"institution_id", "uuid"})})
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "baseEntity")
 public class BaseEntity implements Serializable, FieldEquality<BaseEntity> {
   private static final long serialVersionUID = 1L;
 
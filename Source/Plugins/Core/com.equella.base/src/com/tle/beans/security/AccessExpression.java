@@ -36,10 +36,13 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import org.hibernate.annotations.AccessType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /** @author Nicholas Read */
 @Entity
 @AccessType("field")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "accessExpression")
 public class AccessExpression implements Cloneable {
   private static final List<String> OPERATORS =
       Arrays.asList("not", "or", "and"); // $NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
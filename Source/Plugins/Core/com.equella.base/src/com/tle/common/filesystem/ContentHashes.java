@@ -0,0 +1,241 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.common.filesystem;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.tle.annotation.NonNullByDefault;
+import com.tle.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Remembers the MD5 of regular files in the filestore so that ETags and checksums don't need the
+ * file contents to be read each time they are asked for. A hash is only valid for the size and
+ * modification time the file had when it was hashed. A hash taken within a clock tick of the file
+ * being modified is held back until the tick has passed, as a second write in the same tick could
+ * change the content without changing either. This is always the case for a file which has just
+ * been written.
+ *
+ * <p>Hashes are kept in memory and, where the file system supports user defined attributes,
+ * persisted alongside the file itself so that they survive restarts and are shared by every node
+ * using the same filestore.
+ */
+@SuppressWarnings("nls")
+@NonNullByDefault
+public final class ContentHashes {
+  private static final Log LOGGER = LogFactory.getLog(ContentHashes.class);
+
+  private static final String ATTRIBUTE = "oeq.md5";
+  private static final int MAX_ENTRIES = 50000;
+  // Some filesystems only record modification times to the second (or two, for FAT), others to
+  // the kernel's clock tick
+  private static final long COARSE_TICK = 2000;
+  private static final long FINE_TICK = 20;
+
+  private static final Cache<String, Entry> CACHE =
+      CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+  // Hashes of files modified too recently to be trusted yet, recorded once the tick has passed
+  private static final Cache<String, Entry> PENDING =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_ENTRIES)
+          .expireAfterWrite(1, TimeUnit.MINUTES)
+          .build();
+
+  private static volatile boolean attributesSupported = true;
+
+  private ContentHashes() {
+    throw new Error();
+  }
+
+  /**
+   * Returns the MD5 of the file, calculating and recording it if it's not already known. For
+   * directories the MD5 of all the files underneath is returned and is never recorded.
+   */
+  @Nullable
+  public static String md5(File file) throws IOException {
+    if (!file.isFile()) {
+      return FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+    }
+
+    String md5 = getKnownMd5(file);
+    if (md5 == null) {
+      // Stat before hashing so a concurrent modification invalidates what we record
+      BasicFileAttributes attrs = readAttributes(file.toPath());
+      md5 = FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+      if (md5 != null && attrs != null) {
+        store(file.toPath(), new Entry(attrs, md5));
+      }
+    }
+    return md5;
+  }
+
+  /**
+   * Returns the MD5 of the file without reading its contents, or null if it hasn't been recorded
+   * for the current size and modification time of the file.
+   */
+  @Nullable
+  public static String getKnownMd5(File file) {
+    final Path path = file.toPath();
+    final BasicFileAttributes attrs = readAttributes(path);
+    if (attrs == null || !attrs.isRegularFile()) {
+      return null;
+    }
+
+    final String key = path.toAbsolutePath().toString();
+    Entry entry = CACHE.getIfPresent(key);
+    if (entry == null || !entry.matches(attrs)) {
+      entry = readPersisted(path);
+      if (entry != null && entry.matches(attrs)) {
+        CACHE.put(key, entry);
+      } else {
+        entry = PENDING.getIfPresent(key);
+        if (entry == null || !entry.matches(attrs) || isRacy(entry.lastModified)) {
+          return null;
+        }
+        PENDING.invalidate(key);
+        store(path, entry);
+      }
+    }
+    return entry.md5;
+  }
+
+  /**
+   * Records the MD5 of a file which has just been written, e.g. one calculated while streaming the
+   * content to disk. The hash is used once the file's modification time is a clock tick old.
+   */
+  public static void record(File file, String md5) {
+    final Path path = file.toPath();
+    final BasicFileAttributes attrs = readAttributes(path);
+    if (attrs != null && attrs.isRegularFile()) {
+      store(path, new Entry(attrs, md5));
+    }
+  }
+
+  private static void store(Path path, Entry entry) {
+    final String key = path.toAbsolutePath().toString();
+    if (isRacy(entry.lastModified)) {
+      PENDING.put(key, entry);
+      return;
+    }
+    CACHE.put(key, entry);
+    if (!attributesSupported) {
+      return;
+    }
+
+    UserDefinedFileAttributeView view =
+        Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+    if (view == null) {
+      attributesSupported = false;
+      return;
+    }
+    try {
+      view.write(ATTRIBUTE, StandardCharsets.US_ASCII.encode(entry.toString()));
+    } catch (UnsupportedOperationException e) {
+      LOGGER.info("Filestore does not support user attributes, content hashes will not persist");
+      attributesSupported = false;
+    } catch (IOException e) {
+      LOGGER.debug("Unable to persist content hash for " + path, e);
+    }
+  }
+
+  private static boolean isRacy(long lastModified) {
+    final long tick = lastModified % 1000 == 0 ? COARSE_TICK : FINE_TICK;
+    return System.currentTimeMillis() - lastModified < tick;
+  }
+
+  @Nullable
+  private static Entry readPersisted(Path path) {
+    if (!attributesSupported) {
+      return null;
+    }
+    UserDefinedFileAttributeView view =
+        Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+    if (view == null) {
+      return null;
+    }
+    try {
+      if (!view.list().contains(ATTRIBUTE)) {
+        return null;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(view.size(ATTRIBUTE));
+      view.read(ATTRIBUTE, buffer);
+      buffer.flip();
+      return Entry.parse(StandardCharsets.US_ASCII.decode(buffer).toString());
+    } catch (UnsupportedOperationException | IOException e) {
+      return null;
+    }
+  }
+
+  @Nullable
+  private static BasicFileAttributes readAttributes(Path path) {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static final class Entry {
+    private final long size;
+    private final long lastModified;
+    private final String md5;
+
+    Entry(BasicFileAttributes attrs, String md5) {
+      this(attrs.size(), attrs.lastModifiedTime().toMillis(), md5);
+    }
+
+    Entry(long size, long lastModified, String md5) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.md5 = md5;
+    }
+
+    boolean matches(BasicFileAttributes attrs) {
+      return size == attrs.size() && lastModified == attrs.lastModifiedTime().toMillis();
+    }
+
+    @Nullable
+    static Entry parse(String value) {
+      String[] parts = value.split(":");
+      if (parts.length != 3) {
+        return null;
+      }
+      try {
+        return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return size + ":" + lastModified + ":" + md5;
+    }
+  }
+}
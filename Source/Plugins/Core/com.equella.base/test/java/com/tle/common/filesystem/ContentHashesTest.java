@@ -0,0 +1,56 @@
+package com.tle.common.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Test;
+
+public class ContentHashesTest {
+  // md5 of "hello"
+  private static final String HELLO = "5d41402abc4b2a76b9719d911017c592";
+
+  @Test
+  public void justModifiedIsNotRecorded() throws IOException {
+    File file = write("hello");
+    // As recorded by a filesystem with one second resolution
+    file.setLastModified(System.currentTimeMillis() / 1000 * 1000);
+    ContentHashes.record(file, HELLO);
+    assertNull(ContentHashes.getKnownMd5(file));
+  }
+
+  @Test
+  public void justModifiedIsRecordedOnceTheTickHasPassed() throws Exception {
+    File file = write("hello");
+    file.setLastModified(System.currentTimeMillis() / 1000 * 1000);
+    ContentHashes.record(file, HELLO);
+    assertNull(ContentHashes.getKnownMd5(file));
+
+    // Past the tick of a filesystem with one second resolution
+    Thread.sleep(2100);
+    assertEquals(HELLO, ContentHashes.getKnownMd5(file));
+  }
+
+  @Test
+  public void recordedUntilSizeOrTimeChanges() throws IOException {
+    File file = write("hello");
+    long lastModified = System.currentTimeMillis() - 10000;
+    file.setLastModified(lastModified);
+    ContentHashes.record(file, HELLO);
+    assertEquals(HELLO, ContentHashes.getKnownMd5(file));
+
+    Files.write(file.toPath(), "hello!".getBytes(StandardCharsets.UTF_8));
+    file.setLastModified(lastModified);
+    assertNull(ContentHashes.getKnownMd5(file));
+  }
+
+  private File write(String content) throws IOException {
+    File file = File.createTempFile("hash", ".txt");
+    file.deleteOnExit();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
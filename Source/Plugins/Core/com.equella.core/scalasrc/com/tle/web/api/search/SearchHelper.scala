@@ -33,6 +33,7 @@ import com.tle.common.search.DefaultSearch
 import com.tle.common.search.whereparser.WhereParser
 import com.tle.common.searching.SortField
 import com.tle.common.usermanagement.user.CurrentUser
+import com.tle.core.freetext.index.CursorSearchResults
 import com.tle.core.freetext.queries.FreeTextBooleanQuery
 import com.tle.core.item.security.ItemSecurityConstants
 import com.tle.core.item.serializer.{ItemSerializerItemBean, ItemSerializerService}
@@ -71,6 +72,11 @@ object SearchHelper {
 
   val privileges = Array(ItemSecurityConstants.VIEW_ITEM)
 
+  /**
+    * The cursor used to request the first page of results when paging with a cursor.
+    */
+  val FirstPageCursor = "*"
+
   /**
     * Execute a search with provided search criteria.
     *
@@ -85,6 +91,25 @@ object SearchHelper {
              searchAttachments: Boolean): FreetextSearchResults[FreetextResult] =
     LegacyGuice.freeTextService.search(defaultSearch, start, length, searchAttachments)
 
+  /**
+    * Execute a search returning the page of results following a cursor.
+    *
+    * @param defaultSearch A set of search criteria
+    * @param cursor The cursor returned with the previous page, or None for the first page.
+    * @param length The maximum number of search results.
+    * @param searchAttachments Whether to search attachments.
+    */
+  def searchAfter(defaultSearch: DefaultSearch,
+                  cursor: Option[String],
+                  length: Int,
+                  searchAttachments: Boolean): CursorSearchResults[FreetextResult] =
+    try {
+      LegacyGuice.freeTextService
+        .searchAfter(defaultSearch, cursor.orNull, length, searchAttachments)
+    } catch {
+      case e: IllegalArgumentException => throw new BadRequestException(e.getMessage)
+    }
+
   /**
     * Create a new search with search criteria. The search criteria include two parts.
     * 1. General criteria provided by `SearchParam`.
@@ -265,20 +290,59 @@ object SearchHelper {
     LegacyGuice.itemSerializerService.createItemBeanSerializer(ids, category, false, privileges: _*)
   }
 
+  /**
+    * Load the details needed to convert a page of search results which are not provided by the
+    * item serializer, using a few queries for the whole page rather than several per item.
+    *
+    * @param itemIds The keys of every item in the page of search results.
+    * @return The details for all of the items which exist.
+    */
+  def loadDecorations(itemIds: List[ItemIdKey]): SearchResultDecorations = {
+    val items = LegacyGuice.itemService.queryItemsByItemIds(itemIds.asJava).values.asScala.toList
+    if (items.isEmpty) {
+      return SearchResultDecorations(Map.empty, Map.empty, Map.empty, Map.empty)
+    }
+
+    val javaItems = items.asJava
+
+    val commentCounts = LegacyGuice.itemCommentService
+      .getCommentCountsWithACLCheck(javaItems)
+      .asScala
+      .map { case (id, count) => id.longValue -> count }
+    val bookmarkIds = LegacyGuice.bookmarkService
+      .getBookmarksForItems(javaItems)
+      .asScala
+      .map { case (item, bookmark) => item.getId -> bookmark.getId }
+    val latestVersions = LegacyGuice.itemService
+      .getLatestVersions(items.map(_.getUuid).distinct.asJava)
+      .asScala
+      .map { case (uuid, version) => uuid -> version.intValue }
+
+    SearchResultDecorations(
+      items = items.map(i => i.getId -> i).toMap,
+      commentCounts = commentCounts.toMap,
+      bookmarkIds = bookmarkIds.toMap,
+      latestVersions = latestVersions.toMap
+    )
+  }
+
   /**
     * Convert a SearchItem to an instance of SearchResultItem.
     *
     * @param item Details of an item to convert.
+    * @param decorations Details of all the items in the search result, from `loadDecorations`.
     * @param includeAttachments Controls whether to populate the 'attachments' property as that
     *                           process can be intensive and slow down searches.
     * @return The result of converting `item` to a `SearchResultItem`.
     */
-  def convertToItem(item: SearchItem, includeAttachments: Boolean = true): SearchResultItem = {
+  def convertToItem(item: SearchItem,
+                    decorations: SearchResultDecorations,
+                    includeAttachments: Boolean): SearchResultItem = {
     val key  = item.idKey
     val bean = item.bean
     lazy val sanitisedAttachmentBeans =
       Option(bean.getAttachments).map(_.asScala.map(sanitiseAttachmentBean).toList)
-    val rawItem = LegacyGuice.itemService.getUnsecureIfExists(key)
+    val rawItem = decorations.items.get(key.getKey).orNull
 
     SearchResultItem(
       uuid = key.getUuid,
@@ -289,7 +353,7 @@ object SearchHelper {
       createdDate = bean.getCreatedDate,
       modifiedDate = bean.getModifiedDate,
       collectionId = bean.getCollection.getUuid,
-      commentCount = getItemCommentCount(key),
+      commentCount = decorations.commentCounts.get(key.getKey),
       starRatings = bean.getRating,
       attachmentCount = Option(bean.getAttachments).map(_.size).getOrElse(0),
       attachments =
@@ -300,8 +364,8 @@ object SearchHelper {
       displayOptions = Option(bean.getDisplayOptions),
       keywordFoundInAttachment = item.keywordFound,
       links = getLinksFromBean(bean),
-      bookmarkId = getBookmarkId(key),
-      isLatestVersion = isLatestVersion(key),
+      bookmarkId = decorations.bookmarkIds.get(key.getKey),
+      isLatestVersion = decorations.isLatestVersion(key),
       drmStatus = getItemDrmStatus(rawItem),
       moderationDetails = getModerationDetails(rawItem),
     )
@@ -354,31 +418,12 @@ object SearchHelper {
   def getItemComments(key: ItemIdKey): Option[java.util.List[Comment]] =
     Option(LegacyGuice.itemCommentService.getCommentsWithACLCheck(key, null, null, -1))
 
-  def getItemCommentCount(key: ItemIdKey): Option[Integer] =
-    Option(LegacyGuice.itemCommentService.getCommentCountWithACLCheck(key))
-
   /**
     * Extract the value of 'links' from the 'extras' of AbstractExtendableBean.
     */
   def getLinksFromBean[T <: AbstractExtendableBean](bean: T) =
     bean.get("links").asInstanceOf[java.util.Map[String, String]]
 
-  /**
-    * Find the Bookmark linking to the Item and return the Bookmark's ID.
-    * @param itemID Unique Item ID
-    * @return Unique Bookmark ID
-    */
-  def getBookmarkId(itemID: ItemIdKey): Option[Long] =
-    Option(LegacyGuice.bookmarkService.getByItem(itemID)).map(_.getId)
-
-  /**
-    * Check whether a specific version is the latest version
-    * @param itemID Unique Item ID
-    * @return True if the version is the latest one
-    */
-  def isLatestVersion(itemID: ItemIdKey): Boolean =
-    itemID.getVersion == LegacyGuice.itemService.getLatestVersion(itemID.getUuid)
-
   def getThumbnailDetails(attachmentBeans: Option[List[AttachmentBean]],
                           itemKey: ItemIdKey): Option[ThumbnailDetails] = {
     lazy val hasRestrictedAttachmentPrivileges: Boolean =
@@ -438,3 +483,26 @@ object SearchHelper {
     standardDisplayFields ++ customDisplayFields
   }
 }
+
+/**
+  * Details of a page of search results, looked up in bulk by `SearchHelper.loadDecorations`.
+  *
+  * @param items The items, keyed on item ID.
+  * @param commentCounts The number of comments on each item whose comments the user can view, keyed
+  *                      on item ID.
+  * @param bookmarkIds The ID of the current user's bookmark of each item, keyed on item ID.
+  * @param latestVersions The latest version of each item, keyed on item UUID.
+  */
+case class SearchResultDecorations(items: Map[Long, Item],
+                                   commentCounts: Map[Long, Integer],
+                                   bookmarkIds: Map[Long, Long],
+                                   latestVersions: Map[String, Int]) {
+
+  /**
+    * Check whether a specific version is the latest version
+    * @param itemID Unique Item ID
+    * @return True if the version is the latest one
+    */
+  def isLatestVersion(itemID: ItemIdKey): Boolean =
+    itemID.getVersion == latestVersions.getOrElse(itemID.getUuid, 1)
+}
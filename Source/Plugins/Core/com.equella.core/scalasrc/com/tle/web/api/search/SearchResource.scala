@@ -24,6 +24,7 @@ import com.tle.beans.entity.Schema
 import com.tle.beans.item.ItemIdKey
 import com.tle.common.i18n.CurrentLocale
 import com.tle.common.search.DefaultSearch
+import com.tle.common.searching.SearchResults
 import com.tle.common.security.SecurityConstants
 import com.tle.core.item.serializer.ItemSerializerItemBean
 import com.tle.core.services.item.FreetextResult
@@ -90,13 +91,25 @@ class SearchResource {
 
   def doSearch(searchRequest: DefaultSearch,
                params: SearchParam): SearchResult[SearchResultItem] = {
-    val searchResults =
-      search(searchRequest, params.start, params.length, params.searchAttachments)
+    val (searchResults, freetextResults, nextCursor)
+      : (SearchResults[_], List[FreetextResult], Option[String]) =
+      Option(params.cursor) match {
+        case Some(cursor) =>
+          val results = searchAfter(searchRequest,
+                                    Some(cursor).filter(_ != FirstPageCursor),
+                                    params.length,
+                                    params.searchAttachments)
+          (results, results.getResults.asScala.toList, Option(results.getNextCursor))
+        case None =>
+          val results =
+            search(searchRequest, params.start, params.length, params.searchAttachments)
+          (results, results.getSearchResults.asScala.toList, None)
+      }
 
-    val freetextResults         = searchResults.getSearchResults.asScala.toList
     val itemIds                 = freetextResults.map(_.getItemIdKey)
     val serializer              = createSerializer(itemIds)
     val items: List[SearchItem] = freetextResults.map(result => SearchItem(result, serializer))
+    val decorations             = loadDecorations(itemIds)
     val highlight =
       new DefaultSearch.QueryParser(params.query).getHilightedList.asScala.toList
 
@@ -104,8 +117,9 @@ class SearchResource {
       searchResults.getOffset,
       searchResults.getCount,
       searchResults.getAvailable,
-      items.map(convertToItem(_, params.includeAttachments)),
-      highlight
+      items.map(convertToItem(_, decorations, params.includeAttachments)),
+      highlight,
+      nextCursor
     )
   }
 
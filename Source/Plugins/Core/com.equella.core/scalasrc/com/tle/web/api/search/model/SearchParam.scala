@@ -39,6 +39,11 @@ class SearchParam {
   @QueryParam("length") @DefaultValue("10")
   var length: Int = _
 
+  @ApiParam(
+    "Page through the results with a cursor instead of start. Use * for the first page, then the nextCursor of the previous page.")
+  @QueryParam("cursor")
+  var cursor: String = _
+
   @ApiParam("List of collections")
   @QueryParam("collections")
   var collections: Array[String] = _
@@ -26,9 +26,11 @@ package com.tle.web.api.search.model
   * @param available The maximum number of results available for paging
   * @param results The individual items which match the search
   * @param highlight List of words to use to highlight when displaying the results
+  * @param nextCursor The cursor for the next page when paging with a cursor, absent on the last page
   */
 case class SearchResult[T](start: Int,
                            length: Int,
                            available: Int,
                            results: List[T],
-                           highlight: List[String])
+                           highlight: List[String],
+                           nextCursor: Option[String] = None)
@@ -20,12 +20,12 @@ package com.tle.web.api.search.service
 
 import com.tle.common.search.DefaultSearch
 import com.tle.core.guice.Bind
-import com.tle.legacy.LegacyGuice
 import com.tle.web.api.search.CSVHeader
 import com.tle.web.api.search.ExportCSVHelper.{buildCSVRow, convertSearchResultToXML}
-import com.tle.web.api.search.SearchHelper.search
+import com.tle.web.api.search.SearchHelper.searchAfter
 import org.springframework.transaction.annotation.Transactional
 import javax.inject.Singleton
+import scala.annotation.tailrec
 import scala.jdk.CollectionConverters._
 
 @Bind
@@ -33,7 +33,8 @@ import scala.jdk.CollectionConverters._
 class ExportService {
 
   /**
-    * Export search results as CSV contents. The full result is chunked by paging and streaming.
+    * Export search results as CSV contents. The full result is chunked by walking through the
+    * results with a cursor and streaming each page, so later pages cost no more than the first.
     * @param defaultSearch A set of search criteria
     * @param searchAttachments Whether to search attachments.
     * @param headers A list of CSV headers
@@ -44,19 +45,28 @@ class ExportService {
              searchAttachments: Boolean,
              headers: List[CSVHeader],
              writeRow: (String) => Unit): Unit = {
-    // Get the total count first. As we only do one search, the result of 'countsFromFilters'
-    // must be an array that has only one element.
-    val count     = LegacyGuice.freeTextService.countsFromFilters(List(defaultSearch).asJava)(0)
-    val chunkSize = 100
-    val starts: Seq[Int] =
-      for (i <- 0 until count / chunkSize + 1) yield i * chunkSize
-
-    starts.foreach(start => {
-      convertSearchResultToXML(
-        search(defaultSearch, start, chunkSize, searchAttachments).getSearchResults.asScala.toList)
+    @tailrec
+    def exportPage(cursor: Option[String]): Unit = {
+      val results = searchAfter(defaultSearch, cursor, ExportService.PageSize, searchAttachments)
+      convertSearchResultToXML(results.getResults.asScala.toList)
         .foreach(xml => {
           writeRow(s"${buildCSVRow(xml, headers)}")
         })
-    })
+
+      Option(results.getNextCursor) match {
+        case Some(next) => exportPage(Some(next))
+        case None       =>
+      }
+    }
+
+    exportPage(None)
   }
 }
+
+object ExportService {
+
+  /**
+    * Number of results fetched from the index at a time.
+    */
+  val PageSize = 500
+}
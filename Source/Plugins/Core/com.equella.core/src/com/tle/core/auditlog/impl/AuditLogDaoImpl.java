@@ -22,6 +22,7 @@ import com.tle.beans.Institution;
 import com.tle.beans.audit.AuditLogEntry;
 import com.tle.core.auditlog.AuditLogDao;
 import com.tle.core.guice.Bind;
+import java.util.Collection;
 import javax.inject.Singleton;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
@@ -36,4 +37,22 @@ public class AuditLogDaoImpl extends AbstractAuditLogDaoImpl<AuditLogEntry> impl
   public Criterion restrictByInstitution(Institution institution) {
     return Restrictions.eq("institution", institution);
   }
+
+  @Override
+  public void saveAll(Collection<AuditLogEntry> entries) {
+    getHibernateTemplate()
+        .execute(
+            session -> {
+              session.setJdbcBatchSize(entries.size());
+              for (AuditLogEntry entry : entries) {
+                session.save(entry);
+              }
+              session.flush();
+              // Nothing will read these back, so don't keep them in the session
+              for (AuditLogEntry entry : entries) {
+                session.evict(entry);
+              }
+              return null;
+            });
+  }
 }
@@ -36,10 +36,12 @@ import com.tle.core.auditlog.AuditLogService;
 import com.tle.core.guice.Bind;
 import com.tle.core.plugins.PluginService;
 import com.tle.core.plugins.PluginTracker;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Predicate;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.servlet.http.HttpServletRequest;
@@ -71,6 +73,7 @@ public class AuditLogServiceImpl implements AuditLogService {
   private static final String USED_TYPE = "USED";
 
   @Inject private AuditLogDao dao;
+  @Inject private AuditLogWriter writer;
   private PluginTracker<AuditLogExtension> extensionTracker;
 
   @Override
@@ -81,6 +84,7 @@ public class AuditLogServiceImpl implements AuditLogService {
     c.set(Calendar.MINUTE, 59);
     c.add(Calendar.DAY_OF_YEAR, -daysOld);
 
+    // Entries still queued were logged after the cut off
     Date date = c.getTime();
     dao.removeEntriesBeforeDate(date);
     for (AuditLogExtension extension : getExtensions()) {
@@ -268,7 +272,7 @@ public class AuditLogServiceImpl implements AuditLogService {
             CurrentInstitution.get(),
             meta);
 
-    dao.save(entry);
+    writer.write(entry);
   }
 
   @Override
@@ -302,7 +306,7 @@ public class AuditLogServiceImpl implements AuditLogService {
       String d3,
       String d4,
       Institution institution) {
-    dao.save(
+    writer.write(
         new AuditLogEntry(
             userId, sessionId, category, type, new Date(), d1, d2, d3, d4, institution, null));
   }
@@ -324,6 +328,7 @@ public class AuditLogServiceImpl implements AuditLogService {
   @Override
   @Transactional
   public void removeEntriesForInstitution(Institution institution) {
+    writer.discardPending(inInstitution(institution));
     dao.removeEntriesForInstitution(institution);
     for (AuditLogExtension extension : getExtensions()) {
       extension.getDao().removeEntriesForInstitution(institution);
@@ -333,26 +338,68 @@ public class AuditLogServiceImpl implements AuditLogService {
   @Override
   @Transactional
   public void removeEntriesForUser(String userId) {
+    writer.discardPending(byUser(userId));
     dao.removeEntriesForUser(userId);
   }
 
   @Override
   public int countByInstitution(Institution institution) {
-    return (int) dao.countByCriteria(dao.restrictByInstitution(institution));
+    return writer.withPending(
+        inInstitution(institution),
+        pending ->
+            (int) dao.countByCriteria(dao.restrictByInstitution(institution)) + pending.size());
   }
 
+  /** Entries still waiting to be written are returned after those in the table. */
   @Override
   public List<AuditLogEntry> findAllByInstitution(
       Order order, int firstResult, int maxResults, Institution institution) {
-    return dao.findAllByCriteria(
-        order, firstResult, maxResults, dao.restrictByInstitution(institution));
+    return writer.withPending(
+        inInstitution(institution),
+        pending -> {
+          final List<AuditLogEntry> entries =
+              dao.findAllByCriteria(
+                  order, firstResult, maxResults, dao.restrictByInstitution(institution));
+          if (pending.isEmpty() || (maxResults > 0 && entries.size() == maxResults)) {
+            return entries;
+          }
+          final int written =
+              entries.isEmpty()
+                  ? (int) dao.countByCriteria(dao.restrictByInstitution(institution))
+                  : firstResult + entries.size();
+          final int from = Math.min(pending.size(), Math.max(0, firstResult - written));
+          final int to =
+              maxResults > 0
+                  ? Math.min(pending.size(), from + maxResults - entries.size())
+                  : pending.size();
+          final List<AuditLogEntry> results = new ArrayList<>(entries);
+          results.addAll(pending.subList(from, to));
+          return results;
+        });
   }
 
   @Override
   public List<AuditLogEntry> findByUser(String userId) {
-    return dao.findAllByCriteria(
-        Restrictions.eq("institution", CurrentInstitution.get()),
-        Restrictions.eq("userId", userId));
+    return writer.withPending(
+        byUser(userId),
+        pending -> {
+          final List<AuditLogEntry> entries =
+              new ArrayList<>(
+                  dao.findAllByCriteria(
+                      Restrictions.eq("institution", CurrentInstitution.get()),
+                      Restrictions.eq("userId", userId)));
+          entries.addAll(pending);
+          return entries;
+        });
+  }
+
+  private static Predicate<AuditLogEntry> inInstitution(Institution institution) {
+    return entry -> entry.getInstitution().getUniqueId() == institution.getUniqueId();
+  }
+
+  private static Predicate<AuditLogEntry> byUser(String userId) {
+    final Predicate<AuditLogEntry> inInstitution = inInstitution(CurrentInstitution.get());
+    return inInstitution.and(entry -> userId.equals(entry.getUserId()));
   }
 
   /** Class which provides metadata of HTTP request. */
@@ -0,0 +1,182 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.auditlog.impl;
+
+import com.tle.beans.audit.AuditLogEntry;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Audit log entries which couldn't be queued or written, saved to local disk until they can be.
+ * Entries are appended to the current file, which is rolled over once it reaches {@link
+ * #MAX_FILE_SIZE} so that each file can be read back in one go.
+ */
+@SuppressWarnings("nls")
+class AuditLogSpill {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AuditLogSpill.class);
+
+  static final long MAX_FILE_SIZE = 16 * 1024 * 1024;
+
+  private static final String EXTENSION = ".spill";
+
+  private final File directory;
+  private File current;
+
+  AuditLogSpill(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * @param institutionId the unique ID of the institution the entry belongs to, as the entry is
+   *     read back without it
+   */
+  synchronized void write(long institutionId, AuditLogEntry entry) throws IOException {
+    if (current == null || current.length() >= MAX_FILE_SIZE) {
+      if (!(directory.mkdirs() || directory.isDirectory())) {
+        throw new IOException("Could not create/confirm directory " + directory);
+      }
+      current =
+          new File(directory, System.currentTimeMillis() + "-" + System.nanoTime() + EXTENSION);
+    }
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(current, true)))) {
+      out.writeLong(institutionId);
+      out.writeLong(entry.getTimestamp().getTime());
+      writeString(out, entry.getUserId());
+      writeString(out, entry.getSessionId());
+      writeString(out, entry.getEventCategory());
+      writeString(out, entry.getEventType());
+      writeString(out, entry.getData1());
+      writeString(out, entry.getData2());
+      writeString(out, entry.getData3());
+      writeString(out, entry.getData4());
+      writeString(out, entry.getMeta());
+    }
+  }
+
+  /**
+   * Removes the oldest spill file and returns its entries. Entries are returned without an
+   * institution, which must be looked up from {@link SpilledEntry#getInstitutionId()}.
+   *
+   * @return null if there is nothing spilled
+   */
+  synchronized List<SpilledEntry> takeOldest() throws IOException {
+    final File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    if (files == null || files.length == 0) {
+      return null;
+    }
+    Arrays.sort(files);
+    final File oldest = files[0];
+    if (oldest.equals(current)) {
+      current = null;
+    }
+
+    final List<SpilledEntry> entries = new ArrayList<>();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(oldest)))) {
+      while (true) {
+        final long institutionId;
+        try {
+          institutionId = in.readLong();
+        } catch (EOFException end) {
+          break;
+        }
+        entries.add(new SpilledEntry(institutionId, readEntry(in)));
+      }
+    } catch (IOException e) {
+      // Most likely the server stopped part way through writing an entry
+      LOGGER.warn("Ignoring unreadable audit log entries at the end of " + oldest, e);
+    }
+    if (!oldest.delete()) {
+      throw new IOException("Unable to delete audit log spill file " + oldest);
+    }
+    return entries;
+  }
+
+  private static AuditLogEntry readEntry(DataInputStream in) throws IOException {
+    final Date timestamp = new Date(in.readLong());
+    final String userId = readString(in);
+    final String sessionId = readString(in);
+    final String category = readString(in);
+    final String type = readString(in);
+    final String d1 = readString(in);
+    final String d2 = readString(in);
+    final String d3 = readString(in);
+    final String d4 = readString(in);
+    final String meta = readString(in);
+    return new AuditLogEntry(
+        userId, sessionId, category, type, timestamp, d1, d2, d3, d4, null, meta);
+  }
+
+  // writeUTF is limited to 64k, which data4 can exceed
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > MAX_FILE_SIZE) {
+      throw new IOException("Invalid string length " + length);
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static final class SpilledEntry {
+    private final long institutionId;
+    private final AuditLogEntry entry;
+
+    SpilledEntry(long institutionId, AuditLogEntry entry) {
+      this.institutionId = institutionId;
+      this.entry = entry;
+    }
+
+    long getInstitutionId() {
+      return institutionId;
+    }
+
+    AuditLogEntry getEntry() {
+      return entry;
+    }
+  }
+}
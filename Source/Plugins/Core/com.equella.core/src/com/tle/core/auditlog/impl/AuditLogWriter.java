@@ -0,0 +1,380 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.auditlog.impl;
+
+import com.tle.beans.Institution;
+import com.tle.beans.audit.AuditLogEntry;
+import com.tle.common.NamedThreadFactory;
+import com.tle.core.auditlog.AuditLogDao;
+import com.tle.core.auditlog.impl.AuditLogSpill.SpilledEntry;
+import com.tle.core.guice.Bind;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.institution.RunAsInstitution;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Summary;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Writes audit log entries in the background, so that logging a view or a search doesn't add an
+ * insert to the request. Entries are queued once the transaction which logged them commits, and
+ * written in batches, one transaction per institution. What happens when the queue is full is
+ * decided by {@link FullQueuePolicy}. Entries still queued when the server stops are lost.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class AuditLogWriter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AuditLogWriter.class);
+
+  private static final long POLL_TIME = TimeUnit.SECONDS.toMillis(1);
+  // How long the writer waits for an entry while holding writeLock
+  private static final long WAIT_TIME = 50;
+  // How long reads and deletes wait for the batch being written
+  private static final long LOCK_TIME = TimeUnit.SECONDS.toMillis(5);
+
+  private static final Gauge QUEUE_SIZE =
+      Gauge.build()
+          .name("audit_log_queue_size")
+          .help("Number of audit log entries waiting to be written")
+          .register();
+  private static final Summary FLUSH_SECONDS =
+      Summary.build()
+          .name("audit_log_flush_seconds")
+          .help("Time taken to write a batch of audit log entries")
+          .register();
+  private static final Counter DROPPED =
+      Counter.build()
+          .name("audit_log_dropped_total")
+          .help("Number of audit log entries which were discarded")
+          .register();
+  private static final Counter SPILLED =
+      Counter.build()
+          .name("audit_log_spilled_total")
+          .help("Number of audit log entries saved to disk to be written later")
+          .register();
+
+  public enum FullQueuePolicy {
+    /** Wait for room in the queue, as entries used to be written synchronously */
+    BLOCK,
+    /** Discard the entry */
+    DROP,
+    /** Save the entry to local disk, and write it once the queue has emptied */
+    SPILL
+  }
+
+  @Inject private AuditLogDao dao;
+  @Inject private RunAsInstitution runAs;
+  @Inject private InstitutionService institutionService;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("audit.async")
+  private boolean async = true;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("audit.queueSize")
+  private int queueSize = 10000;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("audit.batchSize")
+  private int batchSize = 200;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("audit.fullQueuePolicy")
+  private String fullQueuePolicy = "block";
+
+  @com.google.inject.Inject(optional = true)
+  @Named("audit.spillDirectory")
+  private String spillDirectory;
+
+  // Held by the writer from taking entries off the queue until they are committed
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+
+  private volatile BlockingQueue<AuditLogEntry> queue;
+  private FullQueuePolicy policy;
+  private AuditLogSpill spill;
+
+  /**
+   * Queues the entry to be written once the current transaction commits, so entries logged by a
+   * transaction which is rolled back are never written. Entries without an institution are written
+   * straight away, in the current transaction.
+   */
+  public void write(AuditLogEntry entry) {
+    if (!async || entry.getInstitution() == null) {
+      dao.save(entry);
+      return;
+    }
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              enqueue(entry);
+            }
+          });
+    } else {
+      enqueue(entry);
+    }
+  }
+
+  private void enqueue(AuditLogEntry entry) {
+    final BlockingQueue<AuditLogEntry> q = getQueue();
+    if (q.offer(entry)) {
+      QUEUE_SIZE.set(q.size());
+      return;
+    }
+
+    switch (policy) {
+      case DROP:
+        discard(1, null);
+        break;
+      case SPILL:
+        spill(entry);
+        break;
+      case BLOCK:
+      default:
+        try {
+          q.put(entry);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          discard(1, e);
+        }
+        break;
+    }
+  }
+
+  /**
+   * Runs a query of the audit log table while no batch is being written, passing it the matching
+   * entries which are still queued. Together they include every committed entry.
+   */
+  public <T> T withPending(
+      Predicate<AuditLogEntry> filter, Function<List<AuditLogEntry>, T> query) {
+    final BlockingQueue<AuditLogEntry> q = queue;
+    if (q == null) {
+      return query.apply(Collections.emptyList());
+    }
+    final boolean locked = lockWriter();
+    try {
+      return query.apply(q.stream().filter(filter).collect(Collectors.toList()));
+    } finally {
+      if (locked) {
+        writeLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Discards the matching entries which are still queued, after waiting for the batch being
+   * written. Entries which have been written must be deleted from the table by the caller.
+   */
+  public void discardPending(Predicate<AuditLogEntry> filter) {
+    final BlockingQueue<AuditLogEntry> q = queue;
+    if (q == null) {
+      return;
+    }
+    final boolean locked = lockWriter();
+    try {
+      if (q.removeIf(filter)) {
+        QUEUE_SIZE.set(q.size());
+      }
+    } finally {
+      if (locked) {
+        writeLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Waits a bounded time for the writer, as the caller may be holding database locks which the
+   * batch being written is waiting on.
+   */
+  private boolean lockWriter() {
+    try {
+      if (writeLock.tryLock(LOCK_TIME, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+      LOGGER.warn("Timed out waiting for audit log entries to be written");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  private BlockingQueue<AuditLogEntry> getQueue() {
+    BlockingQueue<AuditLogEntry> q = queue;
+    if (q == null) {
+      synchronized (this) {
+        q = queue;
+        if (q == null) {
+          q = start();
+        }
+      }
+    }
+    return q;
+  }
+
+  private BlockingQueue<AuditLogEntry> start() {
+    policy = FullQueuePolicy.valueOf(fullQueuePolicy.trim().toUpperCase(Locale.ENGLISH));
+    final File spillDir =
+        spillDirectory != null
+            ? new File(spillDirectory)
+            : new File(System.getProperty("java.io.tmpdir"), "oeq-audit-spill");
+    spill = new AuditLogSpill(spillDir);
+
+    final BlockingQueue<AuditLogEntry> q = new ArrayBlockingQueue<>(queueSize);
+    final Thread writer = new NamedThreadFactory("AuditLog-Writer").newThread(() -> run(q));
+    writer.setDaemon(true);
+    writer.start();
+    queue = q;
+    return q;
+  }
+
+  private void run(BlockingQueue<AuditLogEntry> q) {
+    long nextReplay = 0;
+    while (true) {
+      try {
+        final List<AuditLogEntry> batch = new ArrayList<>(batchSize);
+        // Entries are only taken off the queue with the lock held, so they are always either
+        // queued or committed to anyone else holding it
+        writeLock.lockInterruptibly();
+        try {
+          final AuditLogEntry first = q.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+          if (first != null) {
+            batch.add(first);
+            q.drainTo(batch, batchSize - 1);
+            QUEUE_SIZE.set(q.size());
+            writeBatch(batch, true);
+          }
+        } finally {
+          writeLock.unlock();
+        }
+        if (batch.isEmpty() && System.currentTimeMillis() >= nextReplay) {
+          replaySpilled();
+          nextReplay = System.currentTimeMillis() + POLL_TIME;
+        }
+      } catch (InterruptedException e) {
+        LOGGER.warn("Audit log writer interrupted, ignoring");
+      } catch (Throwable t) {
+        LOGGER.error("Error writing audit log entries", t);
+      }
+    }
+  }
+
+  /**
+   * Writes the entries one transaction per institution, in the order they were logged.
+   *
+   * @param canSpill whether entries which fail to be written can be spilled to disk
+   */
+  private void writeBatch(List<AuditLogEntry> batch, boolean canSpill) {
+    final Map<Institution, List<AuditLogEntry>> byInstitution = new LinkedHashMap<>();
+    for (AuditLogEntry entry : batch) {
+      byInstitution.computeIfAbsent(entry.getInstitution(), i -> new ArrayList<>()).add(entry);
+    }
+    for (Map.Entry<Institution, List<AuditLogEntry>> group : byInstitution.entrySet()) {
+      final List<AuditLogEntry> entries = group.getValue();
+      final Summary.Timer timer = FLUSH_SECONDS.startTimer();
+      try {
+        runAs.executeAsSystem(group.getKey(), () -> saveAll(entries));
+      } catch (Exception e) {
+        if (canSpill && policy == FullQueuePolicy.SPILL) {
+          LOGGER.warn("Error writing audit log entries, spilling them to disk", e);
+          entries.forEach(this::spill);
+        } else {
+          discard(entries.size(), e);
+        }
+      } finally {
+        timer.observeDuration();
+      }
+    }
+  }
+
+  @Transactional
+  protected void saveAll(List<AuditLogEntry> entries) {
+    dao.saveAll(entries);
+  }
+
+  private void replaySpilled() throws IOException {
+    if (policy != FullQueuePolicy.SPILL) {
+      return;
+    }
+    final List<SpilledEntry> spilled = spill.takeOldest();
+    if (spilled == null) {
+      return;
+    }
+    LOGGER.info("Writing " + spilled.size() + " audit log entries which were spilled to disk");
+    final List<AuditLogEntry> batch = new ArrayList<>(batchSize);
+    for (SpilledEntry spilledEntry : spilled) {
+      final Institution institution =
+          institutionService.getInstitution(spilledEntry.getInstitutionId());
+      if (institution == null) {
+        discard(1, null);
+        continue;
+      }
+      final AuditLogEntry entry = spilledEntry.getEntry();
+      entry.setInstitution(institution);
+      batch.add(entry);
+      if (batch.size() == batchSize) {
+        writeBatch(batch, false);
+        batch.clear();
+      }
+    }
+    writeBatch(batch, false);
+  }
+
+  private void spill(AuditLogEntry entry) {
+    try {
+      spill.write(entry.getInstitution().getUniqueId(), entry);
+      SPILLED.inc();
+    } catch (IOException e) {
+      discard(1, e);
+    }
+  }
+
+  private void discard(int count, Throwable cause) {
+    DROPPED.inc(count);
+    if (cause != null) {
+      LOGGER.error(count + " audit log entries have been discarded", cause);
+    } else {
+      LOGGER.debug(count + " audit log entries discarded");
+    }
+  }
+}
@@ -19,6 +19,9 @@
 package com.tle.core.freetext.filters;
 
 import com.dytech.edge.queries.FreeTextQuery;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
 import com.tle.common.usermanagement.user.CurrentUser;
 import com.tle.common.usermanagement.user.UserState;
 import com.tle.core.freetext.index.LuceneDocumentHelper;
@@ -26,12 +29,14 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import javax.annotation.Nullable;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DocsEnum;
@@ -56,12 +61,25 @@ public class SecurityFilter extends Filter {
   private TermValueComparator comparator = new TermValueComparator();
   private int ownerSizes;
   private boolean systemUser;
+  private String userId;
+
+  @Nullable private final SecurityFilterCache cache;
+  @Nullable private final Object cacheKey;
 
   public SecurityFilter(String aclType) {
+    this(aclType, null);
+  }
+
+  /**
+   * @param cache If not null, the computed bitset for each segment will be shared with other
+   *     searches by users with the same set of ACL expressions.
+   */
+  public SecurityFilter(String aclType, @Nullable SecurityFilterCache cache) {
     ownerExprMap = new HashMap<String, Boolean>();
 
     UserState userState = CurrentUser.getUserState();
     systemUser = userState.isSystem();
+    userId = systemUser ? null : userState.getUserBean().getUniqueID();
     Collection<Long> aclExpressions = userState.getCommonAclExpressions();
     Collection<Long> ownerAclExpressions = userState.getOwnerAclExpressions();
     Collection<Long> notOwnerAclExpressions = userState.getNotOwnerAclExpressions();
@@ -92,12 +110,43 @@ public class SecurityFilter extends Filter {
         ownerExprMap.put(aclStr, false);
       }
     }
+
+    this.cache = systemUser ? null : cache;
+    this.cacheKey =
+        this.cache == null
+            ? null
+            : ImmutableList.of(
+                aclType,
+                sortedExpressions(aclExpressions),
+                sortedExpressions(ownerAclExpressions),
+                sortedExpressions(notOwnerAclExpressions),
+                // Owner expressions depend on which items the user owns
+                ownerSizes > 0 ? Strings.nullToEmpty(userId) : "");
+  }
+
+  private static Set<Long> sortedExpressions(@Nullable Collection<Long> expressions) {
+    return expressions == null
+        ? Collections.<Long>emptySet()
+        : ImmutableSortedSet.copyOf(expressions);
+  }
+
+  /**
+   * @return the key shared by every user this filter would give the same results for, or null if it
+   *     can't be shared
+   */
+  @Nullable
+  public Object getCacheKey() {
+    return cacheKey;
   }
 
   public OpenBitSet getResults() {
     return results;
   }
 
+  public boolean isOnlyCollectResults() {
+    return onlyCollectResults;
+  }
+
   public void setOnlyCollectResults(boolean onlyCollectResults) {
     this.onlyCollectResults = onlyCollectResults;
   }
@@ -106,13 +155,32 @@ public class SecurityFilter extends Filter {
   public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
     AtomicReader reader = context.reader();
     final int max = reader.maxDoc();
-    results = new OpenBitSet(max);
+    if (cache != null) {
+      results = cache.get(context, cacheKey, () -> computeResults(reader));
+    } else {
+      results = computeResults(reader);
+    }
+
+    // If we are only collecting results, we return a full bitset to match
+    // every document.
+    if (onlyCollectResults) {
+      OpenBitSet fullBitSet = new OpenBitSet(max);
+      fullBitSet.set(0, max);
+      return fullBitSet;
+    } else {
+      return results;
+    }
+  }
+
+  private OpenBitSet computeResults(AtomicReader reader) throws IOException {
+    final int max = reader.maxDoc();
+    final OpenBitSet results = new OpenBitSet(max);
 
     if (!systemUser) {
       OpenBitSet owned = new OpenBitSet(max);
       if (ownerSizes > 0) {
         LuceneDocumentHelper.forEachDoc(
-            reader, new Term(FreeTextQuery.FIELD_OWNER, CurrentUser.getUserID()), owned::set);
+            reader, new Term(FreeTextQuery.FIELD_OWNER, userId), owned::set);
       }
 
       Set<Term> allTerms = new TreeSet<>(comparator);
@@ -153,20 +221,9 @@ public class SecurityFilter extends Filter {
     } else {
       Bits liveDocs = reader.getLiveDocs();
       int maxDoc = liveDocs != null ? liveDocs.length() : reader.maxDoc();
-      for (int i = 0; i < maxDoc; i++) {
-        results.set(i);
-      }
-    }
-
-    // If we are only collecting results, we return a full bitset to match
-    // every document.
-    if (onlyCollectResults) {
-      OpenBitSet fullBitSet = new OpenBitSet(max);
-      fullBitSet.set(0, max);
-      return fullBitSet;
-    } else {
-      return results;
+      results.set(0, maxDoc);
     }
+    return results;
   }
 
   private Set<Term> getTermsForField(AtomicReader reader, String field) {
@@ -176,7 +233,7 @@ public class SecurityFilter extends Filter {
       if (terms != null) {
         TermsEnum termsEnum = terms.iterator(null);
         while (termsEnum.next() != null) {
-          set.add(new Term(field, new BytesRef(termsEnum.term().utf8ToString())));
+          set.add(new Term(field, BytesRef.deepCopyOf(termsEnum.term())));
         }
       }
 
@@ -0,0 +1,162 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.filters;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.util.OpenBitSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the bitsets computed by {@link SecurityFilter} for each index segment. Entries are keyed
+ * on the segment core key, so deletions do not invalidate them, and any entries for segments that
+ * are no longer part of the index are purged each time the {@link SearcherManager} refreshes.
+ *
+ * <p>Cached bitsets are shared between searches and must be treated as read only.
+ */
+public class SecurityFilterCache implements ReferenceManager.RefreshListener {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SecurityFilterCache.class);
+
+  private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  private final Cache<SegmentKey, OpenBitSet> cache;
+  private SearcherManager searcherManager;
+
+  public SecurityFilterCache() {
+    this(DEFAULT_MAX_BYTES);
+  }
+
+  public SecurityFilterCache(long maxBytes) {
+    cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher(
+                new Weigher<SegmentKey, OpenBitSet>() {
+                  @Override
+                  public int weigh(SegmentKey key, OpenBitSet value) {
+                    return value.getBits().length * 8;
+                  }
+                })
+            .recordStats()
+            .build();
+  }
+
+  /** Listen for refreshes of the given manager so that entries for stale segments are dropped. */
+  public void register(SearcherManager searcherManager) {
+    this.searcherManager = searcherManager;
+    searcherManager.addListener(this);
+  }
+
+  public OpenBitSet get(
+      AtomicReaderContext context, Object userKey, Callable<OpenBitSet> computeBits)
+      throws IOException {
+    try {
+      return cache.get(new SegmentKey(context.reader().getCoreCacheKey(), userKey), computeBits);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public void beforeRefresh() throws IOException {
+    // Nothing to do
+  }
+
+  @Override
+  public void afterRefresh(boolean didRefresh) throws IOException {
+    if (!didRefresh || searcherManager == null) {
+      return;
+    }
+
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      Set<Object> liveCores = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+      for (AtomicReaderContext leaf : searcher.getIndexReader().leaves()) {
+        liveCores.add(leaf.reader().getCoreCacheKey());
+      }
+
+      long before = cache.size();
+      cache.asMap().keySet().removeIf(key -> !liveCores.contains(key.coreKey));
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(
+            "Purged "
+                + (before - cache.size())
+                + " security bitsets for closed segments, "
+                + cache.stats());
+      }
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  private static final class SegmentKey {
+    private final Object coreKey;
+    private final Object userKey;
+    private final int hashCode;
+
+    SegmentKey(Object coreKey, Object userKey) {
+      this.coreKey = coreKey;
+      this.userKey = userKey;
+      this.hashCode = System.identityHashCode(coreKey) * 31 + userKey.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof SegmentKey)) {
+        return false;
+      }
+      SegmentKey other = (SegmentKey) obj;
+      return coreKey == other.coreKey && Objects.equal(userKey, other.userKey);
+    }
+  }
+}
@@ -21,6 +21,13 @@ package com.tle.core.freetext.index;
 import com.dytech.common.io.FileUtils;
 import com.dytech.edge.exceptions.ErrorDuringSearchException;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.tle.annotation.Nullable;
+import com.tle.core.freetext.filters.SecurityFilterCache;
+import com.tle.core.util.CacheMetrics;
 import com.tle.freetext.TLEAnalyzer;
 import io.github.classgraph.ClassGraph;
 import io.github.classgraph.ClassInfoList;
@@ -36,7 +43,9 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.PostConstruct;
+import javax.inject.Named;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.util.CharArraySet;
@@ -46,6 +55,7 @@ import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.TrackingIndexWriter;
 import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
@@ -96,9 +106,19 @@ public abstract class AbstractIndexEngine {
   private SearcherManager searcherManager;
   private ControlledRealTimeReopenThread<IndexSearcher> controlledRealTimeReopenThread;
   private Timer commiterThread;
+  private final SecurityFilterCache securityFilterCache = new SecurityFilterCache();
 
   // The index generation we should wait for
   private long generation = -1;
+  // Incremented each time searches start seeing changes to the index
+  private final AtomicLong searchVersion = new AtomicLong();
+
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.resultCache.size")
+  private int resultCacheSize = 1000;
+
+  // Results of recent searches, keyed on the search version and what was searched for
+  private Cache<List<Object>, Object> resultCache;
 
   // As autoCompleteAnalyzer doesn't need stopwords and stemming so it works for all languages.
   private final TLEAnalyzer autoCompleteAnalyzer = new TLEAnalyzer(null, false);
@@ -136,6 +156,31 @@ public abstract class AbstractIndexEngine {
         new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_10_4, getAnalyser()));
     trackingIndexWriter = new TrackingIndexWriter(indexWriter);
     searcherManager = new SearcherManager(indexWriter, true, null);
+    securityFilterCache.invalidateAll();
+    securityFilterCache.register(searcherManager);
+    searchVersion.incrementAndGet();
+    if (resultCache == null) {
+      resultCache = CacheBuilder.newBuilder().maximumSize(resultCacheSize).recordStats().build();
+      CacheMetrics.add("search-results-" + indexPath.getName(), resultCache::stats);
+    } else {
+      resultCache.invalidateAll();
+    }
+    searcherManager.addListener(
+        new ReferenceManager.RefreshListener() {
+          @Override
+          public void beforeRefresh() {
+            // Nothing to do
+          }
+
+          @Override
+          public void afterRefresh(boolean didRefresh) {
+            if (didRefresh) {
+              searchVersion.incrementAndGet();
+              // Entries for the old version can never be hit again
+              resultCache.invalidateAll();
+            }
+          }
+        });
 
     // Possibly reopen a searcher every 5 seconds if necessary in the
     // background
@@ -198,6 +243,53 @@ public abstract class AbstractIndexEngine {
     }
   }
 
+  /**
+   * Returns a number which changes whenever a search could give different results, so that results
+   * can be cached until the index changes. Like {@link #search(Searcher)}, changes made by this
+   * node are waited for first.
+   */
+  public long getSearchVersion() {
+    try {
+      controlledRealTimeReopenThread.waitForGeneration(generation);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ErrorDuringSearchException("Interrupted waiting for index", ex);
+    }
+    return searchVersion.get();
+  }
+
+  /**
+   * Returns the result of an earlier search with the same key, provided the index hasn't changed
+   * since it was cached.
+   *
+   * @param version the {@link #getSearchVersion()} read before the search was started
+   * @param key everything other than the index which decides the result
+   */
+  @Nullable
+  protected Object getCachedResult(long version, List<Object> key) {
+    return resultCache == null ? null : resultCache.getIfPresent(ImmutableList.of(version, key));
+  }
+
+  /**
+   * Remembers the result of a search for {@link #getCachedResult(long, List)}. The result is shared
+   * by every later search with the same key, so it must not be modified afterwards.
+   */
+  protected void putCachedResult(long version, List<Object> key, Object result) {
+    if (resultCache != null && version == searchVersion.get()) {
+      resultCache.put(ImmutableList.of(version, key), result);
+    }
+  }
+
+  /** Hit and miss counts of the search result cache. */
+  public CacheStats getResultCacheStats() {
+    return resultCache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : resultCache.stats();
+  }
+
+  /** Per-segment security bitsets shared by searches against this index. */
+  public SecurityFilterCache getSecurityFilterCache() {
+    return securityFilterCache;
+  }
+
   public void setStopWordsFile(File stopWordsFile) {
     this.stopWordsFile = stopWordsFile;
   }
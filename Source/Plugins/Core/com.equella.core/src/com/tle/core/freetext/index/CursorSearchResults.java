@@ -0,0 +1,42 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.index;
+
+import com.tle.annotation.Nullable;
+import com.tle.common.searching.SimpleSearchResults;
+import java.util.List;
+
+/** A page of search results along with the cursor for the following page, if there is one. */
+public class CursorSearchResults<T> extends SimpleSearchResults<T> {
+  private static final long serialVersionUID = 1L;
+
+  @Nullable private final String nextCursor;
+
+  public CursorSearchResults(
+      List<T> results, int offset, int available, @Nullable String nextCursor) {
+    super(results, results.size(), offset, available);
+    this.nextCursor = nextCursor;
+  }
+
+  /** @return the cursor for the next page, or null if this is the last page */
+  @Nullable
+  public String getNextCursor() {
+    return nextCursor;
+  }
+}
@@ -0,0 +1,427 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.index;
+
+import com.dytech.edge.queries.FreeTextQuery;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import com.tle.common.Pair;
+import com.tle.freetext.XmlSchemaIndexer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Counts the values of facet fields for the documents matching a search, in a single pass over the
+ * matches of each segment.
+ *
+ * <p>Schema fields are also indexed as sorted set doc values (see {@link
+ * XmlSchemaIndexer#facetField(String)}), so the values of a document are read straight from them.
+ * Segments written before that have documents without the {@link
+ * FreeTextQuery#FIELD_FACET_DOCVALUES} marker, and for those the values are gathered from the
+ * postings of the matching documents instead.
+ *
+ * <p>Call {@link #finish()} after searching and before getting the results.
+ */
+@SuppressWarnings("nls")
+final class FacetCollector extends Collector {
+  private static final Term DOCVALUES_MARKER =
+      new Term(FreeTextQuery.FIELD_FACET_DOCVALUES, "true");
+
+  private final List<String> fields;
+  private final boolean combine;
+  private final boolean keepDocs;
+
+  /** Counts of each field's values, used when not combining fields. */
+  private final List<Map<BytesRef, int[]>> fieldCounts = new ArrayList<>();
+  /** Counts of each combination of values, where null is a field without a value. */
+  private final Map<List<BytesRef>, Combination> combinations = new HashMap<>();
+
+  private AtomicReaderContext context;
+  private FixedBitSet matches;
+
+  /**
+   * @param combine count each combination of the fields' values rather than each field's values
+   * @param keepDocs remember the documents of each combination
+   */
+  FacetCollector(List<String> fields, boolean combine, boolean keepDocs) {
+    this.fields = fields;
+    this.combine = combine;
+    this.keepDocs = keepDocs;
+    for (int i = 0; i < fields.size(); i++) {
+      fieldCounts.add(new TreeMap<>());
+    }
+  }
+
+  @Override
+  public void setNextReader(AtomicReaderContext context) throws IOException {
+    finish();
+    this.context = context;
+    this.matches = new FixedBitSet(context.reader().maxDoc());
+  }
+
+  @Override
+  public void collect(int doc) {
+    matches.set(doc);
+  }
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    return true;
+  }
+
+  @Override
+  public void setScorer(Scorer scorer) {
+    // Nothing to do
+  }
+
+  /** Counts the values of the documents matched in the current segment. */
+  public void finish() throws IOException {
+    if (context == null) {
+      return;
+    }
+    final AtomicReader reader = context.reader();
+    final boolean docValues = reader.docFreq(DOCVALUES_MARKER) == reader.maxDoc();
+    final SegmentValues[] values = new SegmentValues[fields.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getValues(reader, fields.get(i), docValues);
+    }
+
+    if (combine) {
+      countCombinations(values);
+    } else {
+      countFields(values);
+    }
+    context = null;
+    matches = null;
+  }
+
+  private SegmentValues getValues(AtomicReader reader, String field, boolean docValues)
+      throws IOException {
+    // Fields with predicates never matched any terms, and still don't
+    if (field.indexOf('[') != -1) {
+      return new PostingsValues(null, matches);
+    }
+    final String facetField = XmlSchemaIndexer.facetField(field);
+    final FieldInfo info = reader.getFieldInfos().fieldInfo(facetField);
+    if (docValues && info != null && info.getDocValuesType() == DocValuesType.SORTED_SET) {
+      return new DocValuesValues(reader.getSortedSetDocValues(facetField));
+    }
+    return new PostingsValues(reader.terms(field), matches);
+  }
+
+  private void countFields(SegmentValues[] values) throws IOException {
+    for (int i = 0; i < values.length; i++) {
+      final SegmentValues fieldValues = values[i];
+      final int[] counts = new int[fieldValues.size()];
+      for (int doc = nextMatch(0); doc != -1; doc = nextMatch(doc + 1)) {
+        fieldValues.setDocument(doc);
+        for (int v = 0; v < fieldValues.count; v++) {
+          counts[fieldValues.ords[v]]++;
+        }
+      }
+
+      final Map<BytesRef, int[]> total = fieldCounts.get(i);
+      for (int ord = 0; ord < counts.length; ord++) {
+        if (counts[ord] > 0) {
+          final BytesRef value = fieldValues.lookup(ord);
+          final int[] count = total.get(value);
+          if (count == null) {
+            total.put(BytesRef.deepCopyOf(value), new int[] {counts[ord]});
+          } else {
+            count[0] += counts[ord];
+          }
+        }
+      }
+    }
+  }
+
+  private void countCombinations(SegmentValues[] values) throws IOException {
+    // Combinations of ordinals in this segment, where -1 is a field without a value
+    final Map<List<Integer>, Combination> segment = new HashMap<>();
+    final int[][] docOrds = new int[values.length][];
+    final Integer[] current = new Integer[values.length];
+    for (int doc = nextMatch(0); doc != -1; doc = nextMatch(doc + 1)) {
+      boolean hasValue = false;
+      for (int i = 0; i < values.length; i++) {
+        values[i].setDocument(doc);
+        docOrds[i] = Arrays.copyOf(values[i].ords, values[i].count);
+        hasValue |= values[i].count > 0;
+      }
+      // Documents without a value for any of the fields aren't counted at all
+      if (hasValue) {
+        addCombinations(segment, docOrds, 0, current, context.docBase + doc);
+      }
+    }
+
+    for (Map.Entry<List<Integer>, Combination> entry : segment.entrySet()) {
+      final List<BytesRef> key = new ArrayList<>(values.length);
+      int i = 0;
+      for (Integer ord : entry.getKey()) {
+        key.add(ord < 0 ? null : BytesRef.deepCopyOf(values[i].lookup(ord)));
+        i++;
+      }
+      final Combination combination = entry.getValue();
+      final Combination existing = combinations.putIfAbsent(key, combination);
+      if (existing != null) {
+        existing.add(combination);
+      }
+    }
+  }
+
+  private void addCombinations(
+      Map<List<Integer>, Combination> segment,
+      int[][] docOrds,
+      int field,
+      Integer[] current,
+      int doc) {
+    if (field == docOrds.length) {
+      segment
+          .computeIfAbsent(Arrays.asList(current.clone()), k -> new Combination(keepDocs))
+          .add(doc);
+      return;
+    }
+    final int[] ords = docOrds[field];
+    if (ords.length == 0) {
+      current[field] = -1;
+      addCombinations(segment, docOrds, field + 1, current, doc);
+    } else {
+      for (int ord : ords) {
+        current[field] = ord;
+        addCombinations(segment, docOrds, field + 1, current, doc);
+      }
+    }
+  }
+
+  private int nextMatch(int from) {
+    return from >= matches.length() ? -1 : matches.nextSetBit(from);
+  }
+
+  /** @return the count of each value of each field, in value order */
+  public Multimap<String, Pair<String, Integer>> getFieldCounts() {
+    final Multimap<String, Pair<String, Integer>> rv = ArrayListMultimap.create();
+    for (int i = 0; i < fields.size(); i++) {
+      for (Map.Entry<BytesRef, int[]> entry : fieldCounts.get(i).entrySet()) {
+        rv.put(fields.get(i), new Pair<>(entry.getKey().utf8ToString(), entry.getValue()[0]));
+      }
+    }
+    return rv;
+  }
+
+  /**
+   * @param limit the maximum number of combinations to return, keeping those with the highest
+   *     counts, or zero for all of them
+   * @return each combination of values in value order, where fields without a value are blank and
+   *     come after those with a value
+   */
+  public List<Pair<List<String>, Combination>> getCombinations(int limit) {
+    List<Map.Entry<List<BytesRef>, Combination>> entries = new ArrayList<>(combinations.entrySet());
+    if (limit > 0 && entries.size() > limit) {
+      final Comparator<Map.Entry<List<BytesRef>, Combination>> byCount =
+          Comparator.comparingInt(e -> -e.getValue().count);
+      entries.sort(byCount.thenComparing(Map.Entry::getKey, FacetCollector::compareValues));
+      entries = entries.subList(0, limit);
+    }
+    entries.sort(Map.Entry.comparingByKey(FacetCollector::compareValues));
+
+    final List<Pair<List<String>, Combination>> rv = new ArrayList<>(entries.size());
+    for (Map.Entry<List<BytesRef>, Combination> entry : entries) {
+      final List<String> values = new ArrayList<>(entry.getKey().size());
+      for (BytesRef value : entry.getKey()) {
+        values.add(value == null ? "" : value.utf8ToString());
+      }
+      rv.add(new Pair<>(values, entry.getValue()));
+    }
+    return rv;
+  }
+
+  private static int compareValues(List<BytesRef> v1, List<BytesRef> v2) {
+    for (int i = 0; i < v1.size(); i++) {
+      final BytesRef b1 = v1.get(i);
+      final BytesRef b2 = v2.get(i);
+      final int c = b1 == null ? (b2 == null ? 0 : 1) : (b2 == null ? -1 : b1.compareTo(b2));
+      if (c != 0) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  /** The number of documents with a combination of values, and optionally the documents. */
+  static final class Combination {
+    private int count;
+    private final List<Integer> docs;
+
+    Combination(boolean keepDocs) {
+      docs = keepDocs ? new ArrayList<>() : null;
+    }
+
+    void add(int doc) {
+      count++;
+      if (docs != null) {
+        docs.add(doc);
+      }
+    }
+
+    void add(Combination other) {
+      count += other.count;
+      if (docs != null) {
+        docs.addAll(other.docs);
+      }
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    /** @return the top level IDs of the documents, or empty if they weren't kept */
+    public List<Integer> getDocs() {
+      return docs == null ? Collections.emptyList() : docs;
+    }
+  }
+
+  /** The values of a field in a segment, as ordinals of the field's values in the segment. */
+  private abstract static class SegmentValues {
+    int[] ords = new int[8];
+    int count;
+
+    /** Loads the ordinals of the document's values into {@link #ords} and {@link #count}. */
+    abstract void setDocument(int doc) throws IOException;
+
+    abstract BytesRef lookup(int ord);
+
+    abstract int size();
+
+    void add(int ord) {
+      if (count == ords.length) {
+        ords = Arrays.copyOf(ords, count * 2);
+      }
+      ords[count++] = ord;
+    }
+  }
+
+  private static final class DocValuesValues extends SegmentValues {
+    private final SortedSetDocValues values;
+
+    DocValuesValues(SortedSetDocValues values) {
+      this.values = values;
+    }
+
+    @Override
+    void setDocument(int doc) {
+      count = 0;
+      values.setDocument(doc);
+      for (long ord = values.nextOrd();
+          ord != SortedSetDocValues.NO_MORE_ORDS;
+          ord = values.nextOrd()) {
+        add((int) ord);
+      }
+    }
+
+    @Override
+    BytesRef lookup(int ord) {
+      return values.lookupOrd(ord);
+    }
+
+    @Override
+    int size() {
+      return (int) values.getValueCount();
+    }
+  }
+
+  /**
+   * Values read from the postings of the terms, for segments without doc values. The terms of each
+   * matching document are gathered up front, in two passes to size the arrays first.
+   */
+  private static final class PostingsValues extends SegmentValues {
+    private final List<BytesRef> terms = new ArrayList<>();
+    private int[] starts;
+    private int[] docTerms;
+
+    PostingsValues(Terms fieldTerms, FixedBitSet matches) throws IOException {
+      starts = new int[matches.length() + 1];
+      docTerms = new int[0];
+      if (fieldTerms == null) {
+        return;
+      }
+
+      final int[] counts = new int[matches.length()];
+      final TermsEnum termsEnum = fieldTerms.iterator(null);
+      DocsEnum docs = null;
+      for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+        terms.add(BytesRef.deepCopyOf(term));
+        docs = termsEnum.docs(matches, docs, DocsEnum.FLAG_NONE);
+        for (int doc = docs.nextDoc(); doc != DocsEnum.NO_MORE_DOCS; doc = docs.nextDoc()) {
+          counts[doc]++;
+        }
+      }
+
+      for (int doc = 0; doc < counts.length; doc++) {
+        starts[doc + 1] = starts[doc] + counts[doc];
+      }
+      docTerms = new int[starts[counts.length]];
+      final int[] next = Arrays.copyOf(starts, counts.length);
+      final TermsEnum secondPass = fieldTerms.iterator(null);
+      int ord = 0;
+      for (BytesRef term = secondPass.next(); term != null; term = secondPass.next(), ord++) {
+        docs = secondPass.docs(matches, docs, DocsEnum.FLAG_NONE);
+        for (int doc = docs.nextDoc(); doc != DocsEnum.NO_MORE_DOCS; doc = docs.nextDoc()) {
+          docTerms[next[doc]++] = ord;
+        }
+      }
+    }
+
+    @Override
+    void setDocument(int doc) {
+      count = 0;
+      for (int i = starts[doc]; i < starts[doc + 1]; i++) {
+        add(docTerms[i]);
+      }
+    }
+
+    @Override
+    BytesRef lookup(int ord) {
+      return terms.get(ord);
+    }
+
+    @Override
+    int size() {
+      return terms.size();
+    }
+  }
+}
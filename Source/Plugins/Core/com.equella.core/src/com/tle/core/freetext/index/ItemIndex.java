@@ -22,17 +22,18 @@ import com.dytech.edge.exceptions.InvalidDateRangeException;
 import com.dytech.edge.exceptions.InvalidSearchQueryException;
 import com.dytech.edge.exceptions.RuntimeApplicationException;
 import com.dytech.edge.queries.FreeTextQuery;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.tle.annotation.NonNullByDefault;
 import com.tle.annotation.Nullable;
+import com.tle.beans.Institution;
 import com.tle.beans.item.ItemId;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.Check;
 import com.tle.common.Pair;
+import com.tle.common.institution.CurrentInstitution;
 import com.tle.common.searching.DateFilter.Format;
 import com.tle.common.searching.Field;
 import com.tle.common.searching.Search;
@@ -48,7 +49,6 @@ import com.tle.core.freetext.filters.InstitutionFilter;
 import com.tle.core.freetext.filters.MustFilter;
 import com.tle.core.freetext.filters.MustNotFilter;
 import com.tle.core.freetext.filters.SecurityFilter;
-import com.tle.core.freetext.filters.XPathFieldIterator;
 import com.tle.core.freetext.queries.FreeTextAutocompleteQuery;
 import com.tle.core.freetext.queries.FreeTextBooleanQuery;
 import com.tle.core.freetext.queries.FreeTextDateQuery;
@@ -70,7 +70,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -108,9 +107,11 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.FieldCacheRangeFilter;
 import org.apache.lucene.search.FieldComparatorSource;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiPhraseQuery;
@@ -281,6 +282,8 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
       final int requestedStart,
       final int requestedCount,
       final boolean searchAttachment) {
+    // Read before searching, so a result is never cached for a newer index than it came from
+    final long version = getSearchVersion();
     return search(
         new Searcher<SearchResults<T>>() {
           @Override
@@ -291,7 +294,8 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
             SecurityFilter deleteablesFilter = null;
             String collectPriv = searchreq.getPrivilegeToCollect();
             if (collectPriv != null) {
-              deleteablesFilter = new SecurityFilter(getPrefixForPrivilege(collectPriv));
+              deleteablesFilter =
+                  new SecurityFilter(getPrefixForPrivilege(collectPriv), getSecurityFilterCache());
               deleteablesFilter.setOnlyCollectResults(true);
               filters.add(deleteablesFilter);
             }
@@ -299,6 +303,27 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
                 new ChainedFilter(filters.toArray(new Filter[filters.size()]), ChainedFilter.AND);
 
             Sort sorter = getSorter(searchreq);
+            Query query = getQuery(searchreq, searcher.getIndexReader(), searchAttachment);
+
+            final List<Object> cacheKey =
+                getResultCacheKey(
+                    searchreq,
+                    query,
+                    sorter,
+                    filters,
+                    requestedStart,
+                    requestedCount,
+                    searchAttachment);
+            if (cacheKey != null) {
+              @SuppressWarnings("unchecked")
+              SearchResults<T> cached = (SearchResults<T>) getCachedResult(version, cacheKey);
+              if (cached != null) {
+                if (LOGGER.isDebugEnabled()) {
+                  LOGGER.debug("Query[" + query + "] Cached Hits[" + cached.getAvailable() + "]");
+                }
+                return copyResults(cached);
+              }
+            }
 
             // TODO: We should really be doing a
             // Preconditions.checkArgument(requestedStart >= 0) and the same
@@ -319,15 +344,10 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
             }
 
             SearchResults<T> results;
-            Query query = getQuery(searchreq, searcher.getIndexReader(), searchAttachment);
             boolean searchAll =
                 Check.isEmpty(searchreq.getQuery()) || searchreq.getQuery().equals("*");
 
-            boolean sortByRelevance =
-                Optional.ofNullable(searchreq.getSortFields())
-                    .map(Arrays::stream)
-                    .flatMap(fields -> fields.filter(f -> f.getType() == Type.SCORE).findFirst())
-                    .isPresent();
+            boolean sortByRelevance = isSortByRelevance(searchreq);
 
             if (actualCount == 0) {
               TotalHitCountCollector hitCount = new TotalHitCountCollector();
@@ -341,31 +361,21 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
                   getResultsFromTopDocs(
                       searcher, hits, actualStart, deleteablesFilter, sortByRelevance);
 
-              SearchResults<T> attachmentResults = null;
-              int attachmentBoostValue = freetextIndex.getSearchSettings().getAttachmentBoost();
               if (searchAll) {
                 // don't worry about attachment relevance
                 results = itemResults;
-              } else if (attachmentBoostValue != 0 && searchAttachment) {
-                final String[] fields = new String[] {FreeTextQuery.FIELD_ATTACHMENT_VECTORED};
-
-                Query queryAttachmentOnly =
-                    getQuery(searchreq, searcher.getIndexReader(), fields, searchAttachment);
-                queryAttachmentOnly =
-                    addUniqueIdClauseToQuery(
-                        queryAttachmentOnly, itemResults, searcher.getIndexReader());
-
-                final TopDocs attachmentHits =
-                    searcher.search(queryAttachmentOnly, filter, actualCount, sorter);
-                attachmentResults =
-                    getResultsFromTopDocs(
-                        searcher, attachmentHits, 0, deleteablesFilter, sortByRelevance);
-              }
-
-              if (attachmentResults != null) {
-                results = markItemKeywordFoundInAttachment(itemResults, attachmentResults);
               } else {
-                results = itemResults;
+                results =
+                    markAttachmentMatches(
+                        searcher,
+                        searchreq,
+                        itemResults,
+                        filter,
+                        actualCount,
+                        sorter,
+                        deleteablesFilter,
+                        sortByRelevance,
+                        searchAttachment);
               }
             }
             long t2 = System.currentTimeMillis();
@@ -385,11 +395,269 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
                       + "]");
             }
 
+            if (cacheKey != null) {
+              putCachedResult(version, cacheKey, copyResults(results));
+            }
             return results;
           }
         });
   }
 
+  /**
+   * Everything besides the index that decides the results of a search: the query, sort, filters,
+   * page and the ACL expressions the security filters were built for. Users with the same ACL
+   * expressions therefore share results.
+   *
+   * @return null if the results can't be shared, e.g. for the system user or a custom sort which
+   *     could depend on the user.
+   */
+  @Nullable
+  private List<Object> getResultCacheKey(
+      Search searchreq,
+      Query query,
+      Sort sorter,
+      Collection<Filter> filters,
+      int start,
+      int count,
+      boolean searchAttachment) {
+    Institution institution = CurrentInstitution.get();
+    if (institution == null) {
+      return null;
+    }
+    for (SortField sortField : sorter.getSort()) {
+      if (sortField.getComparatorSource() != null) {
+        return null;
+      }
+    }
+
+    List<Object> securityKeys = new ArrayList<Object>();
+    for (Filter filter : filters) {
+      if (filter instanceof SecurityFilter) {
+        SecurityFilter securityFilter = (SecurityFilter) filter;
+        Object key = securityFilter.getCacheKey();
+        if (key == null) {
+          return null;
+        }
+        // Collected results decide which results are marked as matching the privilege
+        securityKeys.add(Arrays.asList(key, securityFilter.isOnlyCollectResults()));
+      }
+    }
+
+    List<Object> dateFilters = new ArrayList<Object>();
+    if (searchreq.getDateFilters() != null) {
+      for (com.tle.common.searching.DateFilter dateFilter : searchreq.getDateFilters()) {
+        dateFilters.add(
+            Arrays.asList(
+                dateFilter.getIndexFieldName(),
+                dateFilter.getFormat(),
+                getTimes(dateFilter.getRange())));
+      }
+    }
+
+    return Arrays.asList(
+        institution.getUniqueId(),
+        query,
+        sorter,
+        securityKeys,
+        getTimes(searchreq.getDateRange()),
+        dateFilters,
+        searchreq.useServerTimeZone(),
+        getFieldValues(searchreq.getMust()),
+        getFieldValues(searchreq.getMustNot()),
+        searchreq.getMatrixFields() == null
+            ? null
+            : getFieldValues(Collections.singletonList(searchreq.getMatrixFields())),
+        start,
+        count,
+        searchAttachment);
+  }
+
+  @Nullable
+  private static List<Long> getTimes(@Nullable Date[] dates) {
+    if (dates == null) {
+      return null;
+    }
+    List<Long> times = new ArrayList<Long>(dates.length);
+    for (Date date : dates) {
+      times.add(date == null ? null : date.getTime());
+    }
+    return times;
+  }
+
+  @Nullable
+  private static List<List<String>> getFieldValues(@Nullable List<List<Field>> fieldLists) {
+    if (fieldLists == null) {
+      return null;
+    }
+    List<List<String>> values = new ArrayList<List<String>>(fieldLists.size());
+    for (List<Field> fields : fieldLists) {
+      List<String> fieldValues = new ArrayList<String>(fields.size());
+      for (Field field : fields) {
+        fieldValues.add(field.getField() + ':' + field.getValue());
+      }
+      values.add(fieldValues);
+    }
+    return values;
+  }
+
+  private SearchResults<T> copyResults(SearchResults<T> results) {
+    SearchResults<T> copy =
+        new SimpleSearchResults<T>(
+            new ArrayList<T>(results.getResults()),
+            results.getCount(),
+            results.getOffset(),
+            results.getAvailable());
+    copy.setErrorMessage(results.getErrorMessage());
+    return copy;
+  }
+
+  /**
+   * Performs a search and returns the page of results following the cursor. Unlike {@link
+   * #search(Search, int, int, boolean)} the results before the page are never collected, so the
+   * cost of fetching a page does not grow with its offset. This makes it suitable for walking
+   * through every result of a search.
+   *
+   * @param cursor the cursor returned with the previous page, or null for the first page
+   * @param count 1 or greater.
+   * @throws IllegalArgumentException if the cursor is invalid or was created for a search with a
+   *     different order
+   */
+  public CursorSearchResults<T> searchAfter(
+      final Search searchreq,
+      @Nullable final String cursor,
+      final int count,
+      final boolean searchAttachment) {
+    if (count < 1) {
+      throw new IllegalArgumentException("count must be 1 or greater");
+    }
+    // Parse the cursor before getting a searcher, since a bad cursor is the caller's mistake
+    final Sort sorter = getCursorSorter(searchreq);
+    final SearchCursor after = cursor == null ? null : SearchCursor.decode(cursor, sorter);
+    return search(
+        new Searcher<CursorSearchResults<T>>() {
+          @Override
+          public CursorSearchResults<T> search(IndexSearcher searcher) throws IOException {
+            long t1 = System.currentTimeMillis();
+
+            Collection<Filter> filters = getFilters(searchreq);
+            SecurityFilter deleteablesFilter = null;
+            String collectPriv = searchreq.getPrivilegeToCollect();
+            if (collectPriv != null) {
+              deleteablesFilter =
+                  new SecurityFilter(getPrefixForPrivilege(collectPriv), getSecurityFilterCache());
+              deleteablesFilter.setOnlyCollectResults(true);
+              filters.add(deleteablesFilter);
+            }
+            Filter filter =
+                new ChainedFilter(filters.toArray(new Filter[filters.size()]), ChainedFilter.AND);
+
+            Query query = getQuery(searchreq, searcher.getIndexReader(), searchAttachment);
+            boolean searchAll =
+                Check.isEmpty(searchreq.getQuery()) || searchreq.getQuery().equals("*");
+            boolean sortByRelevance = isSortByRelevance(searchreq);
+
+            final TopDocs hits =
+                searcher.searchAfter(
+                    after == null ? null : after.getAfter(),
+                    query,
+                    filter,
+                    count,
+                    sorter,
+                    sortByRelevance,
+                    false);
+            SearchResults<T> results =
+                getResultsFromTopDocs(searcher, hits, 0, deleteablesFilter, sortByRelevance);
+            if (!searchAll) {
+              results =
+                  markAttachmentMatches(
+                      searcher,
+                      searchreq,
+                      results,
+                      filter,
+                      count,
+                      sorter,
+                      deleteablesFilter,
+                      sortByRelevance,
+                      searchAttachment);
+            }
+
+            int offset = after == null ? 0 : after.getOffset();
+            String nextCursor = null;
+            if (hits.scoreDocs.length == count && offset + count < hits.totalHits) {
+              FieldDoc last = (FieldDoc) hits.scoreDocs[hits.scoreDocs.length - 1];
+              nextCursor = SearchCursor.encode(last, offset + count, sorter);
+            }
+            long t2 = System.currentTimeMillis();
+
+            LOGGER.info(
+                "Query["
+                    + query
+                    + "] Hits["
+                    + hits.totalHits
+                    + "] Returning["
+                    + results.getCount()
+                    + "] After["
+                    + offset
+                    + "] Time Elapsed["
+                    + (t2 - t1)
+                    + "ms]");
+
+            return new CursorSearchResults<T>(
+                results.getResults(), offset, hits.totalHits, nextCursor);
+          }
+        });
+  }
+
+  /**
+   * The order of a search with the item ID appended, so that results with equal sort values still
+   * have a stable order between pages.
+   */
+  private Sort getCursorSorter(Search searchreq) {
+    SortField[] fields = getSorter(searchreq).getSort();
+    SortField[] withId = Arrays.copyOf(fields, fields.length + 1);
+    withId[fields.length] = new SortField(FreeTextQuery.FIELD_ID, SortField.Type.STRING);
+    return new Sort(withId);
+  }
+
+  private static boolean isSortByRelevance(Search searchreq) {
+    return Optional.ofNullable(searchreq.getSortFields())
+        .map(Arrays::stream)
+        .flatMap(fields -> fields.filter(f -> f.getType() == Type.SCORE).findFirst())
+        .isPresent();
+  }
+
+  /**
+   * Flags the results whose attachments matched the query, if attachments are boosted. Returns the
+   * same results.
+   */
+  private SearchResults<T> markAttachmentMatches(
+      IndexSearcher searcher,
+      Search searchreq,
+      SearchResults<T> itemResults,
+      Filter filter,
+      int count,
+      Sort sorter,
+      @Nullable SecurityFilter deleteablesFilter,
+      boolean sortByRelevance,
+      boolean searchAttachment)
+      throws IOException {
+    int attachmentBoostValue = freetextIndex.getSearchSettings().getAttachmentBoost();
+    if (attachmentBoostValue == 0 || !searchAttachment || itemResults.getResults().isEmpty()) {
+      return itemResults;
+    }
+    final String[] fields = new String[] {FreeTextQuery.FIELD_ATTACHMENT_VECTORED};
+
+    Query queryAttachmentOnly =
+        getQuery(searchreq, searcher.getIndexReader(), fields, searchAttachment);
+    queryAttachmentOnly =
+        addUniqueIdClauseToQuery(queryAttachmentOnly, itemResults, searcher.getIndexReader());
+
+    final TopDocs attachmentHits = searcher.search(queryAttachmentOnly, filter, count, sorter);
+    SearchResults<T> attachmentResults =
+        getResultsFromTopDocs(searcher, attachmentHits, 0, deleteablesFilter, sortByRelevance);
+    return markItemKeywordFoundInAttachment(itemResults, attachmentResults);
+  }
+
   private Query addUniqueIdClauseToQuery(
       Query query, SearchResults<T> itemResults, IndexReader reader) {
     List<T> results = itemResults.getResults();
@@ -443,7 +711,8 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
             SecurityFilter deleteablesFilter = null;
             String collectPriv = searchreq.getPrivilegeToCollect();
             if (collectPriv != null) {
-              deleteablesFilter = new SecurityFilter(getPrefixForPrivilege(collectPriv));
+              deleteablesFilter =
+                  new SecurityFilter(getPrefixForPrivilege(collectPriv), getSecurityFilterCache());
               deleteablesFilter.setOnlyCollectResults(true);
               filters.add(deleteablesFilter);
             }
@@ -588,15 +857,8 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
   }
 
   /**
-   * A simplified implementation of matrixSearch() that only works on a single field, and currently
-   * only returns the count per term. It could easily be extended to return a list of ItemIds per
-   * term, it simply wasn't necessary when I was writing it!
-   *
-   * <p>This simplified implementation was written to overcome the memory pressures that
-   * matrixSearch() creates when you have over half a million terms for a field. MatrixSearch()
-   * creates *many* BitSets that it holds on to to reuse as it recurse through a list of fields.
-   * Since we only care about a single field in this implementation, we can avoid generating and
-   * holding onto BitSets.
+   * Counts the documents matching the search for each value of each field. Unlike matrixSearch()
+   * the fields are counted independently of each other.
    */
   public Multimap<String, Pair<String, Integer>> facetCount(
       @Nullable final Search searchreq, final Collection<String> fields) {
@@ -605,26 +867,9 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
           @Override
           public Multimap<String, Pair<String, Integer>> search(IndexSearcher searcher)
               throws IOException {
-            final IndexReader reader = searcher.getIndexReader();
-            final OpenBitSet filteredBits =
-                searchRequestToBitSet(searchreq, searcher, reader, false);
-
-            final Multimap<String, Pair<String, Integer>> rv = ArrayListMultimap.create();
-            for (String field : fields) {
-              for (Term term : new XPathFieldIterator(reader, field, "")) {
-                DocsEnum docs =
-                    MultiFields.getTermDocsEnum(reader, filteredBits, field, term.bytes());
-
-                LuceneDocumentHelper.useDocCount(
-                    docs,
-                    count -> {
-                      if (count > 0) {
-                        rv.put(field, new Pair<>(term.text(), count));
-                      }
-                    });
-              }
-            }
-            return rv;
+            FacetCollector collector = new FacetCollector(new ArrayList<>(fields), false, false);
+            collectFacets(searcher, searchreq, false, collector);
+            return collector.getFieldCounts();
           }
         });
   }
@@ -634,94 +879,61 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
       final List<String> fields,
       final boolean countOnly,
       final boolean searchAttachments) {
+    return matrixSearch(searchreq, fields, countOnly, searchAttachments, 0);
+  }
+
+  /**
+   * Counts the documents matching the search for each combination of the values of the fields.
+   * Documents without a value for a field are counted under a blank value for that field, provided
+   * they have a value for one of the other fields.
+   *
+   * @param width the maximum number of combinations to return, keeping those matching the most
+   *     documents, or zero for all of them
+   */
+  public MatrixResults matrixSearch(
+      @Nullable final Search searchreq,
+      final List<String> fields,
+      final boolean countOnly,
+      final boolean searchAttachments,
+      final int width) {
     return search(
         new Searcher<MatrixResults>() {
           @Override
           public MatrixResults search(IndexSearcher searcher) throws IOException {
-            IndexReader reader = searcher.getIndexReader();
-            OpenBitSet filteredBits =
-                searchRequestToBitSet(searchreq, searcher, reader, searchAttachments);
-            int maxDoc = reader.maxDoc();
-
-            Map<String, Map<String, List<TermBitSet>>> xpathMap =
-                new HashMap<String, Map<String, List<TermBitSet>>>();
-
-            List<OpenBitSet> perFieldBitSets = new ArrayList<OpenBitSet>();
-            OpenBitSet allDocs = new OpenBitSet();
-            for (String field : fields) {
-              boolean hasXpaths = field.indexOf('[') != -1;
-              OpenBitSet perFieldBitSet = new OpenBitSet(maxDoc);
-              for (Term term : new XPathFieldIterator(reader, field, "")) {
-                OpenBitSet set = new OpenBitSet(maxDoc);
-                DocsEnum docs =
-                    MultiFields.getTermDocsEnum(reader, filteredBits, field, term.bytes());
-                LuceneDocumentHelper.forEachDoc(docs, set::set);
-
-                perFieldBitSet.or(set);
-                allDocs.or(set);
-                String xpathKey = "";
-                if (hasXpaths) {
-                  String fieldName = term.field();
-                  int ind = fieldName.lastIndexOf(']');
-                  if (ind != -1) {
-                    xpathKey = fieldName.substring(0, ind + 1);
-                  }
-                }
-                addFieldBitSet(term, set, xpathKey, xpathMap, field);
-              }
-              // Simulate blank Term's for each field, that has at least
-              // one
-              // matching field
-              addFieldBitSet(new Term(field, ""), perFieldBitSet, "", xpathMap, field);
-              perFieldBitSets.add(perFieldBitSet);
-            }
-            for (OpenBitSet set : perFieldBitSets) {
-              set.xor(allDocs);
-            }
+            FacetCollector collector = new FacetCollector(fields, true, !countOnly);
+            collectFacets(searcher, searchreq, searchAttachments, collector);
 
             MatrixResults results = new MatrixResults();
             results.setFields(fields);
-
-            Map<String, List<TermBitSet>> blankPaths = xpathMap.get("");
-            for (Map<String, List<TermBitSet>> map : xpathMap.values()) {
-              List<List<TermBitSet>> fieldsToRecurse = new ArrayList<List<TermBitSet>>();
-              for (String field : fields) {
-                List<TermBitSet> list = map.get(field);
-                if (list == null) {
-                  list = blankPaths.get(field);
-                }
-                fieldsToRecurse.add(list);
+            IndexReader reader = searcher.getIndexReader();
+            for (Pair<List<String>, FacetCollector.Combination> combination :
+                collector.getCombinations(width)) {
+              List<ItemIdKey> ids = null;
+              if (!countOnly) {
+                ids = getIdsForDocs(combination.getSecond().getDocs(), reader);
               }
-              recurseTerms(
-                  fieldsToRecurse,
-                  0,
-                  new String[fields.size()],
-                  filteredBits,
-                  results,
-                  reader,
-                  countOnly);
+              results.addEntry(
+                  new MatrixResults.MatrixEntry(
+                      combination.getFirst(), ids, combination.getSecond().getCount()));
             }
             return results;
           }
         });
   }
 
-  private OpenBitSet searchRequestToBitSet(
-      @Nullable final Search searchreq,
+  private void collectFacets(
       IndexSearcher searcher,
-      IndexReader reader,
-      boolean searchAttachments)
+      @Nullable Search searchreq,
+      boolean searchAttachments,
+      FacetCollector collector)
       throws IOException {
     if (searchreq != null) {
-      Filter filters = getFilter(searchreq);
-      Query query = getQuery(searchreq, null, searchAttachments);
-
-      BitSetCollector collector = new BitSetCollector();
-      searcher.search(query, filters, collector);
-      return collector.getBitSet();
+      searcher.search(
+          getQuery(searchreq, null, searchAttachments), getFilter(searchreq), collector);
     } else {
-      return new InstitutionFilter().getDocIdSet(reader.getContext(), null);
+      searcher.search(new ConstantScoreQuery(new InstitutionFilter()), collector);
     }
+    collector.finish();
   }
 
   public String suggestTerm(
@@ -774,25 +986,6 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
         });
   }
 
-  private void addFieldBitSet(
-      Term term,
-      OpenBitSet set,
-      String xpathKey,
-      Map<String, Map<String, List<TermBitSet>>> xpathMap,
-      String field) {
-    Map<String, List<TermBitSet>> map = xpathMap.get(xpathKey);
-    if (map == null) {
-      map = new HashMap<String, List<TermBitSet>>();
-      xpathMap.put(xpathKey, map);
-    }
-    List<TermBitSet> list = map.get(field);
-    if (list == null) {
-      list = new ArrayList<TermBitSet>();
-      map.put(field, list);
-    }
-    list.add(new TermBitSet(term, set));
-  }
-
   private final class ItemIdFieldSelector extends StoredFieldVisitor {
 
     @Override
@@ -831,71 +1024,16 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
     }
   }
 
-  public static class TermBitSet {
-
-    Term term;
-    OpenBitSet bitSet;
-
-    public TermBitSet(Term term, OpenBitSet bitSet) {
-      this.term = term;
-      this.bitSet = bitSet;
-    }
-  }
-
-  private void recurseTerms(
-      List<List<TermBitSet>> bitSets,
-      int index,
-      String[] curValues,
-      OpenBitSet curBits,
-      MatrixResults results,
-      IndexReader reader,
-      boolean countOnly) {
-    List<TermBitSet> termBitSetList = bitSets.get(index);
-    boolean last = index == curValues.length - 1;
-    for (TermBitSet termBitSet : termBitSetList) {
-      OpenBitSet termBits = termBitSet.bitSet;
-      Term term = termBitSet.term;
-      // if we don't intersect there's no point in recursing further in
-      if (curBits.intersects(termBits)) {
-        // Collect current term's value into the value array
-        curValues[index] = term.text();
-        OpenBitSet docBits = (OpenBitSet) curBits.clone();
-        docBits.and(termBits);
-        if (last) {
-          int count;
-          List<ItemIdKey> ids = null;
-          ArrayList<String> vals = new ArrayList<String>(Arrays.asList(curValues));
-          if (!countOnly) {
-            ids = getIdsForBitset(docBits, reader);
-            count = ids.size();
-          } else {
-            count = (int) docBits.cardinality();
-          }
-          results.addEntry(new MatrixResults.MatrixEntry(vals, ids, count));
-        } else {
-          recurseTerms(bitSets, index + 1, curValues, docBits, results, reader, countOnly);
-        }
-      }
-    }
-  }
-
-  private List<ItemIdKey> getIdsForBitset(OpenBitSet docBits, IndexReader reader) {
-    int docid = 0;
-    List<ItemIdKey> keys = new ArrayList<ItemIdKey>();
-    while (true) {
-      docid = docBits.nextSetBit(docid);
-      if (docid == -1) {
-        break;
-      }
+  private List<ItemIdKey> getIdsForDocs(List<Integer> docIds, IndexReader reader) {
+    List<ItemIdKey> keys = new ArrayList<ItemIdKey>(docIds.size());
+    for (int docid : docIds) {
       Document doc;
       try {
         doc = reader.document(docid);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
-      ItemIdKey key = getKeyForDocument(doc);
-      keys.add(key);
-      docid++;
+      keys.add(getKeyForDocument(doc));
     }
     return keys;
   }
@@ -1020,7 +1158,7 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
       privPrefix = getPrefixForPrivilege(privilege);
     }
     if (privPrefix != null) {
-      filters.add(new SecurityFilter(privPrefix));
+      filters.add(new SecurityFilter(privPrefix, getSecurityFilterCache()));
     }
 
     List<List<Field>> must = request.getMust();
@@ -1445,36 +1583,6 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
     public void setNextReader(AtomicReaderContext context) throws IOException {}
   }
 
-  private static final class BitSetCollector extends Collector {
-
-    private int docBase;
-    private final OpenBitSet bitSet = new OpenBitSet();
-
-    public OpenBitSet getBitSet() {
-      return bitSet;
-    }
-
-    @Override
-    public void collect(int doc) {
-      bitSet.set(docBase + doc);
-    }
-
-    @Override
-    public boolean acceptsDocsOutOfOrder() {
-      return true;
-    }
-
-    @Override
-    public void setScorer(Scorer scorer) throws IOException {
-      // Nothing to do
-    }
-
-    @Override
-    public void setNextReader(AtomicReaderContext context) throws IOException {
-      this.docBase = context.docBase;
-    }
-  }
-
   public void deleteForInstitution(final long id) {
     modifyIndex(
         new IndexBuilder() {
@@ -0,0 +1,170 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.index;
+
+import com.google.common.io.BaseEncoding;
+import com.tle.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * An opaque token identifying the last result of a page, so that the next page can be found with
+ * {@link org.apache.lucene.search.IndexSearcher#searchAfter} instead of collecting every result
+ * before it. The token holds the sort values of the result, which remain meaningful after the index
+ * has changed, along with a hash of the sort so that it can't be used with a different order.
+ */
+@SuppressWarnings("nls")
+public final class SearchCursor {
+  private static final byte VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte BYTES = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte FLOAT = 4;
+  private static final byte DOUBLE = 5;
+  private static final byte STRING = 6;
+
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+  private final FieldDoc after;
+  private final int offset;
+
+  private SearchCursor(FieldDoc after, int offset) {
+    this.after = after;
+    this.offset = offset;
+  }
+
+  /** @return the last result of the previous page */
+  public FieldDoc getAfter() {
+    return after;
+  }
+
+  /** @return the number of results before the page following this cursor */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the sort values can't be encoded, which is only the case
+   *     for custom sorts
+   */
+  public static String encode(FieldDoc after, int offset, Sort sort) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(VERSION);
+      out.writeInt(sort.toString().hashCode());
+      out.writeInt(offset);
+      out.writeInt(after.doc);
+      out.writeFloat(after.score);
+      out.writeInt(after.fields.length);
+      for (Object value : after.fields) {
+        writeValue(out, value);
+      }
+      out.flush();
+      return ENCODING.encode(bytes.toByteArray());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** @throws IllegalArgumentException if the cursor is invalid or was created for another sort */
+  public static SearchCursor decode(String cursor, Sort sort) {
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(ENCODING.decode(cursor)));
+      if (in.readByte() != VERSION || in.readInt() != sort.toString().hashCode()) {
+        throw new IllegalArgumentException("Cursor does not match the search order");
+      }
+      int offset = in.readInt();
+      int doc = in.readInt();
+      float score = in.readFloat();
+      int count = in.readInt();
+      if (count != sort.getSort().length) {
+        throw new IllegalArgumentException("Cursor does not match the search order");
+      }
+      Object[] fields = new Object[count];
+      for (int i = 0; i < count; i++) {
+        fields[i] = readValue(in);
+      }
+      return new SearchCursor(new FieldDoc(doc, score, fields), offset);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, @Nullable Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof BytesRef) {
+      BytesRef ref = (BytesRef) value;
+      out.writeByte(BYTES);
+      out.writeInt(ref.length);
+      out.write(ref.bytes, ref.offset, ref.length);
+    } else if (value instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      out.writeUTF((String) value);
+    } else {
+      throw new IllegalArgumentException("Cannot create a cursor for sort value " + value);
+    }
+  }
+
+  @Nullable
+  private static Object readValue(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case NULL:
+        return null;
+      case BYTES:
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new BytesRef(bytes);
+      case INT:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      case FLOAT:
+        return in.readFloat();
+      case DOUBLE:
+        return in.readDouble();
+      case STRING:
+        return in.readUTF();
+      default:
+        throw new IOException("Unknown sort value type " + type);
+    }
+  }
+}
@@ -254,6 +254,7 @@ public class StandardIndexer extends AbstractIndexingExtension {
     }
     addBody(fields, bodyTextBuf.toString());
     fields.addAll(indexFields(schema, indexedItem.getItemxml()));
+    fields.add(indexed(FreeTextQuery.FIELD_FACET_DOCVALUES, "true"));
 
     fields.add(indexed(FreeTextQuery.FIELD_OWNER, item.getOwner()));
     if (item.getCollaborators() != null) {
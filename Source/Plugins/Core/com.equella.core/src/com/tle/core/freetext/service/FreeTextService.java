@@ -18,10 +18,12 @@
 
 package com.tle.core.freetext.service;
 
+import com.tle.annotation.Nullable;
 import com.tle.beans.entity.itemdef.ItemDefinition;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.searching.Search;
 import com.tle.common.searching.SearchResults;
+import com.tle.core.freetext.index.CursorSearchResults;
 import com.tle.core.remoting.MatrixResults;
 import com.tle.core.services.item.FreetextResult;
 import com.tle.core.services.item.FreetextSearchResults;
@@ -55,6 +57,19 @@ public interface FreeTextService {
   <T extends FreetextResult> FreetextSearchResults<T> search(
       Search searchReq, int start, int count, boolean searchAttachments);
 
+  /**
+   * Returns the page of results following a cursor. Use this rather than paging with {@link
+   * #search(Search, int, int, boolean)} when walking through a large number of results.
+   *
+   * @param searchReq A search request.
+   * @param cursor The cursor returned with the previous page, or null for the first page.
+   * @param count The maximum number of results requested.
+   * @param searchAttachments Whether to search attachments.
+   * @throws IllegalArgumentException if the cursor is not valid for the search.
+   */
+  <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, @Nullable String cursor, int count, boolean searchAttachments);
+
   SearchResults<ItemIdKey> searchIds(Search searchreq, int nStart, int nCount);
 
   LongSet searchIdsBitSet(Search searchreq);
@@ -66,6 +81,16 @@ public interface FreeTextService {
 
   int[] countsFromFilters(Collection<? extends Search> filters);
 
+  /**
+   * The same as {@link #countsFromFilters(Collection)}, except the counts are remembered for the
+   * current user until one of the indexes being searched changes. Use this for counts shown on
+   * every page, like those in the topbar and portlets.
+   *
+   * @param key Identifies the searches, which must be the same each time the current user counts
+   *     them with this key.
+   */
+  int[] cachedCountsFromFilters(String key, List<? extends Search> filters);
+
   List<ItemIdKey> getAutoCompleteTitles(Search request);
 
   String getAutoCompleteTerm(Search request, String prefix);
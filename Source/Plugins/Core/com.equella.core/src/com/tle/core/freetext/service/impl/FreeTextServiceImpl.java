@@ -20,10 +20,16 @@ package com.tle.core.freetext.service.impl;
 
 import com.dytech.edge.queries.FreeTextQuery;
 import com.google.common.base.Function;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Multimap;
+import com.tle.annotation.Nullable;
 import com.tle.beans.Institution;
 import com.tle.beans.entity.itemdef.ItemDefinition;
 import com.tle.beans.item.ItemIdKey;
@@ -35,8 +41,11 @@ import com.tle.common.search.LiveItemSearch;
 import com.tle.common.search.whereparser.WhereParser;
 import com.tle.common.searching.Search;
 import com.tle.common.searching.SearchResults;
+import com.tle.common.usermanagement.user.CurrentUser;
+import com.tle.common.usermanagement.user.UserState;
 import com.tle.core.freetext.event.ItemReindexEvent;
 import com.tle.core.freetext.event.listener.ItemReindexListener;
+import com.tle.core.freetext.index.CursorSearchResults;
 import com.tle.core.freetext.queries.FreeTextBooleanQuery;
 import com.tle.core.freetext.queries.FreeTextFieldQuery;
 import com.tle.core.freetext.reindex.InstitutionFilter;
@@ -68,10 +77,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -102,6 +113,9 @@ public class FreeTextServiceImpl
   @Inject private InstitutionService institutionService;
   @Inject private BackgroundIndexerFactory backgroundProvider;
 
+  private final Cache<List<Object>, int[]> countCache =
+      CacheBuilder.newBuilder().maximumSize(10000).expireAfterAccess(30, TimeUnit.MINUTES).build();
+
   private Date lastSync = new Date();
   private final Timer timer = new Timer();
   private final LoadingCache<Long, BackgroundIndexer> backgroundIndexers =
@@ -271,6 +285,12 @@ public class FreeTextServiceImpl
     return new StdFreetextResults<T>(itemService, results, searchReq);
   }
 
+  @Override
+  public <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, @Nullable String cursor, int count, boolean searchAttachments) {
+    return indexer.searchAfter(searchReq, cursor, count, searchAttachments);
+  }
+
   @Override
   public SearchResults<ItemIdKey> searchIds(Search searchreq, int nStart, int nCount) {
     SearchResults<FreetextResult> results = indexer.search(searchreq, nStart, nCount);
@@ -316,6 +336,56 @@ public class FreeTextServiceImpl
     return res;
   }
 
+  @Override
+  public int[] cachedCountsFromFilters(String key, List<? extends Search> filters) {
+    final UserState userState = CurrentUser.getUserState();
+    if (userState.isSystem()) {
+      return countsFromFilters(filters);
+    }
+
+    // Read the versions before counting, so that a change made while counting is never missed
+    final Map<String, Long> versions = new TreeMap<>();
+    for (Search search : filters) {
+      if (search != null) {
+        versions.computeIfAbsent(
+            search.getSearchType(), type -> indexer.getIndexer(type).getSearchVersion());
+      }
+    }
+
+    final List<Object> cacheKey =
+        ImmutableList.of(
+            CurrentInstitution.get().getUniqueId(),
+            key,
+            getUserKey(userState),
+            ImmutableSortedMap.copyOf(versions));
+    final int[] cached = countCache.getIfPresent(cacheKey);
+    if (cached != null && cached.length == filters.size()) {
+      return cached.clone();
+    }
+
+    final int[] counts = countsFromFilters(filters);
+    countCache.put(cacheKey, counts.clone());
+    return counts;
+  }
+
+  /**
+   * Everything that decides which documents a user can see: their ID (for ownership and task
+   * assignment), groups, roles and ACL expressions.
+   */
+  private static List<Object> getUserKey(UserState userState) {
+    return ImmutableList.of(
+        Strings.nullToEmpty(userState.getUserBean().getUniqueID()),
+        sorted(userState.getUsersGroups()),
+        sorted(userState.getUsersRoles()),
+        sorted(userState.getCommonAclExpressions()),
+        sorted(userState.getOwnerAclExpressions()),
+        sorted(userState.getNotOwnerAclExpressions()));
+  }
+
+  private static <T extends Comparable<? super T>> Set<T> sorted(@Nullable Collection<T> values) {
+    return values == null ? ImmutableSortedSet.<T>of() : ImmutableSortedSet.copyOf(values);
+  }
+
   @Override
   public void unindexItemEvent(UnindexItemEvent event) {
     unindexDoc(event.getItemId());
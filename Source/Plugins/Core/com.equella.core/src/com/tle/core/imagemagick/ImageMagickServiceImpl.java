@@ -298,18 +298,7 @@ public class ImageMagickServiceImpl implements ImageMagickService, ServiceCheckR
 
   @Override
   public void generateStandardThumbnail(File srcFile, File dstFile) {
-    // int size = 64;
-    int height = 66;
-    int width = 88;
-    ThumbnailOptions topts = new ThumbnailOptions();
-    topts.setHeight(height);
-    topts.setWidth(width);
-    topts.setCropHeight(height);
-    topts.setCropWidth(width);
-    topts.setGravity("center");
-    topts.setBackgroundColour("White");
-
-    generateThumbnailAdvanced(srcFile, dstFile, topts);
+    generateThumbnailAdvanced(srcFile, dstFile, ThumbnailOptions.standardThumbnail());
   }
 
   @Override
@@ -19,6 +19,9 @@
 package com.tle.core.imagemagick;
 
 public class ThumbnailOptions {
+  private static final int STANDARD_WIDTH = 88;
+  private static final int STANDARD_HEIGHT = 66;
+
   private int imgWidth;
   private int imgHeight;
   private int width;
@@ -33,6 +36,19 @@ public class ThumbnailOptions {
   private String backgroundColour;
   private boolean keepAspect;
 
+  /** @return the options used for the standard thumbnail of an attachment */
+  @SuppressWarnings("nls")
+  public static ThumbnailOptions standardThumbnail() {
+    ThumbnailOptions options = new ThumbnailOptions();
+    options.setWidth(STANDARD_WIDTH);
+    options.setHeight(STANDARD_HEIGHT);
+    options.setCropWidth(STANDARD_WIDTH);
+    options.setCropHeight(STANDARD_HEIGHT);
+    options.setGravity("center");
+    options.setBackgroundColour("White");
+    return options;
+  }
+
   public boolean isKeepAspect() {
     return keepAspect;
   }
@@ -22,6 +22,7 @@ import com.dytech.common.io.FileExtensionFilter;
 import com.dytech.common.io.UnicodeReader;
 import com.dytech.edge.common.Constants;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
@@ -79,9 +80,10 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.ccil.cowan.tagsoup.AttributesImpl;
 import org.ccil.cowan.tagsoup.Parser;
@@ -101,7 +103,15 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
   @Inject private EntityRegistry registry;
   @Inject private ItemFileService itemFileService;
 
-  private final Random random = new Random();
+  /** Number of threads importing items. Opt-in until EQ-2532 is resolved, see newThreadPool. */
+  @com.google.inject.Inject(optional = true)
+  @Named("institution.convert.itemThreads")
+  private int workerThreads = 1;
+
+  /** Number of items imported in each transaction. */
+  @com.google.inject.Inject(optional = true)
+  @Named("institution.convert.itemBatchSize")
+  private int importBatchSize = 25;
 
   private PluginTracker<ItemExtrasConverter> itemExtrasTracker;
   private FileExtensionFilter changeUrlFilter;
@@ -177,96 +187,36 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
     final SubTemporaryFile allImportItemsFolder =
         new SubTemporaryFile(staging, ITEMS_EXPORT_IMPORT_FOLDER);
 
-    final DefaultMessageCallback message =
-        new DefaultMessageCallback("institutions.converter.generic.calculateitems");
-    params.setMessageCallback(message);
-    message.setKey("institutions.converter.items.itemsmsg");
-
     final List<String> entries = xmlHelper.getXmlFileList(allImportItemsFolder);
-    message.setTotal(entries.size());
+    final ItemImportMessageCallback progress = new ItemImportMessageCallback(entries.size());
+    params.setMessageCallback(progress);
 
     final Map<Object, Object> sharedState = Collections.synchronizedMap(Maps.newHashMap());
     final Collection<PostReadMigrator<ItemConverterInfo>> migrations = getMigrations(params);
-    TransactionThreadPool threadPool = newThreadPool(1);
-    for (final String entry : entries) {
+    // Each batch is imported in a single transaction. The pool blocks while all of the workers
+    // are busy, so at most one batch per worker is in flight at any time. Unlike export (see
+    // newThreadPool) import only ever writes new items, and the state shared between items is the
+    // synchronized sharedState and the concurrent id map in params. Item extras converters from
+    // other plugins are not known to be thread safe, so more than one worker is opt-in.
+    TransactionThreadPool threadPool = new TransactionThreadPool(this, Math.max(1, workerThreads));
+    for (final List<String> batch : Lists.partition(entries, Math.max(1, importBatchSize))) {
       threadPool.doInTransaction(
           new Runnable() {
             @Override
             public void run() {
-              try {
-                final String dataFolderPath = entry.replace(".xml", Constants.BLANK);
-
-                Item item = new Item();
-                DataHolder dh = getXStream().newDataHolder();
-                dh.put(WorkflowNodeSupplier.class, new ItemWorkflowNodeSupplier(item));
-                xmlHelper.readXmlFile(allImportItemsFolder, entry, getXStream(), item, dh);
-                Long origId = item.getId();
-
-                // Fix up some weird cases where Data Created was null
-                // in 4.0 exports. May as well check Date Modified too.
-                Date c = item.getDateCreated();
-                Date m = item.getDateModified();
-                // Add some randomness to make the chance of finding an
-                // old stale
-                // indexed item negligible
-                item.setDateForIndex(new Date(Math.abs(random.nextLong() % 1000L)));
-                if (c == null) {
-                  c = m != null ? m : new Date();
-                  item.setDateCreated(c);
+              for (String entry : batch) {
+                try {
+                  importItem(
+                      entry,
+                      allImportItemsFolder,
+                      institution,
+                      params,
+                      sharedState,
+                      migrations,
+                      progress);
+                } catch (Exception e) {
+                  throw new RuntimeException("Error in " + entry, e);
                 }
-
-                if (m == null) {
-                  item.setDateModified(c);
-                }
-
-                // If an item def doesn't have a workflow, then the item
-                // should definitely not have any moderation status.
-                if (item.getItemDefinition().getWorkflow() == null) {
-                  ModerationStatus moderation = item.getModeration();
-                  if (moderation != null) {
-                    moderation.getStatuses().clear();
-                  }
-                }
-
-                // data folder
-                final SubTemporaryFile importItemFolder =
-                    new SubTemporaryFile(allImportItemsFolder, dataFolderPath);
-                final ItemFile itemFolder = itemFileService.getItemFile(item);
-                if (!params.hasFlag(ConverterParams.NO_ITEMSATTACHMENTS)) {
-                  fileSystemService.commitFiles(importItemFolder, itemFolder);
-                } else {
-                  fileSystemService.copy(importItemFolder, itemFolder);
-                }
-
-                // This needs to happen before the PostReadMigrations
-                changeHardcodedUrls(params, itemFolder);
-
-                ItemConverterInfo info =
-                    new ItemConverterInfo(item, itemFolder, sharedState, params);
-                runMigrations(migrations, info);
-                // just to initialise it
-                item.getNavigationSettings();
-                item.setInstitution(institution);
-                initialiserService.initialiseClones(item);
-
-                storeXml(params, item, itemFolder, institution);
-
-                itemDao.save(item);
-                saveList(item.getComments());
-                saveList(item.getAcceptances());
-                runExtras(
-                    info,
-                    getXStream(),
-                    new SubTemporaryFile(allImportItemsFolder, dataFolderPath + "-extra"),
-                    true);
-                itemDao.flush();
-                itemDao.clear();
-
-                params.getItems().put(origId, item.getId());
-
-                message.incrementCurrent();
-              } catch (Exception e) {
-                throw new RuntimeException("Error in " + entry, e);
               }
             }
           });
@@ -277,6 +227,90 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
     threadPool.close();
   }
 
+  private void importItem(
+      String entry,
+      SubTemporaryFile allImportItemsFolder,
+      Institution institution,
+      ConverterParams params,
+      Map<Object, Object> sharedState,
+      Collection<PostReadMigrator<ItemConverterInfo>> migrations,
+      ItemImportMessageCallback progress)
+      throws IOException {
+    final String dataFolderPath = entry.replace(".xml", Constants.BLANK);
+
+    Item item = new Item();
+    DataHolder dh = getXStream().newDataHolder();
+    dh.put(WorkflowNodeSupplier.class, new ItemWorkflowNodeSupplier(item));
+    xmlHelper.readXmlFile(allImportItemsFolder, entry, getXStream(), item, dh);
+    Long origId = item.getId();
+
+    // Fix up some weird cases where Data Created was null
+    // in 4.0 exports. May as well check Date Modified too.
+    Date c = item.getDateCreated();
+    Date m = item.getDateModified();
+    // Add some randomness to make the chance of finding an
+    // old stale
+    // indexed item negligible
+    item.setDateForIndex(new Date(Math.abs(ThreadLocalRandom.current().nextLong() % 1000L)));
+    if (c == null) {
+      c = m != null ? m : new Date();
+      item.setDateCreated(c);
+    }
+
+    if (m == null) {
+      item.setDateModified(c);
+    }
+
+    // If an item def doesn't have a workflow, then the item
+    // should definitely not have any moderation status.
+    if (item.getItemDefinition().getWorkflow() == null) {
+      ModerationStatus moderation = item.getModeration();
+      if (moderation != null) {
+        moderation.getStatuses().clear();
+      }
+    }
+    progress.itemRead();
+
+    // data folder
+    final SubTemporaryFile importItemFolder =
+        new SubTemporaryFile(allImportItemsFolder, dataFolderPath);
+    final ItemFile itemFolder = itemFileService.getItemFile(item);
+    if (!params.hasFlag(ConverterParams.NO_ITEMSATTACHMENTS)) {
+      fileSystemService.commitFiles(importItemFolder, itemFolder);
+    } else {
+      fileSystemService.copy(importItemFolder, itemFolder);
+    }
+
+    // This needs to happen before the PostReadMigrations
+    changeHardcodedUrls(params, itemFolder);
+    progress.filesCopied();
+
+    ItemConverterInfo info = new ItemConverterInfo(item, itemFolder, sharedState, params);
+    runMigrations(migrations, info);
+    // just to initialise it
+    item.getNavigationSettings();
+    item.setInstitution(institution);
+    initialiserService.initialiseClones(item);
+
+    storeXml(params, item, itemFolder, institution);
+
+    itemDao.save(item);
+    saveList(item.getComments());
+    saveList(item.getAcceptances());
+    runExtras(
+        info,
+        getXStream(),
+        new SubTemporaryFile(allImportItemsFolder, dataFolderPath + "-extra"),
+        true);
+    // Keep the session small, the batch is committed when the transaction ends
+    itemDao.flush();
+    itemDao.clear();
+
+    params.getItems().put(origId, item.getId());
+
+    progress.itemSaved();
+  }
+
   private TransactionThreadPool newThreadPool(int threads) {
     // FIXME see EQ-2532 come up with a better solution
     return new TransactionThreadPool(this, 1);
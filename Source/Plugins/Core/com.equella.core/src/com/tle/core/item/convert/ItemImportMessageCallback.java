@@ -0,0 +1,69 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.item.convert;
+
+import com.tle.common.beans.progress.MessageCallback;
+import com.tle.common.i18n.CurrentLocale;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reports the progress of each stage of an item import. Stages are counted independently since
+ * items are imported by several threads at once.
+ */
+@SuppressWarnings("nls")
+public class ItemImportMessageCallback implements MessageCallback, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final String KEY = "institutions.converter.items.importmsg";
+
+  private final long total;
+  private final AtomicInteger read = new AtomicInteger();
+  private final AtomicInteger copied = new AtomicInteger();
+  private final AtomicInteger saved = new AtomicInteger();
+
+  public ItemImportMessageCallback(long total) {
+    this.total = total;
+  }
+
+  public void itemRead() {
+    read.incrementAndGet();
+  }
+
+  public void filesCopied() {
+    copied.incrementAndGet();
+  }
+
+  public void itemSaved() {
+    saved.incrementAndGet();
+  }
+
+  public int getSaved() {
+    return saved.get();
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  @Override
+  public String getMessage() {
+    return CurrentLocale.get(KEY, saved.get(), total, read.get(), copied.get());
+  }
+}
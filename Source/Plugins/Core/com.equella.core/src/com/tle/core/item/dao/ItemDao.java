@@ -90,6 +90,9 @@ public interface ItemDao extends GenericInstitutionalDao<Item, Long> {
 
   int getLatestVersion(String uuid);
 
+  /** @return the latest version number of each of the given item UUIDs which exist */
+  Map<String, Integer> getLatestVersions(Collection<String> uuids);
+
   int getLatestLiveVersion(String uuid);
 
   ItemIdKey getLatestLiveVersionId(String uuid);
@@ -538,6 +538,36 @@ public class ItemDaoImpl extends GenericInstitionalDaoImpl<Item, Long> implement
     return allVersionNumbers.get(allVersionNumbers.size() - 1);
   }
 
+  @Override
+  public Map<String, Integer> getLatestVersions(Collection<String> uuids) {
+    if (uuids.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    final Institution institution = CurrentInstitution.get();
+    List<Object[]> rows =
+        (List<Object[]>)
+            getHibernateTemplate()
+                .execute(
+                    new CollectionPartitioner<String, Object[]>(uuids) {
+                      @Override
+                      public List<Object[]> doQuery(Session session, Collection<String> uuids) {
+                        Query query =
+                            session.createQuery(
+                                "select uuid, max(version) from Item where uuid in (:uuids)"
+                                    + " and institution = :institution group by uuid");
+                        query.setParameterList("uuids", uuids);
+                        query.setParameter("institution", institution);
+                        return query.list();
+                      }
+                    });
+
+    Map<String, Integer> latest = new HashMap<String, Integer>();
+    for (Object[] row : rows) {
+      latest.put((String) row[0], ((Number) row[1]).intValue());
+    }
+    return latest;
+  }
+
   @Override
   @Transactional(propagation = Propagation.MANDATORY)
   public int getLatestLiveVersion(String uuid) {
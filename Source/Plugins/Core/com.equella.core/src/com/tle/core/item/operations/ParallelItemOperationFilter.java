@@ -0,0 +1,31 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.item.operations;
+
+/**
+ * A filter whose items can be operated on by several threads at once, when parallel operations are
+ * enabled. Unlike other filters, {@link #getOperations()} must return new operations each time it
+ * is called, and {@link #getItemIds()} must not return the same item more than once.
+ *
+ * <p>{@link FilterResultListener} callbacks are still made on the calling thread, in the order the
+ * items were returned.
+ */
+public interface ParallelItemOperationFilter extends ItemOperationFilter {
+  // Marker interface
+}
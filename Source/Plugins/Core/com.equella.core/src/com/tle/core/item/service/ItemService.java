@@ -86,6 +86,9 @@ public interface ItemService
 
   int getLatestVersion(String uuid);
 
+  /** Looks up {@link #getLatestVersion(String)} for many items in one go. */
+  Map<String, Integer> getLatestVersions(Collection<String> uuids);
+
   Item getLatestVersionOfItem(String uuid);
 
   int getLiveItemVersion(String uuid);
@@ -33,10 +33,13 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.Futures;
 import com.tle.annotation.NonNullByDefault;
+import com.tle.annotation.Nullable;
 import com.tle.beans.entity.LanguageBundle;
 import com.tle.beans.entity.itemdef.DynamicMetadataRule;
 import com.tle.beans.entity.itemdef.ItemDefinition;
@@ -46,6 +49,7 @@ import com.tle.beans.item.attachments.Attachment;
 import com.tle.beans.item.attachments.IAttachment;
 import com.tle.beans.workflow.SecurityStatus;
 import com.tle.common.Check;
+import com.tle.common.NamedThreadFactory;
 import com.tle.common.Pair;
 import com.tle.common.Triple;
 import com.tle.common.collection.AttachmentConfigConstants;
@@ -73,6 +77,7 @@ import com.tle.core.auditlog.AuditLogService;
 import com.tle.core.events.ApplicationEvent;
 import com.tle.core.events.services.EventService;
 import com.tle.core.guice.Bind;
+import com.tle.core.institution.RunAsInstitution;
 import com.tle.core.item.ItemIdExtension;
 import com.tle.core.item.dao.ItemDao;
 import com.tle.core.item.event.ItemOperationBatchEvent;
@@ -86,6 +91,7 @@ import com.tle.core.item.operations.ItemOperationFilter;
 import com.tle.core.item.operations.ItemOperationFilter.FilterResults;
 import com.tle.core.item.operations.ItemOperationParams;
 import com.tle.core.item.operations.ItemOperationParamsImpl;
+import com.tle.core.item.operations.ParallelItemOperationFilter;
 import com.tle.core.item.operations.WorkflowOperation;
 import com.tle.core.item.scripting.WorkflowScriptConstants;
 import com.tle.core.item.scripting.WorkflowScriptContextParams;
@@ -110,8 +116,14 @@ import com.tle.core.viewcount.service.ViewCountService;
 import com.tle.exceptions.AccessDeniedException;
 import java.lang.annotation.Annotation;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.apache.logging.log4j.ThreadContext;
 import org.hibernate.Hibernate;
@@ -146,6 +158,7 @@ public class ItemServiceImpl
   @Inject private ItemDao dao;
 
   @Inject private ItemLockingService lockingService;
+  @Inject private RunAsInstitution runAs;
   @Inject private TLEAclManager aclManager;
   @Inject private AuditLogService auditLogService;
   @Inject private ItemHelper itemHelper;
@@ -155,12 +168,21 @@ public class ItemServiceImpl
   @Inject private NotificationService notificationService;
   @Inject private ConfigurationService configurationService;
   @Inject private ViewCountService viewCountService;
+  @Inject private ItemXmlCache itemXmlCache;
 
   // plugin extensions
   @Inject private PluginTracker<WorkflowOperation> operationTracker;
   @Inject private PluginTracker<WorkflowScriptObjectContributor> scriptObjectTracker;
   @Inject private PluginTracker<ItemIdExtension> idTracker;
 
+  @com.google.inject.Inject(optional = true)
+  @Named("items.operateAll.threads")
+  private int operateAllThreads = 1;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("items.operateAll.chunkSize")
+  private int operateAllChunkSize = 25;
+
   @Inject
   public void setLoggingService(LoggingService loggingService) {
     logger = loggingService.getLogger(ItemService.class);
@@ -221,6 +243,12 @@ public class ItemServiceImpl
     return dao.getLatestVersion(uuid);
   }
 
+  @Override
+  @Transactional
+  public Map<String, Integer> getLatestVersions(Collection<String> uuids) {
+    return dao.getLatestVersions(uuids);
+  }
+
   @Override
   @Transactional
   public Item getLatestVersionOfItem(String uuid) {
@@ -353,7 +381,9 @@ public class ItemServiceImpl
   @Override
   public PropBagEx getItemXmlPropBag(Item item) {
     ItemXml itemXml = item.getItemXml();
-    return (itemXml == null ? new PropBagEx() : new PropBagEx(itemXml.getXml()));
+    return (itemXml == null
+        ? new PropBagEx()
+        : itemXmlCache.get(item.getId(), item.getDateModified(), itemXml.getXml()));
   }
 
   @Override
@@ -617,9 +647,13 @@ public class ItemServiceImpl
     }
 
     Iterator<? extends ItemKey> iter = itemIds.getResults();
-    while (iter.hasNext()) {
-      ItemKey itemKey = iter.next();
-      processItemId(filter, listener, params, containsDelete, itemKey);
+    if (operateAllThreads > 1 && filter instanceof ParallelItemOperationFilter) {
+      operateAllParallel(filter, listener, params, containsDelete, iter);
+    } else {
+      while (iter.hasNext()) {
+        ItemKey itemKey = iter.next();
+        processItemId(filter, listener, params, containsDelete, itemKey);
+      }
     }
 
     postProcessParameters(params);
@@ -627,6 +661,118 @@ public class ItemServiceImpl
     return params;
   }
 
+  /**
+   * Splits the items into chunks which are operated on by a pool of workers. Each worker has its
+   * own session and each item is still committed separately, exactly as {@link #processItemId} does
+   * when called sequentially. Results are passed to the listener on this thread, in the order of
+   * the items.
+   */
+  private void operateAllParallel(
+      final ItemOperationFilter filter,
+      @Nullable final FilterResultListener listener,
+      final ItemOperationParams params,
+      final boolean containsDelete,
+      final Iterator<? extends ItemKey> itemKeys) {
+    final UserState userState = CurrentUser.getUserState();
+    final Date dateNow = params.getDateNow();
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(
+            operateAllThreads, new NamedThreadFactory("ItemServiceImpl.operateAll"));
+    try {
+      runChunks(
+          executor,
+          operateAllThreads * 2,
+          Iterators.partition(itemKeys, Math.max(1, operateAllChunkSize)),
+          chunk ->
+              runAs.execute(userState, () -> operateChunk(filter, chunk, containsDelete, dateNow)),
+          results -> completeChunk(results, listener));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Operates on each chunk using the executor and completes the results on the calling thread, in
+   * the order of the chunks. At most {@code maxPending} chunks are read ahead of the oldest chunk
+   * still being worked on.
+   */
+  static <R> void runChunks(
+      ExecutorService executor,
+      int maxPending,
+      Iterator<? extends List<? extends ItemKey>> chunks,
+      Function<List<ItemKey>, R> operate,
+      Consumer<R> complete) {
+    final Deque<Future<R>> pending = new ArrayDeque<Future<R>>();
+    while (chunks.hasNext()) {
+      final List<ItemKey> chunk = new ArrayList<ItemKey>(chunks.next());
+      pending.add(executor.submit(() -> operate.apply(chunk)));
+
+      // Don't let reading the item keys get too far ahead of the workers
+      if (pending.size() >= maxPending) {
+        complete.accept(Futures.getUnchecked(pending.remove()));
+      }
+    }
+    while (!pending.isEmpty()) {
+      complete.accept(Futures.getUnchecked(pending.remove()));
+    }
+  }
+
+  @Transactional(propagation = Propagation.SUPPORTS)
+  protected ChunkResults operateChunk(
+      ItemOperationFilter filter, List<ItemKey> chunk, boolean containsDelete, Date dateNow) {
+    final ItemOperationParamsImpl params = new ItemOperationParamsImpl();
+    params.setDateNow(dateNow);
+    final ChunkResults results = new ChunkResults(params);
+    for (ItemKey itemKey : chunk) {
+      processItemId(filter, results, params, containsDelete, itemKey);
+    }
+    return results;
+  }
+
+  private void completeChunk(ChunkResults results, @Nullable FilterResultListener listener) {
+    if (listener != null) {
+      results.replay(listener);
+    }
+    postProcessParameters(results.getParams());
+  }
+
+  /** Records the results of a chunk of items so they can be replayed on the calling thread. */
+  protected static class ChunkResults implements FilterResultListener {
+    private final ItemOperationParams params;
+    private final List<Consumer<FilterResultListener>> results =
+        new ArrayList<Consumer<FilterResultListener>>();
+
+    public ChunkResults(ItemOperationParams params) {
+      this.params = params;
+    }
+
+    public ItemOperationParams getParams() {
+      return params;
+    }
+
+    @Override
+    public void succeeded(ItemKey itemId, ItemPack<Item> pack) {
+      results.add(listener -> listener.succeeded(itemId, pack));
+    }
+
+    @Override
+    public void failed(ItemKey itemId, Item item, ItemPack<Item> pack, Throwable e) {
+      results.add(listener -> listener.failed(itemId, item, pack, e));
+    }
+
+    /** Never called for a chunk, the total for all of the items is given to the real listener. */
+    @Override
+    public void total(int total) {
+      // Nothing to record
+    }
+
+    public void replay(FilterResultListener listener) {
+      for (Consumer<FilterResultListener> result : results) {
+        result.accept(listener);
+      }
+    }
+  }
+
   private void processItemId(
       final ItemOperationFilter filter,
       final FilterResultListener listener,
@@ -0,0 +1,111 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.item.service.impl;
+
+import com.dytech.devlib.PropBagEx;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.tle.annotation.Nullable;
+import com.tle.core.guice.Bind;
+import com.tle.core.util.CacheMetrics;
+import java.util.Date;
+import java.util.List;
+import javax.inject.Singleton;
+import org.w3c.dom.Document;
+
+/**
+ * Keeps item metadata parsed so that it doesn't need to be parsed from the stored XML each time
+ * it's asked for. Entries are keyed on the item and its modification date, and are only used if the
+ * stored XML is still the same.
+ *
+ * <p>Callers always get their own copy, which is much cheaper to make than parsing the XML again,
+ * so they are free to modify it.
+ */
+@Bind
+@Singleton
+public class ItemXmlCache {
+  private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+  // Roughly what the XML string and its parsed DOM cost for each character of XML
+  private static final long BYTES_PER_CHAR = 12;
+
+  private final Cache<List<Long>, Entry> cache;
+
+  public ItemXmlCache() {
+    this(DEFAULT_MAX_BYTES);
+    CacheMetrics.add("item-xml", cache::stats);
+  }
+
+  public ItemXmlCache(long maxBytes) {
+    cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .<List<Long>, Entry>weigher(
+                (key, entry) ->
+                    (int) Math.min(Integer.MAX_VALUE, entry.xml.length() * BYTES_PER_CHAR))
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * @param itemId the ID of the item, or zero if it hasn't been saved
+   * @param xml the XML stored for the item
+   * @return the parsed XML, which the caller is free to modify
+   */
+  public PropBagEx get(long itemId, @Nullable Date dateModified, String xml) {
+    if (itemId == 0) {
+      return new PropBagEx(xml);
+    }
+
+    final List<Long> key =
+        ImmutableList.of(itemId, dateModified == null ? -1 : dateModified.getTime());
+    Entry entry = cache.getIfPresent(key);
+    if (entry == null || !entry.xml.equals(xml)) {
+      entry = new Entry(xml, new PropBagEx(xml));
+      cache.put(key, entry);
+    }
+    return entry.copy();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  private static final class Entry {
+    private final String xml;
+    private final PropBagEx parsed;
+
+    Entry(String xml, PropBagEx parsed) {
+      this.xml = xml;
+      this.parsed = parsed;
+    }
+
+    /** Even reading a DOM isn't thread safe, so copies are made one at a time. */
+    synchronized PropBagEx copy() {
+      // Cloning the whole document keeps every node exactly as it was parsed
+      Document copy = (Document) parsed.getRootElement().getOwnerDocument().cloneNode(true);
+      return new PropBagEx(copy.getDocumentElement(), true);
+    }
+  }
+}
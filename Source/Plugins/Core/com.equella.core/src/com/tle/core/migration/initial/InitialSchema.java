@@ -68,6 +68,7 @@ import com.tle.core.hibernate.impl.HibernateCreationFilter;
 import com.tle.core.hibernate.impl.HibernateMigrationHelper;
 import com.tle.core.migration.AbstractCreateMigration;
 import com.tle.core.migration.MigrationInfo;
+import com.tle.core.oai.bean.OaiDissemination;
 import com.tle.core.plugins.PluginService;
 import com.tle.core.plugins.PluginTracker;
 import com.tle.web.resources.PluginResourceHelper;
@@ -156,7 +157,8 @@ public class InitialSchema extends AbstractCreateMigration {
         Entity.class,
         WebKeySet.class,
         LtiPlatformCustomRole.class,
-        LtiPlatform.class
+        LtiPlatform.class,
+        OaiDissemination.class
       };
 
   @SuppressWarnings("nls")
@@ -0,0 +1,106 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.oai.bean;
+
+import com.tle.beans.Institution;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import org.hibernate.annotations.AccessType;
+import org.hibernate.annotations.Index;
+
+/**
+ * An item version's metadata as served by the OAI-PMH provider in one metadata format, along with a
+ * stamp of what it was made from so that a stale record can be recognised and made again.
+ */
+@Entity
+@AccessType("field")
+@Table(uniqueConstraints = {@UniqueConstraint(columnNames = {"itemId", "metadataPrefix"})})
+public class OaiDissemination {
+  @Id
+  @GeneratedValue(strategy = GenerationType.AUTO)
+  private long id;
+
+  @JoinColumn(nullable = false)
+  @ManyToOne(fetch = FetchType.LAZY)
+  @Index(name = "oaiDisseminationInstitution")
+  private Institution institution;
+
+  private long itemId;
+
+  @Column(nullable = false, length = 64)
+  private String metadataPrefix;
+
+  @Column(nullable = false)
+  private String stamp;
+
+  @Lob private String metadata;
+
+  public long getId() {
+    return id;
+  }
+
+  public Institution getInstitution() {
+    return institution;
+  }
+
+  public void setInstitution(Institution institution) {
+    this.institution = institution;
+  }
+
+  public long getItemId() {
+    return itemId;
+  }
+
+  public void setItemId(long itemId) {
+    this.itemId = itemId;
+  }
+
+  public String getMetadataPrefix() {
+    return metadataPrefix;
+  }
+
+  public void setMetadataPrefix(String metadataPrefix) {
+    this.metadataPrefix = metadataPrefix;
+  }
+
+  public String getStamp() {
+    return stamp;
+  }
+
+  public void setStamp(String stamp) {
+    this.stamp = stamp;
+  }
+
+  public String getMetadata() {
+    return metadata;
+  }
+
+  public void setMetadata(String metadata) {
+    this.metadata = metadata;
+  }
+}
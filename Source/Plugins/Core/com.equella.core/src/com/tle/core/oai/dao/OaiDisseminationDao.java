@@ -0,0 +1,37 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.oai.dao;
+
+import com.tle.annotation.Nullable;
+import com.tle.core.hibernate.dao.GenericInstitutionalDao;
+import com.tle.core.item.dao.ItemDaoExtension;
+import com.tle.core.oai.bean.OaiDissemination;
+import java.util.Collection;
+
+public interface OaiDisseminationDao
+    extends GenericInstitutionalDao<OaiDissemination, Long>, ItemDaoExtension {
+  @Nullable
+  OaiDissemination get(long itemId, String metadataPrefix);
+
+  /**
+   * Saves the records in one transaction, replacing any existing records for the same item and
+   * metadata prefix.
+   */
+  void replaceAll(Collection<OaiDissemination> disseminations);
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.oai.dao;
+
+import com.tle.beans.item.Item;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.guice.Bind;
+import com.tle.core.hibernate.dao.GenericInstitionalDaoImpl;
+import com.tle.core.oai.bean.OaiDissemination;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.inject.Singleton;
+import org.springframework.transaction.annotation.Transactional;
+
+@Bind(OaiDisseminationDao.class)
+@Singleton
+@SuppressWarnings("nls")
+public class OaiDisseminationDaoImpl extends GenericInstitionalDaoImpl<OaiDissemination, Long>
+    implements OaiDisseminationDao {
+
+  public OaiDisseminationDaoImpl() {
+    super(OaiDissemination.class);
+  }
+
+  @Override
+  @Transactional
+  public OaiDissemination get(long itemId, String metadataPrefix) {
+    List<OaiDissemination> found =
+        (List<OaiDissemination>)
+            getHibernateTemplate()
+                .find(
+                    "FROM OaiDissemination WHERE itemId = ?0 AND metadataPrefix = ?1"
+                        + " AND institution = ?2",
+                    new Object[] {itemId, metadataPrefix, CurrentInstitution.get()});
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  @Override
+  @Transactional
+  public void replaceAll(Collection<OaiDissemination> disseminations) {
+    final Map<String, List<Long>> itemIds =
+        disseminations.stream()
+            .collect(
+                Collectors.groupingBy(
+                    OaiDissemination::getMetadataPrefix,
+                    Collectors.mapping(OaiDissemination::getItemId, Collectors.toList())));
+    getHibernateTemplate()
+        .execute(
+            session -> {
+              // One delete per metadata prefix, then the inserts go in one JDBC batch
+              for (Map.Entry<String, List<Long>> prefix : itemIds.entrySet()) {
+                session
+                    .createQuery(
+                        "DELETE FROM OaiDissemination WHERE metadataPrefix = :metadataPrefix"
+                            + " AND itemId IN (:itemIds)")
+                    .setParameter("metadataPrefix", prefix.getKey())
+                    .setParameterList("itemIds", prefix.getValue())
+                    .executeUpdate();
+              }
+              session.setJdbcBatchSize(disseminations.size());
+              for (OaiDissemination dissemination : disseminations) {
+                session.save(dissemination);
+              }
+              session.flush();
+              // Records are read back from the table rather than the session
+              for (OaiDissemination dissemination : disseminations) {
+                session.evict(dissemination);
+              }
+              return null;
+            });
+  }
+
+  @Override
+  public void delete(Item item) {
+    getHibernateTemplate()
+        .execute(
+            session ->
+                session
+                    .createQuery("DELETE FROM OaiDissemination WHERE itemId = :itemId")
+                    .setParameter("itemId", item.getId())
+                    .executeUpdate());
+  }
+}
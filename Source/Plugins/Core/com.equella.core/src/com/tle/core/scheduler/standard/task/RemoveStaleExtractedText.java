@@ -0,0 +1,47 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.scheduler.standard.task;
+
+import com.tle.core.guice.Bind;
+import com.tle.core.scheduler.ScheduledTask;
+import com.tle.freetext.ExtractedTextCache;
+import java.io.IOException;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Removes text extracted from attachments which hasn't been used by an indexer for a while. */
+@Bind
+@Singleton
+public class RemoveStaleExtractedText implements ScheduledTask {
+  private static final Logger LOGGER = LoggerFactory.getLogger(RemoveStaleExtractedText.class);
+
+  @Inject private ExtractedTextCache extractedTextCache;
+
+  @Override
+  public void execute() {
+    try {
+      int removed = extractedTextCache.removeStaleEntries();
+      LOGGER.info("Removed " + removed + " stale extracted text files");
+    } catch (IOException e) {
+      LOGGER.error("Error removing stale extracted text", e);
+    }
+  }
+}
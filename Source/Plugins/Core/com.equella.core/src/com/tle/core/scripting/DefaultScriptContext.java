@@ -26,7 +26,6 @@ import java.util.Collections;
 import java.util.Map;
 import org.mozilla.javascript.ClassShutter;
 import org.mozilla.javascript.Context;
-import org.mozilla.javascript.ImporterTopLevel;
 import org.mozilla.javascript.Scriptable;
 
 /** @author aholland */
@@ -63,8 +62,12 @@ public class DefaultScriptContext implements ScriptContext {
     this.logger = logger;
   }
 
-  public Scriptable getUserScriptScope(Context jsContext) {
-    Scriptable scope = new ImporterTopLevel(jsContext);
+  /**
+   * @param scope a new top level scope (see {@link
+   *     com.tle.core.scripting.service.CompiledScriptCache#newScope})
+   * @return the scope, holding the user script objects
+   */
+  public Scriptable getUserScriptScope(Context jsContext, Scriptable scope) {
     for (String name : userScriptObjects.keySet()) {
       Object obj = userScriptObjects.get(name);
       if (obj instanceof Boolean) {
@@ -78,10 +81,13 @@ public class DefaultScriptContext implements ScriptContext {
     return scope;
   }
 
+  /**
+   * @param scope a new top level scope, without the standard objects that would let scripts create
+   *     Java objects (see {@link com.tle.core.scripting.service.CompiledScriptCache})
+   * @return the scope, holding the script objects
+   */
   @SuppressWarnings("nls")
-  public Scriptable getScope(Context jsContext) {
-    Scriptable scope = new ImporterTopLevel(jsContext);
-
+  public Scriptable getScope(Context jsContext, Scriptable scope) {
     for (String name : scriptObjects.keySet()) {
       Object obj = scriptObjects.get(name);
       if (obj instanceof Boolean) {
@@ -92,19 +98,6 @@ public class DefaultScriptContext implements ScriptContext {
       }
     }
 
-    // Remove the ability to create new Java objects in the script. List
-    // comes from https://bugzilla.mozilla.org/show_bug.cgi?id=468385
-    scope.delete("Packages");
-    scope.delete("JavaImporter");
-    scope.delete("JavaAdapter");
-    scope.delete("getClass");
-    scope.delete("java");
-    scope.delete("javax");
-    scope.delete("com");
-    scope.delete("net");
-    scope.delete("edu");
-    scope.delete("org");
-
     try {
       // Prevent existingObject.getClass().forName('...')
       jsContext.setClassShutter(
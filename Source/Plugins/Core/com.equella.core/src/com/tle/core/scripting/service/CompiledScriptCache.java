@@ -0,0 +1,197 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.scripting.service;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ImporterTopLevel;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.commonjs.module.ModuleScript;
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
+
+/**
+ * Compiled scripts, and the scopes of standard objects that they are run in. Compiled {@link
+ * Script}s don't hold on to the scope they were run in, so the same script can be run by any number
+ * of threads at once.
+ *
+ * <p>By default each execution gets its own standard objects, so a script may still change them
+ * (e.g. add to <code>Array.prototype</code>) without affecting any other execution. Optionally the
+ * standard objects are created once and shared by every execution, which is cheaper but means they
+ * have to be sealed, and scripts which modify them fail.
+ */
+@SuppressWarnings("nls")
+public class CompiledScriptCache {
+  private final Cache<ScriptKey, Script> scripts;
+  private final int optimisationLevel;
+  private final boolean shareStandardObjects;
+
+  private volatile ScriptableObject sharedScope;
+
+  public CompiledScriptCache(long maxScripts, int optimisationLevel) {
+    this(maxScripts, optimisationLevel, false);
+  }
+
+  /**
+   * @param shareStandardObjects create the standard objects once and seal them, rather than for
+   *     every execution
+   */
+  public CompiledScriptCache(long maxScripts, int optimisationLevel, boolean shareStandardObjects) {
+    this.scripts = CacheBuilder.newBuilder().maximumSize(maxScripts).build();
+    this.optimisationLevel = optimisationLevel;
+    this.shareStandardObjects = shareStandardObjects;
+  }
+
+  /**
+   * @param function wrap the script in a function, so that it may use <code>return</code>
+   * @throws org.mozilla.javascript.EvaluatorException if the script doesn't compile
+   */
+  public Script getScript(Context cx, String script, String scriptName, boolean function) {
+    final ScriptKey key = new ScriptKey(script, scriptName, function);
+    try {
+      return scripts.get(
+          key,
+          () -> {
+            final String source =
+                function ? "function runScript() {\n" + script + "\n}\n runScript();" : script;
+            return compile(cx, source, scriptName);
+          });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private Script compile(Context cx, String source, String scriptName) {
+    int previousLevel = cx.getOptimizationLevel();
+    cx.setOptimizationLevel(optimisationLevel);
+    try {
+      return cx.compileString(source, scriptName, 1, null);
+    } finally {
+      cx.setOptimizationLevel(previousLevel);
+    }
+  }
+
+  /**
+   * A new top level scope for a script execution. Anything the script defines is kept in this
+   * scope. The standard objects are either its own or, when they are shared, found in the shared
+   * scope.
+   */
+  public Scriptable newScope(Context cx) {
+    if (!shareStandardObjects) {
+      return createStandardScope(cx, false);
+    }
+    Scriptable scope = cx.newObject(getSharedScope(cx));
+    scope.setPrototype(getSharedScope(cx));
+    scope.setParentScope(null);
+    return scope;
+  }
+
+  private ScriptableObject getSharedScope(Context cx) {
+    ScriptableObject scope = sharedScope;
+    if (scope == null) {
+      synchronized (this) {
+        scope = sharedScope;
+        if (scope == null) {
+          scope = createStandardScope(cx, true);
+          sharedScope = scope;
+        }
+      }
+    }
+    return scope;
+  }
+
+  private static ScriptableObject createStandardScope(Context cx, boolean sealed) {
+    ImporterTopLevel scope = new ImporterTopLevel(cx, sealed);
+
+    // Remove the ability to create new Java objects in the script. List
+    // comes from https://bugzilla.mozilla.org/show_bug.cgi?id=468385
+    scope.delete("Packages");
+    scope.delete("JavaImporter");
+    scope.delete("JavaAdapter");
+    scope.delete("getClass");
+    scope.delete("java");
+    scope.delete("javax");
+    scope.delete("com");
+    scope.delete("net");
+    scope.delete("edu");
+    scope.delete("org");
+
+    if (sealed) {
+      scope.sealObject();
+    }
+    return scope;
+  }
+
+  /**
+   * Provides the modules for <code>require()</code> from the user scripts in the given scope,
+   * compiled through this cache.
+   */
+  public ModuleScriptProvider createModuleScriptProvider(Scriptable userScriptScope) {
+    return (cx, moduleId, moduleUri, baseUri, paths) -> {
+      Object source = userScriptScope.get(moduleId, userScriptScope);
+      if (source == null || source == Scriptable.NOT_FOUND) {
+        return null;
+      }
+      Script script = getScript(cx, source.toString(), moduleId, false);
+      return new ModuleScript(script, new URI("#" + moduleId), null);
+    };
+  }
+
+  public long size() {
+    return scripts.size();
+  }
+
+  private static final class ScriptKey {
+    private final String script;
+    private final String scriptName;
+    private final boolean function;
+    private final int hash;
+
+    ScriptKey(String script, String scriptName, boolean function) {
+      this.script = script;
+      this.scriptName = scriptName;
+      this.function = function;
+      this.hash = Objects.hash(script, scriptName, function);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ScriptKey)) {
+        return false;
+      }
+      ScriptKey other = (ScriptKey) obj;
+      return hash == other.hash
+          && function == other.function
+          && script.equals(other.script)
+          && scriptName.equals(other.scriptName);
+    }
+  }
+}
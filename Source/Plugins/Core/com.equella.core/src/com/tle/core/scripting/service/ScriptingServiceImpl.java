@@ -41,6 +41,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextAction;
@@ -53,7 +54,6 @@ import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
 import org.mozilla.javascript.commonjs.module.Require;
 import org.mozilla.javascript.commonjs.module.RequireBuilder;
-import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptProvider;
 
 /** @author aholland */
 @SuppressWarnings("nls")
@@ -66,6 +66,20 @@ public class ScriptingServiceImpl implements ScriptingService {
   private static final String IS_AN_OWNER = "isanowner";
   private static final String ITEM_XML = "xml";
 
+  @com.google.inject.Inject(optional = true)
+  @Named("scripting.optimisationLevel")
+  private int optimisationLevel = -1;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("scripting.compiledScriptCacheSize")
+  private int compiledScriptCacheSize = 1000;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("scripting.shareStandardObjects")
+  private boolean shareStandardObjects;
+
+  private volatile CompiledScriptCache compiledScripts;
+
   private Logger logger;
   private PluginTracker<ScriptObjectContributor> scriptObjectTracker;
   private PluginTracker<UserScriptObjectContributor> userScriptObjectTracker;
@@ -165,15 +179,14 @@ public class ScriptingServiceImpl implements ScriptingService {
                     errorLogger = logger;
                   }
 
+                  final CompiledScriptCache scripts = getCompiledScripts();
+                  final DefaultScriptContext scriptContext = (DefaultScriptContext) context;
                   Scriptable userScriptScope =
-                      ((DefaultScriptContext) context).getUserScriptScope(cx);
-                  ScriptableModuleSourceProvider sourceProvider =
-                      new ScriptableModuleSourceProvider(userScriptScope);
+                      scriptContext.getUserScriptScope(cx, scripts.newScope(cx));
                   ModuleScriptProvider scriptProvider =
-                      new SoftCachingModuleScriptProvider(sourceProvider);
+                      scripts.createModuleScriptProvider(userScriptScope);
 
-                  cx.initStandardObjects();
-                  Scriptable scope = ((DefaultScriptContext) context).getScope(cx);
+                  Scriptable scope = scriptContext.getScope(cx, scripts.newScope(cx));
 
                   RequireBuilder builder = new RequireBuilder();
                   // The "uri" property must not exist in a sandbox
@@ -182,20 +195,16 @@ public class ScriptingServiceImpl implements ScriptingService {
 
                   Require require = builder.createRequire(cx, scope);
 
-                  cx.setOptimizationLevel(-1);
                   cx.setErrorReporter(new ScriptErrorReporter(errorLogger));
 
-                  final String execScript =
-                      (function
-                          ? "function runScript() {\n" + script + "\n}\n runScript();"
-                          : script);
                   final String execScriptName = (scriptName != null ? scriptName : "script");
 
                   try {
                     context.scriptEnter();
                     require.install(scope);
 
-                    Object result = cx.evaluateString(scope, execScript, execScriptName, 1, null);
+                    Object result =
+                        scripts.getScript(cx, script, execScriptName, function).exec(cx, scope);
 
                     context.scriptExit();
                     if (expectedResultClass == String.class) {
@@ -215,6 +224,22 @@ public class ScriptingServiceImpl implements ScriptingService {
     return Boolean.TRUE;
   }
 
+  private CompiledScriptCache getCompiledScripts() {
+    CompiledScriptCache scripts = compiledScripts;
+    if (scripts == null) {
+      synchronized (this) {
+        scripts = compiledScripts;
+        if (scripts == null) {
+          scripts =
+              new CompiledScriptCache(
+                  compiledScriptCacheSize, optimisationLevel, shareStandardObjects);
+          compiledScripts = scripts;
+        }
+      }
+    }
+    return scripts;
+  }
+
   public static final class ScriptErrorReporter implements ErrorReporter {
     private final Logger errorLogger;
 
@@ -122,6 +122,17 @@ public interface FileSystemService extends RemoteFileSystemService {
   FileInfo write(FileHandle handle, String filename, InputStream content, boolean append)
       throws IOException;
 
+  /**
+   * Replaces filename with the given files joined together in order. The content is transferred
+   * between the files by the file system rather than being streamed through the heap.
+   *
+   * @param md5 the MD5 of the joined content if the caller already knows it, which is then recorded
+   *     for the new file
+   * @return the length of the new file, and the MD5 if one was given
+   */
+  FileInfo concat(FileHandle handle, String filename, List<String> sources, String md5)
+      throws IOException;
+
   /**
    * Does not close content reader
    *
@@ -30,6 +30,7 @@ import com.google.common.io.CharStreams;
 import com.tle.beans.Institution;
 import com.tle.common.Check;
 import com.tle.common.NameValue;
+import com.tle.common.filesystem.ContentHashes;
 import com.tle.common.filesystem.FileCallback;
 import com.tle.common.filesystem.FileEntry;
 import com.tle.common.filesystem.FileSystemHelper;
@@ -54,6 +55,7 @@ import com.tle.core.util.archive.*;
 import com.tle.core.zookeeper.ZookeeperService;
 import com.tle.web.stream.FileContentStream;
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
@@ -283,15 +285,20 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
       }
     }
 
+    long byteCount;
     try (OutputStream out = getOutputStream(file, append)) {
-      long byteCount = copyStream(content, out, md5);
+      byteCount = copyStream(content, out, md5);
+    }
 
-      String md5Hex = null;
-      if (md5 != null) {
-        md5Hex = Md5.stringify(md5.digest());
+    String md5Hex = null;
+    if (md5 != null) {
+      md5Hex = Md5.stringify(md5.digest());
+      // Only a complete file can be recorded, appending only hashes the new content
+      if (!append) {
+        ContentHashes.record(file, md5Hex);
       }
-      return new FileInfo(byteCount, filename, md5Hex);
     }
+    return new FileInfo(byteCount, filename, md5Hex);
   }
 
   @Override
@@ -300,6 +307,46 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
     return write(handle, filename, content, append, false);
   }
 
+  @Override
+  public FileInfo concat(FileHandle handle, String filename, List<String> sources, String md5)
+      throws IOException {
+    ensureNotBanned(filename);
+    File file = getFile(handle, filename);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("concat: " + handle.getAbsolutePath() + '/' + filename);
+    }
+    Files.createDirectories(file.toPath().getParent());
+
+    long position = 0;
+    try (FileChannel out =
+        FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      for (String source : sources) {
+        try (FileChannel in = FileChannel.open(getFile(handle, source).toPath())) {
+          long size = in.size();
+          long done = 0;
+          // transferTo may copy less than asked for, e.g. sendfile is capped at 2GB a call
+          while (done < size) {
+            long transferred = in.transferTo(done, size - done, out);
+            if (transferred <= 0) {
+              throw new EOFException("File was truncated while joining: " + source);
+            }
+            done += transferred;
+          }
+          position += size;
+        }
+      }
+    }
+
+    if (md5 != null) {
+      ContentHashes.record(file, md5);
+    }
+    return new FileInfo(position, filename, md5);
+  }
+
   public static long copyStream(InputStream source, OutputStream destination, MessageDigest md5)
       throws IOException {
     final int bufferSize = 4096;
@@ -1057,7 +1104,7 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
   @Override
   public String getMD5Checksum(FileHandle handle, String path) {
     try {
-      return FileSystemHelper.md5recurse(getFile(handle, path), new byte[Short.MAX_VALUE]);
+      return ContentHashes.md5(getFile(handle, path));
     } catch (Exception e) {
       throw new FileSystemException("FATAL", e);
     }
@@ -45,6 +45,10 @@ public interface TermDao extends GenericDao<Term, Long> {
 
   List<Term> getAllTermsInOrder(Taxonomy taxonomy);
 
+  /** @return An index of every term in the taxonomy, or null if it has more than maxTerms. */
+  @Nullable
+  TermIndex getTermIndex(Taxonomy taxonomy, int maxTerms);
+
   /**
    * @param taxonomy
    * @param parent
@@ -0,0 +1,429 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.taxonomy;
+
+import com.google.common.collect.Lists;
+import com.tle.common.Pair;
+import com.tle.common.taxonomy.SelectionRestriction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ * An in-memory index of the terms in a taxonomy, answering the same queries as a case insensitive
+ * {@code LIKE} on the term value or full value, where {@code *} and {@code %} match any run of
+ * characters and {@code _} matches a single character.
+ *
+ * <p>For each field the lower cased keys are kept sorted, so exact and prefix queries are a binary
+ * search for a contiguous range. Other queries use a trigram index, built the first time it's
+ * needed, to find the candidate terms which are then checked against the pattern. Results are
+ * returned in key order, like the database search which they replace.
+ *
+ * <p>An index is immutable once built and is safe to share between threads.
+ */
+@SuppressWarnings("nls")
+public final class TermIndex {
+  private static final int GRAM_LENGTH = 3;
+
+  private final String[] values;
+  private final String[] fullValues;
+  private final BitSet leaves;
+  private final BitSet topLevel;
+
+  private volatile Field valueField;
+  private volatile Field fullValueField;
+
+  private TermIndex(Builder builder) {
+    this.values = builder.values.toArray(new String[builder.values.size()]);
+    this.fullValues = builder.fullValues.toArray(new String[builder.fullValues.size()]);
+    this.leaves = builder.leaves;
+    this.topLevel = builder.topLevel;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  /**
+   * @param query The pattern to match, where {@code *} is a wildcard.
+   * @param limit The maximum number of results to return, or a negative number for all of them.
+   * @return The total number of matching terms, and the first {@code limit} of them.
+   */
+  public Pair<Long, List<TermResult>> search(
+      String query, SelectionRestriction restriction, int limit, boolean searchFullTerms) {
+    final Field field = getField(searchFullTerms);
+    final LikePattern pattern = new LikePattern(query.replace('*', '%').toLowerCase(Locale.ROOT));
+    final BitSet allowed = getAllowed(restriction);
+
+    final List<TermResult> results = new ArrayList<>();
+    long count = 0;
+    final PrimitiveIterator.OfInt candidates = field.candidates(pattern).iterator();
+    while (candidates.hasNext()) {
+      final int pos = candidates.nextInt();
+      final int term = field.terms[pos];
+      if ((allowed == null || allowed.get(term))
+          && (pattern.isRange() || pattern.matches(field.keys[pos]))) {
+        count++;
+        if (limit < 0 || results.size() < limit) {
+          results.add(new TermResult(values[term], fullValues[term], leaves.get(term)));
+        }
+      }
+    }
+    return new Pair<Long, List<TermResult>>(count, results);
+  }
+
+  private BitSet getAllowed(SelectionRestriction restriction) {
+    switch (restriction) {
+      case TOP_LEVEL_ONLY:
+        return topLevel;
+      case LEAF_ONLY:
+        return leaves;
+      default:
+        return null;
+    }
+  }
+
+  private Field getField(boolean fullValue) {
+    Field field = fullValue ? fullValueField : valueField;
+    if (field == null) {
+      synchronized (this) {
+        field = fullValue ? fullValueField : valueField;
+        if (field == null) {
+          if (fullValue) {
+            field = fullValueField = new Field(fullValues);
+          } else {
+            field = valueField = new Field(values);
+          }
+        }
+      }
+    }
+    return field;
+  }
+
+  /** The terms sorted by the lower cased value of one field. */
+  private static final class Field {
+    private final String[] keys;
+    private final int[] terms;
+    private volatile Map<Long, int[]> grams;
+
+    Field(String[] source) {
+      final String[] lower = new String[source.length];
+      final Integer[] order = new Integer[source.length];
+      for (int i = 0; i < source.length; i++) {
+        lower[i] = source[i].toLowerCase(Locale.ROOT);
+        order[i] = i;
+      }
+      Arrays.sort(
+          order,
+          Comparator.<Integer, String>comparing(i -> lower[i]).thenComparing(i -> source[i]));
+
+      keys = new String[source.length];
+      terms = new int[source.length];
+      for (int pos = 0; pos < order.length; pos++) {
+        terms[pos] = order[pos];
+        keys[pos] = lower[order[pos]];
+      }
+    }
+
+    /**
+     * @return The positions of the keys which may match the pattern, in ascending order. Every
+     *     candidate matches if the pattern {@link LikePattern#isRange() is a range}.
+     */
+    IntStream candidates(LikePattern pattern) {
+      final String prefix = pattern.getPrefix();
+      final int from = lowerBound(prefix);
+      final int to = pattern.isExact() ? endOfEqual(from, prefix) : endOfPrefix(from, prefix);
+      if (from >= to) {
+        return IntStream.empty();
+      }
+
+      final List<Long> patternGrams = pattern.getGrams();
+      if (pattern.isRange() || patternGrams.isEmpty()) {
+        return IntStream.range(from, to);
+      }
+
+      final Map<Long, int[]> index = getGrams();
+      final List<int[]> postings = new ArrayList<>(patternGrams.size());
+      for (Long gram : patternGrams) {
+        final int[] list = index.get(gram);
+        if (list == null) {
+          return IntStream.empty();
+        }
+        postings.add(list);
+      }
+      postings.sort(Comparator.comparingInt(list -> list.length));
+
+      int[] matches = postings.get(0);
+      for (int i = 1; i < postings.size() && matches.length > 0; i++) {
+        matches = intersect(matches, postings.get(i));
+      }
+
+      return Arrays.stream(matches).filter(pos -> pos >= from && pos < to);
+    }
+
+    private int lowerBound(String key) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (keys[mid].compareTo(key) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /** Keys starting with the prefix are contiguous from the lower bound of the prefix. */
+    private int endOfPrefix(int from, String prefix) {
+      int low = from;
+      int high = keys.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (keys[mid].startsWith(prefix)) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private int endOfEqual(int from, String key) {
+      int to = from;
+      while (to < keys.length && keys[to].equals(key)) {
+        to++;
+      }
+      return to;
+    }
+
+    private Map<Long, int[]> getGrams() {
+      Map<Long, int[]> index = grams;
+      if (index == null) {
+        synchronized (this) {
+          index = grams;
+          if (index == null) {
+            index = grams = buildGrams(keys);
+          }
+        }
+      }
+      return index;
+    }
+
+    private static Map<Long, int[]> buildGrams(String[] keys) {
+      final Map<Long, Postings> building = new HashMap<>();
+      for (int pos = 0; pos < keys.length; pos++) {
+        final String key = keys[pos];
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+          building.computeIfAbsent(gram(key, i), g -> new Postings()).add(pos);
+        }
+      }
+
+      final Map<Long, int[]> index = new HashMap<>(building.size() * 4 / 3 + 1);
+      building.forEach((gram, postings) -> index.put(gram, postings.toArray()));
+      return index;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+      final int[] result = new int[Math.min(a.length, b.length)];
+      int size = 0;
+      int i = 0;
+      int j = 0;
+      while (i < a.length && j < b.length) {
+        if (a[i] < b[j]) {
+          i++;
+        } else if (a[i] > b[j]) {
+          j++;
+        } else {
+          result[size++] = a[i];
+          i++;
+          j++;
+        }
+      }
+      return Arrays.copyOf(result, size);
+    }
+  }
+
+  /** Packs three characters into a long, each character being 16 bits. */
+  static long gram(String s, int offset) {
+    return ((long) s.charAt(offset) << 32)
+        | ((long) s.charAt(offset + 1) << 16)
+        | s.charAt(offset + 2);
+  }
+
+  /** A growable list of ascending positions, ignoring repeats of the last position. */
+  private static final class Postings {
+    private int[] positions = new int[4];
+    private int size;
+
+    void add(int pos) {
+      if (size > 0 && positions[size - 1] == pos) {
+        return;
+      }
+      if (size == positions.length) {
+        positions = Arrays.copyOf(positions, size * 2);
+      }
+      positions[size++] = pos;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(positions, size);
+    }
+  }
+
+  /**
+   * A lower cased {@code LIKE} pattern. It is split on {@code %} into segments, where the first
+   * segment must match the start of the key, the last segment the end and the others must appear in
+   * order in between.
+   */
+  static final class LikePattern {
+    private final String[] segments;
+    private final String prefix;
+    private final boolean exact;
+    private final boolean range;
+
+    LikePattern(String pattern) {
+      segments = pattern.split("%", -1);
+      final String first = segments[0];
+      final int wildcard = first.indexOf('_');
+      prefix = wildcard < 0 ? first : first.substring(0, wildcard);
+      exact = segments.length == 1 && wildcard < 0;
+      range =
+          exact
+              || (wildcard < 0 && segments.length == 2 && segments[1].isEmpty())
+              || pattern.chars().allMatch(c -> c == '%');
+    }
+
+    /** @return The literal text every matching key starts with. */
+    String getPrefix() {
+      return prefix;
+    }
+
+    /** @return true if only keys equal to the prefix match. */
+    boolean isExact() {
+      return exact;
+    }
+
+    /** @return true if every key starting with the prefix matches. */
+    boolean isRange() {
+      return range;
+    }
+
+    /** @return The trigrams every matching key must contain. */
+    List<Long> getGrams() {
+      final List<Long> grams = Lists.newArrayList();
+      for (String segment : segments) {
+        for (String literal : segment.split("_")) {
+          for (int i = 0; i + GRAM_LENGTH <= literal.length(); i++) {
+            grams.add(gram(literal, i));
+          }
+        }
+      }
+      return grams;
+    }
+
+    boolean matches(String key) {
+      final int last = segments.length - 1;
+      if (last == 0) {
+        return key.length() == segments[0].length() && matchesAt(key, 0, segments[0]);
+      }
+
+      final String first = segments[0];
+      final String end = segments[last];
+      final int endStart = key.length() - end.length();
+      if (endStart < first.length()
+          || !matchesAt(key, 0, first)
+          || !matchesAt(key, endStart, end)) {
+        return false;
+      }
+
+      // Matching each middle segment as early as possible leaves the most room for the rest
+      int pos = first.length();
+      for (int i = 1; i < last; i++) {
+        final String segment = segments[i];
+        pos = indexOf(key, segment, pos, endStart);
+        if (pos < 0) {
+          return false;
+        }
+        pos += segment.length();
+      }
+      return true;
+    }
+
+    private static int indexOf(String key, String segment, int from, int end) {
+      for (int pos = from; pos + segment.length() <= end; pos++) {
+        if (matchesAt(key, pos, segment)) {
+          return pos;
+        }
+      }
+      return -1;
+    }
+
+    private static boolean matchesAt(String key, int offset, String segment) {
+      if (offset + segment.length() > key.length()) {
+        return false;
+      }
+      for (int i = 0; i < segment.length(); i++) {
+        final char c = segment.charAt(i);
+        if (c != '_' && key.charAt(offset + i) != c) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  public static final class Builder {
+    private final List<String> values = new ArrayList<>();
+    private final List<String> fullValues = new ArrayList<>();
+    private final BitSet leaves = new BitSet();
+    private final BitSet topLevel = new BitSet();
+
+    private Builder() {}
+
+    public Builder add(String value, String fullValue, boolean leaf, boolean top) {
+      final int term = values.size();
+      values.add(value);
+      fullValues.add(fullValue);
+      leaves.set(term, leaf);
+      topLevel.set(term, top);
+      return this;
+    }
+
+    public int size() {
+      return values.size();
+    }
+
+    public TermIndex build() {
+      return new TermIndex(this);
+    }
+  }
+}
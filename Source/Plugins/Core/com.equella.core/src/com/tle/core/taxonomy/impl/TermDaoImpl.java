@@ -29,6 +29,7 @@ import com.tle.common.taxonomy.terms.Term;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.dao.GenericDaoImpl;
 import com.tle.core.taxonomy.TermDao;
+import com.tle.core.taxonomy.TermIndex;
 import com.tle.core.taxonomy.TermResult;
 import com.tle.web.resources.PluginResourceHelper;
 import com.tle.web.resources.ResourcesService;
@@ -40,6 +41,8 @@ import java.util.Objects;
 import java.util.UUID;
 import javax.inject.Singleton;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.transform.BasicTransformerAdapter;
 import org.hibernate.transform.ResultTransformer;
@@ -106,6 +109,41 @@ public class TermDaoImpl extends GenericDaoImpl<Term, Long> implements TermDao {
             .find("FROM Term t WHERE t.taxonomy = ?0 ORDER BY t.left", new Object[] {taxonomy});
   }
 
+  @Override
+  @Nullable
+  public TermIndex getTermIndex(final Taxonomy taxonomy, final int maxTerms) {
+    return getHibernateTemplate()
+        .execute(
+            session -> {
+              Query q =
+                  session.createQuery(
+                      "SELECT t.value, t.fullValue, t.left, t.right, p.id"
+                          + " FROM Term t LEFT JOIN t.parent p WHERE t.taxonomy = ?0");
+              q.setParameter(0, taxonomy);
+              q.setReadOnly(true);
+              q.setFetchSize(1000);
+
+              final TermIndex.Builder builder = TermIndex.builder();
+              final ScrollableResults results = q.scroll(ScrollMode.FORWARD_ONLY);
+              try {
+                while (results.next()) {
+                  if (builder.size() >= maxTerms) {
+                    return null;
+                  }
+                  final Object[] row = results.get();
+                  builder.add(
+                      (String) row[0],
+                      (String) row[1],
+                      ((Integer) row[2]) == ((Integer) row[3]) - 1,
+                      row[4] == null);
+                }
+              } finally {
+                results.close();
+              }
+              return builder.build();
+            });
+  }
+
   @Override
   public Term getTerm(final Taxonomy taxonomy, final String termFullPath) {
     return (Term)
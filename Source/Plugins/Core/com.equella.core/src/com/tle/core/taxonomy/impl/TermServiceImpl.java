@@ -21,6 +21,9 @@ package com.tle.core.taxonomy.impl;
 import com.dytech.edge.common.LockedException;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
@@ -39,13 +42,17 @@ import com.tle.common.taxonomy.Taxonomy;
 import com.tle.common.taxonomy.TaxonomyConstants;
 import com.tle.common.taxonomy.terms.Term;
 import com.tle.core.entity.service.EntityLockingService;
+import com.tle.core.events.services.EventService;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.equella.service.InitialiserService;
+import com.tle.core.institution.InstitutionCache;
+import com.tle.core.institution.InstitutionService;
 import com.tle.core.institution.convert.ConverterParams;
 import com.tle.core.institution.convert.DefaultMessageCallback;
 import com.tle.core.institution.convert.XmlHelper;
 import com.tle.core.security.impl.SecureOnCall;
 import com.tle.core.taxonomy.TermDao;
+import com.tle.core.taxonomy.TermIndex;
 import com.tle.core.taxonomy.TermResult;
 import com.tle.core.taxonomy.TermService;
 import com.tle.web.resources.PluginResourceHelper;
@@ -53,11 +60,18 @@ import com.tle.web.resources.ResourcesService;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
@@ -66,13 +80,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @SuppressWarnings("nls")
 @Bind(TermService.class)
 @Singleton
-public class TermServiceImpl implements TermService {
+public class TermServiceImpl implements TermService, TaxonomyModifiedListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(TermService.class);
 
+  /** Transaction resource holding the UUIDs of the taxonomies with uncommitted term changes. */
+  private static final Object MODIFIED_TAXONOMIES = new Object();
+
   private static final PluginResourceHelper resources =
       ResourcesService.getResourceHelper(TermServiceImpl.class);
 
@@ -80,6 +99,38 @@ public class TermServiceImpl implements TermService {
   @Inject private EntityLockingService lockingService;
   @Inject private InitialiserService initialiserService;
   @Inject private XmlHelper xmlHelper;
+  @Inject private EventService eventService;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("taxonomy.termIndex")
+  private boolean termIndexEnabled = true;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("taxonomy.termIndex.maxTerms")
+  private int maxIndexedTerms = 500000;
+
+  /**
+   * Term indexes keyed by taxonomy UUID. An absent index means the taxonomy has too many terms to
+   * index and is searched in the database instead.
+   */
+  private InstitutionCache<Cache<String, Optional<TermIndex>>> termIndexes;
+  /** Incremented whenever terms change, so an index being built at the time isn't kept. */
+  private final AtomicLong termsModified = new AtomicLong();
+
+  @Inject
+  public void setInstitutionService(InstitutionService service) {
+    termIndexes =
+        service.newInstitutionAwareCache(
+            new CacheLoader<Institution, Cache<String, Optional<TermIndex>>>() {
+              @Override
+              public Cache<String, Optional<TermIndex>> load(Institution key) {
+                return CacheBuilder.newBuilder()
+                    .softValues()
+                    .expireAfterAccess(1, TimeUnit.HOURS)
+                    .build();
+              }
+            });
+  }
 
   @Override
   public List<String> listTerms(Taxonomy taxonomy, String parentFullPath) {
@@ -112,6 +163,14 @@ public class TermServiceImpl implements TermService {
       SelectionRestriction restriction,
       int limit,
       boolean searchFullTerms) {
+    // The index doesn't see changes made in this transaction until they are committed
+    if (termIndexEnabled && !hasUncommittedChanges(taxonomy)) {
+      final TermIndex index = getTermIndex(taxonomy);
+      if (index != null) {
+        return index.search(query, restriction, limit, searchFullTerms);
+      }
+    }
+
     final String searchField = (searchFullTerms ? "fullValue" : "value");
     final Criterion c1 = Restrictions.eq("taxonomy", taxonomy);
     final Criterion c2 = Restrictions.ilike(searchField, query.replace('*', '%'));
@@ -135,6 +194,77 @@ public class TermServiceImpl implements TermService {
     return new Pair<Long, List<TermResult>>(totalCount, results);
   }
 
+  @Nullable
+  private TermIndex getTermIndex(final Taxonomy taxonomy) {
+    final Cache<String, Optional<TermIndex>> cache = termIndexes.getCache();
+    final String uuid = taxonomy.getUuid();
+    final long modified = termsModified.get();
+    final Optional<TermIndex> index;
+    try {
+      index =
+          cache.get(
+              uuid, () -> Optional.ofNullable(termDao.getTermIndex(taxonomy, maxIndexedTerms)));
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+
+    if (termsModified.get() != modified) {
+      // Terms changed while the index was loaded, so it may be missing the changes
+      cache.asMap().remove(uuid, index);
+      return null;
+    }
+    return index.orElse(null);
+  }
+
+  @Override
+  public void taxonomyModifiedEvent(TaxonomyModifiedEvent event) {
+    termsModified.incrementAndGet();
+    termIndexes.getCache().invalidate(event.getTaxonomyUuid());
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean hasUncommittedChanges(Taxonomy taxonomy) {
+    final Set<String> modified =
+        (Set<String>) TransactionSynchronizationManager.getResource(MODIFIED_TAXONOMIES);
+    return modified != null && modified.contains(taxonomy.getUuid());
+  }
+
+  /**
+   * Publishes a {@link TaxonomyModifiedEvent} once the transaction commits, so that every node
+   * rebuilds its index of the taxonomy. Only one event is published per taxonomy per transaction.
+   */
+  @SuppressWarnings("unchecked")
+  private void termsChanged(Taxonomy taxonomy) {
+    final String uuid = taxonomy.getUuid();
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      eventService.publishApplicationEvent(new TaxonomyModifiedEvent(uuid));
+      return;
+    }
+
+    Set<String> modified =
+        (Set<String>) TransactionSynchronizationManager.getResource(MODIFIED_TAXONOMIES);
+    if (modified == null) {
+      final Set<String> taxonomies = new HashSet<>();
+      TransactionSynchronizationManager.bindResource(MODIFIED_TAXONOMIES, taxonomies);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              for (String taxonomyUuid : taxonomies) {
+                eventService.publishApplicationEvent(new TaxonomyModifiedEvent(taxonomyUuid));
+              }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(MODIFIED_TAXONOMIES);
+            }
+          });
+      modified = taxonomies;
+    }
+    modified.add(uuid);
+  }
+
   private Criterion getSearchRestrictionCriterion(SelectionRestriction restriction) {
     switch (restriction) {
       case TOP_LEVEL_ONLY:
@@ -207,6 +337,7 @@ public class TermServiceImpl implements TermService {
       int index,
       boolean createHierarchy) {
     ensureLocked(taxonomy);
+    termsChanged(taxonomy);
 
     boolean root = Strings.isNullOrEmpty(parentFullPath);
     Term parent = (root ? null : termDao.getTerm(taxonomy, parentFullPath));
@@ -310,6 +441,7 @@ public class TermServiceImpl implements TermService {
   @Transactional(propagation = Propagation.REQUIRED)
   public void move(Taxonomy taxonomy, String termToMove, String moveToParent, int index) {
     ensureLocked(taxonomy);
+    termsChanged(taxonomy);
     termDao.move(getTerm(taxonomy, termToMove), getParentTermOrRoot(taxonomy, moveToParent), index);
   }
 
@@ -318,6 +450,7 @@ public class TermServiceImpl implements TermService {
   @Transactional(propagation = Propagation.REQUIRED)
   public void move(Taxonomy taxonomy, TermResult termToMove, TermResult parentTerm, int index) {
     ensureLocked(taxonomy);
+    termsChanged(taxonomy);
     termDao.move(
         getTermByUuid(taxonomy, termToMove.getUuid()),
         getTermByUuid(taxonomy, parentTerm.getUuid()),
@@ -337,6 +470,7 @@ public class TermServiceImpl implements TermService {
   @Transactional(propagation = Propagation.REQUIRED)
   public void renameTermValue(Taxonomy taxonomy, String termToRename, String newValue) {
     ensureLocked(taxonomy);
+    termsChanged(taxonomy);
     termDao.renameTermValue(getTerm(taxonomy, termToRename), newValue);
   }
 
@@ -345,6 +479,7 @@ public class TermServiceImpl implements TermService {
   @Transactional(propagation = Propagation.REQUIRED)
   public void deleteTerm(Taxonomy taxonomy, String termFullPath) {
     ensureLocked(taxonomy);
+    termsChanged(taxonomy);
     termDao.delete(getTerm(taxonomy, termFullPath));
   }
 
@@ -461,6 +596,7 @@ public class TermServiceImpl implements TermService {
   @SecureOnCall(priv = SecurityConstants.EDIT_TAXONOMY)
   @Transactional(propagation = Propagation.REQUIRED)
   public void deleteForTaxonomy(Taxonomy taxonomy) {
+    termsChanged(taxonomy);
     termDao.deleteForTaxonomy(taxonomy);
   }
 
@@ -469,6 +605,7 @@ public class TermServiceImpl implements TermService {
   @Transactional(propagation = Propagation.REQUIRED)
   public void sortChildren(Taxonomy taxonomy, String fullTermPath) {
     ensureLocked(taxonomy);
+    termsChanged(taxonomy);
     termDao.sortChildren(taxonomy, (fullTermPath == null ? null : getTerm(taxonomy, fullTermPath)));
   }
 
@@ -477,6 +614,7 @@ public class TermServiceImpl implements TermService {
   @Transactional(propagation = Propagation.REQUIRED)
   public void sortTaxonomy(Taxonomy taxonomy) {
     ensureLocked(taxonomy);
+    termsChanged(taxonomy);
     termDao.sortTaxonomy(taxonomy);
   }
 
@@ -586,6 +724,7 @@ public class TermServiceImpl implements TermService {
         new Runnable() {
           @Override
           public void run() {
+            termsChanged(taxonomy);
             processTermChildren(nullTerm, childTermMap, part2message);
           }
         });
@@ -0,0 +1,72 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.util;
+
+import com.google.common.cache.CacheStats;
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the hit, miss and eviction counts of in-memory Guava caches as metrics, labelled with
+ * the name each cache was added under. The counts are read from the caches when the metrics are
+ * scraped, so the caches themselves don't pay anything extra.
+ */
+public final class CacheMetrics extends Collector {
+  private static final CacheMetrics INSTANCE = new CacheMetrics().register();
+
+  private final Map<String, Supplier<CacheStats>> caches = new ConcurrentHashMap<>();
+
+  /**
+   * Publishes the stats of a cache, replacing any cache previously added with the same name.
+   *
+   * @param stats the current stats of the cache, which must have been built with {@code
+   *     recordStats()}
+   */
+  public static void add(String name, Supplier<CacheStats> stats) {
+    INSTANCE.caches.put(name, stats);
+  }
+
+  @Override
+  public List<MetricFamilySamples> collect() {
+    final List<String> labels = Arrays.asList("cache");
+    final CounterMetricFamily hits =
+        new CounterMetricFamily(
+            "cache_hits", "Number of lookups which found a cached value", labels);
+    final CounterMetricFamily misses =
+        new CounterMetricFamily(
+            "cache_misses", "Number of lookups which didn't find a cached value", labels);
+    final CounterMetricFamily evictions =
+        new CounterMetricFamily(
+            "cache_evictions", "Number of values evicted to keep a cache within its limit", labels);
+    caches.forEach(
+        (name, supplier) -> {
+          final CacheStats stats = supplier.get();
+          final List<String> values = Arrays.asList(name);
+          hits.addMetric(values, stats.hitCount());
+          misses.addMetric(values, stats.missCount());
+          evictions.addMetric(values, stats.evictionCount());
+        });
+    return Arrays.asList(hits, misses, evictions);
+  }
+}
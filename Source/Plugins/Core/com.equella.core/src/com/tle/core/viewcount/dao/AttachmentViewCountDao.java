@@ -23,10 +23,18 @@ import com.tle.beans.item.ItemKey;
 import com.tle.beans.viewcount.ViewcountAttachment;
 import com.tle.beans.viewcount.ViewcountAttachmentId;
 import com.tle.core.hibernate.dao.GenericInstitutionalDao;
+import java.time.Instant;
 
 public interface AttachmentViewCountDao
     extends GenericInstitutionalDao<ViewcountAttachment, ViewcountAttachmentId> {
   int getAttachmentViewCountForCollection(long collectionId);
 
   void deleteAttachmentViewCountForItem(Institution institution, ItemKey itemKey);
+
+  /**
+   * Adds views to an existing view count.
+   *
+   * @return false if there is no view count to add to
+   */
+  boolean addViewCount(ViewcountAttachmentId id, int views, Instant lastViewed);
 }
@@ -25,6 +25,7 @@ import com.tle.beans.viewcount.ViewcountAttachmentId;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.dao.GenericInstitionalDaoImpl;
+import java.time.Instant;
 import java.util.Optional;
 import javax.inject.Singleton;
 
@@ -66,4 +67,22 @@ public class AttachmentViewCountDaoImpl
                     .setParameter("institutionId", institution.getDatabaseId())
                     .executeUpdate());
   }
+
+  @Override
+  public boolean addViewCount(ViewcountAttachmentId id, int views, Instant lastViewed) {
+    int updated =
+        getHibernateTemplate()
+            .execute(
+                session ->
+                    session
+                        .getNamedQuery("addAttachmentViewCount")
+                        .setParameter("views", views)
+                        .setParameter("lastViewed", lastViewed)
+                        .setParameter("institutionId", id.getInst())
+                        .setParameter("itemUuid", id.getItemUuid())
+                        .setParameter("itemVersion", id.getItemVersion())
+                        .setParameter("attachment", id.getAttachment())
+                        .executeUpdate());
+    return updated > 0;
+  }
 }
@@ -23,9 +23,17 @@ import com.tle.beans.item.ItemKey;
 import com.tle.beans.viewcount.ViewcountItem;
 import com.tle.beans.viewcount.ViewcountItemId;
 import com.tle.core.hibernate.dao.GenericInstitutionalDao;
+import java.time.Instant;
 
 public interface ItemViewCountDao extends GenericInstitutionalDao<ViewcountItem, ViewcountItemId> {
   int getItemCountForCollection(long collectionId);
 
   void deleteItemViewCount(Institution institution, ItemKey itemKey);
+
+  /**
+   * Adds views to an existing view count.
+   *
+   * @return false if there is no view count to add to
+   */
+  boolean addViewCount(ViewcountItemId id, int views, Instant lastViewed);
 }
@@ -25,6 +25,7 @@ import com.tle.beans.viewcount.ViewcountItemId;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.dao.GenericInstitionalDaoImpl;
+import java.time.Instant;
 import java.util.Optional;
 import javax.inject.Singleton;
 
@@ -65,4 +66,21 @@ public class ItemViewCountDaoImpl extends GenericInstitionalDaoImpl<ViewcountIte
                     .setParameter("institutionId", institution.getDatabaseId())
                     .executeUpdate());
   }
+
+  @Override
+  public boolean addViewCount(ViewcountItemId id, int views, Instant lastViewed) {
+    int updated =
+        getHibernateTemplate()
+            .execute(
+                session ->
+                    session
+                        .getNamedQuery("addItemViewCount")
+                        .setParameter("views", views)
+                        .setParameter("lastViewed", lastViewed)
+                        .setParameter("institutionId", id.getInst())
+                        .setParameter("itemUuid", id.getItemUuid())
+                        .setParameter("itemVersion", id.getItemVersion())
+                        .executeUpdate());
+    return updated > 0;
+  }
 }
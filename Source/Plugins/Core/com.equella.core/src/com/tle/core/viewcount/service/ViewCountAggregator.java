@@ -0,0 +1,115 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.viewcount.service;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Accumulates view counts in memory until they are written to the database. Each key is updated
+ * atomically within the concurrent map, so views of different items and attachments don't contend
+ * with each other.
+ *
+ * @param <K> the id of the view count
+ */
+class ViewCountAggregator<K> {
+  private final ConcurrentHashMap<K, PendingViews> pending = new ConcurrentHashMap<>();
+  // The last drained views, still counted until they have been written
+  private volatile Map<K, PendingViews> writing = Collections.emptyMap();
+
+  void increment(K key, Instant viewed) {
+    pending.compute(
+        key, (k, views) -> views == null ? new PendingViews(1, viewed) : views.add(1, viewed));
+  }
+
+  /** @return the number of views not yet written to the database */
+  int getPendingCount(K key) {
+    final PendingViews views = pending.get(key);
+    final PendingViews written = writing.get(key);
+    return (views == null ? 0 : views.getCount()) + (written == null ? 0 : written.getCount());
+  }
+
+  boolean isEmpty() {
+    return pending.isEmpty();
+  }
+
+  /**
+   * Removes and returns all the pending views so they can be written to the database. They are
+   * still counted as pending until {@link #written()} or {@link #restore(Map)} is called.
+   */
+  Map<K, PendingViews> drain() {
+    final Map<K, PendingViews> drained = new HashMap<>();
+    for (K key : pending.keySet()) {
+      final PendingViews views = pending.remove(key);
+      if (views != null) {
+        drained.put(key, views);
+      }
+    }
+    writing = drained;
+    return drained;
+  }
+
+  /** Stops counting the drained views once they have been committed to the database. */
+  void written() {
+    writing = Collections.emptyMap();
+  }
+
+  /** Returns views which couldn't be written, so they are tried again with the next flush. */
+  void restore(Map<K, PendingViews> views) {
+    views.forEach(
+        (key, failed) ->
+            pending.merge(
+                key, failed, (current, old) -> current.add(old.getCount(), old.getLastViewed())));
+    writing = Collections.emptyMap();
+  }
+
+  void discard(Predicate<K> filter) {
+    pending.keySet().removeIf(filter);
+  }
+
+  static final class PendingViews {
+    private int count;
+    private Instant lastViewed;
+
+    PendingViews(int count, Instant lastViewed) {
+      this.count = count;
+      this.lastViewed = lastViewed;
+    }
+
+    synchronized PendingViews add(int views, Instant viewed) {
+      count += views;
+      if (viewed.isAfter(lastViewed)) {
+        lastViewed = viewed;
+      }
+      return this;
+    }
+
+    synchronized int getCount() {
+      return count;
+    }
+
+    synchronized Instant getLastViewed() {
+      return lastViewed;
+    }
+  }
+}
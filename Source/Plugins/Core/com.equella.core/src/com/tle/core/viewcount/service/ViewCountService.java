@@ -92,12 +92,12 @@ public interface ViewCountService {
 
   /**
    * Increase an Item's view count by 1. If the Item does not have any view count yet, initialise
-   * the count to 1.
+   * the count to 1. The view is counted straight away, but written to the database shortly
+   * afterwards.
    *
    * @param itemKey The Item's unique key.
-   * @return The increased view count.
    */
-  int incrementItemViewCount(ItemKey itemKey);
+  void incrementItemViewCount(ItemKey itemKey);
 
   /**
    * Increase an Attachment's view count by 1. If the Attachment does not have any view count yet,
@@ -105,9 +105,8 @@ public interface ViewCountService {
    *
    * @param itemKey The Item's unique key.
    * @param attachmentUuid UUID of the Attachment.
-   * @return The increased view count.
    */
-  int incrementAttachmentViewCount(ItemKey itemKey, String attachmentUuid);
+  void incrementAttachmentViewCount(ItemKey itemKey, String attachmentUuid);
 
   /**
    * Delete view count of both an Item and the Item's Attachments.
@@ -26,24 +26,56 @@ import com.tle.beans.viewcount.ViewcountAttachment;
 import com.tle.beans.viewcount.ViewcountAttachmentId;
 import com.tle.beans.viewcount.ViewcountItem;
 import com.tle.beans.viewcount.ViewcountItemId;
+import com.tle.common.NamedThreadFactory;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.guice.Bind;
+import com.tle.core.institution.RunAsInstitution;
+import com.tle.core.item.event.ItemDeletedEvent;
+import com.tle.core.item.event.listener.ItemDeletedListener;
 import com.tle.core.viewcount.dao.AttachmentViewCountDao;
 import com.tle.core.viewcount.dao.ItemViewCountDao;
+import com.tle.core.viewcount.service.ViewCountAggregator.PendingViews;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * Views are counted in memory and written to the database in the background every few seconds, so
+ * that viewing an item doesn't wait on, or lock, its view count row. Counts read through this
+ * service include the views which haven't been written yet. Views since the last write are lost if
+ * the server stops.
+ */
 @Bind(ViewCountService.class)
 @Singleton
-public class ViewCountServiceImpl implements ViewCountService {
+public class ViewCountServiceImpl implements ViewCountService, ItemDeletedListener {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ViewCountServiceImpl.class);
+
   @Inject private ItemViewCountDao itemViewCountDao;
   @Inject private AttachmentViewCountDao attachmentViewCountDao;
+  @Inject private RunAsInstitution runAs;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("viewcount.flushInterval")
+  private int flushInterval = 10;
+
+  // Pending views, by institution unique ID
+  private final Map<Long, PendingInstitutionViews> pending = new ConcurrentHashMap<>();
+
+  private final Object flushLock = new Object();
+  private volatile ScheduledExecutorService flusher;
 
   private ViewcountItemId buildViewCountItemId(ItemKey itemKey) {
     return new ViewcountItemId(
@@ -62,18 +94,6 @@ public class ViewCountServiceImpl implements ViewCountService {
     return Restrictions.eq("id.inst", institution.getDatabaseId());
   }
 
-  // If the given ViewCount exists, plus the current view count by 1, update the last viewed
-  // time and return it.
-  private <T extends AbstractViewcount> Optional<T> updateIfExists(T viewCount) {
-    return Optional.ofNullable(viewCount)
-        .map(
-            vc -> {
-              vc.setCount(vc.getCount() + 1);
-              vc.setLastViewed(Instant.now());
-              return vc;
-            });
-  }
-
   // If the given ViewCount exists, return the count. Otherwise, return 0.
   private int getViewCount(AbstractViewcount viewCount) {
     return Optional.ofNullable(viewCount).map(AbstractViewcount::getCount).orElse(0);
@@ -95,39 +115,33 @@ public class ViewCountServiceImpl implements ViewCountService {
   }
 
   @Override
-  public int incrementItemViewCount(ItemKey itemKey) {
-    ViewcountItemId id = buildViewCountItemId(itemKey);
-
-    ViewcountItem viewcountItem =
-        updateIfExists(itemViewCountDao.findById(id))
-            .orElse(new ViewcountItem(id, 1, Instant.now()));
-
-    itemViewCountDao.saveOrUpdate(viewcountItem);
-    return viewcountItem.getCount();
+  public void incrementItemViewCount(ItemKey itemKey) {
+    pendingViews().items.increment(buildViewCountItemId(itemKey), Instant.now());
+    startFlusher();
   }
 
   @Override
-  public int incrementAttachmentViewCount(ItemKey itemKey, String attachmentUuid) {
-    ViewcountAttachmentId id = buildViewCountAttachmentId(itemKey, attachmentUuid);
-
-    ViewcountAttachment viewcountAttachment =
-        updateIfExists(attachmentViewCountDao.findById(id))
-            .orElse(new ViewcountAttachment(id, 1, Instant.now()));
-
-    attachmentViewCountDao.saveOrUpdate(viewcountAttachment);
-
-    return viewcountAttachment.getCount();
+  public void incrementAttachmentViewCount(ItemKey itemKey, String attachmentUuid) {
+    pendingViews()
+        .attachments
+        .increment(buildViewCountAttachmentId(itemKey, attachmentUuid), Instant.now());
+    startFlusher();
   }
 
   @Override
   public int getItemViewCount(ItemKey itemKey) {
-    return getViewCount(itemViewCountDao.findById(buildViewCountItemId(itemKey)));
+    ViewcountItemId id = buildViewCountItemId(itemKey);
+    final PendingInstitutionViews views = pending.get(CurrentInstitution.get().getUniqueId());
+    return getViewCount(itemViewCountDao.findById(id))
+        + (views == null ? 0 : views.items.getPendingCount(id));
   }
 
   @Override
   public int getAttachmentViewCount(ItemKey itemKey, String attachmentUuid) {
-    return getViewCount(
-        attachmentViewCountDao.findById(buildViewCountAttachmentId(itemKey, attachmentUuid)));
+    ViewcountAttachmentId id = buildViewCountAttachmentId(itemKey, attachmentUuid);
+    final PendingInstitutionViews views = pending.get(CurrentInstitution.get().getUniqueId());
+    return getViewCount(attachmentViewCountDao.findById(id))
+        + (views == null ? 0 : views.attachments.getPendingCount(id));
   }
 
   @Override
@@ -157,7 +171,113 @@ public class ViewCountServiceImpl implements ViewCountService {
   @Override
   @Transactional
   public void deleteViewCount(Institution institution, ItemKey itemKey) {
+    discardPendingViews(institution, itemKey);
     itemViewCountDao.deleteItemViewCount(institution, itemKey);
     attachmentViewCountDao.deleteAttachmentViewCountForItem(institution, itemKey);
   }
+
+  @Override
+  public void itemDeletedEvent(ItemDeletedEvent event) {
+    // The view counts themselves are deleted along with the item
+    discardPendingViews(CurrentInstitution.get(), event.getItemId());
+  }
+
+  private void discardPendingViews(Institution institution, ItemKey itemKey) {
+    final PendingInstitutionViews views = pending.get(institution.getUniqueId());
+    if (views == null) {
+      return;
+    }
+    views.items.discard(
+        id ->
+            id.getItemVersion() == itemKey.getVersion()
+                && id.getItemUuid().equals(itemKey.getUuid()));
+    views.attachments.discard(
+        id ->
+            id.getItemVersion() == itemKey.getVersion()
+                && id.getItemUuid().equals(itemKey.getUuid()));
+  }
+
+  private PendingInstitutionViews pendingViews() {
+    final Institution institution = CurrentInstitution.get();
+    return pending.computeIfAbsent(
+        institution.getUniqueId(), inst -> new PendingInstitutionViews(institution));
+  }
+
+  private void startFlusher() {
+    if (flusher != null) {
+      return;
+    }
+    synchronized (this) {
+      if (flusher == null) {
+        final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ViewCount-Flusher"));
+        executor.scheduleWithFixedDelay(
+            this::flushSafely, flushInterval, flushInterval, TimeUnit.SECONDS);
+        flusher = executor;
+      }
+    }
+  }
+
+  private void flushSafely() {
+    try {
+      flush();
+    } catch (Throwable t) {
+      LOGGER.error("Error writing view counts", t);
+    }
+  }
+
+  /** Writes all the pending views to the database, one transaction per institution. */
+  public void flush() {
+    // Keep the scheduled flush and any direct caller from writing the same views twice
+    synchronized (flushLock) {
+      for (PendingInstitutionViews views : pending.values()) {
+        if (views.items.isEmpty() && views.attachments.isEmpty()) {
+          continue;
+        }
+        final Map<ViewcountItemId, PendingViews> items = views.items.drain();
+        final Map<ViewcountAttachmentId, PendingViews> attachments = views.attachments.drain();
+        try {
+          runAs.executeAsSystem(views.institution, () -> writeViews(items, attachments));
+          views.items.written();
+          views.attachments.written();
+        } catch (Exception e) {
+          // Most likely another node created the same view count first, which will be added to
+          // next time
+          LOGGER.warn("Error writing view counts, they will be retried", e);
+          views.items.restore(items);
+          views.attachments.restore(attachments);
+        }
+      }
+    }
+  }
+
+  @Transactional
+  protected void writeViews(
+      Map<ViewcountItemId, PendingViews> items,
+      Map<ViewcountAttachmentId, PendingViews> attachments) {
+    items.forEach(
+        (id, views) -> {
+          if (!itemViewCountDao.addViewCount(id, views.getCount(), views.getLastViewed())) {
+            itemViewCountDao.save(new ViewcountItem(id, views.getCount(), views.getLastViewed()));
+          }
+        });
+    attachments.forEach(
+        (id, views) -> {
+          if (!attachmentViewCountDao.addViewCount(id, views.getCount(), views.getLastViewed())) {
+            attachmentViewCountDao.save(
+                new ViewcountAttachment(id, views.getCount(), views.getLastViewed()));
+          }
+        });
+  }
+
+  private static final class PendingInstitutionViews {
+    private final Institution institution;
+    private final ViewCountAggregator<ViewcountItemId> items = new ViewCountAggregator<>();
+    private final ViewCountAggregator<ViewcountAttachmentId> attachments =
+        new ViewCountAggregator<>();
+
+    PendingInstitutionViews(Institution institution) {
+      this.institution = institution;
+    }
+  }
 }
@@ -25,26 +25,46 @@ import java.awt.Dimension;
 import java.io.File;
 import java.io.IOException;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
+/**
+ * Thumbnails common web image formats in process with {@link JavaImageScaler}, and everything else
+ * (or anything the scaler can't manage) with ImageMagick.
+ */
 @Bind
 @Singleton
 public class ImageThumbnailGenerator implements ThumbnailGenerator {
   @Inject private ImageMagickService imageMagickService;
 
+  @com.google.inject.Inject(optional = true)
+  @Named("thumbnail.javaScaling")
+  private boolean javaScaling = true;
+
   @Override
   public void generateThumbnail(File src, File dest) {
-    imageMagickService.generateStandardThumbnail(src, dest);
+    final ThumbnailOptions options = ThumbnailOptions.standardThumbnail();
+    if (!(javaScaling && JavaImageScaler.scale(src, dest, options))) {
+      imageMagickService.generateThumbnailAdvanced(src, dest, options);
+    }
   }
 
   @Override
   public void generateThumbnailAdvanced(File srcFile, File dstFile, ThumbnailOptions options)
       throws Exception {
-    imageMagickService.generateThumbnailAdvanced(srcFile, dstFile, options);
+    if (!(javaScaling && JavaImageScaler.scale(srcFile, dstFile, options))) {
+      imageMagickService.generateThumbnailAdvanced(srcFile, dstFile, options);
+    }
   }
 
   @Override
   public Dimension getImageDimensions(File srcFile) throws IOException {
+    if (javaScaling && JavaImageScaler.canRead(srcFile)) {
+      final Dimension dimensions = JavaImageScaler.getDimensions(srcFile);
+      if (dimensions != null) {
+        return dimensions;
+      }
+    }
     return imageMagickService.getImageDimensions(srcFile);
   }
 
@@ -0,0 +1,323 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.workflow.thumbnail;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.tle.annotation.NonNullByDefault;
+import com.tle.annotation.Nullable;
+import com.tle.common.Check;
+import com.tle.core.imagemagick.ThumbnailOptions;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scales the common web image formats in process, avoiding the cost of starting ImageMagick for
+ * each thumbnail. The output matches what {@code ImageMagickServiceImpl} produces for the same
+ * {@link ThumbnailOptions}: the image fills the thumbnail (or fits within it when the aspect ratio
+ * is kept, or the image is smaller), is centred and cropped, and blank thumbnails are discarded.
+ *
+ * <p>Anything this class can't handle (unusual options, CMYK JPEGs, huge images) is reported by
+ * returning false, so the caller can fall back to ImageMagick.
+ */
+@SuppressWarnings("nls")
+@NonNullByDefault
+public final class JavaImageScaler {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JavaImageScaler.class);
+
+  private static final Set<String> SOURCE_EXTENSIONS =
+      ImmutableSet.of("jpg", "jpeg", "jpe", "png", "gif", "bmp");
+  private static final Set<String> DESTINATION_EXTENSIONS = ImmutableSet.of("jpg", "jpeg");
+
+  /** Largest image (after subsampling) that will be decoded into memory */
+  private static final long MAX_PIXELS = 50L * 1000 * 1000;
+
+  private static final float JPEG_QUALITY = 0.85f;
+  /** Equivalent of ImageMagick's 99% threshold used to detect blank thumbnails */
+  private static final int BLANK_THRESHOLD = 252;
+
+  private JavaImageScaler() {
+    throw new Error();
+  }
+
+  public static boolean canRead(File src) {
+    return SOURCE_EXTENSIONS.contains(extension(src));
+  }
+
+  public static boolean canScale(File src, File dst, ThumbnailOptions options) {
+    final String background = options.getBackgroundColour();
+    final String gravity = options.getGravity();
+    return canRead(src)
+        && DESTINATION_EXTENSIONS.contains(extension(dst))
+        && (Check.isEmpty(background) || background.equalsIgnoreCase("white"))
+        && (gravity == null || gravity.equalsIgnoreCase("center"))
+        && options.getCropX() == 0
+        && options.getCropY() == 0;
+  }
+
+  /** @return the size of the image, read from its header, or null if it can't be read */
+  @Nullable
+  public static Dimension getDimensions(File src) {
+    try (ImageInputStream in = ImageIO.createImageInputStream(src)) {
+      final ImageReader reader = getReader(in);
+      if (reader == null) {
+        return null;
+      }
+      try {
+        return new Dimension(reader.getWidth(0), reader.getHeight(0));
+      } finally {
+        reader.dispose();
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.debug("Unable to read dimensions of " + src, e);
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the thumbnail was generated (or discarded as blank), false if ImageMagick
+   *     should be used instead
+   */
+  public static boolean scale(File src, File dst, ThumbnailOptions options) {
+    if (!canScale(src, dst, options)) {
+      return false;
+    }
+    try {
+      final BufferedImage thumb = createThumbnail(src, options);
+      if (thumb == null) {
+        return false;
+      }
+      if (!options.isSkipBlankCheck() && isBlank(thumb)) {
+        if (dst.exists() && !dst.delete()) {
+          LOGGER.warn("Unable to delete presumed blank thumbnail: " + dst.getAbsolutePath());
+        }
+        return true;
+      }
+      writeJpeg(thumb, dst);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      LOGGER.debug("Unable to scale " + src + " in process, falling back to ImageMagick", e);
+      if (dst.exists() && !dst.delete()) {
+        LOGGER.warn("Unable to delete partial thumbnail: " + dst.getAbsolutePath());
+      }
+      return false;
+    }
+  }
+
+  @Nullable
+  private static BufferedImage createThumbnail(File src, ThumbnailOptions options)
+      throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(src)) {
+      final ImageReader reader = getReader(in);
+      if (reader == null) {
+        return null;
+      }
+      try {
+        final int srcWidth = reader.getWidth(0);
+        final int srcHeight = reader.getHeight(0);
+        if (options.isNoSize()) {
+          return read(reader, 1, srcWidth, srcHeight);
+        }
+
+        final int width = options.getWidth();
+        final int height = options.getHeight();
+        final boolean fill = !options.isKeepAspect() && !(srcHeight < height && srcWidth < width);
+        final double ratio =
+            fill
+                ? Math.max((double) width / srcWidth, (double) height / srcHeight)
+                : Math.min(1.0, Math.min((double) width / srcWidth, (double) height / srcHeight));
+        final int scaledWidth = Math.max(1, (int) Math.round(srcWidth * ratio));
+        final int scaledHeight = Math.max(1, (int) Math.round(srcHeight * ratio));
+
+        // Subsampling on read is cheap, but crude, so leave twice the pixels needed for scaling
+        final int subsampling =
+            Math.max(1, Math.min(srcWidth / (scaledWidth * 2), srcHeight / (scaledHeight * 2)));
+        final BufferedImage image = read(reader, subsampling, srcWidth, srcHeight);
+        if (image == null) {
+          return null;
+        }
+        final BufferedImage scaled = resize(image, scaledWidth, scaledHeight);
+
+        final int cropWidth = options.getCropWidth();
+        final int cropHeight = options.getCropHeight();
+        if (cropWidth <= 0 || cropHeight <= 0) {
+          return scaled;
+        }
+        // With a background colour the image is bordered before cropping, so the thumbnail is
+        // always the full crop size
+        final boolean bordered = !Check.isEmpty(options.getBackgroundColour());
+        final int canvasWidth = bordered ? cropWidth : Math.min(cropWidth, scaledWidth);
+        final int canvasHeight = bordered ? cropHeight : Math.min(cropHeight, scaledHeight);
+        final BufferedImage canvas = newCanvas(canvasWidth, canvasHeight);
+        final Graphics2D g = canvas.createGraphics();
+        try {
+          g.drawImage(
+              scaled, (canvasWidth - scaledWidth) / 2, (canvasHeight - scaledHeight) / 2, null);
+        } finally {
+          g.dispose();
+        }
+        return canvas;
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  @Nullable
+  private static ImageReader getReader(@Nullable ImageInputStream in) {
+    if (in == null) {
+      return null;
+    }
+    final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+    if (!readers.hasNext()) {
+      return null;
+    }
+    final ImageReader reader = readers.next();
+    reader.setInput(in, true, true);
+    return reader;
+  }
+
+  /** Reads the first frame, flattened onto white */
+  @Nullable
+  private static BufferedImage read(ImageReader reader, int subsampling, int width, int height)
+      throws IOException {
+    final long pixels = ((long) width / subsampling) * ((long) height / subsampling);
+    if (pixels > MAX_PIXELS) {
+      LOGGER.debug("Image of " + width + "x" + height + " is too large to scale in process");
+      return null;
+    }
+    final ImageReadParam param = reader.getDefaultReadParam();
+    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+    final BufferedImage image = reader.read(0, param);
+    final BufferedImage rgb = newCanvas(image.getWidth(), image.getHeight());
+    final Graphics2D g = rgb.createGraphics();
+    try {
+      g.drawImage(image, 0, 0, null);
+    } finally {
+      g.dispose();
+    }
+    return rgb;
+  }
+
+  /**
+   * Halves the image with bilinear interpolation until it is close to the target size, then does a
+   * final bicubic step. A single bilinear or bicubic step would drop most source pixels when
+   * shrinking by a large factor.
+   */
+  private static BufferedImage resize(BufferedImage image, int width, int height) {
+    BufferedImage current = image;
+    while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+      current =
+          draw(
+              current,
+              current.getWidth() / 2,
+              current.getHeight() / 2,
+              RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    }
+    if (current.getWidth() == width && current.getHeight() == height) {
+      return current;
+    }
+    return draw(current, width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+  }
+
+  private static BufferedImage draw(
+      BufferedImage image, int width, int height, Object interpolation) {
+    final BufferedImage scaled = newCanvas(width, height);
+    final Graphics2D g = scaled.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      g.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      g.dispose();
+    }
+    return scaled;
+  }
+
+  private static BufferedImage newCanvas(int width, int height) {
+    final BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = canvas.createGraphics();
+    try {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, width, height);
+    } finally {
+      g.dispose();
+    }
+    return canvas;
+  }
+
+  static boolean isBlank(BufferedImage image) {
+    final int width = image.getWidth();
+    final int[] row = new int[width];
+    for (int y = 0; y < image.getHeight(); y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int rgb : row) {
+        if (((rgb >> 16) & 0xff) <= BLANK_THRESHOLD
+            || ((rgb >> 8) & 0xff) <= BLANK_THRESHOLD
+            || (rgb & 0xff) <= BLANK_THRESHOLD) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static void writeJpeg(BufferedImage image, File dst) throws IOException {
+    final File parent = dst.getParentFile();
+    if (!(parent.mkdirs() || parent.exists())) {
+      throw new IOException("Could not create/confirm directory " + parent.getAbsolutePath());
+    }
+
+    final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    try (OutputStream stream = new FileOutputStream(dst);
+        ImageOutputStream out = ImageIO.createImageOutputStream(stream)) {
+      final ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(JPEG_QUALITY);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  private static String extension(File file) {
+    return Files.getFileExtension(file.getName()).toLowerCase(Locale.ENGLISH);
+  }
+}
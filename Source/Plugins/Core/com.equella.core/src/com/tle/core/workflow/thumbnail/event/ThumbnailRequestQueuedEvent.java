@@ -0,0 +1,44 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.workflow.thumbnail.event;
+
+import com.tle.core.events.ApplicationEvent;
+import com.tle.core.workflow.thumbnail.event.listener.ThumbnailRequestQueuedListener;
+
+/**
+ * Raised once new thumbnail requests have been committed, so that the thumbnail supervisor (which
+ * could be running on any node) starts on them straight away.
+ */
+public class ThumbnailRequestQueuedEvent extends ApplicationEvent<ThumbnailRequestQueuedListener> {
+  private static final long serialVersionUID = 1L;
+
+  public ThumbnailRequestQueuedEvent() {
+    super(PostTo.POST_TO_ALL_CLUSTER_NODES);
+  }
+
+  @Override
+  public Class<ThumbnailRequestQueuedListener> getListener() {
+    return ThumbnailRequestQueuedListener.class;
+  }
+
+  @Override
+  public void postEvent(ThumbnailRequestQueuedListener listener) {
+    listener.thumbnailRequestQueued(this);
+  }
+}
@@ -18,12 +18,11 @@
 
 package com.tle.core.workflow.thumbnail.service;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.tle.annotation.NonNullByDefault;
 import com.tle.annotation.Nullable;
 import com.tle.beans.Institution;
-import com.tle.beans.item.ItemId;
-import com.tle.common.Check;
 import com.tle.common.Pair;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.event.SchemaListener;
@@ -36,32 +35,50 @@ import com.tle.core.services.impl.AlwaysRunningTask;
 import com.tle.core.services.impl.BeanClusteredTask;
 import com.tle.core.services.impl.Task;
 import com.tle.core.workflow.thumbnail.entity.ThumbnailRequest;
+import com.tle.core.workflow.thumbnail.event.ThumbnailRequestQueuedEvent;
+import com.tle.core.workflow.thumbnail.event.listener.ThumbnailRequestQueuedListener;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** @author Aaron */
+/**
+ * Hands queued thumbnail requests out to the cluster in batches. The supervisor is woken as soon as
+ * new requests are committed, and otherwise checks every {@link #SUPERVISOR_CHECK_PERIOD} in case
+ * an event was missed.
+ *
+ * @author Aaron
+ */
 @SuppressWarnings("nls")
 @NonNullByDefault
 @Bind
 @Singleton
-public class ThumbnailSupervisor implements SchemaListener {
+public class ThumbnailSupervisor implements SchemaListener, ThumbnailRequestQueuedListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailSupervisor.class);
 
   private static final long SUPERVISOR_CHECK_PERIOD = TimeUnit.SECONDS.toMillis(20);
   private static final long TASK_WAIT_WARN_TIME = TimeUnit.MINUTES.toMillis(2);
+  /** Once woken, wait this long for requests queued alongside the first so they share a batch */
+  private static final long BATCH_SETTLE_TIME = TimeUnit.SECONDS.toMillis(1);
 
   @Inject private RunAsInstitution runAs;
   @Inject private TaskService taskService;
   @Inject private InstitutionService institutionService;
   @Inject private ThumbnailRequestService thumbRequestService;
 
+  @com.google.inject.Inject(optional = true)
+  @Named("thumbnail.batchSize")
+  private int batchSize = 10;
+
+  private final Object wakeLock = new Object();
+  private boolean wakeRequested;
+
   @Override
   public void systemSchemaUp() {
     taskService.getGlobalTask(
@@ -80,6 +97,14 @@ public class ThumbnailSupervisor implements SchemaListener {
     // only care about system
   }
 
+  @Override
+  public void thumbnailRequestQueued(ThumbnailRequestQueuedEvent event) {
+    synchronized (wakeLock) {
+      wakeRequested = true;
+      wakeLock.notifyAll();
+    }
+  }
+
   /**
    * Factory method to create the one and only Thumbnail-Supervisor task
    *
@@ -90,7 +115,9 @@ public class ThumbnailSupervisor implements SchemaListener {
       @Override
       protected Void waitFor() {
         try {
-          Thread.sleep(SUPERVISOR_CHECK_PERIOD);
+          if (waitForWake()) {
+            Thread.sleep(BATCH_SETTLE_TIME);
+          }
         } catch (InterruptedException ex) {
           // Don't care.
         }
@@ -120,116 +147,141 @@ public class ThumbnailSupervisor implements SchemaListener {
     };
   }
 
+  /** @return true if woken by a new request, false if the check period elapsed */
+  private boolean waitForWake() throws InterruptedException {
+    final long end = System.currentTimeMillis() + SUPERVISOR_CHECK_PERIOD;
+    synchronized (wakeLock) {
+      long remaining = SUPERVISOR_CHECK_PERIOD;
+      while (!wakeRequested && remaining > 0) {
+        wakeLock.wait(remaining);
+        remaining = end - System.currentTimeMillis();
+      }
+      final boolean woken = wakeRequested;
+      wakeRequested = false;
+      return woken;
+    }
+  }
+
   /**
-   * This gets invoked every SUPERVISOR_CHECK_PERIOD seconds, assuming it isn't already running.
+   * This gets invoked whenever new requests are queued, or every SUPERVISOR_CHECK_PERIOD seconds,
+   * assuming it isn't already running.
    *
    * @param inst
    */
   public void doRunSupervisor(Institution inst) {
-    final List<ThumbnailRequest> toRun = thumbRequestService.list(inst);
-    if (Check.isEmpty(toRun)) {
+    final List<ThumbnailRequest> toRun = new ArrayList<>();
+    for (ThumbnailRequest request : thumbRequestService.list(inst)) {
+      if (!isAlreadySubmitted(request)) {
+        toRun.add(request);
+      }
+    }
+    if (toRun.isEmpty()) {
       return;
     }
 
-    // Request UUID to task ID
+    final long uniqueId = inst.getUniqueId();
+    // Batch global ID to task ID
     final Map<String, String> runningTasks = Maps.newHashMap();
+    // Batch global ID to the request UUIDs in it
+    final Map<String, List<String>> batches = Maps.newHashMap();
 
-    // Start as many of the thumb tasks as possible in parallel
-    // - let the cluster nodes balance it out. Once any task
-    // finishes, check through the remaining tasks to see if more
-    // can also be started. Keep looping until all the tasks have
-    // been started and all finished.
-    while (!toRun.isEmpty() || !runningTasks.isEmpty()) {
-      for (Iterator<ThumbnailRequest> iter = toRun.iterator(); iter.hasNext(); ) {
-        final ThumbnailRequest request = iter.next();
-        iter.remove();
-        if (runningTasks.containsKey(request.getUuid())) {
-          break;
-        }
-
-        final String requestUuid = request.getUuid();
-        final long uniqueId = inst.getUniqueId();
-        final String globalId = "ThumbnailingTask-" + requestUuid + '-' + uniqueId;
-
-        if (request.getTaskId() == null) {
-          if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("Task " + globalId + " just starting");
-          }
-        } else {
-          final TaskStatus taskStatus = taskService.getTaskStatus(request.getTaskId());
-          if (taskStatus == null) {
-            LOGGER.info(
-                "Existing task for " + globalId + " but nothing running. Server restarted?");
-          } else {
-            if (LOGGER.isTraceEnabled()) {
-              LOGGER.trace(
-                  "Existing task for "
-                      + globalId
-                      + ", status: "
-                      + (taskStatus.isFinished() ? "finished" : "not finished"));
-            }
-            break;
-          }
-        }
+    // Start all the batches at once and let the cluster nodes balance them out, then wait for
+    // them all to finish.
+    for (List<ThumbnailRequest> batch : Lists.partition(toRun, Math.max(1, batchSize))) {
+      final ArrayList<String> requestUuids = new ArrayList<>(batch.size());
+      for (ThumbnailRequest request : batch) {
+        requestUuids.add(request.getUuid());
+      }
+      final String globalId = "ThumbnailingBatch-" + requestUuids.get(0) + '-' + uniqueId;
 
-        final BeanClusteredTask bct =
-            new BeanClusteredTask(
-                globalId,
-                ThumbnailService.class,
-                "createThumbnailerTask",
-                requestUuid,
-                uniqueId,
-                new ItemId(request.getItemUuid(), request.getItemVersion()),
-                request.getHandle());
-        final GlobalTaskStartInfo taskInfo =
-            taskService.getGlobalTask(bct, TimeUnit.SECONDS.toMillis(30));
-        final String taskId = taskInfo.getTaskId();
-        runningTasks.put(request.getUuid(), taskId);
+      final BeanClusteredTask bct =
+          new BeanClusteredTask(
+              globalId,
+              ThumbnailService.class,
+              "createThumbnailerBatchTask",
+              requestUuids,
+              uniqueId);
+      final GlobalTaskStartInfo taskInfo =
+          taskService.getGlobalTask(bct, TimeUnit.SECONDS.toMillis(30));
+      final String taskId = taskInfo.getTaskId();
+      runningTasks.put(globalId, taskId);
+      batches.put(globalId, requestUuids);
 
-        if (taskInfo.isAlreadyRunning()) {
-          LOGGER.trace("Task " + globalId + " already running.");
-          break;
-        } else {
-          LOGGER.info("Submitted " + globalId + " with task ID " + taskId);
+      if (taskInfo.isAlreadyRunning()) {
+        LOGGER.trace("Task " + globalId + " already running.");
+      } else {
+        LOGGER.info("Submitted " + globalId + " with task ID " + taskId);
+        for (ThumbnailRequest request : batch) {
           request.setTaskId(taskId);
           request.setGlobalTaskId(globalId);
           thumbRequestService.update(request);
         }
       }
+    }
 
-      // Wait for one of the currently running tasks to finish
+    while (!runningTasks.isEmpty()) {
       final Pair<String, TaskStatus> finishedStatus = waitForAnyTaskToFinish(runningTasks);
-      if (finishedStatus != null) {
-        final String finishedRequestUuid = finishedStatus.getFirst();
-        final TaskStatus taskStat = finishedStatus.getSecond();
-        runningTasks.remove(finishedRequestUuid);
+      if (finishedStatus == null) {
+        break;
+      }
+      final String finishedGlobalId = finishedStatus.getFirst();
+      final TaskStatus taskStat = finishedStatus.getSecond();
+      runningTasks.remove(finishedGlobalId);
 
-        if (taskStat == null) {
-          LOGGER.warn("Thumb request " + finishedRequestUuid + " didn't have a finished status.");
-        } else {
-          final String taskError = taskStat.getErrorMessage();
-          if (taskError != null) {
-            LOGGER.warn(
-                "Thumb task "
-                    + taskStat.getInternalId()
-                    + " errored. Removing the request "
-                    + finishedRequestUuid);
-            // In the future we could add code to increment a counter and re-try it at a future
-            // time.  Or not bother.
-            thumbRequestService.delete(finishedRequestUuid);
-          } else {
-            LOGGER.debug("Aware of finished thumb task " + taskStat.getInternalId());
+      if (taskStat == null) {
+        LOGGER.warn("Thumb batch " + finishedGlobalId + " didn't have a finished status.");
+      } else {
+        final String taskError = taskStat.getErrorMessage();
+        if (taskError != null) {
+          LOGGER.warn(
+              "Thumb task "
+                  + taskStat.getInternalId()
+                  + " errored. Removing the requests in "
+                  + finishedGlobalId);
+          // In the future we could add code to increment a counter and re-try it at a future
+          // time.  Or not bother.
+          for (String requestUuid : batches.get(finishedGlobalId)) {
+            thumbRequestService.delete(requestUuid);
           }
+        } else {
+          LOGGER.debug("Aware of finished thumb task " + taskStat.getInternalId());
         }
       }
     }
   }
 
+  /**
+   * A request which has already been handed to a task is left alone while that task is known to the
+   * task service. Once the task is forgotten (e.g. the server restarted) it is submitted again.
+   */
+  private boolean isAlreadySubmitted(ThumbnailRequest request) {
+    final String taskId = request.getTaskId();
+    if (taskId == null) {
+      return false;
+    }
+    final TaskStatus taskStatus = taskService.getTaskStatus(taskId);
+    if (taskStatus == null) {
+      LOGGER.info(
+          "Existing task for " + request.getUuid() + " but nothing running. Server restarted?");
+      return false;
+    }
+    if (LOGGER.isTraceEnabled()) {
+      LOGGER.trace(
+          "Existing task "
+              + request.getGlobalTaskId()
+              + " for request "
+              + request.getUuid()
+              + ", status: "
+              + (taskStatus.isFinished() ? "finished" : "not finished"));
+    }
+    return true;
+  }
+
   /**
    * Waits for any of the given tasks to finish and returns that extension ID.
    *
-   * @param runningTasks maps of request UUIDs to task IDs.
-   * @return UUID of task that has finished.
+   * @param runningTasks maps of batch global IDs to task IDs.
+   * @return global ID of the batch that has finished.
    */
   @Nullable
   private Pair<String, TaskStatus> waitForAnyTaskToFinish(Map<String, String> runningTasks) {
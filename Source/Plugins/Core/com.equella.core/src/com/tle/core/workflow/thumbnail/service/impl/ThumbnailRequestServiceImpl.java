@@ -28,6 +28,7 @@ import com.tle.beans.item.ItemKey;
 import com.tle.common.filesystem.handle.FileHandle;
 import com.tle.common.filesystem.handle.StagingFile;
 import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.events.services.EventService;
 import com.tle.core.filesystem.InstitutionFile;
 import com.tle.core.filesystem.ItemFile;
 import com.tle.core.guice.Bind;
@@ -37,6 +38,7 @@ import com.tle.core.services.FileSystemService;
 import com.tle.core.workflow.thumbnail.ThumbnailQueueFile;
 import com.tle.core.workflow.thumbnail.dao.ThumbnailRequestDao;
 import com.tle.core.workflow.thumbnail.entity.ThumbnailRequest;
+import com.tle.core.workflow.thumbnail.event.ThumbnailRequestQueuedEvent;
 import com.tle.core.workflow.thumbnail.service.ThumbnailRequestService;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -50,6 +52,8 @@ import javax.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Do not use directly. You should invoke methods on the ThumbnailService.
@@ -66,6 +70,7 @@ import org.springframework.transaction.annotation.Transactional;
   @Inject private ThumbnailRequestDao thumbRequestDao;
   @Inject private FileSystemService fileSystemService;
   @Inject private InstitutionService instService;
+  @Inject private EventService eventService;
 
   @Transactional
   @Override
@@ -104,6 +109,36 @@ import org.springframework.transaction.annotation.Transactional;
     tr.setRecreate(forceIt);
     tr.setThumbnailTypes(thumbFlags);
     thumbRequestDao.save(tr);
+
+    wakeSupervisorAfterCommit();
+  }
+
+  /**
+   * Tells the supervisor about the new requests once they are visible to other nodes. Only one
+   * event is published per transaction, however many requests it queues.
+   */
+  private void wakeSupervisorAfterCommit() {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      eventService.publishApplicationEvent(new ThumbnailRequestQueuedEvent());
+      return;
+    }
+    if (TransactionSynchronizationManager.hasResource(ThumbnailRequestQueuedEvent.class)) {
+      return;
+    }
+    TransactionSynchronizationManager.bindResource(ThumbnailRequestQueuedEvent.class, true);
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            eventService.publishApplicationEvent(new ThumbnailRequestQueuedEvent());
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(
+                ThumbnailRequestQueuedEvent.class);
+          }
+        });
   }
 
   /**
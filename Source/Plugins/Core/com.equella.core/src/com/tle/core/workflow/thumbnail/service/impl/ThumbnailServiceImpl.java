@@ -28,6 +28,7 @@ import com.tle.common.filesystem.handle.FileHandle;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.guice.Bind;
 import com.tle.core.institution.InstitutionService;
+import com.tle.core.institution.RunAsInstitution;
 import com.tle.core.item.event.ItemDeletedEvent;
 import com.tle.core.item.event.listener.ItemDeletedListener;
 import com.tle.core.mimetypes.MimeTypeService;
@@ -40,6 +41,7 @@ import com.tle.core.workflow.thumbnail.ThumbnailType;
 import com.tle.core.workflow.thumbnail.entity.ThumbnailRequest;
 import com.tle.core.workflow.thumbnail.service.ThumbnailRequestService;
 import com.tle.core.workflow.thumbnail.service.ThumbnailService;
+import java.util.List;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.java.plugin.registry.Extension;
@@ -61,6 +63,7 @@ public class ThumbnailServiceImpl implements ThumbnailService, ItemDeletedListen
   @Inject private ThumbnailRequestService thumbnailRequestService;
   @Inject private PluginTracker<ThumbnailGenerator> thumbnailTracker;
   @Inject private ThumbingCallableTracker taskTracker;
+  @Inject private RunAsInstitution runAs;
 
   @Transactional(propagation = Propagation.REQUIRED)
   @Override
@@ -147,15 +150,14 @@ public class ThumbnailServiceImpl implements ThumbnailService, ItemDeletedListen
   }
 
   /**
-   * Factory method to spawn a task to do a single thumbnail
+   * Factory method to spawn a task which thumbnails a batch of requests for the one institution
    *
-   * @param requestUuid
+   * @param requestUuids
    * @param institutionId
    * @return
    */
-  public Task createThumbnailerTask(
-      String requestUuid, long institutionId, ItemId itemId, String serialHandle) {
-    return new SingleThumbnailTask(requestUuid, institutionId, itemId, serialHandle);
+  public Task createThumbnailerBatchTask(List<String> requestUuids, long institutionId) {
+    return new BatchThumbnailTask(requestUuids, institutionId);
   }
 
   @Transactional
@@ -177,44 +179,62 @@ public class ThumbnailServiceImpl implements ThumbnailService, ItemDeletedListen
     thumbnailRequestService.delete(request.getUuid());
   }
 
-  private class SingleThumbnailTask extends SingleShotTask {
-    private final String requestUuid;
+  /**
+   * Even though this task (and all tasks in general) wait for the institution keeper task, it can
+   * still attempt to run before the institution task is fully prepared.
+   */
+  private Institution waitForInstitution(long institutionId) {
+    Institution institution = institutionService.getInstitution(institutionId);
+    int tries = 0;
+    int backoff = 1000;
+    while (institution == null && tries < 10) {
+      try {
+        Thread.sleep(backoff);
+        institution = institutionService.getInstitution(institutionId);
+        tries++;
+        backoff += backoff;
+      } catch (InterruptedException ie) {
+        // whatevs
+      }
+    }
+    if (institution == null) {
+      throw new RuntimeException("Gave up waiting for institution");
+    }
+    return institution;
+  }
+
+  private class BatchThumbnailTask extends SingleShotTask {
+    private final List<String> requestUuids;
     private final long institutionId;
-    private final ItemId itemId;
-    private final String serialHandle;
 
-    public SingleThumbnailTask(
-        String requestUuid, long institutionId, ItemId itemId, String serialHandle) {
-      this.requestUuid = requestUuid;
+    public BatchThumbnailTask(List<String> requestUuids, long institutionId) {
+      this.requestUuids = requestUuids;
       this.institutionId = institutionId;
-      this.itemId = itemId;
-      this.serialHandle = serialHandle;
     }
 
     @Override
     public void runTask() {
-      // Wait for institution.
-      // Even though this task (and all tasks in general) wait for the institution keeper task,
-      // it can still attempt to run before the institution task is fully prepared.
-
-      Institution institution = institutionService.getInstitution(institutionId);
-      int tries = 0;
-      int backoff = 1000;
-      while (institution == null && tries < 10) {
-        try {
-          Thread.sleep(backoff);
-          institution = institutionService.getInstitution(institutionId);
-          tries++;
-          backoff += backoff;
-        } catch (InterruptedException ie) {
-          // whatevs
-        }
-      }
-      if (institution == null) {
-        throw new RuntimeException("Gave up waiting for institution");
-      }
-
-      taskTracker.submitTask(institution, requestUuid, itemId, serialHandle);
+      final Institution institution = waitForInstitution(institutionId);
+      runAs.executeAsSystem(
+          institution,
+          new Runnable() {
+            @Override
+            public void run() {
+              for (String requestUuid : requestUuids) {
+                final ThumbnailRequest request = thumbnailRequestService.getByUuid(requestUuid);
+                // Cancelled or already done since the batch was put together
+                if (request == null) {
+                  LOGGER.debug("Thumbnail request " + requestUuid + " no longer exists");
+                  continue;
+                }
+                taskTracker.submitTask(
+                    institution,
+                    requestUuid,
+                    new ItemId(request.getItemUuid(), request.getItemVersion()),
+                    request.getHandle());
+              }
+            }
+          });
     }
 
     @Override
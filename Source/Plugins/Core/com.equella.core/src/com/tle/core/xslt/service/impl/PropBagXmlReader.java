@@ -0,0 +1,322 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.xslt.service.impl;
+
+import com.dytech.devlib.PropBagEx;
+import java.util.ArrayList;
+import java.util.List;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+/**
+ * Generates SAX events straight from the DOM of a {@link PropBagEx}, so it can be transformed
+ * without being written out as a string and parsed again. The events are the same as parsing the
+ * output of {@link PropBagEx#toString()} would give: PropBagEx documents are not namespace aware,
+ * so namespaces are resolved from the xmlns attributes as a parser would, invalid XML characters
+ * are dropped and line endings are normalised.
+ *
+ * <p>Use with a {@link javax.xml.transform.sax.SAXSource}. Any {@link InputSource} passed to parse
+ * is ignored.
+ */
+@SuppressWarnings("nls")
+final class PropBagXmlReader implements XMLReader {
+  private static final String NAMESPACES = "http://xml.org/sax/features/namespaces";
+  private static final String NAMESPACE_PREFIXES = "http://xml.org/sax/features/namespace-prefixes";
+  private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+  private final PropBagEx propBag;
+  private final NamespaceSupport namespaces = new NamespaceSupport();
+
+  private ContentHandler contentHandler;
+  private LexicalHandler lexicalHandler;
+  private DTDHandler dtdHandler;
+  private EntityResolver entityResolver;
+  private ErrorHandler errorHandler;
+
+  PropBagXmlReader(PropBagEx propBag) {
+    this.propBag = propBag;
+  }
+
+  @Override
+  public void parse(InputSource input) throws SAXException {
+    parse();
+  }
+
+  @Override
+  public void parse(String systemId) throws SAXException {
+    parse();
+  }
+
+  private void parse() throws SAXException {
+    final Element root = propBag.getRootElement();
+    namespaces.reset();
+    contentHandler.startDocument();
+    if (root.getOwnerDocument().getDocumentElement() == root) {
+      // Like PropBagEx.toString(), include any comments and processing instructions around the root
+      for (Node child = root.getOwnerDocument().getFirstChild();
+          child != null;
+          child = child.getNextSibling()) {
+        node(child);
+      }
+    } else {
+      element(root);
+    }
+    contentHandler.endDocument();
+  }
+
+  private void node(Node node) throws SAXException {
+    switch (node.getNodeType()) {
+      case Node.ELEMENT_NODE:
+        element((Element) node);
+        break;
+      case Node.TEXT_NODE:
+        characters(node.getNodeValue());
+        break;
+      case Node.CDATA_SECTION_NODE:
+        if (lexicalHandler != null) {
+          lexicalHandler.startCDATA();
+        }
+        characters(node.getNodeValue());
+        if (lexicalHandler != null) {
+          lexicalHandler.endCDATA();
+        }
+        break;
+      case Node.COMMENT_NODE:
+        if (lexicalHandler != null) {
+          final char[] comment = text(node.getNodeValue()).toCharArray();
+          lexicalHandler.comment(comment, 0, comment.length);
+        }
+        break;
+      case Node.PROCESSING_INSTRUCTION_NODE:
+        contentHandler.processingInstruction(node.getNodeName(), text(node.getNodeValue()));
+        break;
+      case Node.ENTITY_REFERENCE_NODE:
+        children(node);
+        break;
+      default:
+        // Document types aren't reported
+        break;
+    }
+  }
+
+  private void children(Node parent) throws SAXException {
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      node(child);
+    }
+  }
+
+  private void element(Element element) throws SAXException {
+    namespaces.pushContext();
+    final NamedNodeMap attrs = element.getAttributes();
+    final int count = attrs.getLength();
+
+    final List<String> prefixes = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final Attr attr = (Attr) attrs.item(i);
+      final String prefix = getDeclaredPrefix(attr.getNodeName());
+      if (prefix != null) {
+        final String uri = attribute(attr.getNodeValue());
+        namespaces.declarePrefix(prefix, uri);
+        prefixes.add(prefix);
+        contentHandler.startPrefixMapping(prefix, uri);
+      }
+    }
+
+    final AttributesImpl atts = new AttributesImpl();
+    for (int i = 0; i < count; i++) {
+      final Attr attr = (Attr) attrs.item(i);
+      final String qName = attr.getNodeName();
+      if (getDeclaredPrefix(qName) == null) {
+        final String[] name = processName(qName, true);
+        atts.addAttribute(name[0], name[1], name[2], "CDATA", attribute(attr.getNodeValue()));
+      }
+    }
+
+    final String[] name = processName(element.getNodeName(), false);
+    contentHandler.startElement(name[0], name[1], name[2], atts);
+    children(element);
+    contentHandler.endElement(name[0], name[1], name[2]);
+
+    for (String prefix : prefixes) {
+      contentHandler.endPrefixMapping(prefix);
+    }
+    namespaces.popContext();
+  }
+
+  /** @return The prefix declared by an xmlns attribute, or null if it's a normal attribute. */
+  private static String getDeclaredPrefix(String qName) {
+    if (qName.equals("xmlns")) {
+      return "";
+    }
+    return qName.startsWith("xmlns:") ? qName.substring(6) : null;
+  }
+
+  private String[] processName(String qName, boolean attribute) throws UnboundPrefixException {
+    final String[] name = namespaces.processName(qName, new String[3], attribute);
+    if (name == null) {
+      throw new UnboundPrefixException(qName);
+    }
+    return name;
+  }
+
+  private void characters(String value) throws SAXException {
+    final char[] chars = text(value).toCharArray();
+    if (chars.length > 0) {
+      contentHandler.characters(chars, 0, chars.length);
+    }
+  }
+
+  /** Drops invalid characters and normalises line endings, as parsing would. */
+  private static String text(String value) {
+    final StringBuilder text = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '\r') {
+        text.append('\n');
+        if (i + 1 < value.length() && value.charAt(i + 1) == '\n') {
+          i++;
+        }
+      } else if (isValid(c)) {
+        text.append(c);
+      }
+    }
+    return text.toString();
+  }
+
+  /** Drops invalid characters and normalises whitespace, as parsing an attribute value would. */
+  private static String attribute(String value) {
+    final String text = text(value);
+    final StringBuilder attribute = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      attribute.append(c == '\n' || c == '\t' ? ' ' : c);
+    }
+    return attribute.toString();
+  }
+
+  /** The characters PropBagEx keeps when it writes XML. */
+  private static boolean isValid(char c) {
+    return c == 0x9
+        || c == 0xA
+        || c == 0xD
+        || (c >= 0x20 && c <= 0xD7FF)
+        || (c >= 0xE000 && c <= 0xFFFD);
+  }
+
+  @Override
+  public boolean getFeature(String name) throws SAXNotRecognizedException {
+    if (NAMESPACES.equals(name)) {
+      return true;
+    }
+    if (NAMESPACE_PREFIXES.equals(name)) {
+      return false;
+    }
+    throw new SAXNotRecognizedException(name);
+  }
+
+  @Override
+  public void setFeature(String name, boolean value)
+      throws SAXNotRecognizedException, SAXNotSupportedException {
+    if (getFeature(name) != value) {
+      throw new SAXNotSupportedException(name + " cannot be " + value);
+    }
+  }
+
+  @Override
+  public Object getProperty(String name) throws SAXNotRecognizedException {
+    if (LEXICAL_HANDLER.equals(name)) {
+      return lexicalHandler;
+    }
+    throw new SAXNotRecognizedException(name);
+  }
+
+  @Override
+  public void setProperty(String name, Object value) throws SAXNotRecognizedException {
+    if (!LEXICAL_HANDLER.equals(name)) {
+      throw new SAXNotRecognizedException(name);
+    }
+    lexicalHandler = (LexicalHandler) value;
+  }
+
+  @Override
+  public void setEntityResolver(EntityResolver resolver) {
+    this.entityResolver = resolver;
+  }
+
+  @Override
+  public EntityResolver getEntityResolver() {
+    return entityResolver;
+  }
+
+  @Override
+  public void setDTDHandler(DTDHandler handler) {
+    this.dtdHandler = handler;
+  }
+
+  @Override
+  public DTDHandler getDTDHandler() {
+    return dtdHandler;
+  }
+
+  @Override
+  public void setContentHandler(ContentHandler handler) {
+    this.contentHandler = handler;
+  }
+
+  @Override
+  public ContentHandler getContentHandler() {
+    return contentHandler;
+  }
+
+  @Override
+  public void setErrorHandler(ErrorHandler handler) {
+    this.errorHandler = handler;
+  }
+
+  @Override
+  public ErrorHandler getErrorHandler() {
+    return errorHandler;
+  }
+
+  /**
+   * Thrown for a name with a prefix that isn't declared. Parsing the XML would fail too, so callers
+   * can fall back to doing that to get the same error.
+   */
+  static final class UnboundPrefixException extends SAXException {
+    private static final long serialVersionUID = 1L;
+
+    UnboundPrefixException(String qName) {
+      super("The prefix of " + qName + " is not bound to a namespace");
+    }
+  }
+}
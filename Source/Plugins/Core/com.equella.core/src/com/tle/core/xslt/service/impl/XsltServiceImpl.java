@@ -21,21 +21,24 @@ package com.tle.core.xslt.service.impl;
 import com.dytech.devlib.BadCharacterFilterReader;
 import com.dytech.devlib.Md5;
 import com.dytech.devlib.PropBagEx;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.Closeables;
-import com.tle.common.Pair;
 import com.tle.common.filesystem.handle.FileHandle;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.filesystem.InstitutionFile;
 import com.tle.core.guice.Bind;
 import com.tle.core.services.FileSystemService;
 import com.tle.core.xslt.service.XsltService;
+import com.tle.core.xslt.service.impl.PropBagXmlReader.UnboundPrefixException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.xml.transform.OutputKeys;
@@ -45,23 +48,29 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import org.xml.sax.InputSource;
 
 /** @author Nicholas Read */
 @Bind(XsltService.class)
 @Singleton
 public final class XsltServiceImpl implements XsltService {
-  private final Map<String, Pair<Long, Templates>> xsltCache;
-  private final Map<String, Templates> stringXsltCache;
+  private static final int MAX_CACHED_XSLTS = 500;
+  /** How often a cached XSLT from the filestore is checked for modification. */
+  private static final long RECHECK_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+  private final Cache<String, CompiledXslt> xsltCache;
+  private final Cache<String, Templates> stringXsltCache;
 
   private final TransformerFactory factory;
 
   @Inject private FileSystemService fileSystemService;
 
   public XsltServiceImpl() {
-    xsltCache = new WeakHashMap<String, Pair<Long, Templates>>();
-    stringXsltCache = new WeakHashMap<String, Templates>();
+    xsltCache = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_XSLTS).build();
+    stringXsltCache = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_XSLTS).build();
     factory = TransformerFactory.newInstance();
   }
 
@@ -74,11 +83,17 @@ public final class XsltServiceImpl implements XsltService {
   public String transform(
       final FileHandle handle, final String xslt, final Reader input, final URIResolver resolver) {
     StreamSource source = null;
+    Thread currentThread = Thread.currentThread();
+    ClassLoader oldLoader = currentThread.getContextClassLoader();
+    currentThread.setContextClassLoader(getClass().getClassLoader());
     try {
       source = getSource(input);
-      return transformFromFileHandle(handle, xslt, source, resolver, false);
+      final StringWriter writer = new StringWriter();
+      doTransform(newTransformer(getTemplates(handle, xslt), false), source, resolver, writer);
+      return writer.toString();
     } finally {
       closeSource(source);
+      currentThread.setContextClassLoader(oldLoader);
     }
   }
 
@@ -98,15 +113,15 @@ public final class XsltServiceImpl implements XsltService {
       final PropBagEx input,
       final URIResolver resolver,
       boolean omitXmlDeclaration) {
-    StreamSource source = null;
+    Thread currentThread = Thread.currentThread();
+    ClassLoader oldLoader = currentThread.getContextClassLoader();
+    currentThread.setContextClassLoader(getClass().getClassLoader());
     try {
-      // PropBag is safe, it will never give us bad XML chars, hence there
-      // is no need to wrap with BadCharacterFilterReader, it would just
-      // be overhead
-      source = new StreamSource(new StringReader(input.toString()));
-      return transformFromFileHandle(handle, xslt, source, resolver, omitXmlDeclaration);
+      final StringWriter writer = new StringWriter();
+      transformPropBag(getTemplates(handle, xslt), omitXmlDeclaration, input, resolver, writer);
+      return writer.toString();
     } finally {
-      closeSource(source);
+      currentThread.setContextClassLoader(oldLoader);
     }
   }
 
@@ -134,113 +149,117 @@ public final class XsltServiceImpl implements XsltService {
   }
 
   /**
-   * Performs the XSLT transformation, possibly using a pre-compiled version. Note: Does not close
-   * the supplied source
+   * Gets the compiled XSLT from the cache, compiling it if it's not there or the file has been
+   * modified. Lookups don't block each other, and the modification time of the file is only checked
+   * every {@link #RECHECK_MILLIS}.
    */
-  private String transformFromFileHandle(
-      final FileHandle handle,
-      final String xslt,
-      final StreamSource source,
-      final URIResolver resolver,
-      boolean omitXmlDeclaration) {
-    StreamSource xsltStream = null;
-    Thread currentThread = Thread.currentThread();
-    ClassLoader oldLoader = currentThread.getContextClassLoader();
-    currentThread.setContextClassLoader(getClass().getClassLoader());
+  private Templates getTemplates(final FileHandle handle, final String xslt) {
+    final String key = getKey(handle, xslt);
     try {
-      Pair<Long, Templates> compiledXslt = null;
-      Templates templates = null;
-      final String key = getKey(handle, xslt);
-      synchronized (xsltCache) {
-        final long modified = fileSystemService.lastModified(handle, xslt);
-        compiledXslt = xsltCache.get(key);
-        if (compiledXslt != null) {
-          if (compiledXslt.getFirst() != modified) {
-            compiledXslt = null;
-          } else {
-            templates = compiledXslt.getSecond();
-          }
-        }
-
-        if (compiledXslt == null) {
-          xsltStream = getSource(fileSystemService.read(handle, xslt));
-          templates = factory.newTemplates(xsltStream);
-          xsltCache.put(key, new Pair<Long, Templates>(modified, templates));
+      final CompiledXslt cached = xsltCache.getIfPresent(key);
+      if (cached != null) {
+        if (!cached.isModified(handle, xslt)) {
+          return cached.templates;
         }
+        xsltCache.asMap().remove(key, cached);
       }
-      // Not sure it can be
-      if (templates == null) {
-        throw new Error("templates is null");
-      }
-      Transformer transformersMoreThanMeetsTheEye = templates.newTransformer();
-      transformersMoreThanMeetsTheEye.setOutputProperty(
-          OutputKeys.OMIT_XML_DECLARATION, omitXmlDeclaration ? "yes" : "no");
-      return doTransform(transformersMoreThanMeetsTheEye, source, resolver);
+      return xsltCache.get(key, () -> compile(handle, xslt)).templates;
     } catch (final Exception ex) {
       throw new RuntimeException("Error compiling XSLT", ex);
+    }
+  }
+
+  private CompiledXslt compile(final FileHandle handle, final String xslt) throws Exception {
+    // Stat before reading so a concurrent modification is picked up by the next check
+    final long modified = fileSystemService.lastModified(handle, xslt);
+    final StreamSource xsltStream = getSource(fileSystemService.read(handle, xslt));
+    try {
+      return new CompiledXslt(modified, factory.newTemplates(xsltStream));
     } finally {
       closeSource(xsltStream);
-      currentThread.setContextClassLoader(oldLoader);
     }
   }
 
   @Override
   public String transformFromXsltString(String xslt, PropBagEx input) {
-    StreamSource xsltStream = null;
-    StreamSource inputSource = null;
-    String cacheKey = new Md5(xslt).getStringDigest();
     Thread currentThread = Thread.currentThread();
     ClassLoader oldLoader = currentThread.getContextClassLoader();
     currentThread.setContextClassLoader(getClass().getClassLoader());
 
     try {
-      Templates templates = null;
-      Templates compiledXslt = null;
+      final StringWriter writer = new StringWriter();
+      transformPropBag(getTemplates(xslt), null, input, null, writer);
+      return writer.toString();
+    } finally {
+      currentThread.setContextClassLoader(oldLoader);
+    }
+  }
 
-      synchronized (stringXsltCache) {
-        compiledXslt = stringXsltCache.get(cacheKey);
-        if (compiledXslt != null) {
-          templates = compiledXslt;
-        }
+  private Templates getTemplates(final String xslt) {
+    try {
+      return stringXsltCache.get(
+          new Md5(xslt).getStringDigest(),
+          () -> factory.newTemplates(getSource(new StringReader(xslt))));
+    } catch (final Exception ex) {
+      throw new RuntimeException("Error compiling XSLT", ex);
+    }
+  }
 
-        if (compiledXslt == null) {
-          xsltStream = getSource(new StringReader(xslt));
-          templates = factory.newTemplates(xsltStream);
-          stringXsltCache.put(cacheKey, templates);
-        }
+  /**
+   * Transforms the DOM of the PropBagEx without serialising and parsing it again. Namespace
+   * declarations are only attributes in a PropBagEx, so if it uses a prefix without declaring it
+   * then it's transformed the old way to get the same error as before.
+   *
+   * @param omitXmlDeclaration null to leave the XSLT to decide
+   */
+  private void transformPropBag(
+      final Templates templates,
+      final Boolean omitXmlDeclaration,
+      final PropBagEx input,
+      final URIResolver resolver,
+      final Writer output) {
+    try {
+      final Source source = new SAXSource(new PropBagXmlReader(input), new InputSource());
+      doTransform(newTransformer(templates, omitXmlDeclaration), source, resolver, output);
+    } catch (final RuntimeException ex) {
+      if (!Throwables.getCausalChain(ex).stream()
+          .anyMatch(UnboundPrefixException.class::isInstance)) {
+        throw ex;
       }
+      // The source is read in full before anything is written, so the output is still untouched
+      final StreamSource source = new StreamSource(new StringReader(input.toString()));
+      doTransform(newTransformer(templates, omitXmlDeclaration), source, resolver, output);
+    }
+  }
 
-      inputSource = getSource(new StringReader(input.toString()));
-      // Not sure it can be
-      if (templates == null) {
-        throw new Error("templates is null");
+  private Transformer newTransformer(final Templates templates, final Boolean omitXmlDeclaration) {
+    try {
+      final Transformer transformersMoreThanMeetsTheEye = templates.newTransformer();
+      if (omitXmlDeclaration != null) {
+        transformersMoreThanMeetsTheEye.setOutputProperty(
+            OutputKeys.OMIT_XML_DECLARATION, omitXmlDeclaration ? "yes" : "no");
       }
-      return doTransform(templates.newTransformer(), inputSource, null);
-    } catch (Exception ex) {
+      return transformersMoreThanMeetsTheEye;
+    } catch (final TransformerException ex) {
       throw new RuntimeException("Error compiling XSLT", ex);
-    } finally {
-      closeSource(inputSource);
-      currentThread.setContextClassLoader(oldLoader);
     }
   }
 
   /** Performs the XSLT transformation. */
-  private String doTransform(
-      final Transformer transformer, final Source input, final URIResolver resolver) {
-    final StringWriter writer = new StringWriter();
-    final StreamResult output = new StreamResult(writer);
-
+  private void doTransform(
+      final Transformer transformer,
+      final Source input,
+      final URIResolver resolver,
+      final Writer output) {
     if (resolver != null) {
       transformer.setURIResolver(resolver);
     }
 
     try {
-      transformer.transform(input, output);
+      transformer.transform(input, new StreamResult(output));
     } catch (final TransformerException ex) {
       throw new RuntimeException("Error transforming XSLT", ex);
     }
-
-    return writer.toString();
   }
 
   private String getKey(final FileHandle handle, final String xslt) {
@@ -273,15 +292,29 @@ public final class XsltServiceImpl implements XsltService {
 
   @Override
   public void cacheXslt(String xslt) {
-    final String cacheKey = new Md5(xslt).getStringDigest();
-    synchronized (stringXsltCache) {
-      if (!stringXsltCache.containsKey(cacheKey)) {
-        try {
-          stringXsltCache.put(cacheKey, factory.newTemplates(getSource(new StringReader(xslt))));
-        } catch (final TransformerException ex) {
-          throw new RuntimeException("Error compiling XSLT", ex);
-        }
+    getTemplates(xslt);
+  }
+
+  private final class CompiledXslt {
+    private final long modified;
+    private final Templates templates;
+    private volatile long checked = System.currentTimeMillis();
+
+    CompiledXslt(long modified, Templates templates) {
+      this.modified = modified;
+      this.templates = templates;
+    }
+
+    boolean isModified(FileHandle handle, String xslt) {
+      final long now = System.currentTimeMillis();
+      if (now - checked < RECHECK_MILLIS) {
+        return false;
+      }
+      if (fileSystemService.lastModified(handle, xslt) != modified) {
+        return true;
       }
+      checked = now;
+      return false;
     }
   }
 }
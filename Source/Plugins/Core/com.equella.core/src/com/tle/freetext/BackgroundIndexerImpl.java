@@ -19,136 +19,225 @@
 package com.tle.freetext;
 
 import com.google.common.collect.Lists;
-import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import com.tle.beans.Institution;
 import com.tle.beans.item.ItemIdKey;
-import com.tle.common.Check;
+import com.tle.common.NamedThreadFactory;
 import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.freetext.indexer.IndexingExtension;
 import com.tle.core.guice.BindFactory;
 import com.tle.core.hibernate.CurrentDataSource;
 import com.tle.core.hibernate.DataSourceHolder;
+import com.tle.core.institution.RunAsInstitution;
 import com.tle.core.system.service.SchemaDataSourceService;
 import com.tle.freetext.ItemSyncer.ItemSyncFactory;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
+import javax.inject.Named;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Indexes items in stages, each with its own threads and queue:
+ *
+ * <ol>
+ *   <li>prepare - loads batches of items from the database
+ *   <li>fast - runs {@link IndexingExtension#indexFast(IndexedItem)} on each item
+ *   <li>slow - runs {@link IndexingExtension#indexSlow(IndexedItem)}, e.g. attachment text
+ *   <li>write - adds batches of items to the Lucene index, on the thread calling {@link #run()}
+ * </ol>
+ *
+ * Items are queued in order of their expected return time, so items being indexed "now" jump ahead
+ * of background indexing, and an item which is overdue is written to the index as soon as it has
+ * been fast indexed. Once a stage's queue is full the stage feeding it waits, and {@link
+ * #isRoomForItems(int)} holds back the synchronisers when too many items are in the pipeline.
+ */
+@SuppressWarnings("nls")
 public class BackgroundIndexerImpl implements BackgroundIndexer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundIndexerImpl.class);
+
   private static final int BATCH_PREPARE = 10;
 
   protected static final int MAX_WAITING = 10000;
-
-  private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundIndexerImpl.class);
-
-  private static final int MAXTHREADS = 4;
-  private static final int REAL_MAXTHREADS = MAXTHREADS * 2;
-  private static final int MAXBATCH = 50;
+  private static final int STAGE_CAPACITY = 500;
 
   private static final long WAITTIME = TimeUnit.SECONDS.toMillis(2);
+  private static final long OVERDUE_CHECKTIME = 500;
   private static final long CHECKTIME = TimeUnit.SECONDS.toMillis(15);
   private static final long INTERRUPT_MILLIS = TimeUnit.MINUTES.toMillis(2);
 
+  private static final String STAGE_PREPARE = "prepare";
+  private static final String STAGE_FAST = "fast";
+  private static final String STAGE_SLOW = "slow";
+  private static final String STAGE_WRITE = "write";
+
+  private static final Gauge QUEUE_SIZE =
+      Gauge.build()
+          .name("indexer_queue_size")
+          .help("Number of items waiting for each stage of the background indexer")
+          .labelNames("schema", "stage")
+          .register();
+  private static final Counter STAGE_ITEMS =
+      Counter.build()
+          .name("indexer_items_total")
+          .help("Number of items which have been through each stage of the background indexer")
+          .labelNames("schema", "stage")
+          .register();
+  private static final Counter ERRORS =
+      Counter.build()
+          .name("indexer_errors_total")
+          .help("Number of items the background indexer failed to index")
+          .labelNames("schema")
+          .register();
+
   @Inject private IndexedItemFactory indexedItemFactory;
   @Inject private ItemSyncFactory syncerFactory;
-  @Inject private Provider<IndexerThread> indexerThreadProvider;
   @Inject private FreetextIndex freetextIndex;
+  @Inject private RunAsInstitution runAs;
 
-  private Object listLock = new Object();
-  private Object threadingLock = new Object();
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.indexer.prepareThreads")
+  private int prepareThreads = 1;
 
-  // Priority list of items waiting. Purposeful choice of LinkedList instead
-  // of interface
-  private LinkedList<IndexedItem> waitingList = new LinkedList<IndexedItem>(); // NOSONAR
-  // Items needing to be indexed
-  private Map<FullIdKey, IndexedItem> waitingMap = new HashMap<FullIdKey, IndexedItem>();
-  // Items currently being indexed or waiting to be added to index
-  private Map<FullIdKey, IndexedItem> indexingMap = new HashMap<FullIdKey, IndexedItem>();
-  // Items finished indexing, but waiting to be added to lucene
-  private LinkedList<IndexedItem> indexedList = new LinkedList<IndexedItem>(); // NOSONAR
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.indexer.fastThreads")
+  private int fastThreads = 2;
 
-  private final Stack<IndexerThread> freeThreads = new Stack<IndexerThread>();
-  private final List<IndexerThread> inuseThreads = new LinkedList<IndexerThread>();
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.indexer.slowThreads")
+  private int slowThreads = 4;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("freetext.indexer.batchSize")
+  private int batchSize = 50;
+
+  // Every item in the pipeline, until it has been completely written to the index
+  private final Map<FullIdKey, IndexedItem> tracked = new ConcurrentHashMap<>();
+  // What each stage thread is currently working on
+  private final Map<Thread, Job> running = new ConcurrentHashMap<>();
+
+  private final IndexingQueue prepareQueue;
+  private final IndexingQueue fastQueue;
+  private final IndexingQueue slowQueue;
+  private final IndexingQueue writeQueue;
+
+  private Collection<IndexingExtension> extensions;
 
-  private int indexerThreads;
   private long nextCheck;
+  private long nextOverdueCheck;
 
-  private int docsDone;
+  private final AtomicInteger docsDone = new AtomicInteger();
   private int docsDoneSinceLast;
-  private int errors;
-  private int deletions;
-  private boolean dead;
-  private volatile boolean wakeup;
+  private final AtomicInteger errors = new AtomicInteger();
+  private final AtomicInteger deletions = new AtomicInteger();
+  private volatile boolean dead;
 
   private final DataSourceHolder dataSource;
   private final long schemaId;
+  private final String schemaLabel;
   private final SchemaDataSourceService schemaService;
 
   private ExecutorService syncFullExecutor = Executors.newCachedThreadPool();
+  private final List<ExecutorService> stageExecutors = new CopyOnWriteArrayList<>();
 
   @AssistedInject
   public BackgroundIndexerImpl(@Assisted long schemaId, SchemaDataSourceService schemaService) {
     this.schemaId = schemaId;
     this.schemaService = schemaService;
     dataSource = schemaService.getDataSourceForId(schemaId);
+
+    schemaLabel = Long.toString(schemaId);
+    prepareQueue = createQueue(STAGE_PREPARE);
+    fastQueue = createQueue(STAGE_FAST);
+    slowQueue = createQueue(STAGE_SLOW);
+    writeQueue = createQueue(STAGE_WRITE);
+  }
+
+  private IndexingQueue createQueue(String stage) {
+    return new IndexingQueue(STAGE_CAPACITY, QUEUE_SIZE.labels(schemaLabel, stage));
   }
 
   @Override
   public void run() {
     CurrentDataSource.set(dataSource);
-    while (true) {
+    extensions = freetextIndex.getIndexingExtensions();
+
+    startStage(STAGE_PREPARE, prepareThreads, this::prepareNext);
+    startStage(STAGE_FAST, fastThreads, this::fastIndexNext);
+    startStage(STAGE_SLOW, slowThreads, this::slowIndexNext);
+
+    while (!dead) {
       try {
-        if (dead) {
-          LOGGER.debug("dead, returning"); // $NON-NLS-1$
-          return;
-        }
+        writeNextBatch();
+        checkTimers();
+      } catch (InterruptedException e) {
+        LOGGER.error("Interrupted");
+      } catch (Throwable t) {
+        LOGGER.error("Unhandled exception during event loop", t);
+      }
+    }
+    LOGGER.debug("dead, returning");
+  }
 
-        wakeup = false;
-        boolean wait = processEvent();
-        if (wait && !wakeup) {
-          try {
-            synchronized (this) {
-              if (!wakeup) {
-                wait(WAITTIME);
+  private void startStage(String stage, int threads, StageWorker worker) {
+    final NamedThreadFactory threadFactory =
+        new NamedThreadFactory("Indexer-" + stage + "-" + schemaId);
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread thread = threadFactory.newThread(r);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    for (int i = 0; i < threads; i++) {
+      executor.execute(
+          () -> {
+            CurrentDataSource.set(dataSource);
+            while (!dead) {
+              try {
+                worker.processNext();
+              } catch (InterruptedException e) {
+                if (!dead) {
+                  LOGGER.error("Interrupted");
+                }
+              } catch (Throwable t) {
+                LOGGER.error("Unhandled exception in " + stage + " indexing stage", t);
+              } finally {
+                running.remove(Thread.currentThread());
               }
             }
-          } catch (InterruptedException e) {
-            LOGGER.error("Interrupted"); // $NON-NLS-1$
-          }
-        }
-      } catch (Throwable t) {
-        LOGGER.error("Unhandled exception during event loop", t); // $NON-NLS-1$
-      }
+          });
     }
+    // The workers finish once the indexer is killed
+    executor.shutdown();
+    stageExecutors.add(executor);
   }
 
-  public boolean processEvent() {
-    boolean wait = true;
+  private void checkTimers() {
     long now = System.currentTimeMillis();
-    boolean needsCheck = now >= nextCheck;
-
-    wait &= checkNewIndexThreads(now);
-    wait &= checkBatchIndex(now);
-    wait &= checkSlowIndexes(now);
-
-    if (needsCheck) {
+    if (now >= nextOverdueCheck) {
+      nextOverdueCheck = now + OVERDUE_CHECKTIME;
+      checkOverdue(now);
+    }
+    if (now >= nextCheck) {
       nextCheck = now + CHECKTIME;
       statusUpdate(now);
     }
-    return wait;
   }
 
   @Override
@@ -162,225 +251,284 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     schemaService.executeWithSchema(schemaId, syncerFactory.create(institutions, since, this));
   }
 
-  @SuppressWarnings("nls")
-  private boolean checkSlowIndexes(long now) {
-    synchronized (threadingLock) {
-      for (IndexerThread thread : inuseThreads) {
-        IndexedItem indexedItem = thread.getIndexedItem();
-        if (indexedItem != null) {
-          if (!indexedItem.isOnIndexList()
-              && !indexedItem.isNoLongerCurrent()
-              && !indexedItem.isFinishedAllIndexing()
-              && !indexedItem.isIndexed()
-              && now >= indexedItem.getExpectedReturnTime()) {
-            ItemIdKey itemKey = indexedItem.getItemIdKey();
-            if (indexedItem.isFinishedFastIndexing()) {
-              synchronized (listLock) {
-                if (!indexedItem.isOnIndexList()) {
-                  LOGGER.info("Item overdue: " + itemKey + " indexing now.");
-                  addToIndexedList(indexedItem);
-                }
-              }
-            } else {
-              LOGGER.info("Item overdue: " + itemKey + " but still not \"fast\" indexed.");
-            }
-          }
-        }
+  private void prepareNext() throws InterruptedException {
+    IndexedItem first = prepareQueue.poll(WAITTIME);
+    if (first == null) {
+      return;
+    }
+    List<IndexedItem> batch = Lists.newArrayList(first);
+    prepareQueue.drainTo(batch, BATCH_PREPARE - 1);
+    running.put(Thread.currentThread(), new Job(STAGE_PREPARE, batch.size() + " items"));
+
+    List<IndexedItem> unprepared = Lists.newArrayList();
+    for (IndexedItem item : batch) {
+      if (!item.isPrepared()) {
+        unprepared.add(item);
       }
-      return true;
     }
-  }
+    if (!unprepared.isEmpty()) {
+      populateItemBatch(unprepared);
+    }
+    STAGE_ITEMS.labels(schemaLabel, STAGE_PREPARE).inc(batch.size());
 
-  @SuppressWarnings("nls")
-  private boolean checkBatchIndex(long now) {
-    List<IndexedItem> batch = null;
-    synchronized (listLock) {
-      if (indexedList.isEmpty()) {
-        return true;
+    for (IndexedItem item : batch) {
+      if (item.isNoLongerCurrent()) {
+        continue;
       }
-      boolean overdue = now >= indexedList.element().getExpectedReturnTime();
-      if (indexedList.size() >= MAXBATCH || indexerThreads == 0 || overdue) {
-        int num = 0;
-        if (overdue) {
-          for (IndexedItem indItem : indexedList) {
-            if (now < indItem.getExpectedReturnTime()) {
-              break;
-            }
-            num++;
-          }
-        } else {
-          num = Math.min(MAXBATCH, indexedList.size());
-        }
+      if (!item.isAdd()) {
+        // No longer in the database
+        deletions.incrementAndGet();
+        item.setFinishedAllIndexing(true);
+        queueForWriting(item, true);
+      } else if (item.isErrored()) {
+        addErroredDoc(item);
+      } else {
+        enqueue(fastQueue, item);
+      }
+    }
+  }
 
-        List<IndexedItem> indexBatch = indexedList.subList(0, num);
-        for (IndexedItem item : indexBatch) {
-          item.setOnIndexList(false);
+  private void populateItemBatch(List<IndexedItem> batch) {
+    try {
+      freetextIndex.prepareItemsForIndexing(batch);
+    } catch (Exception t) {
+      LOGGER.error("Failed to prepare batch for indexing, trying one at a time", t);
+      for (IndexedItem item : batch) {
+        try {
+          freetextIndex.prepareItemsForIndexing(Collections.singletonList(item));
+        } catch (Exception e) {
+          LOGGER.error("Failed to prepare " + item.getItemIdKey() + " for indexing", e);
+          item.setError(e);
         }
-        batch = Lists.newArrayList(indexBatch);
-        indexBatch.clear();
-      } else {
-        return true;
       }
     }
+  }
+
+  private void fastIndexNext() throws InterruptedException {
+    final IndexedItem item = fastQueue.poll(WAITTIME);
+    if (item == null) {
+      return;
+    }
+    final Job job = new Job(STAGE_FAST, item.getItemIdKey());
+    running.put(Thread.currentThread(), job);
+    if (item.isDeadlineAfterStart()) {
+      item.setExpectedReturnTime(job.started + item.getTimeAfterStart());
+    }
 
     try {
-      LOGGER.info("Indexing batch of " + batch.size() + " items");
-      freetextIndex.indexBatch(batch);
+      runAs.executeAsSystem(
+          item.getInstitution(),
+          () -> {
+            synchronized (item) {
+              for (IndexingExtension indexer : extensions) {
+                indexer.indexFast(item);
+              }
+              item.notifyAll();
+              item.setFinishedFastIndexing(true);
+            }
+            return null;
+          });
     } catch (Exception e) {
-      LOGGER.error("Serious Error indexing a batch", e);
+      indexingFailed(item, e);
+      return;
     }
-    synchronized (listLock) {
-      for (IndexedItem indexedItem : batch) {
-        if (indexedItem.isFinishedAllIndexing()) {
-          indexingMap.remove(indexedItem.getId());
-        }
-        indexedItem.setIndexed(true);
+    STAGE_ITEMS.labels(schemaLabel, STAGE_FAST).inc();
+    running.remove(Thread.currentThread());
+    enqueue(slowQueue, item);
+  }
+
+  private void slowIndexNext() throws InterruptedException {
+    final IndexedItem item = slowQueue.poll(WAITTIME);
+    if (item == null) {
+      return;
+    }
+    running.put(Thread.currentThread(), new Job(STAGE_SLOW, item.getItemIdKey()));
+
+    try {
+      runAs.executeAsSystem(
+          item.getInstitution(),
+          () -> {
+            for (IndexingExtension indexer : extensions) {
+              indexer.indexSlow(item);
+            }
+            return null;
+          });
+    } catch (Exception e) {
+      indexingFailed(item, e);
+      return;
+    }
+    STAGE_ITEMS.labels(schemaLabel, STAGE_SLOW).inc();
+    docsDone.incrementAndGet();
+    running.remove(Thread.currentThread());
+    addIndexedDoc(item);
+  }
+
+  private void indexingFailed(IndexedItem item, Exception e) {
+    LOGGER.error("Error indexing: " + item.getItemIdKey(), e);
+    item.setError(e);
+    addErroredDoc(item);
+  }
+
+  private void writeNextBatch() throws InterruptedException {
+    IndexedItem first = writeQueue.poll(OVERDUE_CHECKTIME);
+    if (first == null) {
+      return;
+    }
+    final List<IndexedItem> batch = Lists.newArrayList(first);
+    writeQueue.drainTo(batch, batchSize - 1);
+
+    // Give the other stages a chance to fill the batch, unless something is due
+    long lingerUntil = Math.min(System.currentTimeMillis() + WAITTIME, earliestDue(batch));
+    long wait;
+    while (batch.size() < batchSize
+        && isBusy()
+        && (wait = lingerUntil - System.currentTimeMillis()) > 0) {
+      IndexedItem next = writeQueue.poll(Math.min(wait, OVERDUE_CHECKTIME));
+      if (next != null) {
+        batch.add(next);
+        writeQueue.drainTo(batch, batchSize - batch.size());
+        lingerUntil = Math.min(lingerUntil, earliestDue(batch));
       }
-      return false;
-    }
-  }
-
-  private boolean checkNewIndexThreads(long now) {
-    IndexedItem item = null;
-    List<IndexedItem> batch = null;
-    synchronized (listLock) {
-      if (!waitingList.isEmpty()
-          && indexerThreads < REAL_MAXTHREADS
-          && (indexerThreads < MAXTHREADS
-              || now >= waitingList.element().getExpectedReturnTime())) {
-        item = waitingList.get(0);
-        if (!item.isPrepared()) {
-          int batchSize = BATCH_PREPARE;
-          if (waitingList.size() < batchSize) {
-            batchSize = waitingList.size();
-          }
-          batch = Lists.newArrayList(waitingList.subList(0, batchSize));
-        }
-      } else {
-        return true;
+      checkTimers();
+    }
+
+    for (IndexedItem item : batch) {
+      synchronized (item) {
+        item.setOnIndexList(false);
       }
     }
 
-    if (!Check.isEmpty(batch)) {
-      populateItemBatch(batch);
+    try {
+      LOGGER.info("Indexing batch of " + batch.size() + " items");
+      freetextIndex.indexBatch(batch);
+    } catch (Exception e) {
+      LOGGER.error("Serious Error indexing a batch", e);
     }
+    STAGE_ITEMS.labels(schemaLabel, STAGE_WRITE).inc(batch.size());
 
-    synchronized (listLock) {
-      if (item.isNoLongerCurrent()) {
-        return false;
+    for (IndexedItem item : batch) {
+      if (item.isFinishedAllIndexing()) {
+        untrack(item);
       }
-      waitingList.remove(item);
-      FullIdKey idKey = item.getId();
-      waitingMap.remove(idKey);
-      if (item.isAdd()) {
-        indexingMap.put(idKey, item);
+      item.setIndexed(true);
+    }
+  }
 
-        if (item.isErrored()) {
-          addErroredDoc(item);
-        } else {
-          IndexerThread indexerThread = getIndexerThread();
-          indexerThread.startIndexing(item);
-        }
-      } else {
-        indexingMap.put(idKey, item);
-        item.setFinishedAllIndexing(true);
-        addToIndexedList(item);
-      }
-      return false;
+  private static long earliestDue(List<IndexedItem> items) {
+    long due = Long.MAX_VALUE;
+    for (IndexedItem item : items) {
+      due = Math.min(due, item.getExpectedReturnTime());
     }
+    return due;
   }
 
-  @SuppressWarnings("nls")
-  private void populateItemBatch(List<IndexedItem> batch) {
-    try {
-      freetextIndex.prepareItemsForIndexing(batch);
-    } catch (Exception t) {
-      LOGGER.error("Failed to prepare batch for indexing, trying 1", t);
-      freetextIndex.prepareItemsForIndexing(batch.subList(0, 1));
+  /** @return true if there are items still to reach the write stage */
+  private boolean isBusy() {
+    return !running.isEmpty()
+        || prepareQueue.size() > 0
+        || fastQueue.size() > 0
+        || slowQueue.size() > 0;
+  }
+
+  /** Writes overdue items which have been fast indexed, without waiting for the slow stage. */
+  private void checkOverdue(long now) {
+    for (IndexedItem item : tracked.values()) {
+      if (item.isFinishedFastIndexing()
+          && !item.isOnIndexList()
+          && !item.isNoLongerCurrent()
+          && !item.isFinishedAllIndexing()
+          && !item.isIndexed()
+          && now >= item.getExpectedReturnTime()) {
+        LOGGER.info("Item overdue: " + item.getItemIdKey() + " indexing now.");
+        queueForWriting(item, false);
+      }
     }
   }
 
-  @SuppressWarnings("nls")
   private void statusUpdate(long now) {
-    if (docsDoneSinceLast != docsDone || indexerThreads > 0) {
-      docsDoneSinceLast = docsDone;
+    final int done = docsDone.get();
+    if (docsDoneSinceLast != done || !running.isEmpty()) {
+      docsDoneSinceLast = done;
       LOGGER.info(
           "Report: "
-              + indexerThreads
+              + running.size()
               + " threads running, "
-              + waitingList.size()
-              + " documents waiting, "
-              + docsDone
+              + prepareQueue.size()
+              + " documents waiting to load, "
+              + fastQueue.size()
+              + " waiting for fast indexing, "
+              + slowQueue.size()
+              + " waiting for slow indexing, "
+              + writeQueue.size()
+              + " waiting to be written, "
+              + done
               + " done overall, "
-              + errors
+              + errors.get()
               + " errors, "
-              + deletions
+              + deletions.get()
               + " docs in Index but not in database");
-      synchronized (threadingLock) {
-        Iterator<IndexerThread> iter = inuseThreads.iterator();
-        while (iter.hasNext()) {
-          IndexerThread thread = iter.next();
-          long millis = now - thread.getStarted();
-          if (!thread.isAlive()) {
-            LOGGER.error("Thread died:" + thread + " was indexing " + thread.getItemId());
-            iter.remove();
-            indexerThreads--;
-          } else {
-            if (millis > INTERRUPT_MILLIS) {
-              Exception exception = new Exception();
-              exception.setStackTrace(thread.getStackTrace());
-              LOGGER.warn("Thread taking too long:" + thread, exception);
-            }
-            LOGGER.info(
-                "Thread "
-                    + thread
-                    + " indexing "
-                    + thread.getItemId()
-                    + " and has been for "
-                    + millis
-                    + " milliseconds");
-          }
+      for (Map.Entry<Thread, Job> entry : running.entrySet()) {
+        final Thread thread = entry.getKey();
+        final Job job = entry.getValue();
+        long millis = now - job.started;
+        if (millis > INTERRUPT_MILLIS) {
+          Exception exception = new Exception();
+          exception.setStackTrace(thread.getStackTrace());
+          LOGGER.warn("Thread taking too long:" + thread, exception);
         }
+        LOGGER.info(
+            "Thread "
+                + thread
+                + " "
+                + job.stage
+                + " indexing "
+                + job.what
+                + " and has been for "
+                + millis
+                + " milliseconds");
       }
     }
   }
 
-  private IndexerThread getIndexerThread() {
-    synchronized (threadingLock) {
-      indexerThreads++;
-      IndexerThread thread;
-      if (freeThreads.size() == 0) {
-        thread = indexerThreadProvider.get();
-        thread.setNumber(inuseThreads.size());
-        thread.setBackground(this);
-        thread.setExtensions(freetextIndex.getIndexingExtensions());
-        thread.start();
-      } else {
-        thread = freeThreads.pop();
+  /** Items someone is waiting on skip ahead of full queues. */
+  private void enqueue(IndexingQueue queue, IndexedItem item) throws InterruptedException {
+    if (item.isDeadlineAfterStart()) {
+      // Only refused once the indexer has been killed, when the item no longer matters
+      queue.put(item);
+    } else {
+      queue.force(item);
+    }
+  }
+
+  private void queueForWriting(IndexedItem item, boolean wait) {
+    synchronized (item) {
+      if (item.isOnIndexList()) {
+        return;
       }
-      LOGGER.debug("**new inuse thread added**"); // $NON-NLS-1$
-      inuseThreads.add(thread);
-      return thread;
+      item.setOnIndexList(true);
+    }
+    if (!wait) {
+      writeQueue.force(item);
+      return;
+    }
+    try {
+      enqueue(writeQueue, item);
+    } catch (InterruptedException e) {
+      writeQueue.force(item);
+      Thread.currentThread().interrupt();
     }
   }
 
-  /*
-   * (non-Javadoc)
-   * @see
-   * com.tle.freetext.BackgroundIndexer#addToQueue(com.tle.freetext.IndexedItem
-   * )
-   */
+  private void untrack(IndexedItem item) {
+    // IndexedItem equality is by ID, but only this instance may be removed
+    tracked.computeIfPresent(item.getId(), (id, current) -> current == item ? null : current);
+  }
+
   @Override
   public void addToQueue(IndexedItem item) {
     addAllToQueue(Collections.singleton(item));
   }
 
-  /*
-   * (non-Javadoc)
-   * @see
-   * com.tle.freetext.BackgroundIndexer#addToQueue(com.tle.beans.item.ItemIdKey
-   * )
-   */
   @Override
   public void addToQueue(ItemIdKey key, boolean newSearcher) {
     IndexedItem item = indexedItemFactory.create(key, CurrentInstitution.get());
@@ -391,160 +539,62 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
 
   @Override
   public boolean isRoomForItems(int size) {
-    return (waitingList.size() + indexingMap.size() + size) < MAX_WAITING;
+    return (tracked.size() + size) < MAX_WAITING;
   }
 
-  /*
-   * (non-Javadoc)
-   * @see
-   * com.tle.freetext.BackgroundIndexer#addAllToQueue(java.util.Collection)
-   */
   @Override
   public void addAllToQueue(Collection<IndexedItem> items) {
-    synchronized (listLock) {
-      for (IndexedItem item : items) {
-        FullIdKey id = item.getId();
-        IndexedItem existing = waitingMap.get(id);
-        if (existing != null) {
-          existing.setNoLongerCurrent(true);
-          waitingList.remove(existing);
-          waitingMap.remove(id);
-        }
-        existing = indexingMap.get(id);
-        if (existing != null) {
-          LOGGER.debug(
-              "Item " + item.getItemIdKey().toString() + " already on indexingMap. Removing.");
-          existing.setNoLongerCurrent(true);
-          indexingMap.remove(id);
-          if (existing.isOnIndexList()) {
-            indexedList.remove(existing);
-          }
-        }
-
-        if (item.isAdd()) {
-          priorityInsert(waitingList, item);
-          waitingMap.put(id, item);
-        } else {
-          addToIndexedList(item);
-          item.setFinishedAllIndexing(true);
-          indexingMap.put(id, item);
-        }
+    for (IndexedItem item : items) {
+      IndexedItem existing = tracked.put(item.getId(), item);
+      if (existing != null) {
+        LOGGER.debug("Item " + item.getItemIdKey() + " already being indexed. Replacing.");
+        existing.setNoLongerCurrent(true);
       }
-    }
-    wakeup();
-  }
 
-  private synchronized void wakeup() {
-    wakeup = true;
-    notifyAll();
-  }
-
-  private void addToIndexedList(IndexedItem item) {
-    item.setOnIndexList(true);
-    priorityInsert(indexedList, item);
-  }
-
-  private void priorityInsert(LinkedList<IndexedItem> list, IndexedItem item) {
-    long retTime = item.getExpectedReturnTime();
-    int i;
-    for (i = 0; i < list.size(); i++) {
-      if (retTime <= list.get(i).getExpectedReturnTime()) {
-        break;
-      }
-    }
-    list.add(i, item);
-  }
-
-  /*
-   * (non-Javadoc)
-   * @see
-   * com.tle.freetext.BackgroundIndexer#addIndexedDoc(com.tle.freetext.IndexedItem
-   * )
-   */
-  public void addIndexedDoc(IndexedItem item) {
-    synchronized (listLock) {
-      // Only add doc if we are the one.
-      if (!item.isNoLongerCurrent()) {
+      if (item.isAdd()) {
+        prepareQueue.force(item);
+      } else {
+        deletions.incrementAndGet();
         item.setFinishedAllIndexing(true);
-        // Only add it to the indexedList if it
-        // isn't already there from the "slow" thread
-        // checker
-        if (!item.isOnIndexList()) {
-          addToIndexedList(item);
-        }
+        queueForWriting(item, false);
       }
     }
-    wakeup();
-  }
-
-  /*
-   * (non-Javadoc)
-   * @see
-   * com.tle.freetext.BackgroundIndexer#addErroredDoc(com.tle.freetext.IndexedItem
-   * )
-   */
-  public void addErroredDoc(IndexedItem item) {
-    synchronized (listLock) {
-      FullIdKey id = item.getId();
-      LOGGER.error("Error in doc " + id); // $NON-NLS-1$
-      if (!item.isNoLongerCurrent()) {
-        indexingMap.remove(id);
-      }
-      errors++;
-    }
-    wakeup();
   }
 
-  public void threadFinished(IndexerThread thread) {
-    synchronized (threadingLock) {
-      indexerThreads--;
-      docsDone++;
-      LOGGER.debug("**inuse thread removed**"); // $NON-NLS-1$
-      inuseThreads.remove(thread);
-      freeThreads.push(thread);
+  private void addIndexedDoc(IndexedItem item) {
+    // Only add doc if we are the one.
+    if (!item.isNoLongerCurrent()) {
+      item.setFinishedAllIndexing(true);
+      // Only queue it if it isn't already there from the overdue checker
+      queueForWriting(item, true);
     }
-    wakeup();
   }
 
-  public boolean isDead() {
-    return dead;
+  private void addErroredDoc(IndexedItem item) {
+    LOGGER.error("Error in doc " + item.getId());
+    if (!item.isNoLongerCurrent()) {
+      untrack(item);
+    }
+    errors.incrementAndGet();
+    ERRORS.labels(schemaLabel).inc();
   }
 
-  /*
-   * (non-Javadoc)
-   * @see com.tle.freetext.BackgroundIndexer#kill()
-   */
   @Override
-  @SuppressWarnings("nls")
   public void kill() {
     LOGGER.debug("Kill");
-
-    synchronized (this) {
-      LOGGER.debug("dead=true");
-      dead = true;
-    }
-
-    for (IndexerThread t : freeThreads) {
-      LOGGER.debug("freeThread.wakeup");
-      t.wakeup();
+    dead = true;
+    // Stage threads may be waiting for room in a queue which will never be emptied
+    for (IndexingQueue queue : Arrays.asList(prepareQueue, fastQueue, slowQueue, writeQueue)) {
+      queue.close();
     }
-
-    for (IndexerThread t : inuseThreads) {
-      LOGGER.debug("inuseThread.wakeup");
-      t.wakeup();
+    for (ExecutorService executor : stageExecutors) {
+      executor.shutdownNow();
     }
   }
 
   @Override
   public IndexedItem getIndexedItem(ItemIdKey key) {
-    synchronized (listLock) {
-      FullIdKey fullId = new FullIdKey(key.getKey(), CurrentInstitution.get().getUniqueId());
-      IndexedItem indexedItem = waitingMap.get(fullId);
-      if (indexedItem != null) {
-        return indexedItem;
-      }
-      return indexingMap.get(fullId);
-    }
+    return tracked.get(new FullIdKey(key.getKey(), CurrentInstitution.get().getUniqueId()));
   }
 
   @Override
@@ -552,6 +602,21 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     return indexedItemFactory.create(key, CurrentInstitution.get());
   }
 
+  private interface StageWorker {
+    void processNext() throws InterruptedException;
+  }
+
+  private static final class Job {
+    final String stage;
+    final Object what;
+    final long started = System.currentTimeMillis();
+
+    Job(String stage, Object what) {
+      this.stage = stage;
+      this.what = what;
+    }
+  }
+
   @BindFactory
   public interface BackgroundIndexerFactory {
     BackgroundIndexerImpl create(long schemaId);
@@ -0,0 +1,191 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.freetext;
+
+import com.google.common.io.CharStreams;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tle.annotation.Nullable;
+import com.tle.common.PathUtils;
+import com.tle.common.filesystem.handle.ExtractedTextFile;
+import com.tle.common.filesystem.handle.FileHandle;
+import com.tle.core.TextExtracterExtension;
+import com.tle.core.guice.Bind;
+import com.tle.core.services.FileSystemService;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the text extracted from files in the filestore, keyed by the MD5 of the file, its MIME type
+ * and the extracter used, so that reindexing an item only parses the files which have actually
+ * changed. Entries are never invalidated since a change to the file changes its key, instead {@link
+ * #removeStaleEntries()} removes those which haven't been used for a while. Bump {@link
+ * #FORMAT_VERSION} if the output of the extracters changes in a way that should be re-extracted.
+ */
+@SuppressWarnings("nls")
+@Bind
+@Singleton
+public class ExtractedTextCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExtractedTextCache.class);
+
+  private static final int FORMAT_VERSION = 1;
+  private static final String EXTENSION = ".txt.gz";
+  private static final String TEMP_EXTENSION = ".tmp";
+  // Hits only update the time an entry was last used once per day
+  private static final long TOUCH_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+  private final FileHandle cacheFolder = new ExtractedTextFile();
+
+  @Inject private FileSystemService fileSystemService;
+
+  @Inject(optional = true)
+  @Named("textExtracter.cacheExtractedText")
+  private boolean enabled = true;
+
+  @Inject(optional = true)
+  @Named("textExtracter.extractedTextMaxAgeDays")
+  private int maxAgeDays = 90;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** @return the cached text, or null if the file hasn't been extracted before */
+  @Nullable
+  public String get(
+      String md5, TextExtracterExtension extracter, @Nullable String mimeType, int maxSize) {
+    final String filename = getFilename(md5, extracter, mimeType, maxSize);
+    try (InputStream in = new GZIPInputStream(fileSystemService.read(cacheFolder, filename))) {
+      final String text = CharStreams.toString(new InputStreamReader(in, StandardCharsets.UTF_8));
+      touch(filename);
+      return text;
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read extracted text " + filename, e);
+      return null;
+    }
+  }
+
+  public void put(
+      String md5,
+      TextExtracterExtension extracter,
+      @Nullable String mimeType,
+      int maxSize,
+      String text) {
+    final String filename = getFilename(md5, extracter, mimeType, maxSize);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 2);
+      try (Writer out =
+          new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+        out.write(text);
+      }
+
+      // Written under a temporary name so that a reader never sees a partial file
+      final String tempName = filename + '.' + UUID.randomUUID() + TEMP_EXTENSION;
+      fileSystemService.write(
+          cacheFolder, tempName, new ByteArrayInputStream(bytes.toByteArray()), false);
+      if (!fileSystemService.rename(cacheFolder, tempName, filename)) {
+        fileSystemService.removeFile(cacheFolder, tempName);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to store extracted text " + filename, e);
+    }
+  }
+
+  /**
+   * Removes entries which haven't been used for textExtracter.extractedTextMaxAgeDays, along with
+   * any temporary files left behind by a failed write.
+   *
+   * @return the number of files removed
+   */
+  public int removeStaleEntries() throws IOException {
+    final File root = fileSystemService.getExternalFile(cacheFolder, null);
+    if (!root.isDirectory()) {
+      return 0;
+    }
+    final long now = System.currentTimeMillis();
+    final long entryCutoff = now - TimeUnit.DAYS.toMillis(maxAgeDays);
+    final long tempCutoff = now - TimeUnit.DAYS.toMillis(1);
+    final int[] removed = new int[1];
+    Files.walkFileTree(
+        root.toPath(),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            final String name = file.getFileName().toString();
+            final long modified = attrs.lastModifiedTime().toMillis();
+            if ((name.endsWith(EXTENSION) && modified < entryCutoff)
+                || (name.endsWith(TEMP_EXTENSION) && modified < tempCutoff)) {
+              if (Files.deleteIfExists(file)) {
+                removed[0]++;
+              }
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // Removed by another node while walking
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return removed[0];
+  }
+
+  /** Records that an entry has been used, so it isn't removed as stale. */
+  private void touch(String filename) {
+    final File file = fileSystemService.getExternalFile(cacheFolder, filename);
+    final long now = System.currentTimeMillis();
+    if (now - file.lastModified() > TOUCH_INTERVAL && !file.setLastModified(now)) {
+      LOGGER.debug("Unable to touch extracted text " + filename);
+    }
+  }
+
+  private String getFilename(
+      String md5, TextExtracterExtension extracter, @Nullable String mimeType, int maxSize) {
+    final String extracterKey =
+        Integer.toHexString(
+            (extracter.getClass().getName() + ':' + FORMAT_VERSION + ':' + maxSize + ':' + mimeType)
+                .hashCode());
+    return PathUtils.filePath(
+        md5.substring(0, 2), md5.substring(2, 4), md5 + '-' + extracterKey + EXTENSION);
+  }
+}
@@ -19,10 +19,12 @@
 package com.tle.freetext;
 
 import com.google.common.collect.Multimap;
+import com.tle.annotation.Nullable;
 import com.tle.common.Pair;
 import com.tle.common.searching.Search;
 import com.tle.common.searching.SearchResults;
 import com.tle.common.settings.standard.SearchSettings;
+import com.tle.core.freetext.index.CursorSearchResults;
 import com.tle.core.freetext.index.ItemIndex;
 import com.tle.core.freetext.indexer.IndexingExtension;
 import com.tle.core.remoting.MatrixResults;
@@ -62,6 +64,10 @@ public interface FreetextIndex {
   <T extends FreetextResult> SearchResults<T> search(
       Search searchReq, int start, int count, boolean searchAttachments);
 
+  /** @see ItemIndex#searchAfter(Search, String, int, boolean) */
+  <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, @Nullable String cursor, int count, boolean searchAttachments);
+
   LongSet searchBitSet(Search searchReq);
 
   int count(Search searchReq);
@@ -72,6 +78,17 @@ public interface FreetextIndex {
   MatrixResults matrixSearch(
       Search searchRequest, List<String> fields, boolean countOnly, boolean searchAttachments);
 
+  /**
+   * @param width the maximum number of value combinations to return, keeping those matching the
+   *     most items, or zero for all of them
+   */
+  MatrixResults matrixSearch(
+      Search searchRequest,
+      List<String> fields,
+      boolean countOnly,
+      boolean searchAttachments,
+      int width);
+
   ItemIndex<? extends FreetextResult> getIndexer(String indexItem);
 
   int getSynchroniseMinutes();
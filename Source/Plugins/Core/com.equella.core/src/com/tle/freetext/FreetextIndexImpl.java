@@ -23,6 +23,7 @@ import com.dytech.edge.exceptions.InvalidSearchQueryException;
 import com.dytech.edge.exceptions.SearchingException;
 import com.google.common.collect.Multimap;
 import com.google.inject.Inject;
+import com.tle.annotation.Nullable;
 import com.tle.beans.Institution;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemPack;
@@ -34,6 +35,7 @@ import com.tle.common.searching.SearchResults;
 import com.tle.common.settings.standard.SearchSettings;
 import com.tle.core.events.services.EventService;
 import com.tle.core.freetext.index.AbstractIndexEngine.IndexBuilder;
+import com.tle.core.freetext.index.CursorSearchResults;
 import com.tle.core.freetext.index.ItemIndex;
 import com.tle.core.freetext.indexer.IndexingExtension;
 import com.tle.core.guice.Bind;
@@ -185,6 +187,22 @@ public class FreetextIndexImpl
     }
   }
 
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, @Nullable String cursor, int count, boolean searchAttachments) {
+    try {
+      return (CursorSearchResults<T>)
+          getIndexer(searchReq.getSearchType())
+              .searchAfter(searchReq, cursor, count, searchAttachments);
+    } catch (SearchingException ex) {
+      if (!ex.isLogged()) {
+        LOGGER.error(ex.getMessage(), ex);
+      }
+      throw ex;
+    }
+  }
+
   @Override
   public LongSet searchBitSet(Search searchReq) {
     try {
@@ -263,6 +281,13 @@ public class FreetextIndexImpl
     return getIndexer(Search.INDEX_ITEM).matrixSearch(search, fields, countOnly, searchAttachments);
   }
 
+  @Override
+  public MatrixResults matrixSearch(
+      Search search, List<String> fields, boolean countOnly, boolean searchAttachments, int width) {
+    return getIndexer(Search.INDEX_ITEM)
+        .matrixSearch(search, fields, countOnly, searchAttachments, width);
+  }
+
   public int getMaxBooleanClauses() {
     return maxBooleanClauses;
   }
@@ -0,0 +1,144 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.freetext;
+
+import io.prometheus.client.Gauge;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Items waiting for one stage of the {@link BackgroundIndexerImpl}. Items are handed out in order
+ * of their expected return time and then in the order they were added, and items which have been
+ * replaced by a newer request to index the same item are silently dropped.
+ *
+ * <p>{@link #put(IndexedItem)} blocks while the queue is full so that a slow stage holds back the
+ * stages feeding it, until the queue is {@link #close() closed}. {@link #force(IndexedItem)}
+ * ignores the capacity and is used for items that somebody is waiting on.
+ */
+class IndexingQueue {
+  // How often a blocked put checks whether the queue has been closed
+  private static final long CLOSED_CHECK_MILLIS = 1000;
+
+  private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>();
+  private final AtomicLong sequence = new AtomicLong();
+  private final Semaphore capacity;
+  private final Gauge.Child depth;
+  private volatile boolean closed;
+
+  IndexingQueue(int capacity, Gauge.Child depth) {
+    this.capacity = new Semaphore(capacity);
+    this.depth = depth;
+  }
+
+  /**
+   * Adds the item, waiting for room if the queue is full.
+   *
+   * @return false if the queue was closed before there was room, in which case the item is dropped
+   */
+  boolean put(IndexedItem item) throws InterruptedException {
+    while (!capacity.tryAcquire(CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+      if (closed) {
+        return false;
+      }
+    }
+    add(item, true);
+    return true;
+  }
+
+  /** Adds the item even if the queue is full. */
+  void force(IndexedItem item) {
+    add(item, false);
+  }
+
+  private void add(IndexedItem item, boolean holdsPermit) {
+    queue.add(new Entry(item, sequence.getAndIncrement(), holdsPermit));
+    depth.inc();
+  }
+
+  /** @return the next current item, or null if there wasn't one within the timeout */
+  IndexedItem poll(long timeoutMillis) throws InterruptedException {
+    final long until = System.currentTimeMillis() + timeoutMillis;
+    long wait = timeoutMillis;
+    while (wait >= 0) {
+      Entry entry = queue.poll(wait, TimeUnit.MILLISECONDS);
+      if (entry == null) {
+        return null;
+      }
+      removed(entry);
+      if (!entry.item.isNoLongerCurrent()) {
+        return entry.item;
+      }
+      wait = until - System.currentTimeMillis();
+    }
+    return null;
+  }
+
+  /** Moves up to max current items which are already waiting into the list. */
+  void drainTo(List<IndexedItem> items, int max) {
+    int added = 0;
+    Entry entry;
+    while (added < max && (entry = queue.poll()) != null) {
+      removed(entry);
+      if (!entry.item.isNoLongerCurrent()) {
+        items.add(entry.item);
+        added++;
+      }
+    }
+  }
+
+  int size() {
+    return queue.size();
+  }
+
+  /** Stops {@link #put(IndexedItem)} waiting for room, since nothing will take from the queue. */
+  void close() {
+    closed = true;
+  }
+
+  private void removed(Entry entry) {
+    depth.dec();
+    if (entry.holdsPermit) {
+      capacity.release();
+    }
+  }
+
+  private static final class Entry implements Comparable<Entry> {
+    final IndexedItem item;
+    // The expected return time can change while queued, which must not upset the ordering
+    final long expectedReturnTime;
+    final long sequence;
+    final boolean holdsPermit;
+
+    Entry(IndexedItem item, long sequence, boolean holdsPermit) {
+      this.item = item;
+      this.expectedReturnTime = item.getExpectedReturnTime();
+      this.sequence = sequence;
+      this.holdsPermit = holdsPermit;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int cmp = Long.compare(expectedReturnTime, other.expectedReturnTime);
+      return cmp != 0 ? cmp : Long.compare(sequence, other.sequence);
+    }
+  }
+}
@@ -23,12 +23,14 @@ import com.dytech.edge.queries.FreeTextQuery;
 import com.google.common.io.Closeables;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import com.tle.annotation.Nullable;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.attachments.Attachment;
 import com.tle.beans.item.attachments.CustomAttachment;
 import com.tle.beans.item.attachments.HtmlAttachment;
 import com.tle.beans.mime.MimeEntry;
 import com.tle.common.URLUtils;
+import com.tle.common.filesystem.ContentHashes;
 import com.tle.common.settings.standard.SearchSettings;
 import com.tle.core.TextExtracterExtension;
 import com.tle.core.cloudproviders.CloudProviderService;
@@ -44,7 +46,9 @@ import com.tle.core.util.ims.beans.IMSResource;
 import com.tle.ims.service.IMSService;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -79,6 +83,7 @@ public class TextExtracter {
   @Inject private ItemFileService itemFileService;
   @Inject private MimeTypeService mimeService;
   @Inject private IMSService imsService;
+  @Inject private ExtractedTextCache extractedTextCache;
 
   @Inject(optional = true)
   @Named("textExtracter.indexAttachments")
@@ -126,16 +131,7 @@ public class TextExtracter {
             case HTML:
               {
                 final HtmlAttachment htmlAttach = (HtmlAttachment) attach;
-                final String filename = htmlAttach.getFilename();
-                final MimeEntry mimeEntry = mimeService.getEntryForFilename(filename);
-
-                final List<TextExtracterExtension> extractors = getExtractors(mimeEntry);
-                if (!extractors.isEmpty()) {
-                  try (InputStream input =
-                      fileSystemService.read(itemFileService.getItemFile(item), filename)) {
-                    extractTextFromStream(extractors, input, mimeEntry, sbuf);
-                  }
-                }
+                indexSingleFile(item, sbuf, htmlAttach.getFilename());
                 break;
               }
 
@@ -294,12 +290,55 @@ public class TextExtracter {
   private void indexSingleFile(Item item, StringBuilder sbuf, String filename) throws Exception {
     final MimeEntry mimeEntry = mimeService.getEntryForFilename(filename);
     final List<TextExtracterExtension> extractors = getExtractors(mimeEntry);
-    if (!extractors.isEmpty()) {
-      try (InputStream input =
-          fileSystemService.read(itemFileService.getItemFile(item), filename)) {
-        extractTextFromStream(extractors, input, mimeEntry, sbuf);
+    if (extractors.isEmpty()) {
+      return;
+    }
+
+    final ItemFile itemFile = itemFileService.getItemFile(item);
+    final TextExtracterExtension extracter = extractors.get(0);
+    final String mimeType = mimeEntry.getType();
+    final String md5 = getContentHash(itemFile, filename);
+    if (md5 != null) {
+      final String cached = extractedTextCache.get(md5, extracter, mimeType, SUMMARY_SIZE);
+      if (cached != null) {
+        sbuf.append(cached);
+        return;
       }
     }
+
+    final StringBuilder text = new StringBuilder();
+    final long start = System.currentTimeMillis();
+    try (InputStream input = fileSystemService.read(itemFile, filename)) {
+      extractTextFromStream(extractors, input, mimeEntry, text);
+    }
+    // An extracter which ran out of time may have returned only part of the text, which would
+    // otherwise be kept until the file changed
+    final boolean capped = System.currentTimeMillis() - start >= parseDurationCap;
+    if (md5 != null && !capped) {
+      extractedTextCache.put(md5, extracter, mimeType, SUMMARY_SIZE, text.toString());
+    }
+    sbuf.append(text);
+  }
+
+  /**
+   * @return the MD5 of the file, which is usually already known, or null if extracted text isn't
+   *     being cached or the file can't be hashed
+   */
+  @Nullable
+  private String getContentHash(ItemFile itemFile, String filename) {
+    if (!extractedTextCache.isEnabled()) {
+      return null;
+    }
+    final File file = fileSystemService.getExternalFile(itemFile, filename);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return ContentHashes.md5(file);
+    } catch (IOException e) {
+      LOGGER.debug("Unable to hash " + file, e);
+      return null;
+    }
   }
 
   private void indexIms(Attachment imsAttach, StringBuilder sbuf, Item item) throws Exception {
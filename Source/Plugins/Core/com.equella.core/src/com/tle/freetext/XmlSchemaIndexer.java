@@ -35,11 +35,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class XmlSchemaIndexer {
   private static final String XPATH_EXT = "/$XPATH$"; // $NON-NLS-1$
+  private static final String FACET_EXT = "/$FACET$"; // $NON-NLS-1$
 
   private static final Logger LOGGER = LoggerFactory.getLogger(XmlSchemaIndexer.class);
 
@@ -47,6 +50,14 @@ public class XmlSchemaIndexer {
   private final Set<String> pathsIndexed = new HashSet<String>();
   private final List<Field> indexedFields = new ArrayList<Field>();
 
+  /**
+   * @return the name of the sorted set doc values field holding the values of an indexed schema
+   *     path, for counting facets.
+   */
+  public static String facetField(String fullPath) {
+    return fullPath + FACET_EXT;
+  }
+
   public void indexOneValue(
       SchemaNode schemaNode, String itemNamePath, String fullPath, String xpath, String value) {
     if (schemaNode.isFieldIndexed()) {
@@ -62,6 +73,7 @@ public class XmlSchemaIndexer {
       pathsIndexed.add(fullPath);
       indexedFields.add(AbstractIndexingExtension.indexed(xpath + XPATH_EXT, value));
       indexedFields.add(AbstractIndexingExtension.indexed(fullPath, value));
+      indexedFields.add(new SortedSetDocValuesField(facetField(fullPath), new BytesRef(value)));
       StringBuilder builder = pathValuesMap.get(fullPath);
       if (builder == null) {
         builder = new StringBuilder(value);
@@ -0,0 +1,171 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.web.api.item.resource.impl;
+
+import com.dytech.devlib.Md5;
+import com.google.common.io.ByteStreams;
+import com.tle.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Keeps a running MD5 of a multipart upload so that the checksum of the joined file is known
+ * without reading it back once the upload is complete. Parts are digested in part number order: the
+ * next part is digested as it is uploaded, while parts which arrive early (e.g. when they are
+ * uploaded concurrently) are read back from disk once the parts before them have been written.
+ * Reading parts back is done by the given executor, so it never holds up the upload of a part.
+ *
+ * <p>Anything which makes the digest unreliable, such as a part being uploaded twice or failing,
+ * gives up on it and {@link #md5(int)} returns null.
+ */
+final class MultipartDigest {
+  interface PartSource {
+    InputStream open(int partNumber) throws IOException;
+  }
+
+  private final MessageDigest md5;
+  private final Executor catchUpExecutor;
+  private final Set<Integer> started = new HashSet<Integer>();
+  private final Set<Integer> written = new HashSet<Integer>();
+  private int nextPart = 1;
+  // The part being digested as it is written, if any
+  private int streamingPart;
+  private boolean digesting;
+  private boolean broken;
+
+  MultipartDigest(Executor catchUpExecutor) {
+    this.catchUpExecutor = catchUpExecutor;
+    try {
+      md5 = MessageDigest.getInstance("md5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("Missing MD5 Digest");
+    }
+  }
+
+  /**
+   * Call before writing a part. Returns the stream to write the part from, which digests the
+   * content on the way through if this is the next part to be digested.
+   */
+  synchronized InputStream startPart(int partNumber, InputStream content) {
+    if (!started.add(partNumber)) {
+      broken = true;
+    }
+    if (broken || digesting || partNumber != nextPart) {
+      return content;
+    }
+    digesting = true;
+    streamingPart = partNumber;
+    return new DigestInputStream(content, md5);
+  }
+
+  /**
+   * Call once a part has been completely written. Starts digesting any parts which were waiting on
+   * this one to be written.
+   */
+  void partWritten(int partNumber, PartSource parts) {
+    synchronized (this) {
+      if (broken) {
+        return;
+      }
+      if (partNumber == streamingPart) {
+        streamingPart = 0;
+        nextPart++;
+        if (!written.contains(nextPart)) {
+          // Leave the next part free to be digested as it streams
+          digesting = false;
+          notifyAll();
+          return;
+        }
+      } else {
+        written.add(partNumber);
+        if (digesting || partNumber != nextPart) {
+          return;
+        }
+        digesting = true;
+      }
+    }
+    try {
+      catchUpExecutor.execute(() -> catchUp(parts));
+    } catch (RejectedExecutionException e) {
+      stopDigesting(true);
+    }
+  }
+
+  /** Call if writing a part fails, after which the digest can no longer be trusted. */
+  synchronized void partFailed(int partNumber) {
+    broken = true;
+    notifyAll();
+  }
+
+  /**
+   * Returns the MD5 of parts 1 to partCount joined together, or null if it isn't known. Waits for
+   * any parts which are still being read back. Can only be called once.
+   */
+  @Nullable
+  synchronized String md5(int partCount) {
+    while (digesting && streamingPart == 0 && !broken) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+    if (broken || digesting || nextPart != partCount + 1) {
+      return null;
+    }
+    broken = true;
+    return Md5.stringify(md5.digest());
+  }
+
+  private void catchUp(PartSource parts) {
+    while (true) {
+      int partNumber;
+      synchronized (this) {
+        if (broken || !written.remove(nextPart)) {
+          stopDigesting(false);
+          return;
+        }
+        partNumber = nextPart;
+      }
+      try (InputStream in = new DigestInputStream(parts.open(partNumber), md5)) {
+        ByteStreams.exhaust(in);
+      } catch (IOException | RuntimeException e) {
+        stopDigesting(true);
+        return;
+      }
+      synchronized (this) {
+        nextPart++;
+      }
+    }
+  }
+
+  private synchronized void stopDigesting(boolean failed) {
+    digesting = false;
+    broken |= failed;
+    notifyAll();
+  }
+}
@@ -21,11 +21,14 @@ package com.tle.web.api.item.resource.impl;
 import com.dytech.edge.common.FileInfo;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import com.tle.common.Check;
+import com.tle.common.NamedThreadFactory;
 import com.tle.common.PathUtils;
 import com.tle.common.filesystem.FileEntry;
 import com.tle.common.filesystem.handle.FileHandle;
@@ -44,6 +47,7 @@ import com.tle.web.api.staging.interfaces.beans.PartBean;
 import com.tle.web.api.staging.interfaces.beans.StagingBean;
 import com.tle.web.remoting.rest.service.UrlLinkService;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -56,6 +60,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.BadRequestException;
@@ -81,6 +88,13 @@ public class StagingResourceImpl implements StagingResource {
   @Inject private FileSystemService fileSystemService;
   @Inject private UrlLinkService urlLinkService;
 
+  // Running checksums of multipart uploads started on this node, abandoned uploads expire
+  private final Cache<String, MultipartDigest> multipartDigests =
+      CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.DAYS).build();
+  // Reads back parts which arrived early, so that uploading a part never waits on it
+  private final ExecutorService digestExecutor =
+      Executors.newFixedThreadPool(2, new NamedThreadFactory("Multipart-Digest"));
+
   @Override
   public Response createStaging() {
     checkPermissions();
@@ -229,6 +243,14 @@ public class StagingResourceImpl implements StagingResource {
       throws IOException {
     checkPermissions();
     final StagingFile stagingFile = getStagingFile(stagingUuid);
+    if (!Strings.isNullOrEmpty(uploadId)) {
+      // Abort a multipart upload
+      final String folderPath = multipartFolder(uploadId);
+      multipartDigests.invalidate(uploadId);
+      ensureFileExists(stagingFile, folderPath);
+      fileSystemService.removeFile(stagingFile, folderPath);
+      return Response.status(Status.NO_CONTENT).build();
+    }
     ensureFileExists(stagingFile, filepath);
 
     boolean removed = fileSystemService.removeFile(stagingFile, filepath);
@@ -254,29 +276,35 @@ public class StagingResourceImpl implements StagingResource {
     checkPermissions();
     StagingFile stagingFile = getStagingFile(uuid);
     List<PartBean> parts = completion.getParts();
-    int[] partNumbers = new int[parts.size()];
-    String[] etags = new String[parts.size()];
-    int i = 0;
-    for (PartBean partBean : parts) {
-      partNumbers[i] = partBean.getPartNumber();
-      etags[i++] = partBean.getEtag();
-    }
-    String folderPath = "multipart/" + uploadId;
+    String folderPath = multipartFolder(uploadId);
 
     if (!fileSystemService.fileExists(stagingFile, folderPath)) {
       throw new BadRequestException("Multipart upload doesn't exist: " + uploadId);
     }
 
-    File folder = fileSystemService.getExternalFile(stagingFile, folderPath);
-    for (int partNumber : partNumbers) {
-      fileSystemService.write(
-          stagingFile,
-          filepath,
-          fileSystemService.read(stagingFile, folder + "/" + Integer.toString(partNumber)),
-          true);
+    List<String> partPaths = Lists.newArrayList();
+    boolean allParts = true;
+    for (PartBean partBean : parts) {
+      int partNumber = partBean.getPartNumber();
+      String partPath = folderPath + "/" + partNumber;
+      if (!fileSystemService.fileExists(stagingFile, partPath)) {
+        throw new BadRequestException("Part " + partNumber + " has not been uploaded");
+      }
+      partPaths.add(partPath);
+      allParts &= partNumber == partPaths.size();
     }
+
+    // The running checksum only covers parts 1..n in order
+    MultipartDigest digest = multipartDigests.getIfPresent(uploadId);
+    multipartDigests.invalidate(uploadId);
+    String md5 = digest != null && allParts ? digest.md5(parts.size()) : null;
+
+    FileInfo info = fileSystemService.concat(stagingFile, filepath, partPaths, md5);
     fileSystemService.removeFile(stagingFile, folderPath);
-    ResponseBuilder resp = Response.ok();
+    ResponseBuilder resp = Response.ok().location(stagingUri(uuid, filepath));
+    if (info.getMd5CheckSum() != null) {
+      resp.header(HttpHeaders.ETAG, "\"" + info.getMd5CheckSum() + "\"");
+    }
     return resp.build();
   }
 
@@ -288,10 +316,11 @@ public class StagingResourceImpl implements StagingResource {
     }
     StagingFile stagingFile = getStagingFile(uuid);
     String uploadId = UUID.randomUUID().toString();
-    String folderPath = "multipart/" + uploadId;
+    String folderPath = multipartFolder(uploadId);
     ensureMultipartDir(stagingFile);
     try {
       fileSystemService.mkdir(stagingFile, folderPath);
+      multipartDigests.put(uploadId, new MultipartDigest(digestExecutor));
       return new MultipartBean(uploadId);
     } catch (Exception e) {
       throw new WebApplicationException(Status.INTERNAL_SERVER_ERROR);
@@ -322,6 +351,9 @@ public class StagingResourceImpl implements StagingResource {
       throws IOException {
     checkPermissions();
     final StagingFile stagingFile = getStagingFile(uuid);
+    if (!Strings.isNullOrEmpty(uploadId)) {
+      return putPart(stagingFile, uploadId, partNumber, data, contentType);
+    }
     if (fileSystemService.fileExists(stagingFile, filepath)) {
       throw new WebApplicationException(Status.BAD_REQUEST);
     }
@@ -352,6 +384,67 @@ public class StagingResourceImpl implements StagingResource {
     }
   }
 
+  /**
+   * Parts are written to their own files so they can be uploaded concurrently, and are only joined
+   * into the real file when the upload is completed.
+   */
+  private Response putPart(
+      final StagingFile stagingFile,
+      String uploadId,
+      int partNumber,
+      InputStream data,
+      String contentType)
+      throws IOException {
+    final String folderPath = multipartFolder(uploadId);
+    if (!fileSystemService.fileExists(stagingFile, folderPath)) {
+      throw new BadRequestException("Multipart upload doesn't exist: " + uploadId);
+    }
+    if (partNumber < 1) {
+      throw new BadRequestException("Invalid part number: " + partNumber);
+    }
+
+    try (InputStream bd = data) {
+      checkValidContentType(contentType);
+      String partPath = folderPath + "/" + partNumber;
+      MultipartDigest digest = multipartDigests.getIfPresent(uploadId);
+      FileInfo info;
+      if (digest == null) {
+        info = fileSystemService.write(stagingFile, partPath, bd, false, true);
+      } else {
+        try {
+          info =
+              fileSystemService.write(
+                  stagingFile, partPath, digest.startPart(partNumber, bd), false, true);
+        } catch (IOException | RuntimeException e) {
+          digest.partFailed(partNumber);
+          throw e;
+        }
+        // Parts may be read back on another thread, which doesn't know the current institution
+        final File folder = fileSystemService.getExternalFile(stagingFile, folderPath);
+        digest.partWritten(
+            partNumber, part -> new FileInputStream(new File(folder, Integer.toString(part))));
+      }
+      return Response.ok().header(HttpHeaders.ETAG, "\"" + info.getMd5CheckSum() + "\"").build();
+    }
+  }
+
+  /**
+   * Upload IDs name a folder in the staging area, so only the UUIDs handed out by {@link
+   * #startMultipart} are accepted. Anything else, such as "..", could reach outside the upload.
+   */
+  private static String multipartFolder(String uploadId) {
+    boolean valid;
+    try {
+      valid = uploadId != null && UUID.fromString(uploadId).toString().equals(uploadId);
+    } catch (IllegalArgumentException e) {
+      valid = false;
+    }
+    if (!valid) {
+      throw new BadRequestException("Invalid upload ID: " + uploadId);
+    }
+    return "multipart/" + uploadId;
+  }
+
   private void ensureFileExists(StagingFile staging, String filepath) {
     if (!fileSystemService.fileExists(staging, filepath)) {
       throw new WebApplicationException(Status.NOT_FOUND);
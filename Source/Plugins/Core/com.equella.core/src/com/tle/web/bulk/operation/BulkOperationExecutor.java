@@ -22,6 +22,10 @@ import com.tle.core.item.operations.WorkflowOperation;
 import java.io.Serializable;
 
 public interface BulkOperationExecutor extends Serializable {
+  /**
+   * Called for each item, possibly from several threads at once, so new operations must be returned
+   * each time.
+   */
   WorkflowOperation[] getOperations();
 
   String getTitleKey();
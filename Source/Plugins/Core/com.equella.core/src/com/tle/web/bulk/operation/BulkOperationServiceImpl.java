@@ -30,7 +30,7 @@ import com.tle.common.usermanagement.user.UserState;
 import com.tle.core.guice.Bind;
 import com.tle.core.institution.RunAsInstitution;
 import com.tle.core.item.operations.FilterResultListener;
-import com.tle.core.item.operations.ItemOperationFilter;
+import com.tle.core.item.operations.ParallelItemOperationFilter;
 import com.tle.core.item.operations.WorkflowOperation;
 import com.tle.core.item.service.ItemService;
 import com.tle.core.plugins.BeanLocator;
@@ -150,7 +150,7 @@ public class BulkOperationServiceImpl implements BulkOperationService {
     }
   }
 
-  public class BulkWorkflowFilter implements ItemOperationFilter, FilterResultListener {
+  public class BulkWorkflowFilter implements ParallelItemOperationFilter, FilterResultListener {
     private final Collection<? extends ItemId> items;
     private final LongSet itemsBitSet;
     private final BulkOperationExecutor executor;
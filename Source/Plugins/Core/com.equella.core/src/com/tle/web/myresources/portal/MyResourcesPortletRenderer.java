@@ -84,7 +84,9 @@ public class MyResourcesPortletRenderer
         }
       }
     }
-    int[] counts = freeTextService.countsFromFilters(searches);
+    int[] counts =
+        freeTextService.cachedCountsFromFilters(
+            MyResourcesPortletRenderer.class.getName(), searches);
 
     int i = 0;
     List<SearchRow> searchRows = getModel(context).getSearches();
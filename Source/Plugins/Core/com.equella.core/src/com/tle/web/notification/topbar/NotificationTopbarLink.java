@@ -47,7 +47,8 @@ public class NotificationTopbarLink extends AbstractCachedTopbarLink {
   @Override
   public int getCount() {
     return freeTextService
-        .countsFromFilters(Collections.singletonList(new NotificationSearch()))[0];
+        .cachedCountsFromFilters(SESSION_KEY, Collections.singletonList(new NotificationSearch()))[
+        0];
   }
 
   @Override
@@ -287,15 +287,54 @@ public class ContentStreamWriter {
       final String ifNoneMatch = request.getHeader("If-None-Match");
       final String etag = contentStream.calculateETag();
       if (ifNoneMatch != null) {
-        hasBeenModified = hasBeenModified || (!ifNoneMatch.equals(etag));
+        // If-None-Match takes precedence over If-Modified-Since
+        hasBeenModified = !etagMatches(ifNoneMatch, etag);
+        if (!hasBeenModified) {
+          response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
       } else {
         // That ifNoneMatch is null and isCalculateETag is true means
         // this request is the very first one sent from users' admin console launcher
         hasBeenModified = true;
       }
-      response.addHeader("ETag", etag);
+      if (etag != null) {
+        response.addHeader("ETag", quote(etag));
+      }
     }
 
     return hasBeenModified;
   }
+
+  /** Compares an If-None-Match header, which may be quoted or a list of ETags, to our ETag. */
+  private boolean etagMatches(String ifNoneMatch, @Nullable String etag) {
+    if (etag == null) {
+      return false;
+    }
+    if (ifNoneMatch.equals(etag)) {
+      return true;
+    }
+    final String unquoted = unquote(etag);
+    for (String candidate : ifNoneMatch.split(",")) {
+      final String tag = candidate.trim();
+      final String strong = tag.startsWith("W/") ? tag.substring(2) : tag;
+      if (tag.equals("*") || unquote(strong).equals(unquoted)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String quote(String etag) {
+    if (etag.startsWith("\"") || etag.startsWith("W/\"")) {
+      return etag;
+    }
+    return '"' + etag + '"';
+  }
+
+  private static String unquote(String etag) {
+    if (etag.length() >= 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+      return etag.substring(1, etag.length() - 1);
+    }
+    return etag;
+  }
 }
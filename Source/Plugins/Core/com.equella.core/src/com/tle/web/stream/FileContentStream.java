@@ -18,7 +18,7 @@
 
 package com.tle.web.stream;
 
-import com.tle.common.filesystem.FileSystemHelper;
+import com.tle.common.filesystem.ContentHashes;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -48,7 +48,8 @@ public class FileContentStream extends AbstractContentStream {
   public String calculateETag() {
     if (etag == null) {
       try {
-        etag = FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+        // Only reads the file if its hash hasn't been recorded for this size and mtime
+        etag = ContentHashes.md5(file);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -32,6 +32,7 @@ import com.tle.common.usermanagement.util.UserXmlUtils;
 import com.tle.core.guice.Bind;
 import com.tle.core.item.helper.ItemHelper;
 import com.tle.core.item.helper.ItemHelper.ItemHelperSettings;
+import com.tle.core.item.service.ItemService;
 import com.tle.core.plugins.PluginService;
 import com.tle.core.plugins.PluginTracker;
 import com.tle.core.services.user.UserService;
@@ -53,6 +54,7 @@ public class ItemXsltServiceImpl implements ItemXsltService {
   private static final Log LOGGER = LogFactory.getLog(ItemXsltService.class);
 
   @Inject private ItemHelper itemHelper;
+  @Inject private ItemService itemService;
   @Inject private UserService userService;
   @Inject private XsltService xsltService;
 
@@ -82,7 +84,7 @@ public class ItemXsltServiceImpl implements ItemXsltService {
   public PropBagEx getStandardXmlForXslt(Item item, ItemSectionInfo itemInfo) {
     boolean isItemInfoProvided = itemInfo != null;
     PropBagEx basicXml =
-        isItemInfoProvided ? itemInfo.getItemxml() : new PropBagEx(item.getItemXml().getXml());
+        isItemInfoProvided ? itemInfo.getItemxml() : itemService.getItemXmlPropBag(item);
     PropBagEx fullXml =
         itemHelper.convertToXml(new ItemPack(item, basicXml, ""), new ItemHelperSettings(true));
 
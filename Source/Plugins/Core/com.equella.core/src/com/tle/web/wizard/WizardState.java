@@ -45,6 +45,9 @@ import com.tle.web.viewable.PreviewableItem;
 import com.tle.web.wizard.impl.UnsavedEditOperation;
 import com.tle.web.wizard.page.WebWizardPageState;
 import com.tle.web.wizard.section.model.DuplicateData;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -75,7 +78,12 @@ public class WizardState implements WizardStateInterface {
   private Item item;
   private ItemKey itemKey;
 
+  // Still written for nodes which predate compressedXml and would otherwise silently lose the
+  // metadata during a rolling upgrade. Can be dropped once no such nodes are supported.
   private String xml;
+  // Written to the session as compressedXml
+  private transient String metadataXml;
+  private byte[] compressedXml;
   private int stateVersion;
   private String stagingId;
   private String saveMessage;
@@ -115,6 +123,8 @@ public class WizardState implements WizardStateInterface {
   private transient Deque<Pair<String, Integer>> pathOverrides;
   private transient List<WebWizardPage> pages;
   private transient WorkflowStatus workflowStatus;
+  // The XML that compressedXml was encoded from, so it is only encoded again once it changes
+  private transient String encodedXmlSource;
   private BiMap<UUID, String> registeredFilenames = HashBiMap.create();
 
   public WizardState(Operation operation) {
@@ -171,7 +181,7 @@ public class WizardState implements WizardStateInterface {
   @Override
   public PropBagEx getItemxml() {
     if (xmlBag == null) {
-      xmlBag = new PropBagEx(xml);
+      xmlBag = new PropBagEx(metadataXml);
     }
     return xmlBag;
   }
@@ -406,7 +416,7 @@ public class WizardState implements WizardStateInterface {
   public void setItemPack(ItemPack<Item> pack) {
     item = pack.getItem();
     xmlBag = pack.getXml();
-    xml = (xmlBag == null ? null : xmlBag.toString());
+    metadataXml = (xmlBag == null ? null : xmlBag.toString());
     stagingId = pack.getStagingID();
   }
 
@@ -453,11 +463,38 @@ public class WizardState implements WizardStateInterface {
   @Override
   public void onSessionSave() {
     if (xmlBag != null) {
-      xml = xmlBag.toString();
+      metadataXml = xmlBag.toString();
     }
     pathOverrides = null;
   }
 
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    // Most page changes don't touch the metadata, so only encode it when it has changed
+    if (metadataXml != encodedXmlSource
+        && (metadataXml == null || !metadataXml.equals(encodedXmlSource))) {
+      compressedXml = WizardStateCodec.encodeXml(metadataXml);
+      encodedXmlSource = metadataXml;
+    }
+    xml = metadataXml;
+    try {
+      out.defaultWriteObject();
+    } finally {
+      xml = null;
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (compressedXml != null) {
+      metadataXml = WizardStateCodec.decodeXml(compressedXml);
+      encodedXmlSource = metadataXml;
+    } else {
+      // Written before the XML was compressed, it will be compressed the next time it is written
+      metadataXml = xml;
+    }
+    xml = null;
+  }
+
   public String getThumbnail() {
     return thumbnail;
   }
@@ -471,7 +508,7 @@ public class WizardState implements WizardStateInterface {
   }
 
   public void setItemXml(String xmlDoc) {
-    xml = xmlDoc;
+    metadataXml = xmlDoc;
     xmlBag = null;
   }
 
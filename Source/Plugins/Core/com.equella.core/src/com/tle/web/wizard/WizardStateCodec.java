@@ -0,0 +1,68 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.web.wizard;
+
+import com.google.common.io.ByteStreams;
+import com.tle.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact encoding of the parts of a {@link WizardState} which dominate its serialised size. The
+ * metadata XML of a large item can run to hundreds of KB, and is written to the session after every
+ * page of the wizard, so it is deflated rather than written as a Java string.
+ */
+public final class WizardStateCodec {
+  private WizardStateCodec() {
+    throw new Error();
+  }
+
+  @Nullable
+  public static byte[] encodeXml(@Nullable String xml) {
+    if (xml == null) {
+      return null;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length() / 4);
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater)) {
+      deflated.write(xml.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      // Not possible when writing to memory
+      throw new IllegalStateException(e);
+    } finally {
+      deflater.end();
+    }
+    return out.toByteArray();
+  }
+
+  @Nullable
+  public static String decodeXml(@Nullable byte[] encoded) throws IOException {
+    if (encoded == null) {
+      return null;
+    }
+    try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(encoded))) {
+      return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -109,6 +109,7 @@ import com.tle.web.wizard.scripting.objects.impl.PageScriptWrapper;
 import com.tle.web.wizard.section.SelectThumbnailSection.ThumbnailOption;
 import com.tle.web.wizard.section.model.DuplicateData;
 import com.tle.web.workflow.tasks.ModerationService;
+import io.prometheus.client.Summary;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
@@ -141,6 +142,11 @@ import org.slf4j.LoggerFactory;
 public class WizardServiceImpl
     implements WizardService, WizardScriptObjectContributor, WizardPageFactory {
   private static final String WIZARD_INFO_KEY = "$WIZARDS$";
+  private static final Summary SESSION_SAVE_SECONDS =
+      Summary.build()
+          .name("wizard_session_save_seconds")
+          .help("Time taken to save the wizard state to the session after each page")
+          .register();
   private static String KEY_PFX =
       AbstractPluginService.getMyPluginId(WizardServiceImpl.class) + ".";
 
@@ -1258,8 +1264,13 @@ public class WizardServiceImpl
   public void addToSession(SectionInfo info, WizardStateInterface state, boolean resumable) {
     // Clears out transients
     synchronized (state.getItem()) {
-      state.onSessionSave();
-      userSessionService.setAttribute(state.getWizid(), new WizardSessionState(state));
+      final Summary.Timer timer = SESSION_SAVE_SECONDS.startTimer();
+      try {
+        state.onSessionSave();
+        userSessionService.setAttribute(state.getWizid(), new WizardSessionState(state));
+      } finally {
+        timer.observeDuration();
+      }
 
       if (resumable) {
         // Not resumable if in moderation
@@ -77,7 +77,8 @@ public class TaskListFilters {
     List<DefaultSearch> searches = new ArrayList<DefaultSearch>();
     List<TaskFilterCount> filterList = new ArrayList<TaskFilterCount>();
     addFilters(filterList, searches, getFilterMap().values());
-    int[] counts = freeTextService.countsFromFilters(searches);
+    int[] counts =
+        freeTextService.cachedCountsFromFilters(TaskListFilters.class.getName(), searches);
     Iterator<TaskFilterCount> iter = filterList.iterator();
     int i = 0;
     while (iter.hasNext()) {
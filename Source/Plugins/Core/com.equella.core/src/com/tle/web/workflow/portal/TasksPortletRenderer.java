@@ -57,7 +57,8 @@ public class TasksPortletRenderer
       searches.add(filter.getSearch());
     }
 
-    int[] counts = freeTextService.countsFromFilters(searches);
+    int[] counts =
+        freeTextService.cachedCountsFromFilters(TasksPortletRenderer.class.getName(), searches);
     int i = 0;
     List<TaskRow> taskRows = getModel(context).getTasks();
     for (TaskListSubsearch filter : taskFilters) {
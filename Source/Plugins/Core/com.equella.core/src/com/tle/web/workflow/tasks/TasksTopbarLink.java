@@ -46,7 +46,8 @@ public class TasksTopbarLink extends AbstractCachedTopbarLink {
 
   @Override
   public int getCount() {
-    return freeTextService.countsFromFilters(Collections.singletonList(new TaskListSearch()))[0];
+    return freeTextService
+        .cachedCountsFromFilters(SESSION_KEY, Collections.singletonList(new TaskListSearch()))[0];
   }
 
   @Override
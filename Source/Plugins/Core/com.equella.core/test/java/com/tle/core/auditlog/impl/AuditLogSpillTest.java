@@ -0,0 +1,72 @@
+package com.tle.core.auditlog.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.base.Strings;
+import com.tle.beans.audit.AuditLogEntry;
+import com.tle.core.auditlog.impl.AuditLogSpill.SpilledEntry;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class AuditLogSpillTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void spilledEntriesAreReadBack() throws IOException {
+    AuditLogSpill spill = new AuditLogSpill(folder.getRoot());
+    String longData = Strings.repeat("x", 100000);
+    spill.write(1, entry("ITEM", "SUMMARY_VIEWED", null, "{}"));
+    spill.write(2, entry("SEARCH", "EXPORT", longData, null));
+
+    List<SpilledEntry> entries = spill.takeOldest();
+    assertEquals(2, entries.size());
+
+    assertEquals(1, entries.get(0).getInstitutionId());
+    AuditLogEntry first = entries.get(0).getEntry();
+    assertEquals("ITEM", first.getEventCategory());
+    assertEquals("SUMMARY_VIEWED", first.getEventType());
+    assertEquals(new Date(1000), first.getTimestamp());
+    assertNull(first.getData4());
+    assertEquals("{}", first.getMeta());
+
+    assertEquals(2, entries.get(1).getInstitutionId());
+    assertEquals(longData, entries.get(1).getEntry().getData4());
+
+    assertNull(spill.takeOldest());
+  }
+
+  @Test
+  public void incompleteEntryIsIgnored() throws IOException {
+    AuditLogSpill spill = new AuditLogSpill(folder.getRoot());
+    spill.write(1, entry("USER", "LOGIN", null, null));
+    try (FileOutputStream out = new FileOutputStream(folder.getRoot().listFiles()[0], true)) {
+      out.write(new byte[] {0, 0, 0, 0, 0, 0, 0, 1, 0, 0});
+    }
+
+    assertEquals(1, spill.takeOldest().size());
+    assertEquals(0, folder.getRoot().listFiles().length);
+  }
+
+  @Test
+  public void newEntriesStartANewFile() throws IOException {
+    AuditLogSpill spill = new AuditLogSpill(new File(folder.getRoot(), "spill"));
+    spill.write(1, entry("USER", "LOGIN", null, null));
+    spill.takeOldest();
+    spill.write(1, entry("USER", "LOGOUT", null, null));
+
+    assertEquals("LOGOUT", spill.takeOldest().get(0).getEntry().getEventType());
+  }
+
+  private static AuditLogEntry entry(String category, String type, String d4, String meta) {
+    return new AuditLogEntry(
+        "user", "session", category, type, new Date(1000), "d1", null, "d3", d4, null, meta);
+  }
+}
@@ -0,0 +1,88 @@
+package com.tle.core.freetext.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class SearchCursorResumeTest {
+  @Test
+  public void resumingIsNotShiftedByEarlierChanges() throws Exception {
+    // Newest first, then by ID, as OAI lists items
+    Sort sort =
+        new Sort(
+            new SortField("modified", SortField.Type.STRING, true),
+            new SortField("id", SortField.Type.STRING));
+    List<String> all = new ArrayList<>();
+    try (RAMDirectory dir = new RAMDirectory();
+        IndexWriter writer =
+            new IndexWriter(
+                dir, new IndexWriterConfig(Version.LUCENE_4_10_4, new KeywordAnalyzer()))) {
+      for (int i = 0; i < 25; i++) {
+        String id = String.format("item%02d", i);
+        Document doc = new Document();
+        doc.add(new StringField("id", id, Store.YES));
+        // Pairs of items share a date, so the ID has to break the tie
+        doc.add(new StringField("modified", String.format("2020%04d", 100 - i / 2), Store.YES));
+        writer.addDocument(doc);
+        all.add(id);
+      }
+
+      List<String> harvested = new ArrayList<>();
+      String cursor = page(writer, null, sort, harvested);
+
+      // Deleting records which have already been listed mustn't skip any of the rest
+      writer.deleteDocuments(new Term("id", "item00"), new Term("id", "item05"));
+      while (cursor != null) {
+        cursor = page(writer, cursor, sort, harvested);
+      }
+
+      assertEquals(all, harvested);
+    }
+  }
+
+  private static String page(IndexWriter writer, String cursor, Sort sort, List<String> ids)
+      throws Exception {
+    try (DirectoryReader reader = DirectoryReader.open(writer, true)) {
+      IndexSearcher searcher = new IndexSearcher(reader);
+      SearchCursor after = cursor == null ? null : SearchCursor.decode(cursor, sort);
+      int offset = after == null ? 0 : after.getOffset();
+      TopDocs hits =
+          searcher.searchAfter(
+              after == null ? null : after.getAfter(),
+              new MatchAllDocsQuery(),
+              null,
+              10,
+              sort,
+              false,
+              false);
+      for (ScoreDoc hit : hits.scoreDocs) {
+        ids.add(searcher.doc(hit.doc).get("id"));
+      }
+      if (hits.scoreDocs.length < 10) {
+        return null;
+      }
+      FieldDoc last = (FieldDoc) hits.scoreDocs[hits.scoreDocs.length - 1];
+      return SearchCursor.encode(last, offset + hits.scoreDocs.length, sort);
+    }
+  }
+}
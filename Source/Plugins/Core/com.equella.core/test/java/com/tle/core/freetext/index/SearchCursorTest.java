@@ -0,0 +1,44 @@
+package com.tle.core.freetext.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+public class SearchCursorTest {
+  private static final Sort SORT =
+      new Sort(
+          new SortField("name", SortField.Type.STRING),
+          new SortField(null, SortField.Type.SCORE),
+          new SortField("modified", SortField.Type.LONG, true),
+          new SortField("id", SortField.Type.STRING));
+
+  @Test
+  public void roundTrip() {
+    Object[] fields = {new BytesRef("a name"), 1.5f, 1234567890123L, null};
+    String cursor = SearchCursor.encode(new FieldDoc(42, 1.5f, fields), 100, SORT);
+
+    SearchCursor decoded = SearchCursor.decode(cursor, SORT);
+    assertEquals(100, decoded.getOffset());
+    assertEquals(42, decoded.getAfter().doc);
+    assertEquals(1.5f, decoded.getAfter().score, 0f);
+    assertArrayEquals(fields, decoded.getAfter().fields);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void differentSortRejected() {
+    Object[] fields = {new BytesRef("a name"), 1.5f, 1234567890123L, new BytesRef("1")};
+    String cursor = SearchCursor.encode(new FieldDoc(42, 1.5f, fields), 100, SORT);
+
+    SearchCursor.decode(cursor, new Sort(new SortField("id", SortField.Type.STRING)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void garbageRejected() {
+    SearchCursor.decode("not a cursor", SORT);
+  }
+}
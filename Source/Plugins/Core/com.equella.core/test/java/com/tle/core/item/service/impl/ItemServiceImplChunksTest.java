@@ -0,0 +1,86 @@
+package com.tle.core.item.service.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.Iterators;
+import com.tle.beans.item.Item;
+import com.tle.beans.item.ItemId;
+import com.tle.beans.item.ItemKey;
+import com.tle.beans.item.ItemPack;
+import com.tle.core.item.operations.FilterResultListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class ItemServiceImplChunksTest {
+  @Test
+  public void resultsReachListenerInOrder() throws Exception {
+    List<ItemKey> keys = new ArrayList<>();
+    for (int i = 1; i <= 200; i++) {
+      keys.add(new ItemId("item" + i, 1));
+    }
+
+    List<String> seen = new ArrayList<>();
+    FilterResultListener listener =
+        new FilterResultListener() {
+          @Override
+          public void succeeded(ItemKey itemId, ItemPack<Item> pack) {
+            seen.add("ok " + itemId);
+          }
+
+          @Override
+          public void failed(ItemKey itemId, Item item, ItemPack<Item> pack, Throwable e) {
+            seen.add("failed " + itemId);
+          }
+
+          @Override
+          public void total(int total) {
+            throw new AssertionError("Chunks don't report a total");
+          }
+        };
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      ItemServiceImpl.runChunks(
+          executor,
+          8,
+          Iterators.partition(keys.iterator(), 7),
+          chunk -> {
+            ItemServiceImpl.ChunkResults results = new ItemServiceImpl.ChunkResults(null);
+            results.total(chunk.size());
+            for (ItemKey key : chunk) {
+              // Finish the chunks out of order
+              sleep(ThreadLocalRandom.current().nextInt(3));
+              if (key.getUuid().endsWith("0")) {
+                results.failed(key, null, null, new Exception());
+              } else {
+                results.succeeded(key, null);
+              }
+            }
+            return results;
+          },
+          results -> results.replay(listener));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    List<String> expected = new ArrayList<>();
+    for (ItemKey key : keys) {
+      expected.add((key.getUuid().endsWith("0") ? "failed " : "ok ") + key);
+    }
+    assertEquals(expected, seen);
+  }
+
+  private static void sleep(int millis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.tle.core.item.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import com.dytech.devlib.PropBagEx;
+import java.util.Date;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class ItemXmlCacheTest {
+  private static final String XML = "<xml><item><name>Test</name><!-- note --></item></xml>";
+
+  @Test
+  public void parsesOnceForTheSameVersion() {
+    ItemXmlCache cache = new ItemXmlCache();
+    Date modified = new Date(1000);
+
+    PropBagEx first = cache.get(1, modified, XML);
+    PropBagEx second = cache.get(1, modified, XML);
+
+    assertEquals(1, cache.getStats().hitCount());
+    assertEquals(new PropBagEx(XML).toString(), second.toString());
+    assertNotSame(first.getRootElement(), second.getRootElement());
+  }
+
+  @Test
+  public void copiesCanBeModifiedIndependently() {
+    ItemXmlCache cache = new ItemXmlCache();
+    Date modified = new Date(1000);
+
+    cache.get(1, modified, XML).setNode("item/name", "Changed");
+
+    assertEquals("Test", cache.get(1, modified, XML).getNode("item/name"));
+  }
+
+  @Test
+  public void reparsesWhenTheItemChanges() {
+    ItemXmlCache cache = new ItemXmlCache();
+    String changed = "<xml><item><name>Changed</name></item></xml>";
+
+    cache.get(1, new Date(1000), XML);
+
+    assertEquals("Changed", cache.get(1, new Date(2000), changed).getNode("item/name"));
+    // Same date but different XML, e.g. read before the date was updated
+    assertEquals("Changed", cache.get(1, new Date(1000), changed).getNode("item/name"));
+    assertEquals("Test", cache.get(1, new Date(1000), XML).getNode("item/name"));
+  }
+
+  @Test
+  public void unsavedItemsAreNotCached() {
+    ItemXmlCache cache = new ItemXmlCache();
+
+    cache.get(0, null, XML);
+    cache.get(0, null, XML);
+
+    assertEquals(0, cache.getStats().requestCount());
+  }
+}
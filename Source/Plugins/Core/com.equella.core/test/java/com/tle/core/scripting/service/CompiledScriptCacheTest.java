@@ -0,0 +1,85 @@
+package com.tle.core.scripting.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+@SuppressWarnings("nls")
+public class CompiledScriptCacheTest {
+  private final CompiledScriptCache cache = new CompiledScriptCache(100, -1);
+  private Context cx;
+
+  @Before
+  public void setUp() {
+    cx = Context.enter();
+  }
+
+  @After
+  public void tearDown() {
+    Context.exit();
+  }
+
+  @Test
+  public void scriptsAreCompiledOnce() {
+    Script script = cache.getScript(cx, "return 1 + 1;", "test", true);
+    assertSame(script, cache.getScript(cx, "return 1 + 1;", "test", true));
+    assertNotSame(script, cache.getScript(cx, "1 + 1", "test", false));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void functionScriptsMayReturn() {
+    Script script = cache.getScript(cx, "if (true) { return 'yes'; } return 'no';", "test", true);
+    assertEquals("yes", Context.toString(script.exec(cx, cache.newScope(cx))));
+  }
+
+  @Test
+  public void scopesDoNotShareVariables() {
+    Scriptable first = cache.newScope(cx);
+    cache.getScript(cx, "var shared = 'first';", "test", false).exec(cx, first);
+
+    Script read = cache.getScript(cx, "typeof shared", "test", false);
+    assertEquals("string", read.exec(cx, first));
+    assertEquals("undefined", read.exec(cx, cache.newScope(cx)));
+  }
+
+  @Test
+  public void javaIsNotAvailable() {
+    Script script = cache.getScript(cx, "typeof Packages + typeof java", "test", false);
+    assertEquals("undefinedundefined", script.exec(cx, cache.newScope(cx)));
+  }
+
+  @Test
+  public void standardObjectsMayBeModifiedByEachExecution() {
+    Script modify = cache.getScript(cx, "Array.prototype.extra = 1; [].extra", "test", false);
+    assertEquals(1, Context.toNumber(modify.exec(cx, cache.newScope(cx))), 0);
+
+    Script read = cache.getScript(cx, "typeof [].extra", "test", false);
+    assertEquals("undefined", read.exec(cx, cache.newScope(cx)));
+  }
+
+  @Test
+  public void sharedStandardObjectsAreSealed() {
+    CompiledScriptCache shared = new CompiledScriptCache(100, -1, true);
+    Script java = shared.getScript(cx, "typeof Packages + typeof java", "test", false);
+    assertEquals("undefinedundefined", java.exec(cx, shared.newScope(cx)));
+
+    Script script = shared.getScript(cx, "Array.prototype.oops = 1;", "test", false);
+    try {
+      script.exec(cx, shared.newScope(cx));
+    } catch (EvaluatorException e) {
+      assertTrue(e.getMessage().contains("sealed"));
+      return;
+    }
+    throw new AssertionError("Expected the shared scope to be sealed");
+  }
+}
@@ -0,0 +1,57 @@
+package com.tle.core.services.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import com.tle.common.filesystem.handle.StagingFile;
+import com.tle.core.plugins.AbstractPluginService;
+import com.tle.core.plugins.impl.PluginServiceImpl;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class FileSystemServiceImplTest {
+  // md5 of "hello"
+  private static final String HELLO = "5d41402abc4b2a76b9719d911017c592";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private FileSystemServiceImpl service;
+
+  @Before
+  public void setUp() throws Exception {
+    AbstractPluginService.thisService = mock(PluginServiceImpl.class);
+    service = new FileSystemServiceImpl();
+    Field rootDir = FileSystemServiceImpl.class.getDeclaredField("rootDir");
+    rootDir.setAccessible(true);
+    rootDir.set(service, folder.getRoot());
+  }
+
+  @Test
+  public void writtenHashIsUsedWithoutReadingTheFile() throws Exception {
+    StagingFile staging = new StagingFile("0b6f2c34-35a2-4c1b-9d6c-2d3b5e1f9a10");
+    service.write(staging, "a.txt", bytes("hello"), false, true);
+
+    // Past the tick of a filesystem with one second resolution
+    Thread.sleep(2100);
+
+    // Same size and modification time, so only a read of the file could tell the difference
+    File file = service.getExternalFile(staging, "a.txt");
+    long lastModified = file.lastModified();
+    Files.write(file.toPath(), "HELLO".getBytes(StandardCharsets.UTF_8));
+    file.setLastModified(lastModified);
+
+    assertEquals(HELLO, service.getMD5Checksum(staging, "a.txt"));
+  }
+
+  private ByteArrayInputStream bytes(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,103 @@
+package com.tle.core.taxonomy;
+
+import static org.junit.Assert.assertEquals;
+
+import com.tle.common.Pair;
+import com.tle.common.taxonomy.SelectionRestriction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class TermIndexTest {
+  private final TermIndex index =
+      TermIndex.builder()
+          .add("Animals", "Animals", false, true)
+          .add("Birds", "Animals\\Birds", false, false)
+          .add("Blackbird", "Animals\\Birds\\Blackbird", true, false)
+          .add("Bluebird", "Animals\\Birds\\Bluebird", true, false)
+          .add("Cats", "Animals\\Cats", true, false)
+          .add("Plants", "Plants", false, true)
+          .add("Blackberry", "Plants\\Blackberry", true, false)
+          .build();
+
+  @Test
+  public void exactMatchIgnoresCase() {
+    assertTerms(search("birds"), "Birds");
+    assertTerms(search("bird"));
+  }
+
+  @Test
+  public void prefixResultsAreSorted() {
+    assertTerms(search("bl*"), "Blackberry", "Blackbird", "Bluebird");
+    assertTerms(search("z*"));
+    assertEquals(7, (long) search("*").getFirst());
+  }
+
+  @Test
+  public void wildcardsAnywhere() {
+    assertTerms(search("*bird"), "Blackbird", "Bluebird");
+    assertTerms(search("*ack*"), "Blackberry", "Blackbird");
+    assertTerms(search("b*bird"), "Blackbird", "Bluebird");
+    assertTerms(search("*a*s"), "Animals", "Cats", "Plants");
+    assertTerms(search("bl_ckb*"), "Blackberry", "Blackbird");
+    assertTerms(search("*xyz*"));
+  }
+
+  @Test
+  public void fullTermSearch() {
+    Function<TermResult, String> fullTerm = TermResult::getFullTerm;
+    assertResults(
+        index.search("animals\\birds\\*", SelectionRestriction.UNRESTRICTED, -1, true),
+        fullTerm,
+        "Animals\\Birds\\Blackbird",
+        "Animals\\Birds\\Bluebird");
+    assertResults(
+        index.search("*black*", SelectionRestriction.UNRESTRICTED, -1, true),
+        fullTerm,
+        "Animals\\Birds\\Blackbird",
+        "Plants\\Blackberry");
+  }
+
+  @Test
+  public void restrictions() {
+    assertTerms(
+        index.search("*", SelectionRestriction.TOP_LEVEL_ONLY, -1, false), "Animals", "Plants");
+    assertTerms(index.search("*s", SelectionRestriction.LEAF_ONLY, -1, false), "Cats");
+  }
+
+  @Test
+  public void countIncludesResultsOverTheLimit() {
+    Pair<Long, List<TermResult>> results =
+        index.search("*b*", SelectionRestriction.UNRESTRICTED, 2, false);
+    assertEquals(4, (long) results.getFirst());
+    assertEquals(Arrays.asList("Birds", "Blackberry"), terms(results, TermResult::getTerm));
+  }
+
+  private Pair<Long, List<TermResult>> search(String query) {
+    return index.search(query, SelectionRestriction.UNRESTRICTED, -1, false);
+  }
+
+  private static void assertTerms(Pair<Long, List<TermResult>> results, String... expected) {
+    assertResults(results, TermResult::getTerm, expected);
+  }
+
+  private static void assertResults(
+      Pair<Long, List<TermResult>> results,
+      Function<TermResult, String> field,
+      String... expected) {
+    assertEquals(expected.length, (long) results.getFirst());
+    assertEquals(Arrays.asList(expected), terms(results, field));
+  }
+
+  private static List<String> terms(
+      Pair<Long, List<TermResult>> results, Function<TermResult, String> field) {
+    List<String> terms = new ArrayList<>();
+    for (TermResult result : results.getSecond()) {
+      terms.add(field.apply(result));
+    }
+    return terms;
+  }
+}
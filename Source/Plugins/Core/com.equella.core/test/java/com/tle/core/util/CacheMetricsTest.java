@@ -0,0 +1,31 @@
+package com.tle.core.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class CacheMetricsTest {
+  @Test
+  public void publishesStats() {
+    Cache<String, String> cache = CacheBuilder.newBuilder().maximumSize(1).recordStats().build();
+    CacheMetrics.add("test", cache::stats);
+
+    cache.put("a", "1");
+    cache.getIfPresent("a");
+    cache.getIfPresent("b");
+    cache.put("b", "2");
+
+    assertEquals(1.0, sample("cache_hits_total"), 0);
+    assertEquals(1.0, sample("cache_misses_total"), 0);
+    assertEquals(1.0, sample("cache_evictions_total"), 0);
+  }
+
+  private static double sample(String name) {
+    return CollectorRegistry.defaultRegistry.getSampleValue(
+        name, new String[] {"cache"}, new String[] {"test"});
+  }
+}
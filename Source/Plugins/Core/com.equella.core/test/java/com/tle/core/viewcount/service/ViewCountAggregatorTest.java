@@ -0,0 +1,76 @@
+package com.tle.core.viewcount.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tle.core.viewcount.service.ViewCountAggregator.PendingViews;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class ViewCountAggregatorTest {
+  private final ViewCountAggregator<String> aggregator = new ViewCountAggregator<>();
+
+  @Test
+  public void concurrentViewsAreAllCounted() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 8000; i++) {
+      String key = "item" + (i % 4);
+      executor.execute(() -> aggregator.increment(key, Instant.now()));
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+    for (int i = 0; i < 4; i++) {
+      assertEquals(2000, aggregator.getPendingCount("item" + i));
+    }
+  }
+
+  @Test
+  public void drainRemovesPendingViews() {
+    Instant first = Instant.ofEpochSecond(1000);
+    Instant last = Instant.ofEpochSecond(2000);
+    aggregator.increment("item", last);
+    aggregator.increment("item", first);
+
+    Map<String, PendingViews> drained = aggregator.drain();
+    assertEquals(2, drained.get("item").getCount());
+    assertEquals(last, drained.get("item").getLastViewed());
+    assertTrue(aggregator.isEmpty());
+  }
+
+  @Test
+  public void drainedViewsAreCountedUntilWritten() {
+    aggregator.increment("item", Instant.now());
+    aggregator.drain();
+    aggregator.increment("item", Instant.now());
+    assertEquals(2, aggregator.getPendingCount("item"));
+
+    aggregator.written();
+    assertEquals(1, aggregator.getPendingCount("item"));
+  }
+
+  @Test
+  public void restoredViewsAreAddedToNewViews() {
+    aggregator.increment("item", Instant.now());
+    Map<String, PendingViews> failed = aggregator.drain();
+    aggregator.increment("item", Instant.now());
+
+    aggregator.restore(failed);
+    assertEquals(2, aggregator.getPendingCount("item"));
+  }
+
+  @Test
+  public void discardRemovesMatchingViews() {
+    aggregator.increment("item1", Instant.now());
+    aggregator.increment("item2", Instant.now());
+
+    aggregator.discard("item1"::equals);
+    assertEquals(0, aggregator.getPendingCount("item1"));
+    assertEquals(1, aggregator.getPendingCount("item2"));
+  }
+}
@@ -0,0 +1,111 @@
+package com.tle.core.workflow.thumbnail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.tle.core.imagemagick.ThumbnailOptions;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class JavaImageScalerTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void standardThumbnailFillsAndCrops() throws IOException {
+    File src = writeImage("wide.png", 1000, 300, Color.RED);
+    File dst = new File(folder.getRoot(), "_THUMBS/wide.png.jpeg");
+
+    assertTrue(JavaImageScaler.scale(src, dst, ThumbnailOptions.standardThumbnail()));
+    BufferedImage thumb = ImageIO.read(dst);
+    assertEquals(88, thumb.getWidth());
+    assertEquals(66, thumb.getHeight());
+    // Filled, so no white border on any side
+    assertReddish(thumb.getRGB(0, 0));
+    assertReddish(thumb.getRGB(87, 65));
+  }
+
+  @Test
+  public void smallImageIsCentredOnWhite() throws IOException {
+    File src = writeImage("small.gif", 20, 10, Color.BLUE);
+    File dst = new File(folder.getRoot(), "small.gif.jpeg");
+
+    assertTrue(JavaImageScaler.scale(src, dst, ThumbnailOptions.standardThumbnail()));
+    BufferedImage thumb = ImageIO.read(dst);
+    assertEquals(new Dimension(88, 66), new Dimension(thumb.getWidth(), thumb.getHeight()));
+    assertEquals(Color.WHITE.getRGB(), thumb.getRGB(0, 0) | 0x0f0f0f);
+  }
+
+  @Test
+  public void keepAspectFitsWithin() throws IOException {
+    File src = writeImage("tall.jpg", 400, 1600, Color.GREEN);
+    File dst = new File(folder.getRoot(), "tall.jpg_135_.jpeg");
+    ThumbnailOptions options = new ThumbnailOptions();
+    options.setWidth(135);
+    options.setHeight(135);
+    options.setGravity("center");
+    options.setKeepAspect(true);
+
+    assertTrue(JavaImageScaler.scale(src, dst, options));
+    assertEquals(new Dimension(34, 135), JavaImageScaler.getDimensions(dst));
+  }
+
+  @Test
+  public void blankThumbnailIsDiscarded() throws IOException {
+    File src = writeImage("blank.png", 200, 200, Color.WHITE);
+    File dst = new File(folder.getRoot(), "blank.png.jpeg");
+
+    assertTrue(JavaImageScaler.scale(src, dst, ThumbnailOptions.standardThumbnail()));
+    assertFalse(dst.exists());
+  }
+
+  @Test
+  public void unsupportedOptionsFallBack() throws IOException {
+    File src = writeImage("other.png", 200, 200, Color.RED);
+    ThumbnailOptions options = ThumbnailOptions.standardThumbnail();
+    options.setGravity("north");
+
+    assertFalse(JavaImageScaler.scale(src, new File(folder.getRoot(), "other.jpeg"), options));
+    assertFalse(
+        JavaImageScaler.scale(
+            folder.newFile("doc.pdf"),
+            new File(folder.getRoot(), "doc.pdf.jpeg"),
+            ThumbnailOptions.standardThumbnail()));
+  }
+
+  @Test
+  public void unreadableImageFallsBack() throws IOException {
+    File src = folder.newFile("corrupt.jpg");
+    File dst = new File(folder.getRoot(), "corrupt.jpg.jpeg");
+
+    assertFalse(JavaImageScaler.scale(src, dst, ThumbnailOptions.standardThumbnail()));
+    assertFalse(dst.exists());
+  }
+
+  private File writeImage(String name, int width, int height, Color colour) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(colour);
+    g.fillRect(0, 0, width, height);
+    g.dispose();
+
+    File file = new File(folder.getRoot(), name);
+    String format = name.substring(name.lastIndexOf('.') + 1);
+    ImageIO.write(image, format.equals("jpg") ? "jpeg" : format, file);
+    return file;
+  }
+
+  private static void assertReddish(int rgb) {
+    Color colour = new Color(rgb);
+    assertTrue("Expected red but was " + colour, colour.getRed() > 200 && colour.getGreen() < 50);
+  }
+}
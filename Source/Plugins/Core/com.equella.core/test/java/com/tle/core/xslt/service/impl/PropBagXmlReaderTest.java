@@ -0,0 +1,103 @@
+package com.tle.core.xslt.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.dytech.devlib.PropBagEx;
+import java.io.StringReader;
+import java.io.StringWriter;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+/** Transforms straight from the DOM must give the same result as transforming the XML string. */
+@SuppressWarnings("nls")
+public class PropBagXmlReaderTest {
+  private static final String LOM_TO_DC =
+      "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\""
+          + " xmlns:lom=\"http://ltsc.ieee.org/xsd/LOM\""
+          + " xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+          + "<xsl:template match=\"/\"><dc:record>"
+          + "<xsl:for-each select=\"//lom:general/lom:title/lom:string\">"
+          + "<dc:title xml:lang=\"{@language}\"><xsl:value-of select=\".\"/></dc:title>"
+          + "</xsl:for-each>"
+          + "<xsl:for-each select=\"//lom:keyword\"><dc:subject><xsl:value-of select=\".\"/>"
+          + "</dc:subject></xsl:for-each>"
+          + "<dc:comments><xsl:value-of select=\"count(//comment())\"/></dc:comments>"
+          + "</dc:record></xsl:template></xsl:stylesheet>";
+
+  private static final String IDENTITY =
+      "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+          + "<xsl:template match=\"@*|node()\">"
+          + "<xsl:copy><xsl:apply-templates select=\"@*|node()\"/></xsl:copy>"
+          + "</xsl:template></xsl:stylesheet>";
+
+  private static final String LOM =
+      "<xml><item><metadata><lom xmlns=\"http://ltsc.ieee.org/xsd/LOM\"><general>"
+          + "<title><string language=\"en\">A &amp; B &lt;title&gt;</string>"
+          + "<string language=\"fr\">Un titre</string></title>"
+          + "<keyword>one</keyword><!-- a comment --><keyword><![CDATA[two <b>]]></keyword>"
+          + "</general></lom></metadata></item></xml>";
+
+  @Test
+  public void namespacedTransform() throws Exception {
+    assertSameResult(LOM_TO_DC, new PropBagEx(LOM));
+  }
+
+  @Test
+  public void identityTransform() throws Exception {
+    assertSameResult(IDENTITY, new PropBagEx(LOM));
+    assertSameResult(
+        IDENTITY,
+        new PropBagEx(
+            "<xml xmlns:x=\"urn:x\"><?pi data?><x:a x:b=\"1\" c=\"line\r\nbreak\">text</x:a>"
+                + "<d xmlns=\"urn:d\"><e/></d></xml>"));
+  }
+
+  @Test
+  public void subtreeTransform() throws Exception {
+    final PropBagEx lom = new PropBagEx(LOM).getSubtree("item/metadata");
+    assertSameResult(IDENTITY, lom);
+    assertSameResult(LOM_TO_DC, lom);
+  }
+
+  @Test
+  public void invalidCharactersDropped() throws Exception {
+    final PropBagEx xml = new PropBagEx("<xml/>");
+    xml.setNode("text", "bad\u0001char\r\nand\rbreaks");
+    xml.setNode("@attr", "tab\tand\nbreak\u0002");
+    assertSameResult(IDENTITY, xml);
+  }
+
+  @Test
+  public void unboundPrefixFails() throws Exception {
+    final PropBagEx xml = new PropBagEx("<xml/>");
+    xml.createNode("x:undeclared", "value");
+    try {
+      transform(IDENTITY, new SAXSource(new PropBagXmlReader(xml), new InputSource()));
+      fail("Expected the unbound prefix to fail the transform");
+    } catch (TransformerException ex) {
+      // Expected
+    }
+  }
+
+  private static void assertSameResult(String xslt, PropBagEx input) throws Exception {
+    final String expected = transform(xslt, new StreamSource(new StringReader(input.toString())));
+    final String actual =
+        transform(xslt, new SAXSource(new PropBagXmlReader(input), new InputSource()));
+    assertEquals(expected, actual);
+  }
+
+  private static String transform(String xslt, Source input) throws TransformerException {
+    final StringWriter writer = new StringWriter();
+    TransformerFactory.newInstance()
+        .newTransformer(new StreamSource(new StringReader(xslt)))
+        .transform(input, new StreamResult(writer));
+    return writer.toString();
+  }
+}
@@ -0,0 +1,106 @@
+package com.tle.freetext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tle.beans.item.ItemIdKey;
+import io.prometheus.client.Gauge;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class IndexingQueueTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void ordersByExpectedReturnTimeThenArrival() throws Exception {
+    IndexingQueue queue = newQueue(10);
+    IndexedItem later1 = item(1, 200);
+    IndexedItem sooner1 = item(2, 100);
+    IndexedItem later2 = item(3, 200);
+    IndexedItem sooner2 = item(4, 100);
+    IndexedItem replaced = item(5, 50);
+    replaced.setNoLongerCurrent(true);
+    for (IndexedItem item : new IndexedItem[] {later1, sooner1, later2, sooner2, replaced}) {
+      queue.put(item);
+    }
+
+    assertEquals(sooner1, queue.poll(1000));
+    assertEquals(sooner2, queue.poll(1000));
+    assertEquals(later1, queue.poll(1000));
+    assertEquals(later2, queue.poll(1000));
+    assertNull(queue.poll(0));
+  }
+
+  @Test
+  public void putWaitsForRoom() throws Exception {
+    IndexingQueue queue = newQueue(1);
+    queue.put(item(1, 0));
+    // Items somebody is waiting on ignore the capacity
+    queue.force(item(2, 0));
+    assertEquals(2, queue.size());
+
+    Future<Boolean> blocked = executor.submit(() -> queue.put(item(3, 0)));
+    try {
+      blocked.get(200, TimeUnit.MILLISECONDS);
+      throw new AssertionError("Put should wait while the queue is full");
+    } catch (TimeoutException e) {
+      // Expected
+    }
+
+    // Taking the waiting items makes room
+    queue.poll(1000);
+    queue.poll(1000);
+    assertTrue(blocked.get(5, TimeUnit.SECONDS));
+    assertEquals(1, queue.size());
+  }
+
+  @Test
+  public void closeReleasesBlockedPut() throws Exception {
+    IndexingQueue queue = newQueue(1);
+    queue.put(item(1, 0));
+
+    Future<Boolean> blocked = executor.submit(() -> queue.put(item(2, 0)));
+    queue.close();
+
+    assertFalse(blocked.get(5, TimeUnit.SECONDS));
+    assertEquals(1, queue.size());
+  }
+
+  @Test
+  public void interruptReleasesBlockedPut() throws Exception {
+    IndexingQueue queue = newQueue(1);
+    queue.put(item(1, 0));
+
+    Future<Boolean> blocked = executor.submit(() -> queue.put(item(2, 0)));
+    Thread.sleep(100);
+    executor.shutdownNow();
+
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(blocked.isDone());
+  }
+
+  private static IndexingQueue newQueue(int capacity) {
+    return new IndexingQueue(
+        capacity,
+        Gauge.build().name("test_depth").help("Test").labelNames("stage").create().labels("test"));
+  }
+
+  private static IndexedItem item(long id, long expectedReturnTime) {
+    IndexedItem item = new IndexedItem(new ItemIdKey(id, "uuid" + id, 1), null);
+    item.setExpectedReturnTime(expectedReturnTime);
+    return item;
+  }
+}
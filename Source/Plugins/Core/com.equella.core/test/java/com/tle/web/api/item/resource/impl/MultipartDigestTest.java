@@ -0,0 +1,114 @@
+package com.tle.web.api.item.resource.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class MultipartDigestTest {
+  private static final String[] PARTS = {"first part,", "second part,", "third part"};
+
+  private final MultipartDigest.PartSource source =
+      partNumber -> new ByteArrayInputStream(bytes(partNumber));
+
+  @Test
+  public void partsInOrder() throws IOException {
+    MultipartDigest digest = new MultipartDigest(Runnable::run);
+    for (int i = 1; i <= PARTS.length; i++) {
+      upload(digest, i);
+    }
+    assertEquals(expected(), digest.md5(PARTS.length));
+  }
+
+  @Test
+  public void partsOutOfOrder() throws IOException {
+    MultipartDigest digest = new MultipartDigest(Runnable::run);
+    upload(digest, 3);
+    upload(digest, 2);
+    upload(digest, 1);
+    assertEquals(expected(), digest.md5(PARTS.length));
+  }
+
+  @Test
+  public void concurrentParts() throws IOException {
+    MultipartDigest digest = new MultipartDigest(Runnable::run);
+    // Part 2 starts while part 1 is still being written, and finishes first
+    InputStream first = digest.startPart(1, new ByteArrayInputStream(bytes(1)));
+    InputStream second = digest.startPart(2, new ByteArrayInputStream(bytes(2)));
+    ByteStreams.exhaust(second);
+    digest.partWritten(2, source);
+    ByteStreams.exhaust(first);
+    digest.partWritten(1, source);
+    upload(digest, 3);
+    assertEquals(expected(), digest.md5(PARTS.length));
+  }
+
+  @Test
+  public void partsReadBackInTheBackground() throws Exception {
+    List<Runnable> catchUps = new ArrayList<>();
+    MultipartDigest digest = new MultipartDigest(catchUps::add);
+    upload(digest, 3);
+    upload(digest, 2);
+    upload(digest, 1);
+    // Part 1 was digested as it was written, the rest are left for the executor
+    assertEquals(1, catchUps.size());
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> md5 = executor.submit(() -> digest.md5(PARTS.length));
+      Thread.sleep(100);
+      assertFalse("Completing waits for parts being read back", md5.isDone());
+
+      catchUps.get(0).run();
+      assertEquals(expected(), md5.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void unknownDigest() throws IOException {
+    MultipartDigest missing = new MultipartDigest(Runnable::run);
+    upload(missing, 1);
+    upload(missing, 3);
+    assertNull(missing.md5(PARTS.length));
+
+    MultipartDigest repeated = new MultipartDigest(Runnable::run);
+    upload(repeated, 1);
+    upload(repeated, 1);
+    assertNull(repeated.md5(1));
+
+    MultipartDigest failed = new MultipartDigest(Runnable::run);
+    failed.startPart(1, new ByteArrayInputStream(bytes(1)));
+    failed.partFailed(1);
+    upload(failed, 1);
+    assertNull(failed.md5(1));
+  }
+
+  private void upload(MultipartDigest digest, int partNumber) throws IOException {
+    ByteStreams.exhaust(digest.startPart(partNumber, new ByteArrayInputStream(bytes(partNumber))));
+    digest.partWritten(partNumber, source);
+  }
+
+  private static byte[] bytes(int partNumber) {
+    return PARTS[partNumber - 1].getBytes(StandardCharsets.UTF_8);
+  }
+
+  @SuppressWarnings("deprecation")
+  private static String expected() {
+    return Hashing.md5().hashString(String.join("", PARTS), StandardCharsets.UTF_8).toString();
+  }
+}
@@ -0,0 +1,31 @@
+package com.tle.web.wizard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class WizardStateCodecTest {
+  @Test
+  public void roundTrip() throws IOException {
+    StringBuilder xml = new StringBuilder("<xml><item>");
+    for (int i = 0; i < 5000; i++) {
+      xml.append("<keyword lang=\"en\">Keyword é ").append(i).append("</keyword>");
+    }
+    xml.append("</item></xml>");
+
+    byte[] encoded = WizardStateCodec.encodeXml(xml.toString());
+    assertEquals(xml.toString(), WizardStateCodec.decodeXml(encoded));
+    assertTrue(encoded.length < xml.toString().getBytes(StandardCharsets.UTF_8).length / 4);
+  }
+
+  @Test
+  public void nullXml() throws IOException {
+    assertNull(WizardStateCodec.encodeXml(null));
+    assertNull(WizardStateCodec.decodeXml(null));
+  }
+}
@@ -554,6 +554,116 @@ class ItemIndexTest
         result.getEntries.asScala.flatMap(_.getFieldValues.asScala).toArray shouldBe Array(java11,
                                                                                            java8)
       }
+
+      def properties(name: String, description: String = "") =
+        new PropBagEx(
+          s"<xml><item><name>$name</name>" +
+            (if (description.isEmpty) "" else s"<description>$description</description>") +
+            "</item></xml>")
+
+      def named(names: String*) =
+        names.flatMap(name => generateIndexedItems(itemName = name, properties = properties(name)))
+
+      it("counts each value of a schema node") { f =>
+        val (itemIndex, _) = f
+        Given("Items with repeated values for a schema node")
+        createIndexes(itemIndex, named("java", "java", "scala").toList)
+
+        When("the values are counted")
+        val result = itemIndex.facetCount(null, List("/item/name").asJava)
+
+        Then("each value should be counted in value order")
+        result.get("/item/name").asScala.map(p => (p.getFirst, p.getSecond)) shouldBe List(
+          ("java", 2),
+          ("scala", 1))
+      }
+
+      it("combines the values of several schema nodes") { f =>
+        val (itemIndex, _) = f
+        Given("Items where some have no value for one of the schema nodes")
+        createIndexes(
+          itemIndex,
+          generateIndexedItems(properties = properties("java", "jvm")) ++
+            generateIndexedItems(properties = properties("java", "jvm")) ++
+            generateIndexedItems(properties = properties("python")) ++
+            generateIndexedItems(properties = properties("scala", "jvm"))
+        )
+
+        When("a classification search is performed for both schema nodes")
+        val result = itemIndex.matrixSearch(null,
+                                            List("/item/name", "/item/description").asJava,
+                                            true,
+                                            false)
+
+        Then("each combination should be counted, with a blank for a missing value")
+        val combinations =
+          result.getEntries.asScala.map(e => (e.getFieldValues.asScala, e.getCount))
+        combinations shouldBe List(
+          (List("java", "jvm"), 2),
+          (List("python", ""), 1),
+          (List("scala", "jvm"), 1))
+      }
+
+      it("counts Items indexed before values were kept as doc values") { f =>
+        val (itemIndex, _) = f
+        Given("Items indexed without doc values alongside Items indexed with them")
+        val legacy = named("java", "scala")
+        legacy.foreach(
+          _.getItemdoc.getFields.removeIf(field =>
+            field.name.endsWith("/$FACET$") || field.name == FreeTextQuery.FIELD_FACET_DOCVALUES))
+        createIndexes(itemIndex, legacy.toList)
+        createIndexes(itemIndex, named("java").toList)
+
+        When("the values are counted")
+        val counts = itemIndex.facetCount(null, List("/item/name").asJava)
+        val matrix = itemIndex.matrixSearch(null, List("/item/name").asJava, false, false)
+
+        Then("every Item should be counted")
+        counts.get("/item/name").asScala.map(p => (p.getFirst, p.getSecond)) shouldBe List(
+          ("java", 2),
+          ("scala", 1))
+        val items = matrix.getEntries.asScala.map(e => (e.getFieldValues.get(0), e.getItems.size))
+        items shouldBe List(
+          ("java", 2),
+          ("scala", 1))
+      }
+
+      it("keeps the most common combinations when limited") { f =>
+        val (itemIndex, _) = f
+        Given("Items with values of differing popularity")
+        createIndexes(itemIndex, named("a", "b", "b", "c", "c", "c").toList)
+
+        When("a classification search is limited to two combinations")
+        val result = itemIndex.matrixSearch(null, List("/item/name").asJava, true, false, 2)
+
+        Then("the two most common combinations should be returned in value order")
+        result.getEntries.asScala.map(e => (e.getFieldValues.get(0), e.getCount)) shouldBe List(
+          ("b", 2),
+          ("c", 3))
+      }
+    }
+  }
+
+  describe("result caching") {
+    it("reuses the results of an identical search until the index changes") { f =>
+      val (itemIndex, searchConfig) = f
+      Given("some indexed Items")
+      createIndexes(itemIndex, generateIndexedItems(3))
+
+      When("the same search is performed twice")
+      val first  = itemIndex.search(searchConfig, 0, 10, false)
+      val second = itemIndex.search(searchConfig, 0, 10, false)
+
+      Then("the second search should be answered from the cache")
+      itemIndex.getResultCacheStats.hitCount shouldBe 1
+      second.getResults.asScala.map(_.getItemIdKey) shouldBe first.getResults.asScala.map(
+        _.getItemIdKey)
+
+      When("more Items are indexed")
+      createIndexes(itemIndex, generateIndexedItems(2))
+
+      Then("the search should see them")
+      itemIndex.search(searchConfig, 0, 10, false).getAvailable shouldBe 5
     }
   }
 
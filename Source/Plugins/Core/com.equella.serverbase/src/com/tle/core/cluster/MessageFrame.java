@@ -0,0 +1,150 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.cluster;
+
+import com.google.common.io.ByteStreams;
+import com.tle.core.cluster.service.ClusterMessagingService;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Wire format of the pipelined messaging protocol.
+ *
+ * <p>A receiver asks for the pipelined protocol by sending {@link #PIPELINED_HANDSHAKE} in place of
+ * its expected offset. A sender which supports it replies with {@link #PIPELINED_HANDSHAKE}, its
+ * protocol version and the epoch of its message queue, and the receiver then sends its expected
+ * offset. Offsets only have meaning within an epoch, so a receiver which sees a new epoch starts
+ * again from the sender's first message. Older senders read the request as an offset and reply with
+ * the original protocol, which the receiver falls back to.
+ *
+ * <p>Once the protocol has been agreed the sender writes either a keep alive ({@link #KEEPALIVE})
+ * or a frame made up of the offset of the first message (8 bytes), the number of messages (4
+ * bytes), flags (1 byte), the payload length (4 bytes) and the payload. The payload is each message
+ * prefixed with its length, deflated when {@link #FLAG_COMPRESSED} is set.
+ *
+ * <p>Frames are not acknowledged individually. The receiver replies to each frame with the offset
+ * of the next message it expects, which acknowledges every earlier message, and the sender keeps
+ * writing frames until the unacknowledged messages fill its window.
+ */
+@SuppressWarnings("nls")
+public final class MessageFrame {
+  public static final long KEEPALIVE = -1;
+  public static final long PIPELINED_HANDSHAKE = Long.MIN_VALUE;
+  public static final int PROTOCOL_VERSION = 2;
+
+  public static final int FLAG_COMPRESSED = 1;
+
+  /**
+   * Messages are added to a frame while its payload stays within this size. A frame always holds at
+   * least one message, so a single large message may exceed it.
+   */
+  public static final int TARGET_FRAME_SIZE = 256 * 1024;
+
+  public static final int MAX_FRAME_MESSAGES = 1000;
+  /** Payloads at least this big are compressed, provided it makes them smaller. */
+  public static final int COMPRESS_THRESHOLD = 8 * 1024;
+
+  /** Uncompressed size of a frame holding a single message of the maximum size. */
+  private static final int MAX_PAYLOAD_SIZE = ClusterMessagingService.MAX_MSG_SIZE + 4;
+
+  private MessageFrame() {
+    throw new Error();
+  }
+
+  public static void write(DataOutputStream dos, long firstOffset, List<byte[]> messages)
+      throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(payload);
+    for (byte[] msg : messages) {
+      out.writeInt(msg.length);
+      out.write(msg);
+    }
+    out.flush();
+
+    int flags = 0;
+    byte[] data = payload.toByteArray();
+    if (data.length >= COMPRESS_THRESHOLD) {
+      byte[] compressed = deflate(data);
+      if (compressed.length < data.length) {
+        data = compressed;
+        flags |= FLAG_COMPRESSED;
+      }
+    }
+
+    dos.writeLong(firstOffset);
+    dos.writeInt(messages.size());
+    dos.writeByte(flags);
+    dos.writeInt(data.length);
+    dos.write(data);
+    dos.flush();
+  }
+
+  /** Reads the rest of a frame, after the offset of the first message has been read. */
+  public static List<byte[]> read(DataInputStream dis) throws IOException {
+    int count = dis.readInt();
+    int flags = dis.readByte();
+    int length = dis.readInt();
+    if (count < 0 || count > MAX_FRAME_MESSAGES || length < 0 || length > MAX_PAYLOAD_SIZE) {
+      throw new IOException(
+          "Invalid message frame of " + count + " messages, " + length + " bytes");
+    }
+
+    byte[] data = new byte[length];
+    ByteStreams.readFully(dis, data);
+
+    InputStream payload = new ByteArrayInputStream(data);
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      // Guard against frames which inflate to more than the sender could have written
+      payload = ByteStreams.limit(new InflaterInputStream(payload), MAX_PAYLOAD_SIZE);
+    }
+
+    DataInputStream in = new DataInputStream(payload);
+    List<byte[]> messages = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int size = in.readInt();
+      if (size < 0 || size > ClusterMessagingService.MAX_MSG_SIZE) {
+        throw new IOException("Message too big!");
+      }
+      byte[] msg = new byte[size];
+      ByteStreams.readFully(in, msg);
+      messages.add(msg);
+    }
+    return messages;
+  }
+
+  private static byte[] deflate(byte[] data) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2);
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+      out.write(data);
+    } finally {
+      deflater.end();
+    }
+    return compressed.toByteArray();
+  }
+}
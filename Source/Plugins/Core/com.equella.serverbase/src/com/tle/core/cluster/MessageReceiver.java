@@ -44,8 +44,12 @@ public class MessageReceiver implements Runnable {
   private final List<ClusterMessageHandler> handlers;
   private final String myId; // This node
   private final String senderId; // Remote node
+  private final boolean pipelined;
 
   private long messageOffset = -1;
+  private long senderEpoch;
+  // Set when the sender offered a version of the pipelined protocol that this node doesn't support
+  private boolean pipelineRefused;
   private boolean die;
 
   private Executor executor;
@@ -59,12 +63,27 @@ public class MessageReceiver implements Runnable {
       String senderId,
       List<ClusterMessageHandler> handlers,
       Executor executor) {
+    this(host, port, myId, senderId, handlers, executor, false);
+  }
+
+  /**
+   * @param pipelined ask the sender to use the pipelined protocol described in {@link MessageFrame}
+   */
+  public MessageReceiver(
+      String host,
+      int port,
+      String myId,
+      String senderId,
+      List<ClusterMessageHandler> handlers,
+      Executor executor,
+      boolean pipelined) {
     this.host = host;
     this.port = port;
     this.myId = myId;
     this.senderId = senderId;
     this.handlers = handlers;
     this.executor = executor;
+    this.pipelined = pipelined;
   }
 
   @Override
@@ -95,18 +114,31 @@ public class MessageReceiver implements Runnable {
             new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
         dos.writeUTF(senderId);
         dos.writeUTF(myId);
-        dos.writeLong(messageOffset);
+        boolean askPipelined = pipelined && !pipelineRefused;
+        dos.writeLong(askPipelined ? MessageFrame.PIPELINED_HANDSHAKE : messageOffset);
         dos.flush();
 
         DataInputStream dis = new DataInputStream(socket.getInputStream());
+        long cmo = dis.readLong();
+        if (askPipelined && cmo == MessageFrame.PIPELINED_HANDSHAKE) {
+          startPipelined(dis, dos);
+          // Only returns once this receiver has been killed
+          try {
+            receiveFrames(dis, dos);
+          } finally {
+            lastConnected = System.currentTimeMillis();
+          }
+        } else if (askPipelined && LOGGER.isDebugEnabled()) {
+          LOGGER.debug("NODE: " + senderId + " doesn't support pipelined messaging");
+        }
         while (!die) {
           lastConnected = System.currentTimeMillis();
-          long cmo = dis.readLong();
 
           if (cmo == -1) {
             if (LOGGER.isDebugEnabled()) {
               LOGGER.debug("Receiving keep alive from NODE: " + senderId);
             }
+            cmo = dis.readLong();
             continue;
           }
 
@@ -141,17 +173,12 @@ public class MessageReceiver implements Runnable {
             break;
           }
 
-          Object msg = PluginAwareObjectInputStream.fromBytes(data);
-          for (ClusterMessageHandler h : handlers) {
-            Runnable handler = h.canHandle(msg);
-            if (handler != null) {
-              executor.execute(handler);
-            }
-          }
+          dispatch(data);
 
           dos.writeBoolean(true);
           dos.flush();
           messageOffset = cmo + 1;
+          cmo = dis.readLong();
         }
       } catch (IOException ex) {
         logError(senderId, ex);
@@ -161,6 +188,86 @@ public class MessageReceiver implements Runnable {
     }
   }
 
+  /**
+   * Finishes the handshake once the sender has agreed to the pipelined protocol, by sending the
+   * offset of the next message expected from the sender's current epoch.
+   */
+  private void startPipelined(DataInputStream dis, DataOutputStream dos) throws IOException {
+    int version = dis.readInt();
+    long epoch = dis.readLong();
+    if (version != MessageFrame.PROTOCOL_VERSION) {
+      pipelineRefused = true;
+      throw new IOException("Unsupported messaging protocol version " + version);
+    }
+    if (epoch != senderEpoch) {
+      if (messageOffset != -1) {
+        LOGGER.info("NODE: " + senderId + " has a new message queue, starting from its beginning");
+      }
+      // Offsets from the old queue mean nothing to the new one
+      messageOffset = -1;
+      senderEpoch = epoch;
+    }
+    dos.writeLong(messageOffset);
+    dos.flush();
+  }
+
+  /**
+   * Reads frames until the connection fails or the receiver is killed, acknowledging each one with
+   * the offset of the next message expected.
+   */
+  private void receiveFrames(DataInputStream dis, DataOutputStream dos) throws IOException {
+    while (!die) {
+      long firstOffset = dis.readLong();
+      if (firstOffset == MessageFrame.KEEPALIVE) {
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("Receiving keep alive from NODE: " + senderId);
+        }
+        continue;
+      }
+
+      List<byte[]> messages = MessageFrame.read(dis);
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace(
+            MessageFormat.format(
+                "Receiving frame of {0} messages from NODE: {1}", messages.size(), senderId));
+      }
+      if (messageOffset != -1 && firstOffset > messageOffset) {
+        LOGGER.warn(
+            "Message offset greater than known offset. Messages may have been missed. Offset expected: "
+                + messageOffset
+                + ", Offset received: "
+                + firstOffset);
+      }
+
+      if (die) {
+        break;
+      }
+
+      long offset = firstOffset;
+      for (byte[] data : messages) {
+        // Messages before the known offset were resent after a reconnect and already handled
+        if (messageOffset == -1 || offset >= messageOffset) {
+          dispatch(data);
+        }
+        offset++;
+      }
+
+      messageOffset = Math.max(messageOffset, offset);
+      dos.writeLong(messageOffset);
+      dos.flush();
+    }
+  }
+
+  private void dispatch(byte[] data) {
+    Object msg = PluginAwareObjectInputStream.fromBytes(data);
+    for (ClusterMessageHandler h : handlers) {
+      Runnable handler = h.canHandle(msg);
+      if (handler != null) {
+        executor.execute(handler);
+      }
+    }
+  }
+
   private void checkLastConnected(long lastConnected) {
     if (lastConnected != 0
         && System.currentTimeMillis() - lastConnected > TimeUnit.MINUTES.toMillis(30)) {
@@ -24,8 +24,13 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,10 +39,20 @@ import org.slf4j.LoggerFactory;
 public class MessageSender {
   private static final Logger LOGGER = LoggerFactory.getLogger(MessageSender.class);
 
+  /** Maximum size of the messages written to a pipelined connection but not yet acknowledged. */
+  private static final long WINDOW_SIZE = 4 * 1024 * 1024;
+
   private String receiverId; // Remote node
-  private final BlockingDeque<byte[]> msgQueue = new LinkedBlockingDeque<>();
+  // Identifies this queue's offsets to pipelined receivers, which otherwise can't tell that a new
+  // sender has started again from zero
+  private final long epoch = ThreadLocalRandom.current().nextLong();
+  private final BlockingDeque<QueuedMessage> msgQueue = new LinkedBlockingDeque<>();
+  // Messages written to a pipelined connection which the receiver hasn't acknowledged yet
+  private final Deque<QueuedMessage> unacked = new ArrayDeque<>();
   private long totalQueueSize;
-  private long headOffset = 0;
+  private long unackedSize;
+  private long nextOffset = 0;
+  private long droppedMessages;
 
   public MessageSender(String receiverId) {
     this.receiverId = receiverId;
@@ -45,22 +60,18 @@ public class MessageSender {
 
   public void sendMessages(DataOutputStream dos, DataInputStream dis)
       throws IOException, InterruptedException {
-    byte[] msg = msgQueue.poll(5, TimeUnit.SECONDS);
+    QueuedMessage msg = msgQueue.poll(5, TimeUnit.SECONDS);
     if (msg == null) {
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(MessageFormat.format("Sending keepalive to NODE: {0}", receiverId));
-      }
-      dos.writeLong(-1);
-      dos.flush();
+      sendKeepAlive(dos);
       return;
     }
 
     boolean processed = false;
     try {
-      dos.writeLong(headOffset);
-      int msgSize = msg.length;
+      dos.writeLong(msg.offset);
+      int msgSize = msg.data.length;
       dos.writeInt(msgSize);
-      dos.write(msg);
+      dos.write(msg.data);
       dos.flush();
 
       if (LOGGER.isTraceEnabled()) {
@@ -71,7 +82,6 @@ public class MessageSender {
 
       synchronized (this) {
         totalQueueSize -= msgSize;
-        headOffset++;
         processed = true;
       }
     } finally {
@@ -81,8 +91,128 @@ public class MessageSender {
     }
   }
 
-  public void checkExpectedOffset(DataInputStream dis) throws IOException {
+  /**
+   * Writes the next frame of queued messages to a connection using the pipelined protocol (see
+   * {@link MessageFrame}), without waiting for it to be acknowledged unless the window is full.
+   * Messages which haven't been acknowledged are queued again if anything goes wrong.
+   */
+  public void sendFrames(DataOutputStream dos, DataInputStream dis)
+      throws IOException, InterruptedException {
+    boolean sent = false;
+    try {
+      readAcks(dis, false);
+      while (isWindowFull()) {
+        readAcks(dis, true);
+      }
+
+      QueuedMessage first = msgQueue.poll(5, TimeUnit.SECONDS);
+      if (first == null) {
+        sendKeepAlive(dos);
+        sent = true;
+        return;
+      }
+
+      List<byte[]> frame = takeFrame(first);
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace(
+            MessageFormat.format(
+                "Sending frame of {0} messages to NODE: {1}", frame.size(), receiverId));
+      }
+      MessageFrame.write(dos, first.offset, frame);
+      sent = true;
+    } finally {
+      if (!sent) {
+        requeueUnacked();
+      }
+    }
+  }
+
+  private void sendKeepAlive(DataOutputStream dos) throws IOException {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(MessageFormat.format("Sending keepalive to NODE: {0}", receiverId));
+    }
+    dos.writeLong(MessageFrame.KEEPALIVE);
+    dos.flush();
+  }
+
+  /**
+   * Takes the messages following {@code first} from the queue while they fit in the frame. Offsets
+   * in a frame must be contiguous so the frame ends early if messages have been dropped.
+   */
+  private synchronized List<byte[]> takeFrame(QueuedMessage first) {
+    List<byte[]> frame = new ArrayList<>();
+    int frameSize = 0;
+    QueuedMessage msg = first;
+    while (true) {
+      frame.add(msg.data);
+      frameSize += msg.data.length + 4;
+      unacked.add(msg);
+      unackedSize += msg.data.length;
+
+      QueuedMessage next = msgQueue.peekFirst();
+      if (next == null
+          || next.offset != msg.offset + 1
+          || frame.size() >= MessageFrame.MAX_FRAME_MESSAGES
+          || frameSize + next.data.length + 4 > MessageFrame.TARGET_FRAME_SIZE) {
+        return frame;
+      }
+      msg = msgQueue.removeFirst();
+    }
+  }
+
+  private synchronized boolean isWindowFull() {
+    return unackedSize >= WINDOW_SIZE;
+  }
+
+  private void readAcks(DataInputStream dis, boolean block) throws IOException {
+    while (block || dis.available() >= 8) {
+      acknowledge(dis.readLong());
+      block = false;
+    }
+  }
+
+  /** Removes every unacknowledged message before the next offset expected by the receiver. */
+  private synchronized void acknowledge(long expectedOffset) {
+    while (!unacked.isEmpty() && unacked.peekFirst().offset < expectedOffset) {
+      QueuedMessage msg = unacked.removeFirst();
+      totalQueueSize -= msg.data.length;
+      unackedSize -= msg.data.length;
+    }
+  }
+
+  private synchronized void requeueUnacked() {
+    while (!unacked.isEmpty()) {
+      msgQueue.addFirst(unacked.removeLast());
+    }
+    unackedSize = 0;
+  }
+
+  /**
+   * Reads the start of a connection from the receiver, agreeing to the pipelined protocol if the
+   * receiver asks for it.
+   *
+   * @return true if the pipelined protocol is to be used
+   */
+  public boolean checkExpectedOffset(DataInputStream dis, DataOutputStream dos) throws IOException {
     long expectedOffset = dis.readLong();
+    boolean pipelined = false;
+    if (expectedOffset == MessageFrame.PIPELINED_HANDSHAKE) {
+      dos.writeLong(MessageFrame.PIPELINED_HANDSHAKE);
+      dos.writeInt(MessageFrame.PROTOCOL_VERSION);
+      dos.writeLong(epoch);
+      dos.flush();
+      pipelined = true;
+      expectedOffset = dis.readLong();
+    }
+
+    // Anything left from a previous connection is sent again
+    requeueUnacked();
+    if (pipelined && expectedOffset != -1) {
+      // The receiver has already processed these, we just never saw the acknowledgement
+      acknowledgeQueued(expectedOffset);
+    }
+
+    long headOffset = getHeadOffset();
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace(
           MessageFormat.format(
@@ -94,23 +224,41 @@ public class MessageSender {
               "NODE: {0} was down for too long. {1} messages have been missed",
               receiverId, (headOffset - expectedOffset)));
     }
+    return pipelined;
   }
 
-  public synchronized void queueMessage(byte[] msg) {
-    totalQueueSize += msg.length;
+  private synchronized void acknowledgeQueued(long expectedOffset) {
+    while (!msgQueue.isEmpty() && msgQueue.peekFirst().offset < expectedOffset) {
+      totalQueueSize -= msgQueue.removeFirst().data.length;
+    }
+  }
+
+  /** @return the offset of the next message to be sent */
+  public synchronized long getHeadOffset() {
+    QueuedMessage head = unacked.isEmpty() ? msgQueue.peekFirst() : unacked.peekFirst();
+    return head != null ? head.offset : nextOffset;
+  }
 
+  /** @return the number of messages dropped because the queue was full */
+  public synchronized long getDroppedMessages() {
+    return droppedMessages;
+  }
+
+  public synchronized void queueMessage(byte[] msg) {
     if (msg.length > ClusterMessagingService.MAX_MSG_SIZE) {
       throw new MessagingException("Message is too large");
     }
 
+    totalQueueSize += msg.length;
+
     int droppedMsgs = 0;
     while (totalQueueSize > ClusterMessagingService.MAX_QUEUE_SIZE && !msgQueue.isEmpty()) {
-      byte[] firstMsg = msgQueue.removeFirst();
-      totalQueueSize -= firstMsg.length;
-      headOffset++;
+      QueuedMessage firstMsg = msgQueue.removeFirst();
+      totalQueueSize -= firstMsg.data.length;
       droppedMsgs++;
     }
     if (droppedMsgs > 0) {
+      droppedMessages += droppedMsgs;
       LOGGER.warn("Dropped " + droppedMsgs + " messages from queue for NODE: " + receiverId);
     }
 
@@ -120,6 +268,16 @@ public class MessageSender {
               "Queueing message of size: {0}, Total queue size: {1}", msg.length, totalQueueSize));
     }
 
-    msgQueue.add(msg);
+    msgQueue.add(new QueuedMessage(nextOffset++, msg));
+  }
+
+  private static final class QueuedMessage {
+    private final long offset;
+    private final byte[] data;
+
+    QueuedMessage(long offset, byte[] data) {
+      this.offset = offset;
+      this.data = data;
+    }
   }
 }
@@ -18,6 +18,7 @@
 
 package com.tle.core.cluster.service;
 
+import com.tle.core.cluster.MessageFrame;
 import com.tle.core.cluster.MessageSender;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
@@ -42,6 +43,10 @@ import org.slf4j.LoggerFactory;
  * <p>After this processing, the connection is considered established and an infinite loop is
  * established which sends messages to the connecting node when new messages are added. Or, in
  * between messages will send a keep alive message.
+ *
+ * <p>Receivers may instead ask for the pipelined protocol described in {@link MessageFrame}, in
+ * which case messages are sent in frames and the sender doesn't wait for each one to be
+ * acknowledged.
  */
 public class ClusterMessageProcessor implements Runnable {
   private static final Logger LOGGER = LoggerFactory.getLogger(ClusterMessageProcessor.class);
@@ -80,13 +85,25 @@ public class ClusterMessageProcessor implements Runnable {
       LOGGER.info("Successful connection from NODE: " + receiverId);
 
       // Get the first message to determine where the caller is up to
-      MessageSender ms = getMessageSender.apply(receiverId);
-      ms.checkExpectedOffset(dis);
+      final MessageSender ms = getMessageSender.apply(receiverId);
+      final boolean pipelined = ms.checkExpectedOffset(dis, dos);
+      if (pipelined) {
+        LOGGER.info("Using pipelined messaging protocol for NODE: " + receiverId);
+      }
 
-      // Process messages until process finishes - i.e. the server stops or an exception is thrown
+      // Process messages until process finishes - i.e. the server stops, the sender is replaced or
+      // an exception is thrown
       while (true) {
-        ms.sendMessages(dos, dis);
-        ms = getMessageSender.apply(receiverId);
+        if (pipelined) {
+          ms.sendFrames(dos, dis);
+        } else {
+          ms.sendMessages(dos, dis);
+        }
+        if (getMessageSender.apply(receiverId) != ms) {
+          // A new sender starts its offsets again, so the receiver has to reconnect to find out
+          LOGGER.info("Message queue replaced, closing connection to NODE: " + receiverId);
+          break;
+        }
       }
     } catch (IOException ex) {
       LOGGER.error(
@@ -86,6 +86,10 @@ public class ClusterMessagingServiceImpl
   @Named("messaging.bindPort")
   private int bindPort;
 
+  @Inject(optional = true)
+  @Named("messaging.pipelined")
+  private boolean pipelined = true;
+
   @Inject private PluginTracker<ClusterMessageHandler> handlerTracker;
   @Inject private ZookeeperService zookeeperService;
 
@@ -254,7 +258,8 @@ public class ClusterMessagingServiceImpl
             zookeeperService.getNodeId(),
             remoteId,
             handlerTracker.getBeanList(),
-            msgExecutor);
+            msgExecutor,
+            pipelined);
     receiverExecutor.submit(messageReceiver);
     receivers.put(remoteId, messageReceiver);
   }
@@ -25,10 +25,21 @@ import javax.sql.DataSource;
 public class DataSourceHolder {
   private final ExtendedDialect dialect;
   private final DataSource dataSource;
+  private final String id;
 
   public DataSourceHolder(DataSource dataSource, ExtendedDialect dialect) {
+    this(dataSource, dialect, null);
+  }
+
+  /** @param id identifies the database connected to, the same on every cluster node */
+  public DataSourceHolder(DataSource dataSource, ExtendedDialect dialect, String id) {
     this.dataSource = dataSource;
     this.dialect = dialect;
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
   }
 
   public DataSource getDataSource() {
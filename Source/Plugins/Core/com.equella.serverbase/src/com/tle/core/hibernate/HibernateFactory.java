@@ -69,7 +69,10 @@ public class HibernateFactory {
         properties.put(Environment.DATASOURCE, dataSourceHolder.getDataSource());
         config.addProperties(properties);
         config.setProperty(Environment.DIALECT, dialect.getClass().getName());
-        config.setProperty(Environment.USE_SECOND_LEVEL_CACHE, "false");
+        // Second-level caching is opt-in, see HibernateCacheService
+        config.setProperty(
+            Environment.USE_SECOND_LEVEL_CACHE,
+            properties.getProperty(Environment.USE_SECOND_LEVEL_CACHE, "false"));
         config.setProperty(Environment.JPA_VALIDATION_MODE, "DDL");
         // Due to https://hibernate.atlassian.net/browse/HHH-12665 with SpringHib5,
         // certain operations, like importing a institution would fail with a
@@ -0,0 +1,45 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.hibernate.cache;
+
+import com.tle.annotation.Nullable;
+import java.io.Serializable;
+
+/** Sent to the other cluster nodes when a second-level cache region entry has changed. */
+public class CacheInvalidationMessage implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final String regionName;
+  @Nullable private final Serializable key;
+
+  /** @param key the entry to invalidate, or null for the whole region */
+  public CacheInvalidationMessage(String regionName, @Nullable Serializable key) {
+    this.regionName = regionName;
+    this.key = key;
+  }
+
+  public String getRegionName() {
+    return regionName;
+  }
+
+  @Nullable
+  public Serializable getKey() {
+    return key;
+  }
+}
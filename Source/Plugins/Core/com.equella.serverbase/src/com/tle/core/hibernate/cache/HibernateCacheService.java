@@ -0,0 +1,45 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.hibernate.cache;
+
+import com.google.common.cache.CacheStats;
+import com.tle.core.hibernate.HibernateFactory;
+import java.util.Map;
+
+/**
+ * Opt-in Hibernate second-level and query caching. Enabled with {@code
+ * hibernate.secondLevelCache=true} (and {@code hibernate.queryCache=true} for the query cache) in
+ * optional-config.properties. Entities opt in to caching with {@code
+ * org.hibernate.annotations.Cache}.
+ */
+public interface HibernateCacheService {
+  /**
+   * Configures the factory to use the local region factory if caching is enabled.
+   *
+   * @param regionPrefix keeps the regions of different session factories apart
+   * @param perDataSource the factory connects through the current institution's data source, so the
+   *     same ids refer to different rows depending on which database is current
+   */
+  void configure(HibernateFactory factory, String regionPrefix, boolean perDataSource);
+
+  boolean isEnabled();
+
+  /** @return hit/miss statistics keyed by qualified region name. */
+  Map<String, CacheStats> getRegionStatistics();
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.hibernate.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.tle.core.hibernate.DataSourceHolder;
+import com.tle.core.hibernate.cache.LocalStorageAccess.Kind;
+import com.tle.core.hibernate.cache.LocalStorageAccess.ScopedKey;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.cfg.spi.EntityDataCachingConfig;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A second-level cache provider which keeps each region in a local Guava cache. In a cluster,
+ * evictions are published through {@link #setInvalidationPublisher(Consumer)} (which {@link
+ * HibernateCacheService} wires up to the cluster messaging) and applied on the other nodes, so
+ * regions should use {@link AccessType#NONSTRICT_READ_WRITE} or {@link AccessType#READ_ONLY}.
+ *
+ * <p>When {@link #PER_DATA_SOURCE} is set, the factory's connections go to whichever database is
+ * current for the thread, where ids are only unique within a database. Entity and query result keys
+ * are then qualified with the id of the current {@link DataSourceHolder}.
+ *
+ * <p>Hibernate creates instances of this class reflectively, so the regions of every session
+ * factory are kept in a static registry.
+ */
+@SuppressWarnings("nls")
+public class LocalRegionFactory extends RegionFactoryTemplate {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LocalRegionFactory.class);
+
+  /** Default maximum number of entries kept in a region. */
+  public static final String MAX_ENTRIES = "hibernate.cache.local.max_entries";
+  /** Per region override of {@link #MAX_ENTRIES}, suffixed with the region name. */
+  public static final String REGION_MAX_ENTRIES_PREFIX = "hibernate.cache.local.max_entries.";
+
+  /** Set to true to keep the cached rows of each database apart. */
+  public static final String PER_DATA_SOURCE = "hibernate.cache.local.per_data_source";
+
+  private static final long DEFAULT_MAX_ENTRIES = 10000;
+
+  private static final Map<String, LocalStorageAccess> REGIONS = new ConcurrentHashMap<>();
+  private static volatile Consumer<CacheInvalidationMessage> invalidationPublisher;
+
+  private Map<?, ?> configValues = ImmutableMap.of();
+  private String regionPrefix;
+  private boolean perDataSource;
+
+  public static void setInvalidationPublisher(Consumer<CacheInvalidationMessage> publisher) {
+    invalidationPublisher = publisher;
+  }
+
+  /** @return every region created so far, keyed by qualified region name. */
+  public static Map<String, LocalStorageAccess> getRegions() {
+    return ImmutableMap.copyOf(REGIONS);
+  }
+
+  /** Applies an invalidation published by another cluster node. */
+  public static void invalidateFromRemote(CacheInvalidationMessage message) {
+    LocalStorageAccess region = REGIONS.get(message.getRegionName());
+    if (region != null) {
+      region.invalidateFromRemote(message.getKey());
+    }
+  }
+
+  void publishInvalidation(String regionName, Object key) {
+    Consumer<CacheInvalidationMessage> publisher = invalidationPublisher;
+    if (publisher == null) {
+      return;
+    }
+    Object rawKey = key instanceof ScopedKey ? ((ScopedKey) key).getKey() : key;
+    if (key != null && !(rawKey instanceof Serializable)) {
+      LOGGER.warn("Key for region " + regionName + " is not serializable, evicting whole region");
+      key = null;
+    }
+    publisher.accept(new CacheInvalidationMessage(regionName, (Serializable) key));
+  }
+
+  @Override
+  protected void prepareForUse(SessionFactoryOptions settings, Map configValues) {
+    this.configValues = configValues;
+    this.regionPrefix = settings.getCacheRegionPrefix();
+    setPerDataSource(Boolean.parseBoolean(String.valueOf(configValues.get(PER_DATA_SOURCE))));
+  }
+
+  void setPerDataSource(boolean perDataSource) {
+    this.perDataSource = perDataSource;
+  }
+
+  boolean isPerDataSource() {
+    return perDataSource;
+  }
+
+  @Override
+  protected void releaseFromUse() {
+    REGIONS.values().removeIf(region -> region.getRegionFactory() == this);
+  }
+
+  @Override
+  public AccessType getDefaultAccessType() {
+    return AccessType.NONSTRICT_READ_WRITE;
+  }
+
+  @Override
+  protected DomainDataStorageAccess createDomainDataStorageAccess(
+      DomainDataRegionConfig regionConfig, DomainDataRegionBuildingContext buildingContext) {
+    for (EntityDataCachingConfig entityConfig : regionConfig.getEntityCaching()) {
+      AccessType accessType = entityConfig.getAccessType();
+      if (accessType != AccessType.NONSTRICT_READ_WRITE && accessType != AccessType.READ_ONLY) {
+        LOGGER.warn(
+            "Region "
+                + regionConfig.getRegionName()
+                + " uses "
+                + accessType
+                + ", updates will not be invalidated on other cluster nodes");
+      }
+    }
+    return createStorage(regionConfig.getRegionName(), Kind.DOMAIN);
+  }
+
+  @Override
+  protected StorageAccess createQueryResultsRegionStorageAccess(
+      String regionName, SessionFactoryImplementor sessionFactory) {
+    return createStorage(regionName, Kind.QUERY_RESULTS);
+  }
+
+  @Override
+  protected StorageAccess createTimestampsRegionStorageAccess(
+      String regionName, SessionFactoryImplementor sessionFactory) {
+    return createStorage(regionName, Kind.TIMESTAMPS);
+  }
+
+  private LocalStorageAccess createStorage(String regionName, Kind kind) {
+    final String qualifiedName = qualifiedName(regionName);
+
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+    // Timestamps must never be evicted or stale query results would be returned
+    if (kind != Kind.TIMESTAMPS) {
+      builder.maximumSize(getMaxEntries(regionName));
+    }
+
+    LocalStorageAccess storage = new LocalStorageAccess(qualifiedName, kind, builder.build(), this);
+    REGIONS.put(qualifiedName, storage);
+    LOGGER.info("Created second-level cache region " + qualifiedName);
+    return storage;
+  }
+
+  private String qualifiedName(String regionName) {
+    if (regionPrefix == null || regionPrefix.isEmpty() || regionName.startsWith(regionPrefix)) {
+      return regionName;
+    }
+    return regionPrefix + '.' + regionName;
+  }
+
+  private long getMaxEntries(String regionName) {
+    Object max = configValues.get(REGION_MAX_ENTRIES_PREFIX + regionName);
+    if (max == null) {
+      max = configValues.get(MAX_ENTRIES);
+    }
+    return max == null ? DEFAULT_MAX_ENTRIES : Long.parseLong(max.toString());
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.hibernate.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.tle.annotation.Nullable;
+import com.tle.core.hibernate.CurrentDataSource;
+import com.tle.core.hibernate.DataSourceHolder;
+import java.io.Serializable;
+import java.util.Objects;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * In-memory storage for a single second-level cache region. Evictions of domain data and updates to
+ * table space timestamps are passed on to {@link LocalRegionFactory} so that other cluster nodes
+ * can drop their copies.
+ *
+ * <p>For a factory which is {@link LocalRegionFactory#isPerDataSource() per data source}, entity
+ * and query result keys are qualified with the current data source. Nothing is cached while there
+ * is no identifiable data source. Timestamps aren't qualified, so an update in one database only
+ * causes extra invalidation of the query results of another.
+ */
+public class LocalStorageAccess implements DomainDataStorageAccess {
+  public enum Kind {
+    DOMAIN,
+    QUERY_RESULTS,
+    TIMESTAMPS
+  }
+
+  private final String regionName;
+  private final Kind kind;
+  private final Cache<Object, Object> cache;
+  private final LocalRegionFactory regionFactory;
+
+  LocalStorageAccess(
+      String regionName, Kind kind, Cache<Object, Object> cache, LocalRegionFactory regionFactory) {
+    this.regionName = regionName;
+    this.kind = kind;
+    this.cache = cache;
+    this.regionFactory = regionFactory;
+  }
+
+  public String getRegionName() {
+    return regionName;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  LocalRegionFactory getRegionFactory() {
+    return regionFactory;
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long getSize() {
+    return cache.size();
+  }
+
+  @Override
+  public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+    Object scopedKey = scope(key);
+    return scopedKey == null ? null : cache.getIfPresent(scopedKey);
+  }
+
+  @Override
+  public void putFromLoad(Object key, Object value, SharedSessionContractImplementor session) {
+    // Loaded from the DB, so every node will load the same thing
+    Object scopedKey = scope(key);
+    if (scopedKey != null) {
+      cache.put(scopedKey, value);
+    }
+  }
+
+  @Override
+  public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+    Object scopedKey = scope(key);
+    if (scopedKey == null) {
+      return;
+    }
+    cache.put(scopedKey, value);
+    if (kind == Kind.TIMESTAMPS) {
+      // Table spaces being invalidated by an update
+      regionFactory.publishInvalidation(regionName, key);
+    }
+    // Domain data changes made with NONSTRICT_READ_WRITE are evictions, and query results are
+    // local, being invalidated via the timestamps.
+  }
+
+  @Override
+  public boolean contains(Object key) {
+    Object scopedKey = scope(key);
+    return scopedKey != null && cache.getIfPresent(scopedKey) != null;
+  }
+
+  @Override
+  public void evictData() {
+    cache.invalidateAll();
+    if (kind == Kind.DOMAIN) {
+      regionFactory.publishInvalidation(regionName, null);
+    }
+  }
+
+  @Override
+  public void evictData(Object key) {
+    Object scopedKey = scope(key);
+    // Without a data source, evict the key from every database
+    Object evictKey = scopedKey == null ? key : scopedKey;
+    invalidate(evictKey);
+    if (kind == Kind.DOMAIN) {
+      regionFactory.publishInvalidation(regionName, evictKey);
+    }
+  }
+
+  @Override
+  public void release() {
+    cache.invalidateAll();
+  }
+
+  /** Applies an invalidation published by another cluster node. */
+  void invalidateFromRemote(@Nullable Serializable key) {
+    if (key == null) {
+      cache.invalidateAll();
+    } else if (kind == Kind.TIMESTAMPS) {
+      // Anything cached for this table space before now is out of date
+      cache.put(key, regionFactory.nextTimestamp());
+    } else {
+      invalidate(key);
+    }
+  }
+
+  private void invalidate(Object key) {
+    if (isScoped() && !(key instanceof ScopedKey)) {
+      cache.asMap().keySet().removeIf(k -> ((ScopedKey) k).getKey().equals(key));
+    } else {
+      cache.invalidate(key);
+    }
+  }
+
+  private boolean isScoped() {
+    return kind != Kind.TIMESTAMPS && regionFactory.isPerDataSource();
+  }
+
+  /** @return the key to use in this region, or null if nothing should be cached. */
+  @Nullable
+  private Object scope(Object key) {
+    if (!isScoped()) {
+      return key;
+    }
+    DataSourceHolder dataSource = CurrentDataSource.get();
+    if (dataSource == null || dataSource.getId() == null) {
+      return null;
+    }
+    return new ScopedKey(dataSource.getId(), key);
+  }
+
+  /** A key qualified with the id of the data source it was loaded from. */
+  public static final class ScopedKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String dataSourceId;
+    private final Object key;
+
+    ScopedKey(String dataSourceId, Object key) {
+      this.dataSourceId = dataSourceId;
+      this.key = key;
+    }
+
+    public Object getKey() {
+      return key;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ScopedKey)) {
+        return false;
+      }
+      ScopedKey other = (ScopedKey) obj;
+      return dataSourceId.equals(other.dataSourceId) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(dataSourceId, key);
+    }
+
+    @Override
+    public String toString() {
+      return dataSourceId + ':' + key;
+    }
+  }
+}
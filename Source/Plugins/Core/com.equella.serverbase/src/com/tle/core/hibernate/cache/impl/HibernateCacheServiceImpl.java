@@ -0,0 +1,99 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.hibernate.cache.impl;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.tle.core.cluster.ClusterMessageHandler;
+import com.tle.core.cluster.service.ClusterMessagingService;
+import com.tle.core.guice.Bind;
+import com.tle.core.hibernate.HibernateFactory;
+import com.tle.core.hibernate.cache.CacheInvalidationMessage;
+import com.tle.core.hibernate.cache.HibernateCacheService;
+import com.tle.core.hibernate.cache.LocalRegionFactory;
+import com.tle.core.hibernate.cache.LocalStorageAccess;
+import com.tle.core.zookeeper.ZookeeperService;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.hibernate.cfg.Environment;
+
+@Bind(HibernateCacheService.class)
+@Singleton
+@SuppressWarnings("nls")
+public class HibernateCacheServiceImpl implements HibernateCacheService, ClusterMessageHandler {
+  @Inject private ClusterMessagingService clusterMessagingService;
+  @Inject private ZookeeperService zookeeperService;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("hibernate.secondLevelCache")
+  private boolean secondLevelCache;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("hibernate.queryCache")
+  private boolean queryCache;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("hibernate.cache.maxEntries")
+  private int maxEntries;
+
+  @Override
+  public synchronized void configure(
+      HibernateFactory factory, String regionPrefix, boolean perDataSource) {
+    if (!secondLevelCache) {
+      return;
+    }
+
+    if (zookeeperService.isCluster()) {
+      LocalRegionFactory.setInvalidationPublisher(clusterMessagingService::postMessage);
+    }
+
+    factory.setProperty(Environment.USE_SECOND_LEVEL_CACHE, "true");
+    factory.setProperty(Environment.USE_QUERY_CACHE, Boolean.toString(queryCache));
+    factory.setProperty(Environment.CACHE_REGION_FACTORY, LocalRegionFactory.class.getName());
+    factory.setProperty(Environment.CACHE_REGION_PREFIX, regionPrefix);
+    factory.setProperty(LocalRegionFactory.PER_DATA_SOURCE, Boolean.toString(perDataSource));
+    if (maxEntries > 0) {
+      factory.setProperty(LocalRegionFactory.MAX_ENTRIES, Integer.toString(maxEntries));
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return secondLevelCache;
+  }
+
+  @Override
+  public Map<String, CacheStats> getRegionStatistics() {
+    ImmutableMap.Builder<String, CacheStats> stats = ImmutableMap.builder();
+    for (LocalStorageAccess region : LocalRegionFactory.getRegions().values()) {
+      stats.put(region.getRegionName(), region.getStats());
+    }
+    return stats.build();
+  }
+
+  @Override
+  public Runnable canHandle(Object msg) {
+    if (msg instanceof CacheInvalidationMessage) {
+      return () -> LocalRegionFactory.invalidateFromRemote((CacheInvalidationMessage) msg);
+    }
+    return null;
+  }
+}
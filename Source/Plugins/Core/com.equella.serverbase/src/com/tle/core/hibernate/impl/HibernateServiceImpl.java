@@ -27,6 +27,7 @@ import com.tle.core.hibernate.DataSourceService;
 import com.tle.core.hibernate.HibernateFactory;
 import com.tle.core.hibernate.HibernateFactoryService;
 import com.tle.core.hibernate.HibernateService;
+import com.tle.core.hibernate.cache.HibernateCacheService;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.hibernate.SessionFactory;
@@ -39,6 +40,7 @@ public class HibernateServiceImpl implements HibernateService {
   @Inject private HibernateFactoryService hibernateService;
   @Inject private DataSourceService datasourceService;
   @Inject private DynamicDataSource institutionAwareDataSource;
+  @Inject private HibernateCacheService hibernateCacheService;
 
   private static HibernateServiceImpl instance;
 
@@ -72,6 +74,7 @@ public class HibernateServiceImpl implements HibernateService {
     factory.setClassLoader(getClass().getClassLoader());
     factory.setProperty(
         Environment.CURRENT_SESSION_CONTEXT_CLASS, SpringSessionContext.class.getName());
+    hibernateCacheService.configure(factory, system ? name + ".system" : name, !system);
     return factory;
   }
 
@@ -28,7 +28,8 @@ public interface ReplicatedCacheDao extends GenericDao<CachedValue, Long> {
 
   CachedValue getByValue(String cacheId, byte[] value);
 
-  void put(String cacheId, String key, Date ttl, byte[] value);
+  /** @return the id of the new row, which increases with each put and so acts as a version */
+  long put(String cacheId, String key, Date ttl, byte[] value);
 
   void invalidate(String cacheId, String... keys);
 
@@ -110,7 +110,7 @@ public class ReplicatedCacheDaoImpl extends GenericDaoImpl<CachedValue, Long>
 
   @Override
   @Transactional
-  public void put(final String cacheId, final String key, final Date ttl, final byte[] value) {
+  public long put(final String cacheId, final String key, final Date ttl, final byte[] value) {
     invalidate(cacheId, key);
 
     CachedValue cv = new CachedValue();
@@ -120,7 +120,7 @@ public class ReplicatedCacheDaoImpl extends GenericDaoImpl<CachedValue, Long>
     cv.setValue(value);
     cv.setTtl(ttl);
 
-    save(cv);
+    return save(cv);
   }
 
   @Override
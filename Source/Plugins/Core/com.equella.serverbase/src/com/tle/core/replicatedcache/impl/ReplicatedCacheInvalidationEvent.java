@@ -23,13 +23,27 @@ import com.tle.core.events.ApplicationEvent;
 
 public final class ReplicatedCacheInvalidationEvent
     extends ApplicationEvent<ReplicatedCacheInvalidationListener> {
+  /** Version used when the keys have been removed rather than replaced. */
+  public static final long DELETED = -1;
+
   private final String cacheId;
+  private final long version;
   private final String[] keys;
 
   public ReplicatedCacheInvalidationEvent(@NonNull String cacheId, @NonNull String... keys) {
+    this(cacheId, DELETED, keys);
+  }
+
+  /**
+   * @param version the version of the value that replaced the keys, so that nodes already holding
+   *     it (or something newer) can keep it.
+   */
+  public ReplicatedCacheInvalidationEvent(
+      @NonNull String cacheId, long version, @NonNull String... keys) {
     super(PostTo.POST_TO_OTHER_CLUSTER_NODES);
 
     this.cacheId = cacheId;
+    this.version = version;
     this.keys = keys;
   }
 
@@ -40,7 +54,7 @@ public final class ReplicatedCacheInvalidationEvent
 
   @Override
   public void postEvent(ReplicatedCacheInvalidationListener listener) {
-    listener.invalidateCacheEntries(cacheId, keys);
+    listener.invalidateCacheEntries(cacheId, version, keys);
   }
 
   @Override
@@ -22,5 +22,9 @@ import com.tle.annotation.NonNull;
 import com.tle.core.events.listeners.ApplicationListener;
 
 public interface ReplicatedCacheInvalidationListener extends ApplicationListener {
-  void invalidateCacheEntries(@NonNull String cacheId, @NonNull String... keys);
+  /**
+   * @param version the version of the value which replaced the keys, or {@link
+   *     ReplicatedCacheInvalidationEvent#DELETED}
+   */
+  void invalidateCacheEntries(@NonNull String cacheId, long version, @NonNull String... keys);
 }
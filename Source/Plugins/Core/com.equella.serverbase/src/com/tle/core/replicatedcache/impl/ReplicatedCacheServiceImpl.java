@@ -52,8 +52,8 @@ import java.io.Serializable;
 import java.time.Instant;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.logging.Log;
@@ -100,8 +100,9 @@ public class ReplicatedCacheServiceImpl
   /**
    * A cache which is replicated across a cluster, where the key/values are partitioned first based
    * on Institution. If the server is not running in clustered mode, the values are stored in
-   * memory. In clustered mode, synchronisation of the in-memory store is done via Zookeeper
-   * signaling and database persistence.
+   * memory. In clustered mode, values are persisted to the database and each node keeps a local
+   * copy which is invalidated by key when another node changes it (via {@link
+   * ReplicatedCacheInvalidationEvent}).
    *
    * <p>Partitioning is done by utilising a two-level cache. The first level is at the institution
    * level, and the second level is at the key/value level. As well as providing the partitioning,
@@ -109,28 +110,23 @@ public class ReplicatedCacheServiceImpl
    * have been used for an extended period of time.
    *
    * <p><strong>TTL</strong> for cache entries is controlled in two main ways. Firstly, the values
-   * are wrapped in an {@code ExpiringValue} which allows us to set a TTL on the value itself.
-   * Secondly, both levels of cache have an access TTL on them of one day - this seems to have been
-   * added to ensure that memory isn't wasted by caches being left lying around.
+   * are wrapped in an {@code ExpiringValue} which allows us to set a TTL on the value itself, and
+   * is populated from the TTL stored in {@code CachedValue} so that it is consistent across nodes.
+   * Secondly, both levels of cache have an access TTL on them of one day to ensure that memory
+   * isn't wasted by caches being left lying around.
    *
-   * <p>Reviewing the use of {@code ExpiringValue} it seemed to be done to support the replication
-   * of values and ensure that the TTL could be consistent across nodes. As it can be seen that the
-   * TTL is also stored in {@code CachedValue} as a {@code Date}. And then when it is read back in
-   * via the {@code LoadingCache} mechanisms this is used to set the TTL on the {@code
-   * ExpiringValue}.
-   *
-   * <p>Lastly, note that the {@code ExpiredValue} is also wrapped in an {@code Optional}. It would
-   * seem this has been done to support the case where the value is requested from the DAO but none
-   * is there and in which case {@code null} is returned. (It does unfortunately mean that the cache
-   * is possibly wasting memory storing a number number of `Optional.absent` values rather than
-   * storing nothing. Perhaps something to review.)
+   * <p>Reads do not take any locks. A value is only loaded from the database on a local miss. To
+   * stop a load racing with an invalidation from another node (and so caching a stale value), every
+   * local value carries the database id of the row it was loaded from as its version, and
+   * invalidations record a version fence for the key. Loads which complete after a newer write or
+   * invalidation has been seen are returned to the caller but not kept.
    *
    * @param <V> the type for the values which will be cached.
    */
   @NonNullByDefault
   private class ReplicatedCacheImpl<V extends Serializable> implements ReplicatedCache<V> {
     private final String cacheId;
-    private final LoadingCache<Institution, LoadingCache<String, Optional<ExpiringValue<V>>>> cache;
+    private final LoadingCache<Institution, Partition<V>> cache;
     private final long ttl;
     private final TimeUnit ttlUnit;
     private final boolean alwaysPersist;
@@ -152,62 +148,70 @@ public class ReplicatedCacheServiceImpl
           CacheBuilder.newBuilder()
               .expireAfterAccess(1, TimeUnit.DAYS)
               .build(
-                  new CacheLoader<Institution, LoadingCache<String, Optional<ExpiringValue<V>>>>() {
+                  new CacheLoader<Institution, Partition<V>>() {
                     @Override
-                    public LoadingCache<String, Optional<ExpiringValue<V>>> load(Institution key)
-                        throws Exception {
-                      return CacheBuilder.newBuilder()
-                          .maximumSize(maxLocalCacheSize)
-                          .softValues()
-                          .expireAfterWrite(ttl, ttlUnit)
-                          .expireAfterAccess(1, TimeUnit.DAYS)
-                          .build(
-                              new CacheLoader<String, Optional<ExpiringValue<V>>>() {
-                                @Override
-                                public Optional<ExpiringValue<V>> load(String key)
-                                    throws Exception {
-                                  if (!zookeeperService.isCluster() && !alwaysPersist) {
-                                    return Optional.absent();
-                                  }
-
-                                  CachedValue cv = dao.get(ReplicatedCacheImpl.this.cacheId, key);
-
-                                  // Return Absent so we don't keep looking it
-                                  // up.
-                                  if (cv == null) {
-                                    return Optional.absent();
-                                  }
-
-                                  @SuppressWarnings("unchecked")
-                                  V v = (V) PluginAwareObjectInputStream.fromBytes(cv.getValue());
-                                  return Optional.of(
-                                      ExpiringValue.expireAt(v, cv.getTtl().getTime()));
-                                }
-                              });
+                    public Partition<V> load(Institution key) {
+                      return new Partition<V>(
+                          CacheBuilder.newBuilder()
+                              .maximumSize(maxLocalCacheSize)
+                              .softValues()
+                              .expireAfterWrite(ttl, ttlUnit)
+                              .expireAfterAccess(1, TimeUnit.DAYS)
+                              .<String, VersionedValue<V>>build());
                     }
                   });
     }
 
+    private boolean isPersisted() {
+      return alwaysPersist || zookeeperService.isCluster();
+    }
+
+    private Partition<V> getPartition() {
+      return cache.getUnchecked(CurrentInstitution.get());
+    }
+
     @Override
-    public synchronized Optional<V> get(@NonNull String key) {
+    public Optional<V> get(@NonNull String key) {
       checkNotNull(key);
-      if (alwaysPersist || zookeeperService.isCluster()) {
-        cache.refresh(CurrentInstitution.get());
-      }
 
-      LoadingCache<String, Optional<ExpiringValue<V>>> c;
-      try {
-        c = cache.get(CurrentInstitution.get());
-        Optional<ExpiringValue<V>> op = c.getUnchecked(key);
-        if (op.isPresent()) {
-          V ev = op.get().getValue();
-          return Optional.fromNullable(ev);
+      final Partition<V> partition = getPartition();
+      VersionedValue<V> local = partition.values.getIfPresent(key);
+      if (local == null) {
+        if (!isPersisted()) {
+          return Optional.absent();
         }
+        local = load(partition, key);
+      }
+      return Optional.fromNullable(local.getValue());
+    }
+
+    private VersionedValue<V> load(Partition<V> partition, String key) {
+      final long stamp = partition.stamp(key);
+
+      final VersionedValue<V> loaded;
+      CachedValue cv = dao.get(cacheId, key);
+      if (cv == null) {
+        // Remember the absence so we don't keep looking it up
+        loaded = VersionedValue.absent();
+      } else {
+        @SuppressWarnings("unchecked")
+        V v = (V) PluginAwareObjectInputStream.fromBytes(cv.getValue());
+        loaded =
+            new VersionedValue<V>(ExpiringValue.expireAt(v, cv.getTtl().getTime()), cv.getId());
+      }
 
-      } catch (ExecutionException e) {
-        LOGGER.error("Fail to access cache of institution " + CurrentInstitution.get());
+      // Only keep the value if nothing has invalidated the key while we were loading it, and it is
+      // at least as new as the last version another node told us about.
+      if (partition.stamp(key) == stamp && loaded.version >= partition.fence(key)) {
+        VersionedValue<V> existing = partition.values.asMap().putIfAbsent(key, loaded);
+        if (existing != null && existing.version > loaded.version) {
+          return existing;
+        }
+        if (partition.stamp(key) != stamp) {
+          partition.values.asMap().remove(key, loaded);
+        }
       }
-      return Optional.absent();
+      return loaded;
     }
 
     @Override
@@ -220,28 +224,32 @@ public class ReplicatedCacheServiceImpl
       checkNotNull(key);
       checkNotNull(value);
 
-      LoadingCache<String, Optional<ExpiringValue<V>>> c =
-          cache.getUnchecked(CurrentInstitution.get());
+      Partition<V> partition = getPartition();
 
       // Do nothing if the value hasn't changed
-      Optional<ExpiringValue<V>> opExVal = c.getIfPresent(key);
-      if (opExVal != null && opExVal.isPresent()) {
-        V oldValue = opExVal.get().getValue();
+      VersionedValue<V> existing = partition.values.getIfPresent(key);
+      if (existing != null) {
+        V oldValue = existing.getValue();
         if (oldValue != null && oldValue.equals(value)) {
           return;
         }
       }
 
       // Update the DB state if it's clustered
-      if (alwaysPersist || zookeeperService.isCluster()) {
-        dao.put(cacheId, key, Date.from(dbEntryTTL), PluginAwareObjectOutputStream.toBytes(value));
+      long version = VersionedValue.UNVERSIONED;
+      if (isPersisted()) {
+        version =
+            dao.put(
+                cacheId, key, Date.from(dbEntryTTL), PluginAwareObjectOutputStream.toBytes(value));
       }
 
       // Invalidate other servers caches
-      invalidateOthers(key);
+      invalidateOthers(version, key);
 
       // Update our local cache
-      c.put(key, Optional.of(ExpiringValue.expireAfter(value, ttl, ttlUnit)));
+      partition.invalidated(key, version);
+      partition.values.put(
+          key, new VersionedValue<V>(ExpiringValue.expireAfter(value, ttl, ttlUnit), version));
     }
 
     @Override
@@ -251,25 +259,34 @@ public class ReplicatedCacheServiceImpl
         return;
       }
 
-      if (alwaysPersist || zookeeperService.isCluster()) {
+      if (isPersisted()) {
         dao.invalidate(cacheId, keys);
       }
 
-      invalidateOthers(keys);
-      invalidateLocal(keys);
+      invalidateOthers(ReplicatedCacheInvalidationEvent.DELETED, keys);
+      invalidateLocal(ReplicatedCacheInvalidationEvent.DELETED, keys);
     }
 
-    public void invalidateLocal(String... keys) {
-      LoadingCache<String, ?> c = cache.getIfPresent(CurrentInstitution.get());
-      if (c != null) {
+    /**
+     * @param version the version of the value which replaced the keys on another node, or {@link
+     *     ReplicatedCacheInvalidationEvent#DELETED} if they were removed.
+     */
+    public void invalidateLocal(long version, String... keys) {
+      Partition<V> partition = cache.getIfPresent(CurrentInstitution.get());
+      if (partition != null) {
         for (String key : keys) {
-          c.invalidate(key);
+          partition.invalidated(key, version);
+          VersionedValue<V> local = partition.values.getIfPresent(key);
+          if (local != null && (version < 0 || local.version < version)) {
+            partition.values.asMap().remove(key, local);
+          }
         }
       }
     }
 
-    private void invalidateOthers(String... keys) {
-      eventService.publishApplicationEvent(new ReplicatedCacheInvalidationEvent(cacheId, keys));
+    private void invalidateOthers(long version, String... keys) {
+      eventService.publishApplicationEvent(
+          new ReplicatedCacheInvalidationEvent(cacheId, version, keys));
     }
 
     @Override
@@ -299,11 +316,72 @@ public class ReplicatedCacheServiceImpl
     }
   }
 
+  /**
+   * The local values of a cache for a single institution, along with the bookkeeping needed to
+   * detect invalidations that happen while a value is being loaded from the database.
+   */
+  private static final class Partition<V> {
+    private static final int STRIPES = 256;
+    /** How long a remote version fence is remembered, i.e. long enough for its TX to commit. */
+    private static final long FENCE_SECONDS = 60;
+
+    private final Cache<String, VersionedValue<V>> values;
+    private final AtomicLongArray stamps = new AtomicLongArray(STRIPES);
+    private final Cache<String, Long> fences =
+        CacheBuilder.newBuilder().expireAfterWrite(FENCE_SECONDS, TimeUnit.SECONDS).build();
+
+    Partition(Cache<String, VersionedValue<V>> values) {
+      this.values = values;
+    }
+
+    long stamp(String key) {
+      return stamps.get(stripe(key));
+    }
+
+    long fence(String key) {
+      Long fence = fences.getIfPresent(key);
+      return fence == null ? Long.MIN_VALUE : fence;
+    }
+
+    void invalidated(String key, long version) {
+      stamps.incrementAndGet(stripe(key));
+      // A deletion on another node may not be committed yet, so don't trust anything we load for
+      // this key until the fence expires.
+      long fence = version == ReplicatedCacheInvalidationEvent.DELETED ? Long.MAX_VALUE : version;
+      fences.asMap().merge(key, fence, Math::max);
+    }
+
+    private static int stripe(String key) {
+      return (key.hashCode() & 0x7fffffff) % STRIPES;
+    }
+  }
+
+  private static final class VersionedValue<V> {
+    static final long UNVERSIONED = 0;
+
+    @Nullable private final ExpiringValue<V> value;
+    private final long version;
+
+    static <V> VersionedValue<V> absent() {
+      return new VersionedValue<V>(null, UNVERSIONED);
+    }
+
+    VersionedValue(@Nullable ExpiringValue<V> value, long version) {
+      this.value = value;
+      this.version = version;
+    }
+
+    @Nullable
+    V getValue() {
+      return value == null ? null : value.getValue();
+    }
+  }
+
   @Override
-  public void invalidateCacheEntries(String cacheId, String... keys) {
+  public void invalidateCacheEntries(String cacheId, long version, String... keys) {
     ReplicatedCacheImpl<?> cache = caches.getIfPresent(cacheId);
     if (cache != null) {
-      cache.invalidateLocal(keys);
+      cache.invalidateLocal(version, keys);
     }
   }
 
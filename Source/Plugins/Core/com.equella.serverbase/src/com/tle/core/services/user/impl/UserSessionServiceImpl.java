@@ -41,6 +41,7 @@ import com.tle.core.replicatedcache.ReplicatedCacheService;
 import com.tle.core.replicatedcache.ReplicatedCacheService.ReplicatedCache;
 import com.tle.core.services.user.UserSessionService;
 import com.tle.core.services.user.UserSessionTimestamp;
+import io.prometheus.client.Summary;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
@@ -61,6 +62,19 @@ public final class UserSessionServiceImpl
     implements UserSessionService, UserSessionLoginListener, UserSessionLogoutListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(UserSessionService.class);
 
+  private static final Summary ATTRIBUTE_BYTES =
+      Summary.build()
+          .name("session_attribute_bytes")
+          .help("Serialised size of attributes written to the user session")
+          .labelNames("type")
+          .register();
+  private static final Summary ATTRIBUTE_SECONDS =
+      Summary.build()
+          .name("session_attribute_write_seconds")
+          .help("Time taken to serialise and compare attributes written to the user session")
+          .labelNames("type")
+          .register();
+
   private final ThreadLocal<SessionState> sessionLocal = new ThreadLocal<SessionState>();
 
   private BatchedCache<UserSessionTimestamp> allSessions;
@@ -111,11 +125,18 @@ public final class UserSessionServiceImpl
 
   private void setAttributeInternal(HttpSession session, String key, Object attribute) {
     final String realKey = getKey(key);
+    final String type = attribute.getClass().getSimpleName();
+    final Summary.Timer timer = ATTRIBUTE_SECONDS.labels(type).startTimer();
+
     SerialisedValue<?> oldValue = (SerialisedValue<?>) session.getAttribute(realKey);
     SerialisedValue<?> newValue = new SerialisedValue<Object>(attribute);
-    if (oldValue == null || !Arrays.equals(oldValue.getData(), newValue.getData())) {
+    final byte[] data = newValue.getData();
+    if (oldValue == null || !Arrays.equals(oldValue.getData(), data)) {
       session.setAttribute(realKey, newValue);
     }
+
+    timer.observeDuration();
+    ATTRIBUTE_BYTES.labels(type).observe(data.length);
   }
 
   @Override
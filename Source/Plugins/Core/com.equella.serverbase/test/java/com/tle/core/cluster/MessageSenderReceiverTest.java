@@ -0,0 +1,196 @@
+package com.tle.core.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+import com.tle.core.cluster.service.ClusterMessageProcessor;
+import com.tle.core.cluster.service.ClusterMessagingService;
+import com.tle.core.plugins.PluginAwareObjectOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Sends messages between two nodes running in this JVM, using a real socket. */
+@SuppressWarnings("nls")
+public class MessageSenderReceiverTest {
+  private static final String SENDER_NODE = "sender";
+  private static final String RECEIVER_NODE = "receiver";
+
+  private final List<String> received = new CopyOnWriteArrayList<>();
+
+  private ServerSocket server;
+  private volatile MessageSender sender;
+  private MessageReceiver receiver;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    sender = new MessageSender(RECEIVER_NODE);
+    Thread acceptor =
+        new Thread(
+            () -> {
+              try {
+                while (!server.isClosed()) {
+                  Socket socket = server.accept();
+                  new Thread(
+                          new ClusterMessageProcessor(
+                              socket, nodeId -> sender, SENDER_NODE::equals))
+                      .start();
+                }
+              } catch (IOException e) {
+                // Server closed
+              }
+            });
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (receiver != null) {
+      receiver.kill();
+    }
+    server.close();
+  }
+
+  @Test
+  public void pipelinedMessagesArriveInOrder() throws Exception {
+    List<String> sent = queueMessages(5000, 100);
+    startReceiver(true);
+
+    awaitReceived(sent.size());
+    assertEquals(sent, received);
+  }
+
+  @Test
+  public void pipelinedLargeMessagesAreCompressed() throws Exception {
+    // Larger than the target frame size, and very compressible
+    List<String> sent = queueMessages(20, MessageFrame.TARGET_FRAME_SIZE + 1);
+    startReceiver(true);
+
+    awaitReceived(sent.size());
+    assertEquals(sent, received);
+  }
+
+  @Test
+  public void legacyProtocolStillSupported() throws Exception {
+    List<String> sent = queueMessages(200, 100);
+    startReceiver(false);
+
+    awaitReceived(sent.size());
+    assertEquals(sent, received);
+  }
+
+  @Test
+  public void pipelinedReceiverStartsAgainWithNewSender() throws Exception {
+    List<String> sent = queueMessages(100, 100);
+    startReceiver(true);
+    awaitReceived(sent.size());
+
+    // The replacement numbers its messages from zero again
+    sender = new MessageSender(RECEIVER_NODE);
+    sent.addAll(queueMessages(50, 100));
+
+    awaitReceived(sent.size());
+    assertEquals(sent, received);
+  }
+
+  @Test
+  public void pipelinedReceiverFallsBackForOlderSender() throws Exception {
+    List<String> sent = queueMessages(10, 100);
+    // Shut down the normal sender and answer with the original protocol only
+    server.close();
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    Thread oldSender =
+        new Thread(
+            () -> {
+              try (Socket socket = server.accept()) {
+                DataInputStream dis = new DataInputStream(socket.getInputStream());
+                DataOutputStream dos =
+                    new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                dis.readUTF();
+                dis.readUTF();
+                dis.readLong();
+                for (int i = 0; i < sent.size(); i++) {
+                  byte[] msg = PluginAwareObjectOutputStream.toBytes(sent.get(i));
+                  dos.writeLong(i);
+                  dos.writeInt(msg.length);
+                  dos.write(msg);
+                  dos.flush();
+                  dis.readBoolean();
+                }
+              } catch (IOException e) {
+                // Receiver killed
+              }
+            });
+    oldSender.setDaemon(true);
+    oldSender.start();
+    startReceiver(true);
+
+    awaitReceived(sent.size());
+    assertEquals(sent, received);
+  }
+
+  @Test
+  public void oldestMessagesDroppedWhenQueueFull() throws Exception {
+    int size = 1024 * 1024;
+    int count = ClusterMessagingService.MAX_QUEUE_SIZE / size + 10;
+    List<String> sent = queueMessages(count, size);
+
+    long dropped = sender.getDroppedMessages();
+    assertTrue("Expected messages to be dropped", dropped > 0);
+    assertEquals(dropped, sender.getHeadOffset());
+
+    startReceiver(true);
+    List<String> expected = sent.subList((int) dropped, sent.size());
+    awaitReceived(expected.size());
+    assertEquals(expected, received);
+  }
+
+  private List<String> queueMessages(int count, int size) {
+    List<String> sent = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String msg = Strings.padEnd(Integer.toString(i), size, 'x');
+      sender.queueMessage(PluginAwareObjectOutputStream.toBytes(msg));
+      sent.add(msg);
+    }
+    return sent;
+  }
+
+  private void startReceiver(boolean pipelined) {
+    ClusterMessageHandler handler = msg -> () -> received.add((String) msg);
+    receiver =
+        new MessageReceiver(
+            server.getInetAddress().getHostAddress(),
+            server.getLocalPort(),
+            RECEIVER_NODE,
+            SENDER_NODE,
+            Collections.singletonList(handler),
+            Runnable::run,
+            pipelined);
+    Thread thread = new Thread(receiver);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void awaitReceived(int count) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+    while (received.size() < count && System.currentTimeMillis() < timeout) {
+      Thread.sleep(50);
+    }
+    assertEquals(count, received.size());
+  }
+}
@@ -0,0 +1,69 @@
+package com.tle.core.hibernate.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.cache.CacheBuilder;
+import com.tle.core.hibernate.CurrentDataSource;
+import com.tle.core.hibernate.DataSourceHolder;
+import com.tle.core.hibernate.cache.LocalStorageAccess.Kind;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Two institution databases where the same entity id refers to different rows. */
+@SuppressWarnings("nls")
+public class LocalStorageAccessTest {
+  private final DataSourceHolder schemaA = new DataSourceHolder(null, null, "equella@db/a");
+  private final DataSourceHolder schemaB = new DataSourceHolder(null, null, "equella@db/b");
+
+  private LocalStorageAccess region;
+
+  @Before
+  public void setUp() {
+    LocalRegionFactory factory = new LocalRegionFactory();
+    factory.setPerDataSource(true);
+    region =
+        new LocalStorageAccess(
+            "test.entity", Kind.DOMAIN, CacheBuilder.newBuilder().build(), factory);
+  }
+
+  @After
+  public void tearDown() {
+    CurrentDataSource.remove();
+  }
+
+  @Test
+  public void sameIdInTwoSchemas() {
+    CurrentDataSource.set(schemaA);
+    region.putFromLoad(42L, "row from A", null);
+    assertEquals("row from A", region.getFromCache(42L, null));
+
+    CurrentDataSource.set(schemaB);
+    assertNull(region.getFromCache(42L, null));
+    region.putFromLoad(42L, "row from B", null);
+    assertEquals("row from B", region.getFromCache(42L, null));
+
+    CurrentDataSource.set(schemaA);
+    assertEquals("row from A", region.getFromCache(42L, null));
+
+    region.evictData(42L);
+    assertNull(region.getFromCache(42L, null));
+    CurrentDataSource.set(schemaB);
+    assertEquals("row from B", region.getFromCache(42L, null));
+  }
+
+  @Test
+  public void nothingCachedWithoutDataSource() {
+    region.putFromLoad(42L, "unknown", null);
+    assertNull(region.getFromCache(42L, null));
+
+    CurrentDataSource.set(schemaA);
+    region.putFromLoad(42L, "row from A", null);
+    CurrentDataSource.remove();
+    // Evicting without a data source evicts the id from every schema
+    region.evictData(42L);
+    CurrentDataSource.set(schemaA);
+    assertNull(region.getFromCache(42L, null));
+  }
+}
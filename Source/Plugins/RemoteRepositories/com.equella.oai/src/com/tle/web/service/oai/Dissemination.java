@@ -0,0 +1,54 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.web.service.oai;
+
+import java.util.Date;
+
+/**
+ * A record disseminated in one metadata format, stamped with the dates it was made from. Items are
+ * re-indexed whenever they are saved and schemas are modified whenever their transforms change, so
+ * a record is current if neither date has changed since it was made.
+ */
+final class Dissemination {
+  private final String stamp;
+  private final String metadata;
+
+  Dissemination(String stamp, String metadata) {
+    this.stamp = stamp;
+    this.metadata = metadata;
+  }
+
+  static String stamp(Date itemIndexed, Date schemaModified) {
+    return (itemIndexed == null ? 0 : itemIndexed.getTime())
+        + ":"
+        + (schemaModified == null ? 0 : schemaModified.getTime());
+  }
+
+  boolean isCurrent(String stamp) {
+    return this.stamp.equals(stamp);
+  }
+
+  String getStamp() {
+    return stamp;
+  }
+
+  String getMetadata() {
+    return metadata;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.web.service.oai;
+
+import com.tle.annotation.Nullable;
+import com.tle.beans.Institution;
+import com.tle.beans.item.Item;
+import com.tle.common.NamedThreadFactory;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.guice.Bind;
+import com.tle.core.institution.RunAsInstitution;
+import com.tle.core.oai.bean.OaiDissemination;
+import com.tle.core.oai.dao.OaiDisseminationDao;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps disseminated records in their own table, one row per item and metadata prefix. New records
+ * are written in the background, in batches of one transaction per institution, so a harvest
+ * doesn't wait on an insert for every record it builds. Rows are checked against the stamp when
+ * read, so nothing has to be told about them being replaced. If the queue is full a record is
+ * dropped, and simply built again the next time it is requested.
+ */
+@Bind
+@Singleton
+@SuppressWarnings("nls")
+public class DisseminationStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DisseminationStore.class);
+
+  private static final int QUEUE_SIZE = 1000;
+  private static final int BATCH_SIZE = 200;
+
+  @Inject private OaiDisseminationDao dao;
+  @Inject private RunAsInstitution runAs;
+
+  private volatile BlockingQueue<OaiDissemination> queue;
+
+  @Nullable
+  Dissemination get(Item item, String metadataPrefix) {
+    final OaiDissemination row = dao.get(item.getId(), metadataPrefix);
+    return row == null ? null : new Dissemination(row.getStamp(), row.getMetadata());
+  }
+
+  void put(Item item, String metadataPrefix, Dissemination dissemination) {
+    final OaiDissemination row = new OaiDissemination();
+    row.setInstitution(CurrentInstitution.get());
+    row.setItemId(item.getId());
+    row.setMetadataPrefix(metadataPrefix);
+    row.setStamp(dissemination.getStamp());
+    row.setMetadata(dissemination.getMetadata());
+    if (!getQueue().offer(row)) {
+      LOGGER.debug("OAI record queue is full, not storing record for item " + item.getId());
+    }
+  }
+
+  private BlockingQueue<OaiDissemination> getQueue() {
+    BlockingQueue<OaiDissemination> q = queue;
+    if (q == null) {
+      synchronized (this) {
+        q = queue;
+        if (q == null) {
+          q = new ArrayBlockingQueue<>(QUEUE_SIZE);
+          final BlockingQueue<OaiDissemination> writing = q;
+          final Thread writer =
+              new NamedThreadFactory("OAI-Record-Writer").newThread(() -> run(writing));
+          writer.setDaemon(true);
+          writer.start();
+          queue = q;
+        }
+      }
+    }
+    return q;
+  }
+
+  private void run(BlockingQueue<OaiDissemination> q) {
+    while (true) {
+      try {
+        final List<OaiDissemination> batch = new ArrayList<>(BATCH_SIZE);
+        batch.add(q.take());
+        q.drainTo(batch, BATCH_SIZE - 1);
+        writeBatch(batch);
+      } catch (InterruptedException e) {
+        LOGGER.warn("OAI record writer interrupted, ignoring");
+      } catch (Throwable t) {
+        LOGGER.error("Error writing OAI records", t);
+      }
+    }
+  }
+
+  private void writeBatch(List<OaiDissemination> batch) {
+    // Only the newest record for each item and prefix, as they would replace each other anyway
+    final Map<Institution, Map<String, OaiDissemination>> byInstitution = new LinkedHashMap<>();
+    for (OaiDissemination row : batch) {
+      byInstitution
+          .computeIfAbsent(row.getInstitution(), i -> new LinkedHashMap<>())
+          .put(row.getItemId() + "/" + row.getMetadataPrefix(), row);
+    }
+    for (Map.Entry<Institution, Map<String, OaiDissemination>> group : byInstitution.entrySet()) {
+      final List<OaiDissemination> rows = new ArrayList<>(group.getValue().values());
+      try {
+        runAs.executeAsSystem(group.getKey(), () -> dao.replaceAll(rows));
+      } catch (Exception e) {
+        // Another node may have stored the same records, they'll be built again if need be
+        LOGGER.warn("Error storing " + rows.size() + " OAI records", e);
+      }
+    }
+  }
+}
@@ -43,6 +43,7 @@ import com.tle.common.searching.Search.SortType;
 import com.tle.common.util.Dates;
 import com.tle.common.util.UtcDate;
 import com.tle.core.dynacollection.DynaCollectionService;
+import com.tle.core.freetext.index.CursorSearchResults;
 import com.tle.core.freetext.queries.FreeTextBooleanQuery;
 import com.tle.core.freetext.service.FreeTextService;
 import com.tle.core.institution.InstitutionService;
@@ -53,7 +54,8 @@ import com.tle.core.schema.service.SchemaService;
 import com.tle.core.search.QueryGatherer;
 import com.tle.core.search.VirtualisableAndValue;
 import com.tle.core.services.item.FreetextResult;
-import com.tle.core.services.item.FreetextSearchResults;
+import com.tle.core.services.item.StdFreetextResults;
+import com.tle.core.services.user.UserPreferenceService;
 import com.tle.core.settings.service.ConfigurationService;
 import java.io.Serializable;
 import java.text.ParseException;
@@ -88,6 +90,7 @@ public class OAICatalog extends AbstractCatalog {
   @Inject private SchemaService schemaService;
   @Inject private ConfigurationService configService;
   @Inject private InstitutionService institutionService;
+  @Inject private UserPreferenceService userPreferenceService;
 
   private ReplicatedCache<ResumptionToken> resumptionTokens;
 
@@ -240,13 +243,18 @@ public class OAICatalog extends AbstractCatalog {
     // NOTHING TO DO
   }
 
+  /**
+   * Remembers where a list got up to. The cursor is the date modified and ID of the last item
+   * returned, so each page is a cheap search after it rather than re-running the whole search to
+   * skip the earlier pages, and items modified during a harvest don't shift the later pages.
+   */
   private static class ResumptionToken implements Serializable {
     private final DefaultSearch request;
     private final String format;
-    private final int start;
+    private final String cursor;
 
-    public ResumptionToken(int start, DefaultSearch request, String format) {
-      this.start = start;
+    public ResumptionToken(String cursor, DefaultSearch request, String format) {
+      this.cursor = cursor;
       this.request = request;
       this.format = format;
     }
@@ -264,7 +272,7 @@ public class OAICatalog extends AbstractCatalog {
       resumptionTokens.invalidate(stoken);
 
       ResumptionToken token = maybeToken.get();
-      return list(token.request, token.format, token.start + MAX_RESULTS, handler);
+      return list(token.request, token.format, token.cursor, handler);
     } catch (NoRecordsMatchException e) {
       LOGGER.error("No records match", e);
       throw new BadResumptionTokenException();
@@ -295,7 +303,7 @@ public class OAICatalog extends AbstractCatalog {
       search.setDateRange(new Date[] {parseDate(from), parseDate(until)});
     }
 
-    return list(search, metadataFormat, 0, handler);
+    return list(search, metadataFormat, null, handler);
   }
 
   private Date parseDate(String s) throws BadArgumentException {
@@ -347,26 +355,28 @@ public class OAICatalog extends AbstractCatalog {
   }
 
   private Map<String, Map<?, ?>> list(
-      DefaultSearch request, String format, int start, Handler handler)
+      DefaultSearch request, String format, String cursor, Handler handler)
       throws NoRecordsMatchException, OAIInternalServerError {
     try {
       Map<String, Map<?, ?>> items = new HashMap<String, Map<?, ?>>();
 
-      FreetextSearchResults<FreetextResult> results =
-          freeTextService.search(request, start, MAX_RESULTS);
+      CursorSearchResults<FreetextResult> results =
+          freeTextService.searchAfter(
+              request, cursor, MAX_RESULTS, userPreferenceService.isSearchAttachment());
 
       int available = results.getAvailable();
       if (available == 0) {
         throw new NoRecordsMatchException();
       }
-      for (Item item : results.getResults()) {
+      for (Item item : new StdFreetextResults<>(itemService, results, request).getResults()) {
         handler.add(item, format);
       }
 
-      if (available > start + MAX_RESULTS) {
+      String nextCursor = results.getNextCursor();
+      if (nextCursor != null) {
         String uuid = UUID.randomUUID().toString();
-        Map<?, ?> map = getResumptionMap(uuid, available, start);
-        ResumptionToken token = new ResumptionToken(start, request, format);
+        Map<?, ?> map = getResumptionMap(uuid, available, results.getOffset());
+        ResumptionToken token = new ResumptionToken(nextCursor, request, format);
         resumptionTokens.put(uuid, token);
         items.put("resumptionMap", map); // $NON-NLS-1$
       }
@@ -51,6 +51,7 @@ public class XMLRecordFactory extends RecordFactory {
   @Inject private ConfigurationService configService;
   @Inject private InstitutionService institutionService;
   @Inject private ItemHelper itemHelper;
+  @Inject private DisseminationStore disseminations;
 
   /*
    * DO NOT REMOVE ARGUMENT! Called by Reflection - very necessary.
@@ -157,14 +158,23 @@ public class XMLRecordFactory extends RecordFactory {
     public String createMetadata(Object nativeItem) throws CannotDisseminateFormatException {
       Item item = (Item) nativeItem;
       try {
+        Schema schema = getSchema(item);
+        // Records are kept per item and metadata prefix, so that repeated harvests don't have
+        // to convert and transform every item again
+        String stamp = Dissemination.stamp(item.getDateForIndex(), schema.getDateModified());
+        Dissemination stored = disseminations.get(item, metadataPrefix);
+        if (stored != null && stored.isCurrent(stamp)) {
+          return stored.getMetadata();
+        }
+
         ItemPack pack = new ItemPack();
         pack.setItem(item);
         pack.setXml(itemService.getItemXmlPropBag(item));
         PropBagEx xml = itemHelper.convertToXml(pack);
 
-        String s =
-            schemaService.transformForExport(getSchema(item).getId(), metadataPrefix, xml, true);
+        String s = schemaService.transformForExport(schema.getId(), metadataPrefix, xml, true);
         if (s != null) {
+          disseminations.put(item, metadataPrefix, new Dissemination(stamp, s));
           return s;
         }
       } catch (Exception ex) {
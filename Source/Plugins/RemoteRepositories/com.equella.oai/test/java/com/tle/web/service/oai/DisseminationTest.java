@@ -0,0 +1,45 @@
+package com.tle.web.service.oai;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import org.junit.Test;
+
+public class DisseminationTest {
+  private static final Date INDEXED = new Date(1000);
+  private static final Date SCHEMA_MODIFIED = new Date(2000);
+
+  @Test
+  public void currentWhileNothingChanges() {
+    Dissemination record =
+        new Dissemination(Dissemination.stamp(INDEXED, SCHEMA_MODIFIED), "<record/>");
+
+    assertTrue(record.isCurrent(Dissemination.stamp(new Date(1000), new Date(2000))));
+  }
+
+  @Test
+  public void staleOnceTheItemIsSaved() {
+    Dissemination record =
+        new Dissemination(Dissemination.stamp(INDEXED, SCHEMA_MODIFIED), "<record/>");
+
+    assertFalse(record.isCurrent(Dissemination.stamp(new Date(1001), SCHEMA_MODIFIED)));
+  }
+
+  @Test
+  public void staleOnceTheSchemaChanges() {
+    Dissemination record =
+        new Dissemination(Dissemination.stamp(INDEXED, SCHEMA_MODIFIED), "<record/>");
+
+    assertFalse(record.isCurrent(Dissemination.stamp(INDEXED, new Date(2001))));
+  }
+
+  @Test
+  public void missingDates() {
+    Dissemination record = new Dissemination(Dissemination.stamp(null, null), "<record/>");
+
+    assertTrue(record.isCurrent(Dissemination.stamp(null, null)));
+    assertFalse(record.isCurrent(Dissemination.stamp(INDEXED, null)));
+    assertFalse(record.isCurrent(Dissemination.stamp(null, SCHEMA_MODIFIED)));
+  }
+}
@@ -0,0 +1,38 @@
+import org.objectweb.asm.{AnnotationVisitor, ClassReader, ClassVisitor, Opcodes}
+import sbt._
+
+/**
+  * Build time equivalent of the class scan done by `com.tle.core.guice.ScannerModule`. The names
+  * of all classes annotated with `@Bind`, `@Bindings` or `@BindFactory` are written to an index
+  * which is packaged next to the plugin's classes, so the server doesn't need to read every class
+  * file on startup. Scanning the compiled output (rather than using an annotation processor) also
+  * picks up the Scala sources.
+  */
+object GuiceBindingIndex {
+  // Must match ScannerModule.BINDING_INDEX
+  val indexPath = "META-INF/equella/guice-bindings.idx"
+
+  private val bindAnnotations =
+    Set("Bind", "Bindings", "BindFactory").map(n => s"Lcom/tle/core/guice/$n;")
+
+  def bindingClasses(classFiles: Seq[File]): Seq[String] =
+    classFiles.flatMap { f =>
+      val reader = new ClassReader(IO.readBytes(f))
+      var bound  = false
+      reader.accept(
+        new ClassVisitor(Opcodes.ASM9) {
+          override def visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor = {
+            if (bindAnnotations(desc)) bound = true
+            null
+          }
+        },
+        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES
+      )
+      if (bound) Some(reader.getClassName.replace('/', '.')) else None
+    }.sorted
+
+  def write(classFiles: Seq[File], out: File): File = {
+    IO.writeLines(out, bindingClasses(classFiles))
+    out
+  }
+}
@@ -30,7 +30,8 @@ object JPFRunnerPlugin extends AutoPlugin {
           val compileAll  = (Compile / fullClasspath).all(scope).value
           val allRuntimes = jpfRuntime.all(scope).value ++ additionalPlugins.value
           val outBase     = target.value / "jpfjars"
-          IO.delete(outBase)
+          val indexBase   = target.value / "jpfindex"
+          IO.delete(Seq(outBase, indexBase))
           allRuntimes.map {
             r =>
               val allCode = r.code.flatMap(f =>
@@ -46,9 +47,14 @@ object JPFRunnerPlugin extends AutoPlugin {
                 allJars.map(f => JPFLibrary(f._1.getName, "code", f._2, Some("*")))
               val (id, manifest) = writeJPF(r.manifest, libs)
               val outJar         = outBase / s"$id.jar"
+              val bindingIndex = allCode.headOption.map { _ =>
+                val idx = GuiceBindingIndex.write(allCode.map(_._1), indexBase / s"$id.idx")
+                (idx, "classes/" + GuiceBindingIndex.indexPath)
+              }
               IO.withTemporaryFile("jpf", "xml") { tf =>
                 IO.write(tf, manifest)
-                val allFiles = (tf, "plugin-jpf.xml") +: (allCode ++ allResources ++ allJars)
+                val allFiles =
+                  (tf, "plugin-jpf.xml") +: (allCode ++ bindingIndex ++ allResources ++ allJars)
 
                 IO.zip(allFiles, outJar, Option((ThisBuild / buildTimestamp).value))
               }